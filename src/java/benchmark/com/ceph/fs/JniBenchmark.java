@@ -0,0 +1,121 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Per-call cost of cheap entry points, where the JNI crossing rather than
+ * the file system dominates: string arguments, String[] results, an
+ * error that is turned into an exception, and the layout of an open file
+ * read with one getLayout call compared with the separate getters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JniBenchmark {
+
+  private CephMount mount;
+  private String path;
+  private String deepPath;
+  private String dir;
+  private String missing;
+  private int fd;
+
+  @Setup
+  public void setup(MountState state) throws Exception {
+    mount = state.mount;
+    path = state.createFile("jni", 1);
+
+    StringBuilder sb = new StringBuilder(state.basedir);
+    for (int i = 0; i < 16; i++)
+      sb.append("/directory-").append(i);
+    mount.mkdirs(sb.toString(), 0755);
+    deepPath = sb.append("/file").toString();
+    mount.close(mount.open(deepPath, CephMount.O_WRONLY|CephMount.O_CREAT, 0600));
+
+    dir = state.basedir + "/jni-dir";
+    mount.mkdir(dir, 0755);
+    for (int i = 0; i < 4; i++)
+      mount.mkdir(dir + "/d" + i, 0755);
+
+    missing = state.basedir + "/missing";
+    fd = mount.open(path, CephMount.O_RDONLY, 0);
+  }
+
+  @TearDown
+  public void teardown() throws Exception {
+    mount.close(fd);
+  }
+
+  @Benchmark
+  public CephStat stat() throws Exception {
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    return stat;
+  }
+
+  @Benchmark
+  public CephStat statDeep() throws Exception {
+    CephStat stat = new CephStat();
+    mount.stat(deepPath, stat);
+    return stat;
+  }
+
+  @Benchmark
+  public String confGet() {
+    return mount.conf_get("client_permissions");
+  }
+
+  @Benchmark
+  public String[] listdir() throws Exception {
+    return mount.listdir(dir);
+  }
+
+  @Benchmark
+  public Object statMissing() throws Exception {
+    try {
+      mount.stat(missing, new CephStat());
+      return null;
+    } catch (FileNotFoundException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public CephFileLayout getLayout() {
+    return mount.getLayout(fd);
+  }
+
+  @Benchmark
+  public int layoutGetters() {
+    return mount.get_file_stripe_unit(fd) + mount.get_file_replication(fd) +
+      mount.get_file_pool_name(fd).length();
+  }
+}
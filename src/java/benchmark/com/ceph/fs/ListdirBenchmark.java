@@ -0,0 +1,88 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Listing directories of different sizes: listdir, the streaming opendir,
+ * and listdirPlus compared with listdir followed by lstat of every entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListdirBenchmark {
+
+  @Param({ "10", "1000", "10000" })
+  public int entries;
+
+  private CephMount mount;
+  private String dir;
+
+  @Setup
+  public void setup(MountState state) throws Exception {
+    mount = state.mount;
+    dir = state.basedir + "/list-" + entries;
+    mount.mkdir(dir, 0777);
+    for (int i = 0; i < entries; i++) {
+      int fd = mount.open(dir + "/" + i, CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+      mount.close(fd);
+    }
+  }
+
+  @Benchmark
+  public String[] listdir() throws Exception {
+    return mount.listdir(dir);
+  }
+
+  @Benchmark
+  public void opendir(Blackhole bh) throws Exception {
+    CephDirectoryStream<String> stream = mount.opendir(dir);
+    try {
+      for (String name : stream)
+        bh.consume(name);
+    } finally {
+      stream.close();
+    }
+  }
+
+  @Benchmark
+  public CephDirEntry[] listdirPlus() throws Exception {
+    return mount.listdirPlus(dir);
+  }
+
+  @Benchmark
+  public void listdirThenLstat(Blackhole bh) throws Exception {
+    for (String name : mount.listdir(dir)) {
+      CephStat stat = new CephStat();
+      mount.lstat(dir + "/" + name, stat);
+      bh.consume(stat);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/*
+ * Cost of CephMountMetrics: stat and 4 KB reads from 8 threads through a
+ * second mount of the MountState client, with and without instrumentation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class MetricsBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class MetricsState {
+
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    public CephMount mount;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      String id = System.getProperty("ceph.benchmark.id", "admin");
+      mount = metrics ? new CephMount(id, CephMountMetrics.instrument(null)) : new CephMount(id);
+
+      String conf_file = System.getProperty("CEPH_CONF_FILE");
+      if (conf_file != null)
+        mount.conf_read_file(conf_file);
+      mount.conf_set("client_permissions", "0");
+
+      mount.mount(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+      mount.unmount();
+    }
+  }
+
+  private CephMount mount;
+  private String path;
+  private int fd;
+  private final byte[] buf = new byte[4096];
+
+  @Setup
+  public void setup(MountState state, MetricsState metrics_state) throws Exception {
+    mount = metrics_state.mount;
+    path = state.createFile("metrics-" + Thread.currentThread().getId(), buf.length);
+    fd = mount.open(path, CephMount.O_RDONLY, 0);
+  }
+
+  @TearDown
+  public void teardown() {
+    mount.close(fd);
+  }
+
+  @Benchmark
+  public CephStat stat() throws Exception {
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    return stat;
+  }
+
+  @Benchmark
+  public long read() {
+    return mount.read(fd, buf, buf.length, 0);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/*
+ * Metadata throughput of 16 threads through a CephMountPool of 1, 4 and 8
+ * mounts: stat of a per-thread file, and create and unlink of per-thread
+ * files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class MountPoolBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class PoolState {
+
+    @Param({ "1", "4", "8" })
+    public int mounts;
+
+    public CephMountPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      pool = new CephMountPool(mounts, System.getProperty("ceph.benchmark.id", "admin"));
+
+      String conf_file = System.getProperty("CEPH_CONF_FILE");
+      if (conf_file != null)
+        pool.conf_read_file(conf_file);
+      pool.conf_set("client_permissions", "0");
+
+      pool.mount(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+      pool.unmount();
+    }
+  }
+
+  private CephMountPool pool;
+  private String path;
+  private String prefix;
+  private long seq;
+
+  @Setup
+  public void setup(MountState state, PoolState pool_state) throws Exception {
+    pool = pool_state.pool;
+    String name = "pool-" + Thread.currentThread().getId();
+    path = state.createFile(name, 1);
+    prefix = state.basedir + "/" + name + "-";
+  }
+
+  @Benchmark
+  public CephStat stat() throws Exception {
+    CephStat stat = new CephStat();
+    pool.stat(path, stat);
+    return stat;
+  }
+
+  @Benchmark
+  public void createUnlink() throws Exception {
+    String p = prefix + seq++;
+    pool.close(pool.open(p, CephMount.O_WRONLY|CephMount.O_CREAT, 0600));
+    pool.unlink(p);
+  }
+}
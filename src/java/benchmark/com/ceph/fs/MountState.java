@@ -0,0 +1,95 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.UUID;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * A mounted CephMount shared by all threads of a benchmark, with a private
+ * scratch directory that is removed at the end of the trial.
+ *
+ * The mount is configured from the CEPH_CONF_FILE system property, like
+ * the JUnit tests, and uses the client id given by the ceph.benchmark.id
+ * property (default "admin"). Setting com.ceph.fs.backend to "memory"
+ * benchmarks the in-memory backend instead of libcephfs.
+ */
+@State(Scope.Benchmark)
+public class MountState {
+
+  public CephMount mount;
+  public String basedir;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    mount = new CephMount(System.getProperty("ceph.benchmark.id", "admin"));
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_benchmark_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws Exception {
+    remove(basedir);
+    mount.unmount();
+  }
+
+  private void remove(String path) throws Exception {
+    CephStat stat = new CephStat();
+    mount.lstat(path, stat);
+    if (stat.isDir()) {
+      for (String name : mount.listdir(path))
+        remove(path + "/" + name);
+      mount.rmdir(path);
+    } else {
+      mount.unlink(path);
+    }
+  }
+
+  /**
+   * Create a file of the given size and return its path.
+   */
+  public String createFile(String name, int size) throws Exception {
+    String path = basedir + "/" + name;
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT|CephMount.O_TRUNC, 0600);
+    try {
+      byte[] buf = new byte[Math.min(size, 1 << 20)];
+      long off = 0;
+      while (off < size) {
+        long n = mount.write(fd, buf, Math.min(buf.length, size - off), off);
+        off += n;
+      }
+    } finally {
+      mount.close(fd);
+    }
+    return path;
+  }
+}
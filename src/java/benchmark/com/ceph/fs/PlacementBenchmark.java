@@ -0,0 +1,84 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ceph.crush.Bucket;
+
+/*
+ * Locating every stripe unit of a 16MB file with 64KB stripe units: a
+ * get_file_extent loop with per-OSD address and CRUSH lookups, compared
+ * with getFileBlockMap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlacementBenchmark {
+
+  private static final int STRIPE_UNIT = 1 << 16;
+  private static final int SIZE = 1 << 24;
+
+  private CephMount mount;
+  private int fd;
+
+  @Setup
+  public void setup(MountState state) throws Exception {
+    mount = state.mount;
+    String path = state.basedir + "/placement";
+    fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600,
+        STRIPE_UNIT, 4, STRIPE_UNIT * 4, null);
+    byte[] buf = new byte[1 << 20];
+    for (long off = 0; off < SIZE; off += buf.length)
+      mount.write(fd, buf, buf.length, off);
+  }
+
+  @TearDown
+  public void teardown() throws Exception {
+    mount.close(fd);
+  }
+
+  @Benchmark
+  public void extentLoop(Blackhole bh) throws Exception {
+    for (long off = 0; off < SIZE; ) {
+      CephFileExtent e = mount.get_file_extent(fd, off);
+      for (int osd : e.getOSDs()) {
+        bh.consume(mount.get_osd_address(osd));
+        Bucket[] location = mount.get_osd_crush_location(osd);
+        bh.consume(location);
+      }
+      off += e.getLength();
+    }
+  }
+
+  @Benchmark
+  public CephFileBlockMap blockMap() {
+    return mount.getFileBlockMap(fd, 0, SIZE);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * CephMount.read and CephMount.write at a fixed offset, across buffer
+ * sizes and buffer kinds:
+ *
+ *   array  - read(int, byte[], long, long) / write(int, byte[], long, long)
+ *   heap   - the ByteBuffer overloads with a heap buffer
+ *   direct - the ByteBuffer overloads with a direct buffer
+ *
+ * Each thread has its own file descriptor and buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadWriteBenchmark {
+
+  @Param({ "4096", "65536", "1048576" })
+  public int size;
+
+  @Param({ "array", "heap", "direct" })
+  public String buffer;
+
+  private CephMount mount;
+  private int fd;
+  private byte[] array;
+  private ByteBuffer bb;
+
+  @Setup
+  public void setup(MountState state) throws Exception {
+    mount = state.mount;
+    String path = state.createFile("rw-" + Thread.currentThread().getId(), size);
+    fd = mount.open(path, CephMount.O_RDWR, 0);
+    array = new byte[size];
+    if (buffer.equals("direct"))
+      bb = ByteBuffer.allocateDirect(size);
+    else
+      bb = ByteBuffer.wrap(array);
+  }
+
+  @TearDown
+  public void teardown() {
+    mount.close(fd);
+  }
+
+  @Benchmark
+  public long read() {
+    if (buffer.equals("array"))
+      return mount.read(fd, array, size, 0);
+    bb.clear();
+    return mount.read(fd, bb, 0);
+  }
+
+  @Benchmark
+  public long write() {
+    if (buffer.equals("array"))
+      return mount.write(fd, array, size, 0);
+    bb.clear();
+    return mount.write(fd, bb, 0);
+  }
+}
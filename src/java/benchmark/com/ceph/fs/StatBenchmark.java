@@ -0,0 +1,87 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Per-path stat and lstat, statPacked into a reused array, a size-only
+ * statx that does not sync attributes, and statBatch over 100 paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StatBenchmark {
+
+  private static final int BATCH = 100;
+
+  private CephMount mount;
+  private String path;
+  private String[] paths;
+  private final long[] packed = new long[CephStat.PACKED_LENGTH];
+
+  @Setup
+  public void setup(MountState state) throws Exception {
+    mount = state.mount;
+    path = state.createFile("stat", 1);
+    paths = new String[BATCH];
+    for (int i = 0; i < BATCH; i++)
+      paths[i] = state.createFile("stat-" + i, 1);
+  }
+
+  @Benchmark
+  public CephStat stat() throws Exception {
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    return stat;
+  }
+
+  @Benchmark
+  public CephStat lstat() throws Exception {
+    CephStat stat = new CephStat();
+    mount.lstat(path, stat);
+    return stat;
+  }
+
+  @Benchmark
+  public long[] statPacked() throws Exception {
+    mount.statPacked(path, packed);
+    return packed;
+  }
+
+  @Benchmark
+  public CephStatx statxSize() throws Exception {
+    CephStatx stx = new CephStatx();
+    mount.statx(path, CephMount.STATX_SIZE, CephMount.AT_STATX_DONT_SYNC, stx);
+    return stx;
+  }
+
+  @Benchmark
+  public CephStatBatch statBatch() {
+    return mount.statBatch(paths);
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous facade over a CephMount.
+ *
+ * Each call is run on a dedicated, bounded pool of platform threads and
+ * its result is delivered through a CompletableFuture, so that the calling
+ * thread never blocks inside libcephfs. This keeps long reads, writes and
+ * fsyncs off virtual-thread carriers and off event-loop threads.
+ *
+ * Exceptions thrown by the underlying CephMount call complete the future
+ * exceptionally. A call submitted after close() completes exceptionally
+ * with a RejectedExecutionException. Buffers passed to the read and write
+ * calls are accessed from a pool thread and must not be touched by the
+ * caller until the returned future completes.
+ *
+ * Closing an AsyncCephMount shuts down its thread pool but leaves the
+ * underlying CephMount mounted.
+ */
+public class AsyncCephMount implements Closeable {
+
+  /*
+   * A CephMount call, which may throw checked exceptions.
+   */
+  private interface Call<T> {
+    T call() throws Exception;
+  }
+
+  private static final AtomicInteger pool_seq = new AtomicInteger(0);
+
+  private final CephMount mount;
+  private final ExecutorService executor;
+  private final boolean owns_executor;
+
+  /**
+   * Create an asynchronous facade with its own pool of platform threads.
+   *
+   * @param mount The mount to issue calls on.
+   * @param nthreads Number of threads, bounding the number of calls in
+   *                 flight in libcephfs. Further calls are queued.
+   */
+  public AsyncCephMount(CephMount mount, int nthreads) {
+    if (nthreads <= 0)
+      throw new IllegalArgumentException("thread count must be positive");
+    this.mount = mount;
+    this.executor = CephIOExecutor.create("cephfs-async-" + pool_seq.incrementAndGet(), nthreads);
+    this.owns_executor = true;
+  }
+
+  /**
+   * Create an asynchronous facade on a caller-supplied executor. The
+   * executor should run tasks on platform threads, and is not shut down by
+   * close().
+   *
+   * @param mount The mount to issue calls on.
+   * @param executor The executor to run calls on.
+   */
+  public AsyncCephMount(CephMount mount, ExecutorService executor) {
+    this.mount = mount;
+    this.executor = executor;
+    this.owns_executor = false;
+  }
+
+  /**
+   * Get the underlying mount.
+   */
+  public CephMount getMount() {
+    return mount;
+  }
+
+  private <T> CompletableFuture<T> submit(final Call<T> call) {
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          if (future.isDone())
+            return;
+          try {
+            future.complete(call.call());
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Open a file.
+   *
+   * @see CephMount#open(String, int, int)
+   */
+  public CompletableFuture<Integer> openAsync(final String path, final int flags, final int mode) {
+    return submit(() -> mount.open(path, flags, mode));
+  }
+
+  /**
+   * Close a file.
+   *
+   * @see CephMount#close(int)
+   */
+  public CompletableFuture<Void> closeAsync(final int fd) {
+    return submit(() -> {
+      mount.close(fd);
+      return null;
+    });
+  }
+
+  /**
+   * Read from a file into a byte array.
+   *
+   * @see CephMount#read(int, byte[], long, long)
+   */
+  public CompletableFuture<Long> readAsync(final int fd, final byte[] buf, final long size,
+      final long offset) {
+    return submit(() -> mount.read(fd, buf, size, offset));
+  }
+
+  /**
+   * Read from a file into a buffer.
+   *
+   * @see CephMount#read(int, ByteBuffer, long)
+   */
+  public CompletableFuture<Long> readAsync(final int fd, final ByteBuffer dst, final long offset) {
+    return submit(() -> mount.read(fd, dst, offset));
+  }
+
+  /**
+   * Write a byte array to a file.
+   *
+   * @see CephMount#write(int, byte[], long, long)
+   */
+  public CompletableFuture<Long> writeAsync(final int fd, final byte[] buf, final long size,
+      final long offset) {
+    return submit(() -> mount.write(fd, buf, size, offset));
+  }
+
+  /**
+   * Write a buffer to a file.
+   *
+   * @see CephMount#write(int, ByteBuffer, long)
+   */
+  public CompletableFuture<Long> writeAsync(final int fd, final ByteBuffer src, final long offset) {
+    return submit(() -> mount.write(fd, src, offset));
+  }
+
+  /**
+   * Synchronize a file with the storage device.
+   *
+   * @see CephMount#fsync(int, boolean)
+   */
+  public CompletableFuture<Void> fsyncAsync(final int fd, final boolean dataonly) {
+    return submit(() -> {
+      mount.fsync(fd, dataonly);
+      return null;
+    });
+  }
+
+  /**
+   * Truncate a file.
+   *
+   * @see CephMount#ftruncate(int, long)
+   */
+  public CompletableFuture<Void> ftruncateAsync(final int fd, final long size) {
+    return submit(() -> {
+      mount.ftruncate(fd, size);
+      return null;
+    });
+  }
+
+  /**
+   * Get file status, following symlinks.
+   *
+   * @see CephMount#stat(String, CephStat)
+   */
+  public CompletableFuture<CephStat> statAsync(final String path) {
+    return submit(() -> {
+      CephStat stat = new CephStat();
+      mount.stat(path, stat);
+      return stat;
+    });
+  }
+
+  /**
+   * Get file status, without following symlinks.
+   *
+   * @see CephMount#lstat(String, CephStat)
+   */
+  public CompletableFuture<CephStat> lstatAsync(final String path) {
+    return submit(() -> {
+      CephStat stat = new CephStat();
+      mount.lstat(path, stat);
+      return stat;
+    });
+  }
+
+  /**
+   * Get the status of an open file.
+   *
+   * @see CephMount#fstat(int, CephStat)
+   */
+  public CompletableFuture<CephStat> fstatAsync(final int fd) {
+    return submit(() -> {
+      CephStat stat = new CephStat();
+      mount.fstat(fd, stat);
+      return stat;
+    });
+  }
+
+  /**
+   * Get the status of many files.
+   *
+   * @see CephMount#statBatch(String[])
+   */
+  public CompletableFuture<CephStatBatch> statBatchAsync(final String[] paths) {
+    return submit(() -> mount.statBatch(paths));
+  }
+
+  /**
+   * List a directory with entry status.
+   *
+   * @see CephMount#listdirPlus(String)
+   */
+  public CompletableFuture<CephDirEntry[]> listdirPlusAsync(final String dir) {
+    return submit(() -> mount.listdirPlus(dir));
+  }
+
+  /**
+   * Delete a file.
+   *
+   * @see CephMount#unlink(String)
+   */
+  public CompletableFuture<Void> unlinkAsync(final String path) {
+    return submit(() -> {
+      mount.unlink(path);
+      return null;
+    });
+  }
+
+  /**
+   * Shut down the thread pool if it is owned by this object. Calls already
+   * submitted still run; later calls are rejected.
+   */
+  @Override
+  public void close() {
+    if (owns_executor)
+      executor.shutdown();
+  }
+}
@@ -0,0 +1,629 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A CephMount that caches the results of stat() and lstat().
+ *
+ * Results are kept in a bounded LRU cache keyed by path and expire after a
+ * fixed time to live. Calls on this mount that change the metadata of a
+ * path (setattr, chmod, truncate, rename, unlink, rmdir, mkdir, symlink,
+ * link, setting or removing extended attributes, creating or truncating
+ * opens, and writes, truncates and chmods through file descriptors opened
+ * on this mount) invalidate the affected entries, including the parent
+ * directory whose mtime changes.
+ *
+ * The cache is split into up to 16 segments by path, each with its own
+ * lock and share of the capacity, so lookups of different paths rarely
+ * contend; eviction is least recently used within a segment.
+ *
+ * Changes made by other clients, through other mounts, or visible only
+ * through another name of the same inode (hard links, symlinks) are not
+ * detected and may be seen up to the time to live late. Neither are writes
+ * through the low level interface (ll_write), whose file handles carry no
+ * path. Relative paths are cached as given, so chdir() clears the cache.
+ *
+ * A result cached by stat or lstat holds only the fields those calls
+ * fetch, so statPacked and lstatPacked refetch it with every field; a
+ * result cached by the packed calls serves both.
+ */
+public class CachingCephMount extends CephMount {
+
+  private static class CacheEntry {
+    final CephStat stat;
+    final long expires;
+
+    /* Fetched by a packed call, with every field */
+    final boolean packed;
+
+    CacheEntry(CephStat stat, long expires, boolean packed) {
+      this.stat = stat;
+      this.expires = expires;
+      this.packed = packed;
+    }
+  }
+
+  /*
+   * A share of the cache, guarded by itself. In access order, eldest
+   * first; both entries of a path (stat and lstat) are in the segment the
+   * path hashes to.
+   */
+  private static final class Segment extends LinkedHashMap<String, CacheEntry> {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private final AtomicLong evictions;
+
+    /*
+     * Bumped on every invalidation of a path in this segment. A lookup
+     * only caches its result if no invalidation of its segment happened
+     * while it was in progress, so writes to one path do not keep lookups
+     * of paths in other segments from being cached.
+     */
+    long generation = 0;
+
+    Segment(int capacity, AtomicLong evictions) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+      this.evictions = evictions;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+      if (size() <= capacity)
+        return false;
+      evictions.incrementAndGet();
+      return true;
+    }
+  }
+
+  private static final int MAX_SEGMENTS = 16;
+
+  private final long ttl_nanos;
+  private final Segment[] segments;
+
+  private static final class OpenFile {
+    final String path;
+
+    /* Opened for writing, so closing it may change the file's metadata */
+    final boolean writable;
+
+    OpenFile(String path, boolean writable) {
+      this.path = path;
+      this.writable = writable;
+    }
+  }
+
+  /* File descriptors opened through this mount */
+  private final ConcurrentHashMap<Integer, OpenFile> fd_paths =
+    new ConcurrentHashMap<Integer, OpenFile>();
+
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+  private final AtomicLong evictions = new AtomicLong(0);
+  private final AtomicLong expirations = new AtomicLong(0);
+  private final AtomicLong invalidations = new AtomicLong(0);
+
+  /**
+   * Create a new caching mount with a specific client id.
+   *
+   * @param id client id.
+   * @param capacity Maximum number of cached entries.
+   * @param ttl Time to live of an entry.
+   * @param unit Unit of ttl.
+   */
+  public CachingCephMount(String id, int capacity, long ttl, TimeUnit unit) {
+    super(id);
+    if (capacity <= 0)
+      throw new IllegalArgumentException("capacity must be positive");
+    if (ttl < 0)
+      throw new IllegalArgumentException("ttl is negative");
+    this.ttl_nanos = unit.toNanos(ttl);
+    int n = 1;
+    while (n * 2 <= Math.min(capacity, MAX_SEGMENTS))
+      n *= 2;
+    this.segments = new Segment[n];
+    for (int i = 0; i < n; i++)
+      segments[i] = new Segment(capacity / n + (i < capacity % n ? 1 : 0), evictions);
+  }
+
+  /**
+   * Create a new caching mount with the default client id.
+   *
+   * @param capacity Maximum number of cached entries.
+   * @param ttl Time to live of an entry.
+   * @param unit Unit of ttl.
+   */
+  public CachingCephMount(int capacity, long ttl, TimeUnit unit) {
+    this(null, capacity, ttl, unit);
+  }
+
+  /*
+   * Cache counters
+   */
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Get the number of entries dropped to stay within capacity.
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Get the number of entries dropped because their time to live passed.
+   */
+  public long getExpirationCount() {
+    return expirations.get();
+  }
+
+  /**
+   * Get the number of entries dropped because of a change made through
+   * this mount.
+   */
+  public long getInvalidationCount() {
+    return invalidations.get();
+  }
+
+  /**
+   * Get the number of cached entries, including expired ones not yet
+   * dropped.
+   */
+  public int getCacheSize() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Drop all cached entries.
+   */
+  public void invalidateAll() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.generation++;
+        invalidations.addAndGet(segment.size());
+        segment.clear();
+      }
+    }
+  }
+
+  /*
+   * Remove a trailing slash, so that "/a/" and "/a" share an entry.
+   */
+  private static String normalize(String path) {
+    if (path == null)
+      return null;
+    while (path.length() > 1 && path.endsWith("/"))
+      path = path.substring(0, path.length() - 1);
+    return path;
+  }
+
+  private static String parent(String path) {
+    int i = path.lastIndexOf('/');
+    if (i < 0)
+      return ".";
+    if (i == 0)
+      return "/";
+    return path.substring(0, i);
+  }
+
+  private static String key(String path, boolean follow) {
+    return (follow ? "S" : "L") + path;
+  }
+
+  private Segment segment(String path) {
+    int h = path.hashCode() * 0x9E3779B9;
+    return segments[(h >>> 16) & (segments.length - 1)];
+  }
+
+  private boolean remove(String path) {
+    Segment segment = segment(path);
+    synchronized (segment) {
+      segment.generation++;
+      boolean removed = segment.remove(key(path, true)) != null;
+      removed |= segment.remove(key(path, false)) != null;
+      return removed;
+    }
+  }
+
+  /*
+   * Drop the entries of a path, and optionally of its parent directory
+   * and of everything below it.
+   */
+  private void invalidate(String path, boolean with_parent, boolean with_children) {
+    path = normalize(path);
+    if (path == null)
+      return;
+    int n = 0;
+    if (remove(path))
+      n++;
+    if (with_parent && remove(parent(path)))
+      n++;
+    if (with_children) {
+      String prefix = path.equals("/") ? "/" : path + "/";
+      for (Segment segment : segments) {
+        synchronized (segment) {
+          segment.generation++;
+          Iterator<String> it = segment.keySet().iterator();
+          while (it.hasNext()) {
+            if (it.next().startsWith(prefix, 1)) {
+              it.remove();
+              n++;
+            }
+          }
+        }
+      }
+    }
+    invalidations.addAndGet(n);
+  }
+
+  private void invalidate_fd(int fd) {
+    OpenFile file = fd_paths.get(fd);
+    if (file != null)
+      invalidate(file.path, false, false);
+  }
+
+  private void cached_stat(String path, CephStat stat, boolean follow, boolean packed)
+    throws FileNotFoundException, CephNotDirectoryException {
+    if (path == null || stat == null)
+      throw new NullPointerException();
+    String normalized = normalize(path);
+    Segment segment = segment(normalized);
+    String key = key(normalized, follow);
+    long now = System.nanoTime();
+    long gen;
+    synchronized (segment) {
+      gen = segment.generation;
+      CacheEntry e = segment.get(key);
+      if (e != null) {
+        if (now - e.expires >= 0) {
+          segment.remove(key);
+          expirations.incrementAndGet();
+        } else if (e.packed || !packed) {
+          e.stat.copyTo(stat);
+          hits.incrementAndGet();
+          return;
+        }
+      }
+    }
+    misses.incrementAndGet();
+
+    CephStat fresh = new CephStat();
+    if (packed) {
+      long[] fields = new long[CephStat.PACKED_LENGTH];
+      if (follow)
+        super.statPacked(path, fields);
+      else
+        super.lstatPacked(path, fields);
+      fresh.unpack(fields, 0);
+    } else if (follow) {
+      super.stat(path, fresh);
+    } else {
+      super.lstat(path, fresh);
+    }
+    fresh.copyTo(stat);
+
+    synchronized (segment) {
+      if (segment.generation == gen)
+        segment.put(key, new CacheEntry(fresh, System.nanoTime() + ttl_nanos, packed));
+    }
+  }
+
+  @Override
+  public void stat(String path, CephStat stat) throws FileNotFoundException, CephNotDirectoryException {
+    cached_stat(path, stat, true, false);
+  }
+
+  @Override
+  public void lstat(String path, CephStat stat) throws FileNotFoundException, CephNotDirectoryException {
+    cached_stat(path, stat, false, false);
+  }
+
+  @Override
+  public void statPacked(String path, long[] packed) throws FileNotFoundException, CephNotDirectoryException {
+    if (packed == null)
+      throw new NullPointerException();
+    CephStat stat = new CephStat();
+    cached_stat(path, stat, true, true);
+    stat.pack(packed, 0);
+  }
+
+  @Override
+  public void lstatPacked(String path, long[] packed) throws FileNotFoundException, CephNotDirectoryException {
+    if (packed == null)
+      throw new NullPointerException();
+    CephStat stat = new CephStat();
+    cached_stat(path, stat, false, true);
+    stat.pack(packed, 0);
+  }
+
+  /*
+   * Lifecycle: cached results do not survive a remount or a change of the
+   * working directory.
+   */
+
+  @Override
+  public void mount(String root) {
+    invalidateAll();
+    super.mount(root);
+  }
+
+  @Override
+  public void unmount() {
+    super.unmount();
+    fd_paths.clear();
+    invalidateAll();
+  }
+
+  @Override
+  public void chdir(String path) throws FileNotFoundException {
+    super.chdir(path);
+    invalidateAll();
+  }
+
+  /*
+   * Namespace changes
+   */
+
+  @Override
+  public void setattr(String path, CephStat stat, int mask) throws FileNotFoundException {
+    try {
+      super.setattr(path, stat, mask);
+    } finally {
+      invalidate(path, false, false);
+    }
+  }
+
+  @Override
+  public void chmod(String path, int mode) throws FileNotFoundException {
+    try {
+      super.chmod(path, mode);
+    } finally {
+      invalidate(path, false, false);
+    }
+  }
+
+  @Override
+  public void truncate(String path, long size) throws FileNotFoundException {
+    try {
+      super.truncate(path, size);
+    } finally {
+      invalidate(path, false, false);
+    }
+  }
+
+  @Override
+  public void link(String oldpath, String newpath) throws FileNotFoundException {
+    try {
+      super.link(oldpath, newpath);
+    } finally {
+      invalidate(newpath, true, false);
+    }
+  }
+
+  @Override
+  public void unlink(String path) throws FileNotFoundException {
+    try {
+      super.unlink(path);
+    } finally {
+      invalidate(path, true, false);
+    }
+  }
+
+  @Override
+  public void rename(String from, String to) throws FileNotFoundException {
+    try {
+      super.rename(from, to);
+    } finally {
+      invalidate(from, true, true);
+      invalidate(to, true, true);
+    }
+  }
+
+  @Override
+  public void mkdir(String path, int mode) {
+    try {
+      super.mkdir(path, mode);
+    } finally {
+      invalidate(path, true, false);
+    }
+  }
+
+  @Override
+  public void mkdirs(String path, int mode) throws IOException {
+    try {
+      super.mkdirs(path, mode);
+    } finally {
+      for (String p = normalize(path); p != null && !p.equals("/") && !p.equals("."); p = parent(p))
+        invalidate(p, true, false);
+    }
+  }
+
+  @Override
+  public void rmdir(String path) throws FileNotFoundException {
+    try {
+      super.rmdir(path);
+    } finally {
+      invalidate(path, true, true);
+    }
+  }
+
+  @Override
+  public void symlink(String oldpath, String newpath) {
+    try {
+      super.symlink(oldpath, newpath);
+    } finally {
+      invalidate(newpath, true, false);
+    }
+  }
+
+  /*
+   * Extended attributes, which change the ctime
+   */
+
+  @Override
+  public void removexattr(String path, String name) throws FileNotFoundException {
+    try {
+      super.removexattr(path, name);
+    } finally {
+      invalidate(path, false, false);
+    }
+  }
+
+  @Override
+  public void lremovexattr(String path, String name) throws FileNotFoundException {
+    try {
+      super.lremovexattr(path, name);
+    } finally {
+      invalidate(path, false, false);
+    }
+  }
+
+  @Override
+  public void setxattr(String path, String name, byte[] buf, long size, int flags)
+    throws FileNotFoundException {
+    try {
+      super.setxattr(path, name, buf, size, flags);
+    } finally {
+      invalidate(path, false, false);
+    }
+  }
+
+  @Override
+  public void lsetxattr(String path, String name, byte[] buf, long size, int flags)
+    throws FileNotFoundException {
+    try {
+      super.lsetxattr(path, name, buf, size, flags);
+    } finally {
+      invalidate(path, false, false);
+    }
+  }
+
+  /*
+   * File descriptors. Every descriptor is tracked, since even a read-only
+   * one can change metadata through fchmod.
+   */
+
+  private int opened(String path, int flags, int fd) {
+    if ((flags & (O_CREAT|O_TRUNC)) != 0)
+      invalidate(path, (flags & O_CREAT) != 0, false);
+    fd_paths.put(fd, new OpenFile(normalize(path), (flags & (O_WRONLY|O_RDWR)) != 0));
+    return fd;
+  }
+
+  @Override
+  public int open(String path, int flags, int mode) throws FileNotFoundException {
+    return opened(path, flags, super.open(path, flags, mode));
+  }
+
+  @Override
+  public int open(String path, int flags, int mode, int stripe_unit, int stripe_count,
+      int object_size, String data_pool) throws FileNotFoundException {
+    return opened(path, flags, super.open(path, flags, mode, stripe_unit, stripe_count,
+          object_size, data_pool));
+  }
+
+  @Override
+  public void close(int fd) {
+    try {
+      super.close(fd);
+    } finally {
+      OpenFile file = fd_paths.remove(fd);
+      if (file != null && file.writable)
+        invalidate(file.path, false, false);
+    }
+  }
+
+  @Override
+  public long write(int fd, byte[] buf, long size, long offset) {
+    try {
+      return super.write(fd, buf, size, offset);
+    } finally {
+      invalidate_fd(fd);
+    }
+  }
+
+  @Override
+  public long write(int fd, ByteBuffer src, long offset) {
+    try {
+      return super.write(fd, src, offset);
+    } finally {
+      invalidate_fd(fd);
+    }
+  }
+
+  @Override
+  public long pwritev(int fd, ByteBuffer[] srcs, long offset) {
+    try {
+      return super.pwritev(fd, srcs, offset);
+    } finally {
+      invalidate_fd(fd);
+    }
+  }
+
+  @Override
+  public long copy_file_range(int fd_in, long off_in, int fd_out, long off_out, long len) {
+    try {
+      return super.copy_file_range(fd_in, off_in, fd_out, off_out, len);
+    } finally {
+      invalidate_fd(fd_out);
+    }
+  }
+
+  @Override
+  public void ftruncate(int fd, long size) {
+    try {
+      super.ftruncate(fd, size);
+    } finally {
+      invalidate_fd(fd);
+    }
+  }
+
+  @Override
+  public void fchmod(int fd, int mode) {
+    try {
+      super.fchmod(fd, mode);
+    } finally {
+      invalidate_fd(fd);
+    }
+  }
+}
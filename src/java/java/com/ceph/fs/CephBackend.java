@@ -0,0 +1,280 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * The file system client behind a CephMount.
+ *
+ * CephMount does argument handling and locking and forwards each call to a
+ * backend created for it by a {@link CephBackendProvider}. The default
+ * backend calls into libcephfs through JNI; {@link CephMemoryBackend} keeps
+ * a file system in memory so the bindings can be exercised without a
+ * cluster.
+ *
+ * mount() and unmount() are called under the mount's write lock and all
+ * other operations under its read lock, so a backend must allow concurrent
+ * calls between the two. Arguments and results follow the JNI wrappers:
+ * open flags, whence values, setattr masks, xattr and flock flags use the
+ * constants in CephMount, and return values are those of the corresponding
+ * libcephfs call. Errors are reported the way the JNI layer reports them,
+ * whether or not the exception is declared: NullPointerException and
+ * IndexOutOfBoundsException for bad arguments, CephNotMountedException,
+ * FileNotFoundException for ENOENT, CephFileAlreadyExistsException for
+ * EEXIST, CephNotDirectoryException for ENOTDIR,
+ * CephDirectoryNotEmptyException for ENOTEMPTY,
+ * CephPermissionDeniedException for EACCES and EPERM,
+ * CephWouldBlockException for a non-blocking flock() that would block, and
+ * IOException otherwise.
+ */
+public interface CephBackend {
+
+  /*
+   * Mount lifecycle and configuration
+   */
+  int mount(String root);
+
+  int unmount();
+
+  /* Release all resources; the backend is not used afterwards */
+  int release();
+
+  int conf_read_file(String path);
+
+  int conf_set(String option, String value);
+
+  /* Returns null for an unknown option */
+  String conf_get(String option);
+
+  int statfs(String path, CephStatVFS statvfs);
+
+  String getcwd();
+
+  int chdir(String cwd);
+
+  /*
+   * Directories. Names never include "." and "..". A directory handle
+   * returned by opendir is non-zero and stays valid until closedir.
+   */
+  String[] listdir(String path);
+
+  long opendir(String path);
+
+  /* Returns an empty array at the end of the directory */
+  String[] readdir_batch(long dirp, int max) throws IOException;
+
+  /* Like readdir_batch; also fills stats, see CephStat.PACKED_LENGTH */
+  String[] readdirplus_batch(long dirp, int max, long[] stats) throws IOException;
+
+  int closedir(long dirp);
+
+  /*
+   * Namespace
+   */
+  int link(String existing, String newname);
+
+  int unlink(String path);
+
+  int rename(String from, String to);
+
+  int mkdir(String path, int mode);
+
+  int mkdirs(String path, int mode);
+
+  int rmdir(String path);
+
+  String readlink(String path);
+
+  int symlink(String existing, String newname);
+
+  /*
+   * Attributes
+   */
+  /* Fills packed, see CephStat.PACKED_LENGTH */
+  int stat(String path, long[] packed);
+
+  int lstat(String path, long[] packed);
+
+  /* Per-path failures are reported in batch.error, not thrown */
+  int stat_batch(String[] paths, boolean follow, CephStatBatch batch);
+
+  /* Fills packed and returns the mask of valid fields */
+  int statx(String path, long[] packed, int want, int flags);
+
+  int setattr(String relpath, CephStat stat, int mask);
+
+  int chmod(String path, int mode);
+
+  int fchmod(int fd, int mode);
+
+  int truncate(String path, long size);
+
+  /*
+   * File I/O. An offset of -1 reads or writes at the file position and
+   * advances it.
+   */
+  int open(String path, int flags, int mode);
+
+  int open_layout(String path, int flags, int mode, int stripe_unit, int stripe_count,
+      int object_size, String data_pool);
+
+  int close(int fd);
+
+  long lseek(int fd, long offset, int whence);
+
+  long read(int fd, byte[] buf, long size, long offset);
+
+  long write(int fd, byte[] buf, long size, long offset);
+
+  long read_direct(int fd, ByteBuffer buf, int pos, int size, long offset);
+
+  long read_region(int fd, byte[] buf, int pos, int size, long offset);
+
+  long write_direct(int fd, ByteBuffer buf, int pos, int size, long offset);
+
+  long write_region(int fd, byte[] buf, int pos, int size, long offset);
+
+  /*
+   * Vectored I/O. Segment i is direct[i] if that is non-null and heap[i]
+   * otherwise, starting at pos[i] for len[i] bytes.
+   */
+  long preadv(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len, long offset);
+
+  long pwritev(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len, long offset);
+
+  long copy_file_range(int fd_in, long off_in, int fd_out, long off_out, long len);
+
+  int ftruncate(int fd, long size);
+
+  int fsync(int fd, boolean dataonly);
+
+  int flock(int fd, int operation, long owner);
+
+  int fstat(int fd, long[] packed);
+
+  /* Like statx */
+  int fstatx(int fd, long[] packed, int want, int flags);
+
+  int sync_fs();
+
+  /*
+   * Extended attributes. getxattr returns the length of the value and only
+   * copies it if buf is large enough.
+   */
+  long getxattr(String path, String name, byte[] buf);
+
+  long lgetxattr(String path, String name, byte[] buf);
+
+  String[] listxattr(String path);
+
+  String[] llistxattr(String path);
+
+  int removexattr(String path, String name);
+
+  int lremovexattr(String path, String name);
+
+  int setxattr(String path, String name, byte[] buf, long size, int flags);
+
+  int lsetxattr(String path, String name, byte[] buf, long size, int flags);
+
+  int get_dir_rstats(String path, long[] packed);
+
+  int get_dir_rstats_batch(String[] paths, long[] packed, int[] errors);
+
+  /*
+   * Layout and placement
+   */
+  int get_file_stripe_unit(int fd);
+
+  String get_file_pool_name(int fd);
+
+  String get_default_data_pool_name();
+
+  int get_file_replication(int fd);
+
+  String get_file_layout(int fd, int[] layout);
+
+  String get_path_layout(String path, int[] layout);
+
+  int set_dir_layout(String path, int stripe_unit, int stripe_count, int object_size,
+      String pool);
+
+  int localize_reads(boolean on);
+
+  int get_stripe_unit_granularity();
+
+  int get_pool_id(String name) throws FileNotFoundException;
+
+  int get_pool_replication(int pool_id) throws FileNotFoundException;
+
+  CephFileExtent get_file_extent_osds(int fd, long offset);
+
+  /* (type, name) pairs from the OSD up to the root */
+  String[] get_osd_crush_location(int osd);
+
+  InetAddress get_osd_addr(int osd);
+
+  CephFileExtent[] get_file_extents(int fd, long offset, long length);
+
+  /*
+   * Low-level calls. Inodes and file handles are opaque native handles.
+   */
+  long ll_lookup_root();
+
+  long ll_lookup(long parent, String name);
+
+  long ll_walk(String path);
+
+  int ll_put(long inode);
+
+  /* Fills packed and returns the mask of valid fields */
+  int ll_getattr(long inode, long[] packed, int want, int flags);
+
+  long ll_opendir(long dir);
+
+  /*
+   * Like readdirplus_batch; also fills inodes with a new inode reference
+   * for each entry returned. The directory is released with ll_releasedir.
+   */
+  String[] ll_readdirplus_batch(long dirp, int max, long[] stats, long[] inodes)
+    throws IOException;
+
+  int ll_releasedir(long dirp);
+
+  long ll_open(long inode, int flags);
+
+  long ll_read(long fh, byte[] buf, long size, long offset);
+
+  long ll_read_direct(long fh, ByteBuffer buf, int pos, int size, long offset);
+
+  long ll_read_region(long fh, byte[] buf, int pos, int size, long offset);
+
+  long ll_write(long fh, byte[] buf, long size, long offset);
+
+  long ll_write_direct(long fh, ByteBuffer buf, int pos, int size, long offset);
+
+  long ll_write_region(long fh, byte[] buf, int pos, int size, long offset);
+
+  int ll_close(long fh);
+}
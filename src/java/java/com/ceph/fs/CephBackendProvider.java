@@ -0,0 +1,42 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+/**
+ * Creates the backend of a CephMount.
+ *
+ * A provider is passed to the CephMount constructor, or chosen for all
+ * mounts with the com.ceph.fs.backend system property: "jni" (the default),
+ * "memory" for a JVM-wide {@link CephMemoryBackend}, "ffm" for the Java 22
+ * foreign function backend (CephFfmBackend, from libcephfs-ffm.jar), or the
+ * name of a class implementing this interface with a public no-argument
+ * constructor.
+ */
+public interface CephBackendProvider {
+
+  /**
+   * Create the backend of a new, unmounted CephMount.
+   *
+   * @param mount The mount being constructed.
+   * @param id The client id, or null for the default.
+   * @return A new backend.
+   */
+  CephBackend create(CephMount mount, String id);
+}
@@ -0,0 +1,70 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+/**
+ * A directory entry together with its file status.
+ */
+public class CephDirEntry {
+  private final String name;
+  private final CephStat stat;
+  private final CephInode inode;
+
+  CephDirEntry(String name, CephStat stat) {
+    this(name, stat, null);
+  }
+
+  CephDirEntry(String name, CephStat stat, CephInode inode) {
+    this.name = name;
+    this.stat = stat;
+    this.inode = inode;
+  }
+
+  /**
+   * Get the name of the entry within its directory.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Get the status of the entry. Symbolic links are not followed.
+   */
+  public CephStat getStat() {
+    return stat;
+  }
+
+  /**
+   * Get the inode of the entry, for entries read with CephMount.ll_opendir.
+   * The inode is to be closed by the caller.
+   *
+   * @return The inode, or null if the directory was opened by path.
+   */
+  public CephInode getInode() {
+    return inode;
+  }
+
+  /**
+   * Pretty print.
+   */
+  public String toString() {
+    return "direntry[" + name + "," + stat.size + "]";
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+/**
+ * Holds the recursive statistics CephFS keeps for a directory.
+ *
+ * The MDS maintains these for every directory as files change, and
+ * exposes them as the virtual extended attributes ceph.dir.rbytes,
+ * ceph.dir.rfiles, ceph.dir.rsubdirs and ceph.dir.rctime. Reading them
+ * costs one lookup per directory and one request per value, regardless of
+ * the size of the subtree. They are propagated up the tree lazily, so a
+ * recent change below a directory may take a few seconds to show. The
+ * values are read one at a time, so they are not an atomic snapshot and
+ * may disagree about a change made while they are read.
+ *
+ * See CephMount.getDirRecursiveStats.
+ */
+public class CephDirStats {
+
+  /*
+   * Layout of a CephDirStats packed into a long[].
+   *
+   * Must be synchronized with JNI if changed.
+   */
+  static final int PACKED_RBYTES   = 0;
+  static final int PACKED_RFILES   = 1;
+  static final int PACKED_RSUBDIRS = 2;
+  static final int PACKED_RCTIME   = 3;
+  static final int PACKED_LENGTH   = 4;
+
+  /** Total size of the files in the subtree. */
+  public long rbytes;
+
+  /** Number of files, symlinks included, in the subtree. */
+  public long rfiles;
+
+  /** Number of directories in the subtree, including the directory itself. */
+  public long rsubdirs;
+
+  /** Latest ctime in the subtree, in milliseconds since the epoch. */
+  public long rctime;
+
+  /**
+   * Get the number of entries in the subtree, as ceph.dir.rentries.
+   */
+  public long getEntries() {
+    return rfiles + rsubdirs;
+  }
+
+  void unpack(long[] packed, int off) {
+    rbytes = packed[off + PACKED_RBYTES];
+    rfiles = packed[off + PACKED_RFILES];
+    rsubdirs = packed[off + PACKED_RSUBDIRS];
+    rctime = packed[off + PACKED_RCTIME];
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An open directory whose entries are read incrementally.
+ *
+ * Entries are fetched from libcephfs in batches as the iterator advances,
+ * so memory use is bounded by the batch size and callers may stop early
+ * without reading the whole directory. The "." and ".." entries are not
+ * returned.
+ *
+ * Like java.nio.file.DirectoryStream, only a single iterator may be
+ * obtained, and once the stream is closed the iterator behaves as if the
+ * end of the directory has been reached. I/O errors raised while iterating
+ * are wrapped in a DirectoryIteratorException. Streams still open when the
+ * mount is unmounted are closed by the unmount.
+ *
+ * Streams opened with CephMount.opendir return entry names, and streams
+ * opened with CephMount.opendirPlus return CephDirEntry objects carrying
+ * the status of each entry, fetched in the same call as the names. Streams
+ * opened with CephMount.ll_opendir also carry a CephInode for each entry,
+ * which the caller must close; inodes of entries fetched but not yet
+ * returned are closed when the stream is closed.
+ */
+public class CephDirectoryStream<T> implements Iterable<T>, Closeable {
+
+  private final CephMount mount;
+  private final int batch_size;
+  private final boolean with_stats;
+
+  /* Opened with ll_opendir: entries carry inodes */
+  final boolean low_level;
+
+  /*
+   * Native ceph_dir_result pointer. Cleared by CephMount when the directory
+   * is closed, under the mount lock.
+   */
+  volatile long dirp;
+
+  private boolean iterator_returned = false;
+
+  /* Entries fetched but not yet returned, guarded by this */
+  private T[] batch = null;
+  private int pos = 0;
+  private boolean done = false;
+
+  CephDirectoryStream(CephMount mount, long dirp, int batch_size, boolean with_stats,
+      boolean low_level) {
+    this.mount = mount;
+    this.dirp = dirp;
+    this.batch_size = batch_size;
+    this.with_stats = with_stats;
+    this.low_level = low_level;
+  }
+
+  /*
+   * Fetch the next batch of entries. An empty array marks the end of the
+   * directory, as does a closed stream.
+   */
+  @SuppressWarnings("unchecked")
+  private T[] next_batch() throws IOException {
+    if (with_stats && low_level)
+      return (T[])mount.ll_readdirplus_batch(this, batch_size);
+    if (with_stats)
+      return (T[])mount.readdirplus_batch(this, batch_size);
+    return (T[])mount.readdir_batch(this, batch_size);
+  }
+
+  /**
+   * Get the iterator over the entries of the directory.
+   *
+   * @throws IllegalStateException if the iterator was already returned.
+   */
+  @Override
+  public synchronized Iterator<T> iterator() {
+    if (iterator_returned)
+      throw new IllegalStateException("iterator already obtained");
+    iterator_returned = true;
+    return new BatchIterator();
+  }
+
+  /**
+   * Close the directory. Closing an already closed stream has no effect.
+   */
+  @Override
+  public synchronized void close() {
+    mount.closedir(this);
+    drop();
+  }
+
+  /*
+   * Entries still buffered are dropped once the stream is closed. Those
+   * carrying inodes hold a reference each, which is released here.
+   */
+  private void drop() {
+    done = true;
+    if (batch != null && low_level && with_stats) {
+      for (; pos < batch.length; pos++)
+        ((CephDirEntry)batch[pos]).getInode().close();
+    }
+    batch = null;
+  }
+
+  private synchronized boolean has_next() {
+    if (dirp == 0)
+      drop();
+    while (!done && (batch == null || pos == batch.length)) {
+      try {
+        batch = next_batch();
+      } catch (IOException e) {
+        throw new DirectoryIteratorException(e);
+      }
+      pos = 0;
+      if (batch.length == 0)
+        done = true;
+    }
+    return !done;
+  }
+
+  private synchronized T next_entry() {
+    if (!has_next())
+      throw new NoSuchElementException();
+    return batch[pos++];
+  }
+
+  private class BatchIterator implements Iterator<T> {
+    @Override
+    public boolean hasNext() {
+      return has_next();
+    }
+
+    @Override
+    public T next() {
+      return next_entry();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Holds the placement of a range of a file: its extents, each with the
+ * OSDs storing it, and the address and CRUSH location of those OSDs.
+ *
+ * See CephMount.getFileBlockMap.
+ */
+public class CephFileBlockMap {
+  private final CephFileExtent[] extents;
+  private final Map<Integer, CephOsdInfo> osds;
+
+  CephFileBlockMap(CephFileExtent[] extents, Map<Integer, CephOsdInfo> osds) {
+    this.extents = extents;
+    this.osds = Collections.unmodifiableMap(osds);
+  }
+
+  /**
+   * Get the extents, in file order. Adjacent extents stored on the same
+   * OSDs are merged.
+   */
+  public CephFileExtent[] getExtents() {
+    return extents.clone();
+  }
+
+  /**
+   * Get the information of an OSD storing part of the range.
+   *
+   * @param osd The OSD id.
+   * @return The OSD information, or null if the OSD stores none of the
+   *         range.
+   */
+  public CephOsdInfo getOsdInfo(int osd) {
+    return osds.get(osd);
+  }
+
+  /**
+   * Get the information of all OSDs storing part of the range.
+   */
+  public Collection<CephOsdInfo> getOsds() {
+    return osds.values();
+  }
+
+  /**
+   * Get the hosts storing an extent, primary first.
+   *
+   * @param extent One of the extents of this map.
+   * @return The host names, see CephOsdInfo.getHost.
+   */
+  public String[] getHosts(CephFileExtent extent) {
+    int[] ids = extent.getOSDs();
+    String[] hosts = new String[ids.length];
+    for (int i = 0; i < ids.length; i++)
+      hosts[i] = osds.get(ids[i]).getHost();
+    return hosts;
+  }
+}
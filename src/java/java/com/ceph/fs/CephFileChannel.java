@@ -0,0 +1,372 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FileChannel backed by an open file in a CephMount.
+ *
+ * Reads and writes go straight to the ByteBuffer overloads of
+ * CephMount.read() and CephMount.write(), and scattering reads and
+ * gathering writes to CephMount.preadv() and CephMount.pwritev(), so direct
+ * buffers are filled and drained without an intermediate copy. Transfers between two channels on
+ * the same mount are done entirely in native code.
+ *
+ * Memory mapping and byte-range locks are not supported. Locks cover the
+ * whole file and are implemented with flock().
+ */
+public class CephFileChannel extends FileChannel {
+
+  /* Bounce buffer size used when transferring to or from other channels */
+  private static final int TRANSFER_SIZE = 1 << 20;
+
+  /* Source of flock() owner ids, one per channel */
+  private static final AtomicLong next_lock_owner = new AtomicLong(1);
+
+  private final CephMount mount;
+  private final int fd;
+  private final boolean readable;
+  private final boolean writable;
+  private final long lock_owner;
+
+  /**
+   * Open a file and return a channel for it.
+   *
+   * @param mount The mount holding the file.
+   * @param path Path of file to open or create.
+   * @param flags Open flags.
+   * @param mode Permission mode.
+   * @return A channel for the newly opened file.
+   */
+  public static CephFileChannel open(CephMount mount, String path, int flags, int mode)
+      throws IOException {
+    int fd = mount.open(path, flags, mode);
+    return new CephFileChannel(mount, fd, flags);
+  }
+
+  /**
+   * Create a channel for an already open file.
+   *
+   * The channel takes ownership of the file descriptor, which is closed when
+   * the channel is closed.
+   *
+   * @param mount The mount the file descriptor belongs to.
+   * @param fd The open file descriptor.
+   * @param flags The flags the file was opened with.
+   */
+  public CephFileChannel(CephMount mount, int fd, int flags) {
+    this.mount = mount;
+    this.fd = fd;
+    this.readable = (flags & CephMount.O_WRONLY) == 0;
+    this.writable = (flags & (CephMount.O_WRONLY | CephMount.O_RDWR)) != 0;
+    this.lock_owner = next_lock_owner.getAndIncrement();
+  }
+
+  /**
+   * Get the mount this channel reads and writes through.
+   */
+  public CephMount getMount() {
+    return mount;
+  }
+
+  /**
+   * Get the file descriptor backing this channel.
+   */
+  public int getFileDescriptor() {
+    return fd;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (!isOpen())
+      throw new ClosedChannelException();
+  }
+
+  private void ensureReadable() throws IOException {
+    ensureOpen();
+    if (!readable)
+      throw new NonReadableChannelException();
+  }
+
+  private void ensureWritable() throws IOException {
+    ensureOpen();
+    if (!writable)
+      throw new NonWritableChannelException();
+  }
+
+  /*
+   * Translate the CephMount convention of returning 0 at end-of-file to the
+   * channel convention of returning -1.
+   */
+  private static int readResult(long ret, boolean wanted) {
+    if (ret == 0 && wanted)
+      return -1;
+    return (int)ret;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    ensureReadable();
+    return readResult(mount.read(fd, dst, -1), dst.hasRemaining());
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    if (offset < 0 || length < 0 || offset > dsts.length - length)
+      throw new IndexOutOfBoundsException();
+    ensureReadable();
+    ByteBuffer[] bufs = slice(dsts, offset, length);
+    long want = 0;
+    for (ByteBuffer dst : bufs)
+      want += dst.remaining();
+    long ret = mount.preadv(fd, bufs, -1);
+    return (ret == 0 && want > 0) ? -1 : ret;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    ensureWritable();
+    return (int)mount.write(fd, src, -1);
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    if (offset < 0 || length < 0 || offset > srcs.length - length)
+      throw new IndexOutOfBoundsException();
+    ensureWritable();
+    return mount.pwritev(fd, slice(srcs, offset, length), -1);
+  }
+
+  private static ByteBuffer[] slice(ByteBuffer[] bufs, int offset, int length) {
+    if (offset == 0 && length == bufs.length)
+      return bufs;
+    return Arrays.copyOfRange(bufs, offset, offset + length);
+  }
+
+  @Override
+  public long position() throws IOException {
+    ensureOpen();
+    return mount.lseek(fd, 0, CephMount.SEEK_CUR);
+  }
+
+  @Override
+  public FileChannel position(long newPosition) throws IOException {
+    if (newPosition < 0)
+      throw new IllegalArgumentException("negative position");
+    ensureOpen();
+    mount.lseek(fd, newPosition, CephMount.SEEK_SET);
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    ensureOpen();
+    CephStat stat = new CephStat();
+    mount.fstat(fd, stat);
+    return stat.size;
+  }
+
+  @Override
+  public FileChannel truncate(long size) throws IOException {
+    if (size < 0)
+      throw new IllegalArgumentException("negative size");
+    ensureWritable();
+    if (size < size())
+      mount.ftruncate(fd, size);
+    if (position() > size)
+      position(size);
+    return this;
+  }
+
+  @Override
+  public void force(boolean metaData) throws IOException {
+    ensureOpen();
+    mount.fsync(fd, !metaData);
+  }
+
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    if (position < 0 || count < 0)
+      throw new IllegalArgumentException("negative position or count");
+    ensureReadable();
+    if (!target.isOpen())
+      throw new ClosedChannelException();
+
+    if (target instanceof CephFileChannel) {
+      CephFileChannel other = (CephFileChannel)target;
+      if (other.mount == mount) {
+        other.ensureWritable();
+        return mount.copy_file_range(fd, position, other.fd, -1, count);
+      }
+    }
+
+    ByteBuffer buf = ByteBuffer.allocateDirect((int)Math.min(count, TRANSFER_SIZE));
+    long total = 0;
+    while (total < count) {
+      buf.clear();
+      if (count - total < buf.capacity())
+        buf.limit((int)(count - total));
+      long ret = mount.read(fd, buf, position + total);
+      if (ret == 0)
+        break;
+      buf.flip();
+      while (buf.hasRemaining()) {
+        int n = target.write(buf);
+        if (n == 0 && buf.hasRemaining()) {
+          /* non-blocking target is full: report what it accepted */
+          return total + buf.position();
+        }
+      }
+      total += ret;
+    }
+    return total;
+  }
+
+  @Override
+  public long transferFrom(ReadableByteChannel src, long position, long count)
+      throws IOException {
+    if (position < 0 || count < 0)
+      throw new IllegalArgumentException("negative position or count");
+    ensureWritable();
+    if (!src.isOpen())
+      throw new ClosedChannelException();
+    if (position > size())
+      return 0;
+
+    if (src instanceof CephFileChannel) {
+      CephFileChannel other = (CephFileChannel)src;
+      if (other.mount == mount) {
+        other.ensureReadable();
+        return mount.copy_file_range(other.fd, -1, fd, position, count);
+      }
+    }
+
+    ByteBuffer buf = ByteBuffer.allocateDirect((int)Math.min(count, TRANSFER_SIZE));
+    long total = 0;
+    while (total < count) {
+      buf.clear();
+      if (count - total < buf.capacity())
+        buf.limit((int)(count - total));
+      int n = src.read(buf);
+      if (n <= 0)
+        break;
+      buf.flip();
+      while (buf.hasRemaining())
+        mount.write(fd, buf, position + total + buf.position());
+      total += n;
+    }
+    return total;
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    if (position < 0)
+      throw new IllegalArgumentException("negative position");
+    ensureReadable();
+    return readResult(mount.read(fd, dst, position), dst.hasRemaining());
+  }
+
+  @Override
+  public int write(ByteBuffer src, long position) throws IOException {
+    if (position < 0)
+      throw new IllegalArgumentException("negative position");
+    ensureWritable();
+    return (int)mount.write(fd, src, position);
+  }
+
+  /**
+   * Not supported: CephFS files cannot be memory mapped.
+   */
+  @Override
+  public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+    throw new UnsupportedOperationException("map is not supported by CephFS");
+  }
+
+  /*
+   * flock() locks the whole file; refuse anything narrower rather than
+   * silently locking more than was asked for.
+   */
+  private static void checkWholeFile(long position, long size) {
+    if (position != 0 || size != Long.MAX_VALUE)
+      throw new UnsupportedOperationException("byte-range locks are not supported by CephFS");
+  }
+
+  @Override
+  public FileLock lock(long position, long size, boolean shared) throws IOException {
+    checkWholeFile(position, size);
+    ensureOpen();
+    mount.flock(fd, shared ? CephMount.LOCK_SH : CephMount.LOCK_EX, lock_owner);
+    return new CephFileLock(this, shared);
+  }
+
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+    checkWholeFile(position, size);
+    ensureOpen();
+    try {
+      mount.flock(fd, (shared ? CephMount.LOCK_SH : CephMount.LOCK_EX) | CephMount.LOCK_NB,
+          lock_owner);
+    } catch (CephWouldBlockException e) {
+      return null;
+    }
+    return new CephFileLock(this, shared);
+  }
+
+  @Override
+  protected void implCloseChannel() throws IOException {
+    mount.close(fd);
+  }
+
+  private static class CephFileLock extends FileLock {
+    private boolean valid = true;
+
+    CephFileLock(CephFileChannel channel, boolean shared) {
+      super(channel, 0, Long.MAX_VALUE, shared);
+    }
+
+    @Override
+    public synchronized boolean isValid() {
+      return valid && channel().isOpen();
+    }
+
+    @Override
+    public synchronized void release() throws IOException {
+      if (!channel().isOpen())
+        throw new ClosedChannelException();
+      if (!valid)
+        return;
+      CephFileChannel channel = (CephFileChannel)channel();
+      channel.mount.flock(channel.fd, CephMount.LOCK_UN, channel.lock_owner);
+      valid = false;
+    }
+  }
+}
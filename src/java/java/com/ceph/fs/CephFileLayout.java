@@ -0,0 +1,141 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+/**
+ * Holds the layout of a file in CephFS: how its data is striped over
+ * objects and which pool the objects are stored in.
+ *
+ * Layouts returned by CephMount.getLayout carry every field. A layout
+ * created to pass to CephMount.setDirLayout may leave fields unset, as
+ * zero or a null pool, to keep their current value.
+ */
+public class CephFileLayout {
+
+  /*
+   * Layout of a CephFileLayout packed into an int[], with the pool name
+   * returned separately.
+   *
+   * Must be synchronized with JNI if changed.
+   */
+  static final int PACKED_STRIPE_UNIT  = 0;
+  static final int PACKED_STRIPE_COUNT = 1;
+  static final int PACKED_OBJECT_SIZE  = 2;
+  static final int PACKED_POOL_ID      = 3;
+  static final int PACKED_REPLICATION  = 4;
+  static final int PACKED_LENGTH       = 5;
+
+  private final int stripe_unit;
+  private final int stripe_count;
+  private final int object_size;
+  private final String pool;
+  private final int pool_id;
+  private final int replication;
+
+  /**
+   * Create a layout to set on a directory.
+   *
+   * @param stripe_unit Bytes written to an object before moving to the
+   *                    next object of the stripe, or 0 to keep.
+   * @param stripe_count Number of objects data is striped over, or 0 to
+   *                     keep.
+   * @param object_size Size of each object, a multiple of stripe_unit, or
+   *                    0 to keep.
+   * @param pool Name of the data pool, or null to keep.
+   */
+  public CephFileLayout(int stripe_unit, int stripe_count, int object_size, String pool) {
+    if (stripe_unit < 0 || stripe_count < 0 || object_size < 0)
+      throw new IllegalArgumentException("layout fields must not be negative");
+    this.stripe_unit = stripe_unit;
+    this.stripe_count = stripe_count;
+    this.object_size = object_size;
+    this.pool = pool;
+    this.pool_id = -1;
+    this.replication = 0;
+  }
+
+  CephFileLayout(int[] packed, String pool) {
+    this.stripe_unit = packed[PACKED_STRIPE_UNIT];
+    this.stripe_count = packed[PACKED_STRIPE_COUNT];
+    this.object_size = packed[PACKED_OBJECT_SIZE];
+    this.pool = pool;
+    this.pool_id = packed[PACKED_POOL_ID];
+    this.replication = packed[PACKED_REPLICATION];
+  }
+
+  /**
+   * Get the stripe unit, in bytes.
+   */
+  public int getStripeUnit() {
+    return stripe_unit;
+  }
+
+  /**
+   * Get the number of objects a stripe spans.
+   */
+  public int getStripeCount() {
+    return stripe_count;
+  }
+
+  /**
+   * Get the object size, in bytes.
+   */
+  public int getObjectSize() {
+    return object_size;
+  }
+
+  /**
+   * Get the name of the data pool.
+   */
+  public String getPool() {
+    return pool;
+  }
+
+  /**
+   * Get the id of the data pool, or -1 if this layout was not read from
+   * the file system.
+   */
+  public int getPoolId() {
+    return pool_id;
+  }
+
+  /**
+   * Get the replication of the data pool, or 0 if this layout was not
+   * read from the file system.
+   */
+  public int getReplication() {
+    return replication;
+  }
+
+  /*
+   * Check if no field is set.
+   */
+  boolean isEmpty() {
+    return stripe_unit == 0 && stripe_count == 0 && object_size == 0 && pool == null;
+  }
+
+  /**
+   * Pretty print.
+   */
+  public String toString() {
+    return "layout[stripe_unit=" + stripe_unit + ",stripe_count=" + stripe_count +
+      ",object_size=" + object_size + ",pool=" + pool + "]";
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Shared pool of daemon platform threads used for background I/O by the
+ * stream adapters when no executor is supplied. Idle threads time out, so
+ * the pool costs nothing when streams are not in use.
+ */
+final class CephIOExecutor {
+
+  private static final int THREADS =
+    Math.max(4, Runtime.getRuntime().availableProcessors());
+
+  private static volatile ExecutorService shared;
+
+  private CephIOExecutor() {}
+
+  static ExecutorService shared() {
+    ExecutorService e = shared;
+    if (e == null) {
+      synchronized (CephIOExecutor.class) {
+        e = shared;
+        if (e == null)
+          shared = e = create("cephfs-io", THREADS);
+      }
+    }
+    return e;
+  }
+
+  static ThreadPoolExecutor create(final String name, int nthreads) {
+    ThreadFactory factory = new ThreadFactory() {
+      private final AtomicInteger seq = new AtomicInteger(0);
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(nthreads, nthreads, 30L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), factory);
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+}
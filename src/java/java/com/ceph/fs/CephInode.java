@@ -0,0 +1,110 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference to an inode, obtained from the CephMount.ll_* calls.
+ *
+ * Calls that take a CephInode work on the inode directly instead of
+ * resolving a path, so a path need only be resolved once. The handle pins
+ * the inode in the client cache until it is closed; it stays valid if the
+ * inode is renamed or unlinked.
+ *
+ * A CephInode is reference counted: it starts with one reference, retain()
+ * adds one, and close() drops one. The inode is released when the last
+ * reference is dropped, so code that hands a CephInode to another thread
+ * should retain it first and let the other thread close it. Handles still
+ * open when the mount is unmounted are released by the unmount, and using
+ * a released handle throws IllegalStateException.
+ */
+public class CephInode implements Closeable {
+
+  private final CephMount mount;
+  private final AtomicInteger refs = new AtomicInteger(1);
+
+  /* Native Inode pointer */
+  final long handle;
+
+  /*
+   * Pins held by CephMount on the native inode: one while the inode is
+   * open, and one for each call using it. The native reference is put when
+   * the last pin is dropped.
+   */
+  final AtomicInteger pins = new AtomicInteger(1);
+
+  /* Set by CephMount when the inode is released, under the mount lock */
+  volatile boolean released = false;
+
+  CephInode(CephMount mount, long handle) {
+    this.mount = mount;
+    this.handle = handle;
+  }
+
+  /**
+   * Get the mount this inode was obtained from.
+   */
+  public CephMount getMount() {
+    return mount;
+  }
+
+  /**
+   * Add a reference.
+   *
+   * @return This inode.
+   * @throws IllegalStateException if the inode was released.
+   */
+  public CephInode retain() {
+    while (true) {
+      int n = refs.get();
+      if (n == 0 || released)
+        throw new IllegalStateException("inode is released");
+      if (refs.compareAndSet(n, n + 1))
+        return this;
+    }
+  }
+
+  /**
+   * Check if the inode was released, by close() or by an unmount.
+   */
+  public boolean isReleased() {
+    return released;
+  }
+
+  /**
+   * Drop a reference, releasing the inode if it was the last one. Closing
+   * a released inode has no effect.
+   */
+  @Override
+  public void close() {
+    while (true) {
+      int n = refs.get();
+      if (n == 0)
+        return;
+      if (refs.compareAndSet(n, n - 1)) {
+        if (n == 1)
+          mount.ll_put(this);
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,352 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An InputStream reading an open file in a CephMount.
+ *
+ * Data is read in buffers whose size is a multiple of the file's stripe
+ * unit, so that each read touches whole objects. While the caller consumes
+ * one buffer, up to readahead further buffers are fetched in the
+ * background. A readahead of zero reads synchronously in the calling
+ * thread.
+ *
+ * The stream reads at explicit offsets starting from the file position at
+ * construction, and does not move the file position. It takes ownership of
+ * the file descriptor, which is closed when the stream is closed. Streams
+ * are not safe for use by multiple threads.
+ */
+public class CephInputStream extends InputStream {
+
+  /* Default buffer size, in stripe units */
+  public static final int DEFAULT_STRIPE_UNITS = 1;
+
+  /* Default number of buffers read ahead */
+  public static final int DEFAULT_READAHEAD = 2;
+
+  private final CephMount mount;
+  private final int fd;
+  private final int buffer_size;
+  private final int readahead;
+  private final ExecutorService executor;
+
+  /* Outstanding fetches, in file order */
+  private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+  /* Offset of the next buffer to fetch */
+  private long fetch_offset;
+  /* Offset of the next buffer to make current */
+  private long consume_offset;
+  /* A short fetch was seen; nothing beyond it is fetched */
+  private boolean fetch_eof = false;
+  /* Bytes to discard from the next buffer after an unaligned seek */
+  private int discard = 0;
+
+  private byte[] buf = new byte[0];
+  private long buf_offset = 0;
+  private int buf_pos = 0;
+  private boolean closed = false;
+
+  private final AtomicLong read_ops = new AtomicLong(0);
+  private final AtomicLong bytes_fetched = new AtomicLong(0);
+  private long bytes_read = 0;
+
+  /**
+   * Open a file for reading with the default buffering.
+   *
+   * @param mount The mount holding the file.
+   * @param path Path of the file.
+   */
+  public CephInputStream(CephMount mount, String path) throws IOException {
+    this(mount, mount.open(path, CephMount.O_RDONLY, 0));
+  }
+
+  /**
+   * Create a stream with the default buffering for an open file.
+   *
+   * @param mount The mount the file descriptor belongs to.
+   * @param fd An open file descriptor, owned by the stream from now on.
+   */
+  public CephInputStream(CephMount mount, int fd) throws IOException {
+    this(mount, fd, DEFAULT_STRIPE_UNITS, DEFAULT_READAHEAD, null);
+  }
+
+  /**
+   * Create a stream for an open file.
+   *
+   * @param mount The mount the file descriptor belongs to.
+   * @param fd An open file descriptor, owned by the stream from now on.
+   * @param stripe_units Buffer size, in stripe units of the file.
+   * @param readahead Number of buffers to read ahead in the background.
+   * @param executor Executor for background reads, or null for a shared
+   *                 pool of platform threads.
+   */
+  public CephInputStream(CephMount mount, int fd, int stripe_units, int readahead,
+      ExecutorService executor) throws IOException {
+    if (stripe_units <= 0)
+      throw new IllegalArgumentException("stripe units must be positive");
+    if (readahead < 0)
+      throw new IllegalArgumentException("readahead is negative");
+    this.mount = mount;
+    this.fd = fd;
+    this.buffer_size = (int)Math.min((long)mount.get_file_stripe_unit(fd) * stripe_units,
+        Integer.MAX_VALUE - 8);
+    this.readahead = readahead;
+    this.executor = executor != null ? executor : CephIOExecutor.shared();
+    reposition(mount.lseek(fd, 0, CephMount.SEEK_CUR));
+  }
+
+  /*
+   * Restart reading at the given offset. Fetches stay aligned to the buffer
+   * size, and hence to the stripe unit; the head of the first buffer is
+   * discarded instead.
+   */
+  private void reposition(long offset) {
+    long aligned = offset - offset % buffer_size;
+    fetch_offset = aligned;
+    consume_offset = aligned;
+    fetch_eof = false;
+    discard = (int)(offset - aligned);
+    buf = new byte[0];
+    buf_offset = offset;
+    buf_pos = 0;
+  }
+
+  /**
+   * Get the size of the buffers read from the file.
+   */
+  public int getBufferSize() {
+    return buffer_size;
+  }
+
+  /**
+   * Get the number of bytes returned to the caller.
+   */
+  public long getBytesRead() {
+    return bytes_read;
+  }
+
+  /**
+   * Get the number of bytes read from the file, including read ahead data
+   * that has not been consumed.
+   */
+  public long getBytesFetched() {
+    return bytes_fetched.get();
+  }
+
+  /**
+   * Get the number of read calls issued to the file.
+   */
+  public long getReadOps() {
+    return read_ops.get();
+  }
+
+  /*
+   * Read one buffer at the given offset. The returned array is shorter than
+   * buffer_size only at the end of the file.
+   */
+  private byte[] fetch(long offset) throws IOException {
+    byte[] data = new byte[buffer_size];
+    ByteBuffer bb = ByteBuffer.wrap(data);
+    while (bb.hasRemaining()) {
+      long ret = mount.read(fd, bb, offset + bb.position());
+      read_ops.incrementAndGet();
+      if (ret <= 0)
+        break;
+    }
+    bytes_fetched.addAndGet(bb.position());
+    if (bb.position() < data.length) {
+      byte[] shorter = new byte[bb.position()];
+      System.arraycopy(data, 0, shorter, 0, shorter.length);
+      return shorter;
+    }
+    return data;
+  }
+
+  private void schedule() {
+    while (!fetch_eof && pending.size() < readahead + 1) {
+      final long offset = fetch_offset;
+      fetch_offset += buffer_size;
+      pending.add(executor.submit(new Callable<byte[]>() {
+        public byte[] call() throws IOException {
+          return fetch(offset);
+        }
+      }));
+    }
+  }
+
+  /*
+   * Make the next buffer current. Returns false at the end of the file.
+   */
+  private boolean next_buffer() throws IOException {
+    if (fetch_eof && pending.isEmpty())
+      return false;
+
+    byte[] data;
+    if (readahead == 0) {
+      data = fetch(fetch_offset);
+      fetch_offset += buffer_size;
+    } else {
+      schedule();
+      data = await(pending.poll());
+    }
+
+    if (data.length < buffer_size) {
+      /* end of file: later fetches, if any, are past it */
+      fetch_eof = true;
+      drain();
+    } else if (readahead > 0) {
+      schedule();
+    }
+
+    buf = data;
+    buf_offset = consume_offset;
+    buf_pos = Math.min(discard, data.length);
+    consume_offset += buffer_size;
+    discard = 0;
+    return buf_pos < data.length;
+  }
+
+  private static byte[] await(Future<byte[]> f) throws IOException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return f.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException)cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      throw new IOException(cause);
+    } finally {
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+   * Cancel outstanding fetches and wait for those already running, so that
+   * none of them uses the file descriptor afterwards.
+   */
+  private void drain() {
+    for (Future<byte[]> f : pending)
+      f.cancel(false);
+    for (Future<byte[]> f : pending) {
+      try {
+        if (!f.isCancelled())
+          await(f);
+      } catch (Exception e) {}
+    }
+    pending.clear();
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed)
+      throw new IOException("stream closed");
+  }
+
+  @Override
+  public int read() throws IOException {
+    ensureOpen();
+    if (buf_pos == buf.length && !next_buffer())
+      return -1;
+    bytes_read++;
+    return buf[buf_pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off)
+      throw new IndexOutOfBoundsException();
+    ensureOpen();
+    if (len == 0)
+      return 0;
+    int total = 0;
+    while (total < len) {
+      if (buf_pos == buf.length) {
+        /* only block for more data if nothing has been returned yet */
+        if (total > 0 && (pending.isEmpty() || !pending.peek().isDone()))
+          break;
+        if (!next_buffer())
+          break;
+      }
+      int n = Math.min(len - total, buf.length - buf_pos);
+      System.arraycopy(buf, buf_pos, b, off + total, n);
+      buf_pos += n;
+      total += n;
+    }
+    bytes_read += total;
+    return total == 0 ? -1 : total;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    ensureOpen();
+    if (n <= 0)
+      return 0;
+    if (n <= buf.length - buf_pos) {
+      buf_pos += (int)n;
+      return n;
+    }
+    /* discard the read ahead data and restart at the new offset */
+    long pos = buf_offset + buf_pos;
+    CephStat stat = new CephStat();
+    mount.fstat(fd, stat);
+    long target = Math.max(pos, Math.min(pos + n, stat.size));
+    drain();
+    reposition(target);
+    return target - pos;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return buf.length - buf_pos;
+  }
+
+  /**
+   * Close the stream and its file descriptor. Background reads still in
+   * progress are waited for.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    drain();
+    mount.close(fd);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Latency histogram with logarithmic buckets split linearly, in the style
+ * of HdrHistogram: values below 16 have a bucket each, and each power of
+ * two above is split into 8 buckets, so a bucket covers at most 1/8 of its
+ * lower bound. Values are nanoseconds and clamp at 2^40 (about 18 minutes).
+ *
+ * Recording is a single atomic increment; counts are read without a
+ * snapshot, so a reader racing writers may see a few values in flight.
+ */
+final class CephLatencyHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int MAX_MAGNITUDE = 40;
+  private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+
+  static final int BUCKETS = index(MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  static int index(long value) {
+    if (value < 2 * SUB_COUNT)
+      return (int)Math.max(value, 0);
+    if (value > MAX_VALUE)
+      value = MAX_VALUE;
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    int top = (int)(value >>> shift);
+    return (shift + 1) * SUB_COUNT + top - SUB_COUNT;
+  }
+
+  /* Largest value counted in bucket @index */
+  static long highestValue(int index) {
+    if (index < 2 * SUB_COUNT)
+      return index;
+    int shift = index / SUB_COUNT - 1;
+    long top = SUB_COUNT + index % SUB_COUNT;
+    return ((top + 1) << shift) - 1;
+  }
+
+  void record(long nanos) {
+    counts.incrementAndGet(index(nanos));
+  }
+
+  /*
+   * Value at or below which @fraction of the recorded values fall, to the
+   * precision of the buckets; 0 if nothing was recorded.
+   */
+  long percentile(double fraction) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0)
+      return 0;
+    long rank = Math.max(1, (long)Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank)
+        return highestValue(i);
+    }
+    return highestValue(BUCKETS - 1);
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++)
+      counts.set(i, 0);
+  }
+}
@@ -0,0 +1,2004 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A file system held in memory, for running the bindings without a cluster.
+ *
+ * Every CephMount created from the same provider sees the same file system,
+ * so several mounts (or a mount and a remount) behave as clients of one
+ * cluster. {@link #getDefault()} is the provider selected by setting the
+ * com.ceph.fs.backend system property to "memory".
+ *
+ * Files, directories, symlinks, hard links, xattrs, file layouts and flock
+ * are supported with the error behaviour of the JNI backend, as are the
+ * ceph.dir.* virtual xattrs, whose recursive statistics are computed on
+ * each read rather than propagated lazily as by the MDS. Permissions
+ * are not checked (as with client_permissions = 0), file contents are held
+ * in a single array and so are limited to 2GB, and placement queries return
+ * a fixed, made-up cluster of NUM_OSDS OSDs on the loopback address.
+ */
+public class CephMemoryBackend implements CephBackendProvider {
+
+  private static final CephMemoryBackend instance = new CephMemoryBackend();
+
+  /*
+   * Linux errno values, as reported in CephStatBatch.error.
+   */
+  static final int EPERM     = 1;
+  static final int ENOENT    = 2;
+  static final int EBADF     = 9;
+  static final int EAGAIN    = 11;
+  static final int EACCES    = 13;
+  static final int EBUSY     = 16;
+  static final int EEXIST    = 17;
+  static final int ENOTDIR   = 20;
+  static final int EISDIR    = 21;
+  static final int EINVAL    = 22;
+  static final int EFBIG     = 27;
+  static final int ENOTEMPTY = 39;
+  static final int ELOOP     = 40;
+  static final int ENODATA   = 61;
+  static final int EISCONN   = 106;
+
+  /* Symlinks followed in one lookup before giving up with ELOOP */
+  private static final int MAX_SYMLINKS = 40;
+
+  private static final int MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+  /*
+   * The made-up cluster: pools are indexed by id.
+   */
+  static final int NUM_OSDS = 3;
+  private static final String[] POOLS = { "cephfs_metadata", "cephfs_data" };
+  private static final int DATA_POOL = 1;
+  private static final int POOL_REPLICATION = NUM_OSDS;
+
+  /* st_dev of every inode, as for a single CephFS file system */
+  private static final long DEV = 1;
+
+  /* Default file layout, and the granularity stripe units must respect */
+  private static final int STRIPE_UNIT_GRANULARITY = 1 << 16;
+  private static final int DEFAULT_STRIPE_UNIT = 1 << 22;
+  private static final int DEFAULT_STRIPE_COUNT = 1;
+  private static final int DEFAULT_OBJECT_SIZE = 1 << 22;
+
+  private static final byte[] EMPTY = new byte[0];
+
+  /*
+   * The namespace: directory entries, parents and link counts. Inode
+   * attributes and contents are guarded by the inode itself; a thread may
+   * lock an inode while holding this lock, but not the other way round.
+   */
+  private final Object ns_lock = new Object();
+  private final Inode root;
+  private long next_ino = 1;
+  private int inode_count = 0;
+
+  /**
+   * Create a provider with a new, empty file system.
+   */
+  public CephMemoryBackend() {
+    root = new_inode(CephStat.S_IFDIR, 0755, null);
+    root.parent = root;
+    root.has_layout = true;
+  }
+
+  /**
+   * Get the provider shared by all mounts that select the memory backend
+   * through the com.ceph.fs.backend system property.
+   */
+  public static CephMemoryBackend getDefault() {
+    return instance;
+  }
+
+  public CephBackend create(CephMount mount, String id) {
+    return new Client();
+  }
+
+  /*
+   * An inode. Directories have a parent and entries; symlinks a target;
+   * regular files data and a layout.
+   */
+  private static final class Inode {
+    final long ino;
+    final int type;
+    final String target;
+
+    /* Guarded by ns_lock */
+    Inode parent;
+    HashMap<String, Inode> entries;
+    volatile int nlink = 1;
+
+    /* Guarded by the inode */
+    int mode;
+    int uid;
+    int gid;
+    long a_time;
+    long m_time;
+    long c_time;
+    final long b_time;
+    long version;
+    byte[] data = EMPTY;
+    long size;
+    int stripe_unit = DEFAULT_STRIPE_UNIT;
+    int stripe_count = DEFAULT_STRIPE_COUNT;
+    int object_size = DEFAULT_OBJECT_SIZE;
+    int pool = DATA_POOL;
+    boolean has_layout;
+    final LinkedHashMap<String, byte[]> xattrs = new LinkedHashMap<String, byte[]>();
+    final HashMap<Long, Boolean> flocks = new HashMap<Long, Boolean>();
+
+    Inode(long ino, int type, int mode, String target) {
+      this.ino = ino;
+      this.type = type;
+      this.mode = type | (mode & 07777);
+      this.target = target;
+      a_time = m_time = c_time = b_time = System.currentTimeMillis();
+      if (type == CephStat.S_IFDIR)
+        entries = new HashMap<String, Inode>();
+      else if (type == CephStat.S_IFLNK)
+        size = target.length();
+    }
+
+    boolean isDir() {
+      return type == CephStat.S_IFDIR;
+    }
+
+    boolean isSymlink() {
+      return type == CephStat.S_IFLNK;
+    }
+
+    /*
+     * Record a change of the inode's attributes. Must hold the inode lock.
+     */
+    void changed() {
+      c_time = System.currentTimeMillis();
+      version++;
+    }
+
+    /*
+     * Record a change of the inode's contents. Must hold the inode lock.
+     */
+    void modified() {
+      changed();
+      m_time = c_time;
+    }
+
+    /*
+     * Must hold the inode lock, and ns_lock for directories.
+     */
+    void pack(long[] packed, int off) {
+      packed[off + CephStat.PACKED_MODE] = mode;
+      packed[off + CephStat.PACKED_UID] = uid;
+      packed[off + CephStat.PACKED_GID] = gid;
+      packed[off + CephStat.PACKED_SIZE] = isDir() ? entries.size() : size;
+      packed[off + CephStat.PACKED_BLKSIZE] = stripe_unit;
+      packed[off + CephStat.PACKED_BLOCKS] = (size + 511) / 512;
+      packed[off + CephStat.PACKED_A_TIME] = a_time;
+      packed[off + CephStat.PACKED_M_TIME] = m_time;
+      packed[off + CephStat.PACKED_INO] = ino;
+      packed[off + CephStat.PACKED_NLINK] = nlink;
+      packed[off + CephStat.PACKED_C_TIME] = c_time;
+      packed[off + CephStat.PACKED_B_TIME] = b_time;
+      packed[off + CephStat.PACKED_DEV] = DEV;
+      packed[off + CephStat.PACKED_VERSION] = version;
+    }
+
+    /*
+     * Must hold the inode lock.
+     */
+    void truncate(long length) {
+      if (length < 0)
+        throw error(EINVAL);
+      if (length > MAX_FILE_SIZE)
+        throw error(EFBIG);
+      if (length > data.length) {
+        data = Arrays.copyOf(data, (int)length);
+      } else if (length < size) {
+        Arrays.fill(data, (int)length, (int)size, (byte)0);
+      }
+      size = length;
+      modified();
+    }
+
+    /*
+     * Must hold the inode lock.
+     */
+    int read(long off, ByteBuffer dst) {
+      if (off >= size)
+        return 0;
+      int n = (int)Math.min(dst.remaining(), size - off);
+      dst.put(data, (int)off, n);
+      return n;
+    }
+
+    /*
+     * Must hold the inode lock.
+     */
+    int write(long off, ByteBuffer src) {
+      int n = src.remaining();
+      long end = off + n;
+      if (end > MAX_FILE_SIZE)
+        throw error(EFBIG);
+      if (end > data.length)
+        data = Arrays.copyOf(data, (int)Math.min(MAX_FILE_SIZE, Math.max(end, 2L * data.length)));
+      src.get(data, (int)off, n);
+      if (end > size)
+        size = end;
+      modified();
+      return n;
+    }
+  }
+
+  /*
+   * An open file of one client.
+   */
+  private static final class OpenFile {
+    final Inode inode;
+    final boolean readable;
+    final boolean writable;
+    final boolean append;
+
+    /* Guarded by the inode */
+    long pos;
+    final Set<Long> lock_owners = new HashSet<Long>();
+
+    OpenFile(Inode inode, boolean readable, boolean writable, boolean append) {
+      this.inode = inode;
+      this.readable = readable;
+      this.writable = writable;
+      this.append = append;
+    }
+  }
+
+  /*
+   * An open directory of one client: the names present at opendir time.
+   */
+  private static final class DirHandle {
+    final Inode dir;
+    final String[] names;
+    int next;
+
+    DirHandle(Inode dir, String[] names) {
+      this.dir = dir;
+      this.names = names;
+    }
+  }
+
+  /*
+   * Must hold ns_lock.
+   */
+  private Inode new_inode(int type, int mode, String target) {
+    inode_count++;
+    return new Inode(next_ino++, type, mode, target);
+  }
+
+  /*
+   * Must hold ns_lock.
+   */
+  private void drop_link(Inode inode) {
+    if (--inode.nlink == 0)
+      inode_count--;
+    synchronized (inode) {
+      inode.changed();
+    }
+  }
+
+  /*
+   * Throw the exception the JNI layer raises for errno, without having to
+   * declare it (the JNI layer does not either).
+   */
+  static RuntimeException error(int errno) {
+    IOException e;
+    switch (errno) {
+      case ENOENT:
+        e = new FileNotFoundException("");
+        break;
+      case EEXIST:
+        e = new CephFileAlreadyExistsException("");
+        break;
+      case ENOTDIR:
+        e = new CephNotDirectoryException("");
+        break;
+      case ENOTEMPTY:
+        e = new CephDirectoryNotEmptyException(strerror(errno));
+        break;
+      case EACCES:
+      case EPERM:
+        e = new CephPermissionDeniedException(strerror(errno));
+        break;
+      default:
+        e = new IOException(strerror(errno));
+        break;
+    }
+    return CephMemoryBackend.<RuntimeException>sneaky(e);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Throwable> T sneaky(Throwable t) throws T {
+    throw (T)t;
+  }
+
+  private static String strerror(int errno) {
+    switch (errno) {
+      case EPERM:     return "Operation not permitted";
+      case ENOENT:    return "No such file or directory";
+      case EBADF:     return "Bad file descriptor";
+      case EAGAIN:    return "Resource temporarily unavailable";
+      case EACCES:    return "Permission denied";
+      case EBUSY:     return "Device or resource busy";
+      case EEXIST:    return "File exists";
+      case ENOTDIR:   return "Not a directory";
+      case EISDIR:    return "Is a directory";
+      case EINVAL:    return "Invalid argument";
+      case EFBIG:     return "File too large";
+      case ENOTEMPTY: return "Directory not empty";
+      case ELOOP:     return "Too many levels of symbolic links";
+      case ENODATA:   return "No data available";
+      case EISCONN:   return "Transport endpoint is already connected";
+      default:        return "Unknown error " + errno;
+    }
+  }
+
+  private static void check_null(Object arg, String msg) {
+    if (arg == null)
+      throw new NullPointerException(msg);
+  }
+
+  private static void check_bounds(boolean cond, String msg) {
+    if (cond)
+      throw new IndexOutOfBoundsException(msg);
+  }
+
+  /*
+   * The backend of one CephMount: mount state, working directory, open
+   * files and directories.
+   */
+  private final class Client implements CephBackend {
+
+    private volatile boolean mounted = false;
+
+    /* Guarded by ns_lock */
+    private Inode mount_root;
+    private Inode cwd;
+    private String cwd_path;
+
+    private final Map<String, String> conf = new ConcurrentHashMap<String, String>();
+    private final Map<Integer, OpenFile> files = new ConcurrentHashMap<Integer, OpenFile>();
+    private final Map<Long, DirHandle> dirs = new ConcurrentHashMap<Long, DirHandle>();
+    private final Map<Long, Inode> handles = new ConcurrentHashMap<Long, Inode>();
+    private final AtomicInteger next_fd = new AtomicInteger(1);
+    private final AtomicLong next_dirp = new AtomicLong(1);
+    private final AtomicLong next_handle = new AtomicLong(1);
+
+    Client() {
+      conf.put("log_to_stderr", "false");
+      conf.put("client_permissions", "true");
+      conf.put("client_mount_uid", "-1");
+      conf.put("client_mount_gid", "-1");
+    }
+
+    private void check_mounted() {
+      if (!mounted)
+        throw CephMemoryBackend.<RuntimeException>sneaky(new CephNotMountedException("not mounted"));
+    }
+
+    /*
+     * Ceph treats spaces, dashes and underscores in option names alike.
+     */
+    private String conf_key(String option) {
+      return option.trim().replace(' ', '_').replace('-', '_');
+    }
+
+    /*
+     * Path resolution. Must hold ns_lock.
+     */
+    private Inode lookup(String path, boolean follow) {
+      return walk(path.startsWith("/") ? mount_root : cwd, path, follow, new int[1]);
+    }
+
+    private Inode walk(Inode dir, String path, boolean follow, int[] links) {
+      String[] parts = path.split("/");
+      int last = parts.length - 1;
+      while (last >= 0 && parts[last].isEmpty())
+        last--;
+      for (int i = 0; i <= last; i++) {
+        String name = parts[i];
+        if (name.isEmpty())
+          continue;
+        if (!dir.isDir())
+          throw error(ENOTDIR);
+        if (name.equals("."))
+          continue;
+        if (name.equals("..")) {
+          if (dir != mount_root)
+            dir = dir.parent;
+          continue;
+        }
+        Inode next = dir.entries.get(name);
+        if (next == null)
+          throw error(ENOENT);
+        if (next.isSymlink() && (i < last || follow)) {
+          if (++links[0] > MAX_SYMLINKS)
+            throw error(ELOOP);
+          next = walk(next.target.startsWith("/") ? mount_root : dir, next.target, true, links);
+        }
+        dir = next;
+      }
+      return dir;
+    }
+
+    private String basename(String path) {
+      String p = strip(path);
+      return p.substring(p.lastIndexOf('/') + 1);
+    }
+
+    /*
+     * The directory that would hold the last component of path. Must hold
+     * ns_lock.
+     */
+    private Inode lookup_parent(String path) {
+      String p = strip(path);
+      String name = p.substring(p.lastIndexOf('/') + 1);
+      if (name.isEmpty() || name.equals(".") || name.equals(".."))
+        throw error(p.isEmpty() || p.equals("/") ? EBUSY : EINVAL);
+      Inode dir = lookup(p.substring(0, p.length() - name.length()), true);
+      if (!dir.isDir())
+        throw error(ENOTDIR);
+      return dir;
+    }
+
+    private String strip(String path) {
+      int end = path.length();
+      while (end > 1 && path.charAt(end - 1) == '/')
+        end--;
+      return path.substring(0, end);
+    }
+
+    /*
+     * Must hold ns_lock.
+     */
+    private void add_entry(Inode dir, String name, Inode inode) {
+      dir.entries.put(name, inode);
+      if (inode.isDir())
+        inode.parent = dir;
+      touch(dir);
+    }
+
+    private void touch(Inode inode) {
+      synchronized (inode) {
+        inode.modified();
+      }
+    }
+
+    private OpenFile get_file(int fd) {
+      OpenFile f = files.get(fd);
+      if (f == null)
+        throw error(EBADF);
+      return f;
+    }
+
+    private Inode get_handle(long handle) {
+      Inode inode = handles.get(handle);
+      if (inode == null)
+        throw error(EBADF);
+      return inode;
+    }
+
+    private long new_handle(Inode inode) {
+      long handle = next_handle.getAndIncrement();
+      handles.put(handle, inode);
+      return handle;
+    }
+
+    private DirHandle get_dir(long dirp) {
+      DirHandle d = dirs.get(dirp);
+      if (d == null)
+        throw error(EBADF);
+      return d;
+    }
+
+    /*
+     * Mount lifecycle and configuration
+     */
+
+    public int mount(String root) {
+      if (mounted)
+        throw CephMemoryBackend.<RuntimeException>sneaky(new CephAlreadyMountedException(""));
+      synchronized (ns_lock) {
+        mount_root = CephMemoryBackend.this.root;
+        cwd = mount_root;
+        if (root != null) {
+          Inode inode = lookup(root, true);
+          if (!inode.isDir())
+            throw error(ENOTDIR);
+          mount_root = cwd = inode;
+        }
+        cwd_path = "/";
+      }
+      mounted = true;
+      return 0;
+    }
+
+    public int unmount() {
+      check_mounted();
+      for (Integer fd : files.keySet())
+        close(fd);
+      dirs.clear();
+      handles.clear();
+      mounted = false;
+      return 0;
+    }
+
+    public int release() {
+      if (mounted)
+        throw error(EISCONN);
+      return 0;
+    }
+
+    public int conf_read_file(String path) {
+      check_null(path, "@path is null");
+      try {
+        BufferedReader in = new BufferedReader(new FileReader(path));
+        try {
+          String line;
+          while ((line = in.readLine()) != null) {
+            line = line.trim();
+            int eq = line.indexOf('=');
+            if (line.startsWith("#") || line.startsWith(";") || eq < 0)
+              continue;
+            conf.put(conf_key(line.substring(0, eq)), line.substring(eq + 1).trim());
+          }
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        throw CephMemoryBackend.<RuntimeException>sneaky(e);
+      }
+      return 0;
+    }
+
+    public int conf_set(String option, String value) {
+      check_null(option, "@option is null");
+      check_null(value, "@value is null");
+      conf.put(conf_key(option), value);
+      return 0;
+    }
+
+    public String conf_get(String option) {
+      check_null(option, "@option is null");
+      return conf.get(conf_key(option));
+    }
+
+    public int statfs(String path, CephStatVFS statvfs) {
+      check_null(path, "@path is null");
+      check_null(statvfs, "@stat is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        lookup(path, true);
+        statvfs.bsize = DEFAULT_STRIPE_UNIT;
+        statvfs.frsize = DEFAULT_STRIPE_UNIT;
+        statvfs.blocks = 1L << 20;
+        statvfs.bavail = 1L << 20;
+        statvfs.files = inode_count;
+        statvfs.fsid = System.identityHashCode(CephMemoryBackend.this);
+        statvfs.namemax = 255;
+      }
+      return 0;
+    }
+
+    public String getcwd() {
+      check_mounted();
+      synchronized (ns_lock) {
+        return cwd_path;
+      }
+    }
+
+    public int chdir(String path) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode inode = lookup(path, true);
+        if (!inode.isDir())
+          throw error(ENOTDIR);
+        ArrayList<String> parts = new ArrayList<String>();
+        if (!path.startsWith("/"))
+          parts.addAll(Arrays.asList(cwd_path.split("/")));
+        for (String name : path.split("/")) {
+          if (name.equals("..")) {
+            if (!parts.isEmpty())
+              parts.remove(parts.size() - 1);
+          } else if (!name.isEmpty() && !name.equals(".")) {
+            parts.add(name);
+          }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String name : parts) {
+          if (!name.isEmpty())
+            sb.append('/').append(name);
+        }
+        cwd = inode;
+        cwd_path = sb.length() == 0 ? "/" : sb.toString();
+      }
+      return 0;
+    }
+
+    /*
+     * Directories
+     */
+
+    private String[] names(String path) {
+      Inode dir = lookup(path, true);
+      if (!dir.isDir())
+        throw error(ENOTDIR);
+      return dir.entries.keySet().toArray(new String[dir.entries.size()]);
+    }
+
+    public String[] listdir(String path) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        return names(path);
+      }
+    }
+
+    public long opendir(String path) {
+      check_null(path, "@path is null");
+      check_mounted();
+      DirHandle d;
+      synchronized (ns_lock) {
+        d = new DirHandle(lookup(path, true), names(path));
+      }
+      long dirp = next_dirp.getAndIncrement();
+      dirs.put(dirp, d);
+      return dirp;
+    }
+
+    public String[] readdir_batch(long dirp, int max) {
+      return readdirplus_batch(dirp, max, null);
+    }
+
+    public String[] readdirplus_batch(long dirp, int max, long[] stats) {
+      return next_entries(dirp, max, stats, null);
+    }
+
+    /*
+     * Fills stats and inodes, when not null, for each name returned. Each
+     * inode handle returned is a new reference.
+     */
+    private String[] next_entries(long dirp, int max, long[] stats, long[] inodes) {
+      check_bounds(max <= 0, "@max is not positive");
+      if (stats != null)
+        check_bounds(stats.length < (long)max * CephStat.PACKED_LENGTH, "@stats is too short");
+      if (inodes != null)
+        check_bounds(inodes.length < max, "@inodes is too short");
+      check_mounted();
+      DirHandle d = get_dir(dirp);
+      ArrayList<String> out = new ArrayList<String>();
+      synchronized (ns_lock) {
+        synchronized (d) {
+          while (out.size() < max && d.next < d.names.length) {
+            String name = d.names[d.next++];
+            Inode inode = d.dir.entries.get(name);
+            if (inode == null)
+              continue;
+            if (stats != null) {
+              synchronized (inode) {
+                inode.pack(stats, out.size() * CephStat.PACKED_LENGTH);
+              }
+            }
+            if (inodes != null)
+              inodes[out.size()] = new_handle(inode);
+            out.add(name);
+          }
+        }
+      }
+      return out.toArray(new String[out.size()]);
+    }
+
+    public int closedir(long dirp) {
+      check_mounted();
+      if (dirs.remove(dirp) == null)
+        throw error(EBADF);
+      return 0;
+    }
+
+    /*
+     * Namespace
+     */
+
+    public int link(String existing, String newname) {
+      check_null(existing, "@oldpath is null");
+      check_null(newname, "@newpath is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode inode = lookup(existing, false);
+        if (inode.isDir())
+          throw error(EPERM);
+        Inode dir = lookup_parent(newname);
+        String name = basename(newname);
+        if (dir.entries.containsKey(name))
+          throw error(EEXIST);
+        inode.nlink++;
+        synchronized (inode) {
+          inode.changed();
+        }
+        add_entry(dir, name, inode);
+      }
+      return 0;
+    }
+
+    public int unlink(String path) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode dir = lookup_parent(path);
+        String name = basename(path);
+        Inode inode = dir.entries.get(name);
+        if (inode == null)
+          throw error(ENOENT);
+        if (inode.isDir())
+          throw error(EISDIR);
+        dir.entries.remove(name);
+        drop_link(inode);
+        touch(dir);
+      }
+      return 0;
+    }
+
+    public int rename(String from, String to) {
+      check_null(from, "@from is null");
+      check_null(to, "@to is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode src_dir = lookup_parent(from);
+        String src_name = basename(from);
+        Inode inode = src_dir.entries.get(src_name);
+        if (inode == null)
+          throw error(ENOENT);
+        Inode dst_dir = lookup_parent(to);
+        String dst_name = basename(to);
+        Inode old = dst_dir.entries.get(dst_name);
+        if (old == inode)
+          return 0;
+        if (inode.isDir()) {
+          for (Inode p = dst_dir; ; p = p.parent) {
+            if (p == inode)
+              throw error(EINVAL);
+            if (p == p.parent)
+              break;
+          }
+        }
+        if (old != null) {
+          if (inode.isDir() && !old.isDir())
+            throw error(ENOTDIR);
+          if (!inode.isDir() && old.isDir())
+            throw error(EISDIR);
+          if (old.isDir() && !old.entries.isEmpty())
+            throw error(ENOTEMPTY);
+          drop_link(old);
+        }
+        src_dir.entries.remove(src_name);
+        touch(src_dir);
+        add_entry(dst_dir, dst_name, inode);
+      }
+      return 0;
+    }
+
+    public int mkdir(String path, int mode) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode dir = lookup_parent(path);
+        String name = basename(path);
+        if (dir.entries.containsKey(name))
+          throw error(EEXIST);
+        add_entry(dir, name, new_inode(CephStat.S_IFDIR, mode, null));
+      }
+      return 0;
+    }
+
+    public int mkdirs(String path, int mode) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode dir = path.startsWith("/") ? mount_root : cwd;
+        boolean created = false;
+        for (String name : path.split("/")) {
+          if (name.isEmpty())
+            continue;
+          if (!dir.isDir())
+            throw error(ENOTDIR);
+          Inode next;
+          if (name.equals("."))
+            next = dir;
+          else if (name.equals(".."))
+            next = dir == mount_root ? dir : dir.parent;
+          else
+            next = dir.entries.get(name);
+          created = next == null;
+          if (created) {
+            next = new_inode(CephStat.S_IFDIR, mode, null);
+            add_entry(dir, name, next);
+          } else if (next.isSymlink()) {
+            next = walk(next.target.startsWith("/") ? mount_root : dir, next.target, true, new int[1]);
+          }
+          dir = next;
+        }
+        if (!created)
+          throw error(EEXIST);
+      }
+      return 0;
+    }
+
+    public int rmdir(String path) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode dir = lookup_parent(path);
+        String name = basename(path);
+        Inode inode = dir.entries.get(name);
+        if (inode == null)
+          throw error(ENOENT);
+        if (!inode.isDir())
+          throw error(ENOTDIR);
+        if (!inode.entries.isEmpty())
+          throw error(ENOTEMPTY);
+        if (inode == mount_root || inode == cwd)
+          throw error(EBUSY);
+        dir.entries.remove(name);
+        drop_link(inode);
+        touch(dir);
+      }
+      return 0;
+    }
+
+    public String readlink(String path) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode inode = lookup(path, false);
+        if (!inode.isSymlink())
+          throw error(EINVAL);
+        return inode.target;
+      }
+    }
+
+    public int symlink(String existing, String newname) {
+      check_null(existing, "@oldpath is null");
+      check_null(newname, "@newpath is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode dir = lookup_parent(newname);
+        String name = basename(newname);
+        if (dir.entries.containsKey(name))
+          throw error(EEXIST);
+        add_entry(dir, name, new_inode(CephStat.S_IFLNK, 0777, existing));
+      }
+      return 0;
+    }
+
+    /*
+     * Attributes
+     */
+
+    private int stat(String path, long[] packed, boolean follow) {
+      check_null(path, "@path is null");
+      check_null(packed, "@packed is null");
+      check_bounds(packed.length < CephStat.PACKED_LENGTH, "@packed is too short");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode inode = lookup(path, follow);
+        synchronized (inode) {
+          inode.pack(packed, 0);
+        }
+      }
+      return 0;
+    }
+
+    public int stat(String path, long[] packed) {
+      return stat(path, packed, true);
+    }
+
+    public int lstat(String path, long[] packed) {
+      return stat(path, packed, false);
+    }
+
+    /*
+     * There is nothing to sync, so every field is returned whatever is
+     * asked for.
+     */
+    public int statx(String path, long[] packed, int want, int flags) {
+      stat(path, packed, (flags & CephMount.AT_SYMLINK_NOFOLLOW) == 0);
+      return CephMount.STATX_ALL_STATS;
+    }
+
+    public int stat_batch(String[] paths, boolean follow, CephStatBatch batch) {
+      check_null(paths, "@paths is null");
+      check_null(batch, "@batch is null");
+      check_mounted();
+      long[] packed = new long[CephStat.PACKED_LENGTH];
+      int failed = 0;
+      synchronized (ns_lock) {
+        for (int i = 0; i < paths.length; i++) {
+          check_null(paths[i], "@paths contains null");
+          Inode inode;
+          try {
+            inode = lookup(paths[i], follow);
+          } catch (RuntimeException e) {
+            throw e;
+          } catch (Exception e) {
+            batch.error[i] = errno(e);
+            failed++;
+            continue;
+          }
+          synchronized (inode) {
+            inode.pack(packed, 0);
+          }
+          batch.mode[i] = (int)packed[CephStat.PACKED_MODE];
+          batch.uid[i] = (int)packed[CephStat.PACKED_UID];
+          batch.gid[i] = (int)packed[CephStat.PACKED_GID];
+          batch.size[i] = packed[CephStat.PACKED_SIZE];
+          batch.blksize[i] = packed[CephStat.PACKED_BLKSIZE];
+          batch.blocks[i] = packed[CephStat.PACKED_BLOCKS];
+          batch.a_time[i] = packed[CephStat.PACKED_A_TIME];
+          batch.m_time[i] = packed[CephStat.PACKED_M_TIME];
+        }
+      }
+      return failed;
+    }
+
+    /*
+     * Map an exception raised by a lookup back to its errno.
+     */
+    private int errno(Exception e) {
+      if (e instanceof FileNotFoundException)
+        return ENOENT;
+      if (e instanceof CephNotDirectoryException)
+        return ENOTDIR;
+      return ELOOP;
+    }
+
+    private void setattr(Inode inode, CephStat stat, int mask) {
+      synchronized (inode) {
+        if ((mask & CephMount.SETATTR_MODE) != 0)
+          inode.mode = inode.type | (stat.mode & 07777);
+        if ((mask & CephMount.SETATTR_UID) != 0)
+          inode.uid = stat.uid;
+        if ((mask & CephMount.SETATTR_GID) != 0)
+          inode.gid = stat.gid;
+        if ((mask & CephMount.SETATTR_MTIME) != 0)
+          inode.m_time = stat.m_time;
+        if ((mask & CephMount.SETATTR_ATIME) != 0)
+          inode.a_time = stat.a_time;
+        inode.changed();
+      }
+    }
+
+    public int setattr(String path, CephStat stat, int mask) {
+      check_null(path, "@path is null");
+      check_null(stat, "@stat is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        setattr(lookup(path, true), stat, mask);
+      }
+      return 0;
+    }
+
+    public int chmod(String path, int mode) {
+      check_null(path, "@path is null");
+      check_mounted();
+      CephStat stat = new CephStat();
+      stat.mode = mode;
+      synchronized (ns_lock) {
+        setattr(lookup(path, true), stat, CephMount.SETATTR_MODE);
+      }
+      return 0;
+    }
+
+    public int fchmod(int fd, int mode) {
+      check_mounted();
+      CephStat stat = new CephStat();
+      stat.mode = mode;
+      setattr(get_file(fd).inode, stat, CephMount.SETATTR_MODE);
+      return 0;
+    }
+
+    public int truncate(String path, long size) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode inode = lookup(path, true);
+        if (inode.isDir())
+          throw error(EISDIR);
+        synchronized (inode) {
+          inode.truncate(size);
+        }
+      }
+      return 0;
+    }
+
+    /*
+     * File I/O
+     */
+
+    public int open(String path, int flags, int mode) {
+      return open_layout(path, flags, mode, 0, 0, 0, null);
+    }
+
+    public int open_layout(String path, int flags, int mode, int stripe_unit,
+        int stripe_count, int object_size, String data_pool) {
+      check_null(path, "@path is null");
+      check_mounted();
+
+      boolean writable = (flags & (CephMount.O_WRONLY | CephMount.O_RDWR)) != 0;
+      boolean readable = (flags & CephMount.O_WRONLY) == 0;
+      Inode inode;
+
+      synchronized (ns_lock) {
+        Inode dir = null;
+        String name = null;
+        try {
+          inode = lookup(path, true);
+          if ((flags & (CephMount.O_CREAT | CephMount.O_EXCL)) ==
+              (CephMount.O_CREAT | CephMount.O_EXCL))
+            throw error(EEXIST);
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          if (!(e instanceof FileNotFoundException) || (flags & CephMount.O_CREAT) == 0)
+            throw CephMemoryBackend.<RuntimeException>sneaky(e);
+          dir = lookup_parent(path);
+          name = basename(path);
+          inode = null;
+        }
+
+        if (inode == null) {
+          Inode ldir = layout_dir(dir);
+          int pool;
+          synchronized (ldir) {
+            pool = ldir.pool;
+            if (stripe_unit == 0)
+              stripe_unit = ldir.stripe_unit;
+            if (stripe_count == 0)
+              stripe_count = ldir.stripe_count;
+            if (object_size == 0)
+              object_size = ldir.object_size;
+          }
+          if (data_pool != null) {
+            pool = Arrays.asList(POOLS).indexOf(data_pool);
+            if (pool < 0)
+              throw error(EINVAL);
+          }
+          if (stripe_unit < 0 || stripe_unit % STRIPE_UNIT_GRANULARITY != 0 ||
+              stripe_count < 0 || object_size < 0 || object_size % stripe_unit != 0)
+            throw error(EINVAL);
+          inode = new_inode(CephStat.S_IFREG, mode, null);
+          inode.stripe_unit = stripe_unit;
+          inode.stripe_count = stripe_count;
+          inode.object_size = object_size;
+          inode.pool = pool;
+          add_entry(dir, name, inode);
+        } else if (inode.isDir()) {
+          if (writable)
+            throw error(EISDIR);
+        } else if ((flags & CephMount.O_DIRECTORY) != 0) {
+          throw error(ENOTDIR);
+        } else if (writable && (flags & CephMount.O_TRUNC) != 0) {
+          synchronized (inode) {
+            inode.truncate(0);
+          }
+        }
+      }
+
+      int fd = next_fd.getAndIncrement();
+      files.put(fd, new OpenFile(inode, readable, writable,
+            (flags & CephMount.O_APPEND) != 0));
+      return fd;
+    }
+
+    public int close(int fd) {
+      check_mounted();
+      OpenFile f = files.remove(fd);
+      if (f == null)
+        throw error(EBADF);
+      synchronized (f.inode) {
+        for (Long owner : f.lock_owners)
+          f.inode.flocks.remove(owner);
+        if (!f.lock_owners.isEmpty())
+          f.inode.notifyAll();
+      }
+      return 0;
+    }
+
+    public long lseek(int fd, long offset, int whence) {
+      check_mounted();
+      OpenFile f = get_file(fd);
+      synchronized (f.inode) {
+        long pos;
+        switch (whence) {
+          case CephMount.SEEK_SET:
+            pos = offset;
+            break;
+          case CephMount.SEEK_CUR:
+            pos = f.pos + offset;
+            break;
+          case CephMount.SEEK_END:
+            pos = f.inode.size + offset;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown whence value");
+        }
+        if (pos < 0)
+          throw error(EINVAL);
+        f.pos = pos;
+        return pos;
+      }
+    }
+
+    /*
+     * Read into or write from a list of buffers, at offset or at the file
+     * position if offset is negative.
+     */
+    private long io(int fd, ByteBuffer[] bufs, long offset, boolean write) {
+      OpenFile f = get_file(fd);
+      if (write ? !f.writable : !f.readable)
+        throw error(EBADF);
+      if (f.inode.isDir())
+        throw error(EISDIR);
+      synchronized (f.inode) {
+        long off = offset < 0 ? f.pos : offset;
+        if (write && f.append)
+          off = f.inode.size;
+        long done = 0;
+        for (ByteBuffer buf : bufs) {
+          int n = write ? f.inode.write(off + done, buf) : f.inode.read(off + done, buf);
+          done += n;
+          if (buf.hasRemaining())
+            break;
+        }
+        if (offset < 0 || (write && f.append))
+          f.pos = off + done;
+        return done;
+      }
+    }
+
+    private long io(int fd, ByteBuffer buf, long offset, boolean write) {
+      return io(fd, new ByteBuffer[] { buf }, offset, write);
+    }
+
+    private ByteBuffer region(ByteBuffer buf, int pos, int size) {
+      check_null(buf, "@buf is null");
+      check_bounds(pos < 0, "@pos is negative");
+      check_bounds(size < 0, "@size is negative");
+      check_bounds((long)pos + size > buf.capacity(), "@pos + @size > @buf.capacity");
+      ByteBuffer view = buf.duplicate();
+      view.clear();
+      view.position(pos);
+      view.limit(pos + size);
+      return view;
+    }
+
+    private ByteBuffer region(byte[] buf, int pos, int size) {
+      check_null(buf, "@buf is null");
+      check_bounds(pos < 0, "@pos is negative");
+      check_bounds(size < 0, "@size is negative");
+      check_bounds((long)pos + size > buf.length, "@pos + @size > @buf.length");
+      return ByteBuffer.wrap(buf, pos, size);
+    }
+
+    public long read(int fd, byte[] buf, long size, long offset) {
+      check_null(buf, "@buf is null");
+      check_bounds(size < 0, "@size is negative");
+      check_mounted();
+      check_bounds(size > buf.length, "@size > @buf.length");
+      return io(fd, ByteBuffer.wrap(buf, 0, (int)size), offset, false);
+    }
+
+    public long write(int fd, byte[] buf, long size, long offset) {
+      check_null(buf, "@buf is null");
+      check_bounds(size < 0, "@size is negative");
+      check_mounted();
+      check_bounds(size > buf.length, "@size > @buf.length");
+      return io(fd, ByteBuffer.wrap(buf, 0, (int)size), offset, true);
+    }
+
+    public long read_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+      ByteBuffer view = region(buf, pos, size);
+      check_mounted();
+      return io(fd, view, offset, false);
+    }
+
+    public long read_region(int fd, byte[] buf, int pos, int size, long offset) {
+      ByteBuffer view = region(buf, pos, size);
+      check_mounted();
+      return io(fd, view, offset, false);
+    }
+
+    public long write_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+      ByteBuffer view = region(buf, pos, size);
+      check_mounted();
+      return io(fd, view, offset, true);
+    }
+
+    public long write_region(int fd, byte[] buf, int pos, int size, long offset) {
+      ByteBuffer view = region(buf, pos, size);
+      check_mounted();
+      return io(fd, view, offset, true);
+    }
+
+    private long vectored_io(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos,
+        int[] len, long offset, boolean write) {
+      check_null(direct, "@direct is null");
+      check_null(heap, "@heap is null");
+      check_null(pos, "@pos is null");
+      check_null(len, "@len is null");
+      int count = direct.length;
+      check_bounds(heap.length != count || pos.length != count || len.length != count,
+          "array lengths differ");
+      ByteBuffer[] bufs = new ByteBuffer[count];
+      for (int i = 0; i < count; i++)
+        bufs[i] = direct[i] != null ? region(direct[i], pos[i], len[i]) : region(heap[i], pos[i], len[i]);
+      check_mounted();
+      return io(fd, bufs, offset, write);
+    }
+
+    public long preadv(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len,
+        long offset) {
+      return vectored_io(fd, direct, heap, pos, len, offset, false);
+    }
+
+    public long pwritev(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len,
+        long offset) {
+      return vectored_io(fd, direct, heap, pos, len, offset, true);
+    }
+
+    public long copy_file_range(int fd_in, long off_in, int fd_out, long off_out, long len) {
+      check_bounds(len < 0, "@len is negative");
+      check_mounted();
+      ByteBuffer buf = ByteBuffer.allocate((int)Math.min(len, 1 << 20));
+      long copied = 0;
+      /* read at the current position of fd_in but not written */
+      long unwritten = 0;
+      Exception failure = null;
+      try {
+        while (copied < len) {
+          buf.clear();
+          buf.limit((int)Math.min(buf.capacity(), len - copied));
+          long n = io(fd_in, buf, off_in < 0 ? -1 : off_in + copied, false);
+          if (n <= 0)
+            break;
+          if (off_in < 0)
+            unwritten = n;
+          buf.flip();
+          long written = io(fd_out, buf, off_out < 0 ? -1 : off_out + copied, true);
+          copied += written;
+          if (off_in < 0)
+            unwritten = n - written;
+          if (written < n)
+            break;
+        }
+      } catch (Exception e) {
+        failure = e;
+      }
+      /* as in the JNI layer, the read position is moved back to match */
+      if (unwritten > 0)
+        lseek(fd_in, -unwritten, CephMount.SEEK_CUR);
+      /* as in the JNI layer, a failure after a partial copy is a short count */
+      if (failure != null && copied == 0)
+        throw CephMemoryBackend.<RuntimeException>sneaky(failure);
+      return copied;
+    }
+
+    public int ftruncate(int fd, long size) {
+      check_mounted();
+      OpenFile f = get_file(fd);
+      if (!f.writable)
+        throw error(EINVAL);
+      synchronized (f.inode) {
+        f.inode.truncate(size);
+      }
+      return 0;
+    }
+
+    public int fsync(int fd, boolean dataonly) {
+      check_mounted();
+      get_file(fd);
+      return 0;
+    }
+
+    /*
+     * BSD locks, held per (inode, owner): any number of shared holders or
+     * a single exclusive one. Blocking requests wait on the inode.
+     */
+    public int flock(int fd, int operation, long owner) {
+      int mode = operation & ~CephMount.LOCK_NB;
+      if ((operation & ~(CephMount.LOCK_SH | CephMount.LOCK_EX | CephMount.LOCK_NB |
+              CephMount.LOCK_UN)) != 0)
+        throw new IllegalArgumentException("flock flags");
+      check_mounted();
+      OpenFile f = get_file(fd);
+      if (mode != CephMount.LOCK_SH && mode != CephMount.LOCK_EX && mode != CephMount.LOCK_UN)
+        throw error(EINVAL);
+
+      Inode inode = f.inode;
+      synchronized (inode) {
+        if (mode == CephMount.LOCK_UN) {
+          if (inode.flocks.remove(owner) != null)
+            inode.notifyAll();
+          f.lock_owners.remove(owner);
+          return 0;
+        }
+        boolean exclusive = mode == CephMount.LOCK_EX;
+        while (true) {
+          boolean conflict = false;
+          for (Map.Entry<Long, Boolean> held : inode.flocks.entrySet()) {
+            if (held.getKey() != owner && (exclusive || held.getValue()))
+              conflict = true;
+          }
+          if (!conflict)
+            break;
+          if ((operation & CephMount.LOCK_NB) != 0)
+            throw CephMemoryBackend.<RuntimeException>sneaky(
+                new CephWouldBlockException(strerror(EAGAIN)));
+          try {
+            inode.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw CephMemoryBackend.<RuntimeException>sneaky(new IOException("Interrupted system call"));
+          }
+        }
+        Boolean was = inode.flocks.put(owner, exclusive);
+        if (was != null && was && !exclusive)
+          inode.notifyAll();
+        f.lock_owners.add(owner);
+      }
+      return 0;
+    }
+
+    public int fstat(int fd, long[] packed) {
+      check_null(packed, "@packed is null");
+      check_bounds(packed.length < CephStat.PACKED_LENGTH, "@packed is too short");
+      check_mounted();
+      Inode inode = get_file(fd).inode;
+      if (inode.isDir()) {
+        synchronized (ns_lock) {
+          synchronized (inode) {
+            inode.pack(packed, 0);
+          }
+        }
+      } else {
+        synchronized (inode) {
+          inode.pack(packed, 0);
+        }
+      }
+      return 0;
+    }
+
+    public int fstatx(int fd, long[] packed, int want, int flags) {
+      fstat(fd, packed);
+      return CephMount.STATX_ALL_STATS;
+    }
+
+    public int sync_fs() {
+      check_mounted();
+      return 0;
+    }
+
+    /*
+     * Extended attributes
+     */
+
+    private Inode xattr_inode(String path, String name, boolean follow) {
+      check_null(path, "@path is null");
+      check_null(name, "@name is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        return lookup(path, follow);
+      }
+    }
+
+    private long getxattr(String path, String name, byte[] buf, boolean follow) {
+      Inode inode = xattr_inode(path, name, follow);
+      byte[] vvalue = virtual_xattr(inode, name);
+      if (vvalue != null) {
+        if (buf != null && buf.length >= vvalue.length)
+          System.arraycopy(vvalue, 0, buf, 0, vvalue.length);
+        return vvalue.length;
+      }
+      synchronized (inode) {
+        byte[] value = inode.xattrs.get(name);
+        if (value == null)
+          throw error(ENODATA);
+        if (buf != null && buf.length >= value.length)
+          System.arraycopy(value, 0, buf, 0, value.length);
+        return value.length;
+      }
+    }
+
+    public long getxattr(String path, String name, byte[] buf) {
+      return getxattr(path, name, buf, true);
+    }
+
+    public long lgetxattr(String path, String name, byte[] buf) {
+      return getxattr(path, name, buf, false);
+    }
+
+    private String[] listxattr(String path, boolean follow) {
+      check_null(path, "@path is null");
+      check_mounted();
+      Inode inode;
+      synchronized (ns_lock) {
+        inode = lookup(path, follow);
+      }
+      synchronized (inode) {
+        return inode.xattrs.keySet().toArray(new String[inode.xattrs.size()]);
+      }
+    }
+
+    public String[] listxattr(String path) {
+      return listxattr(path, true);
+    }
+
+    public String[] llistxattr(String path) {
+      return listxattr(path, false);
+    }
+
+    private int removexattr(String path, String name, boolean follow) {
+      Inode inode = xattr_inode(path, name, follow);
+      synchronized (inode) {
+        if (inode.xattrs.remove(name) == null)
+          throw error(ENODATA);
+        inode.changed();
+      }
+      return 0;
+    }
+
+    public int removexattr(String path, String name) {
+      return removexattr(path, name, true);
+    }
+
+    public int lremovexattr(String path, String name) {
+      return removexattr(path, name, false);
+    }
+
+    private int setxattr(String path, String name, byte[] buf, long size, int flags,
+        boolean follow) {
+      check_null(path, "@path is null");
+      check_null(name, "@name is null");
+      check_null(buf, "@buf is null");
+      check_bounds(size < 0, "@size is negative");
+      check_mounted();
+      check_bounds(size > buf.length, "@size > @buf.length");
+      if (flags != CephMount.XATTR_CREATE && flags != CephMount.XATTR_REPLACE &&
+          flags != CephMount.XATTR_NONE)
+        throw new IllegalArgumentException("setxattr flag");
+      Inode inode = xattr_inode(path, name, follow);
+      synchronized (inode) {
+        boolean exists = inode.xattrs.containsKey(name);
+        if (flags == CephMount.XATTR_CREATE && exists)
+          throw error(EEXIST);
+        if (flags == CephMount.XATTR_REPLACE && !exists)
+          throw error(ENODATA);
+        inode.xattrs.put(name, Arrays.copyOf(buf, (int)size));
+        inode.changed();
+      }
+      return 0;
+    }
+
+    public int setxattr(String path, String name, byte[] buf, long size, int flags) {
+      return setxattr(path, name, buf, size, flags, true);
+    }
+
+    public int lsetxattr(String path, String name, byte[] buf, long size, int flags) {
+      return setxattr(path, name, buf, size, flags, false);
+    }
+
+    /*
+     * The recursive statistics of a directory, computed by walking it.
+     * Unlike the MDS, which propagates them lazily, these are always
+     * current.
+     */
+    private void dir_rstats(Inode dir, long[] packed, int off) {
+      synchronized (dir) {
+        packed[off + CephDirStats.PACKED_RSUBDIRS]++;
+        packed[off + CephDirStats.PACKED_RCTIME] =
+          Math.max(packed[off + CephDirStats.PACKED_RCTIME], dir.c_time);
+      }
+      for (Inode child : dir.entries.values()) {
+        if (child.isDir()) {
+          dir_rstats(child, packed, off);
+          continue;
+        }
+        synchronized (child) {
+          packed[off + CephDirStats.PACKED_RFILES]++;
+          if (child.type == CephStat.S_IFREG)
+            packed[off + CephDirStats.PACKED_RBYTES] += child.size;
+          packed[off + CephDirStats.PACKED_RCTIME] =
+            Math.max(packed[off + CephDirStats.PACKED_RCTIME], child.c_time);
+        }
+      }
+    }
+
+    /*
+     * The ceph.dir.* virtual xattrs of a directory, or null if name is not
+     * one. Like the MDS these are not listed by listxattr. rctime is
+     * formatted as seconds.nanoseconds.
+     */
+    private byte[] virtual_xattr(Inode inode, String name) {
+      if (!name.startsWith("ceph.dir.") || !inode.isDir())
+        return null;
+      long[] packed = new long[CephDirStats.PACKED_LENGTH];
+      long files = 0, subdirs = 0;
+      synchronized (ns_lock) {
+        if (name.startsWith("ceph.dir.r")) {
+          dir_rstats(inode, packed, 0);
+        } else {
+          for (Inode child : inode.entries.values()) {
+            if (child.isDir())
+              subdirs++;
+            else
+              files++;
+          }
+        }
+      }
+      String value;
+      switch (name) {
+        case "ceph.dir.entries":  value = Long.toString(files + subdirs); break;
+        case "ceph.dir.files":    value = Long.toString(files); break;
+        case "ceph.dir.subdirs":  value = Long.toString(subdirs); break;
+        case "ceph.dir.rbytes":   value = Long.toString(packed[CephDirStats.PACKED_RBYTES]); break;
+        case "ceph.dir.rfiles":   value = Long.toString(packed[CephDirStats.PACKED_RFILES]); break;
+        case "ceph.dir.rsubdirs": value = Long.toString(packed[CephDirStats.PACKED_RSUBDIRS]); break;
+        case "ceph.dir.rentries":
+          value = Long.toString(packed[CephDirStats.PACKED_RFILES] +
+              packed[CephDirStats.PACKED_RSUBDIRS]);
+          break;
+        case "ceph.dir.rctime": {
+          long ms = packed[CephDirStats.PACKED_RCTIME];
+          value = String.format("%d.%09d", ms / 1000, (ms % 1000) * 1000000);
+          break;
+        }
+        default:
+          return null;
+      }
+      return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int get_dir_rstats(String path, long[] packed) {
+      check_null(path, "@path is null");
+      check_null(packed, "@packed is null");
+      check_bounds(packed.length < CephDirStats.PACKED_LENGTH, "@packed is too short");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode inode = lookup(path, true);
+        if (!inode.isDir())
+          throw error(ENODATA);
+        Arrays.fill(packed, 0, CephDirStats.PACKED_LENGTH, 0);
+        dir_rstats(inode, packed, 0);
+      }
+      return 0;
+    }
+
+    public int get_dir_rstats_batch(String[] paths, long[] packed, int[] errors) {
+      check_null(paths, "@paths is null");
+      check_null(packed, "@packed is null");
+      check_null(errors, "@errors is null");
+      check_bounds(packed.length < (long)paths.length * CephDirStats.PACKED_LENGTH,
+          "@packed is too short");
+      check_bounds(errors.length < paths.length, "@errors is too short");
+      check_mounted();
+      int failed = 0;
+      synchronized (ns_lock) {
+        for (int i = 0; i < paths.length; i++) {
+          check_null(paths[i], "@paths contains null");
+          int off = i * CephDirStats.PACKED_LENGTH;
+          Arrays.fill(packed, off, off + CephDirStats.PACKED_LENGTH, 0);
+          Inode inode;
+          try {
+            inode = lookup(paths[i], true);
+          } catch (RuntimeException e) {
+            throw e;
+          } catch (Exception e) {
+            errors[i] = errno(e);
+            failed++;
+            continue;
+          }
+          if (!inode.isDir()) {
+            errors[i] = ENODATA;
+            failed++;
+            continue;
+          }
+          errors[i] = 0;
+          dir_rstats(inode, packed, off);
+        }
+      }
+      return failed;
+    }
+
+    /*
+     * Layout and placement
+     */
+
+    public int get_file_stripe_unit(int fd) {
+      check_mounted();
+      Inode inode = get_file(fd).inode;
+      synchronized (inode) {
+        return inode.stripe_unit;
+      }
+    }
+
+    public String get_file_pool_name(int fd) {
+      check_mounted();
+      Inode inode = get_file(fd).inode;
+      synchronized (inode) {
+        return POOLS[inode.pool];
+      }
+    }
+
+    /*
+     * The directory whose layout new files in dir get: the closest one,
+     * starting from dir, with a layout set. The root always has one. Must
+     * hold ns_lock.
+     */
+    private Inode layout_dir(Inode dir) {
+      for (Inode p = dir; ; p = p.parent) {
+        synchronized (p) {
+          if (p.has_layout)
+            return p;
+        }
+      }
+    }
+
+    private String get_layout(Inode inode, int[] layout) {
+      check_null(layout, "@layout is null");
+      check_bounds(layout.length < CephFileLayout.PACKED_LENGTH, "@layout is too short");
+      synchronized (inode) {
+        layout[CephFileLayout.PACKED_STRIPE_UNIT] = inode.stripe_unit;
+        layout[CephFileLayout.PACKED_STRIPE_COUNT] = inode.stripe_count;
+        layout[CephFileLayout.PACKED_OBJECT_SIZE] = inode.object_size;
+        layout[CephFileLayout.PACKED_POOL_ID] = inode.pool;
+        layout[CephFileLayout.PACKED_REPLICATION] = POOL_REPLICATION;
+        return POOLS[inode.pool];
+      }
+    }
+
+    public String get_file_layout(int fd, int[] layout) {
+      check_mounted();
+      return get_layout(get_file(fd).inode, layout);
+    }
+
+    /*
+     * A directory without a layout of its own reports the one new files
+     * in it would get.
+     */
+    public String get_path_layout(String path, int[] layout) {
+      check_null(path, "@path is null");
+      check_mounted();
+      Inode inode;
+      synchronized (ns_lock) {
+        inode = lookup(path, true);
+        if (inode.isDir())
+          inode = layout_dir(inode);
+      }
+      return get_layout(inode, layout);
+    }
+
+    public int set_dir_layout(String path, int stripe_unit, int stripe_count, int object_size,
+        String pool) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode dir = lookup(path, true);
+        if (!dir.isDir())
+          throw error(ENOTDIR);
+        Inode ldir = layout_dir(dir);
+        int su, sc, os, pool_id;
+        synchronized (ldir) {
+          su = stripe_unit != 0 ? stripe_unit : ldir.stripe_unit;
+          sc = stripe_count != 0 ? stripe_count : ldir.stripe_count;
+          os = object_size != 0 ? object_size : ldir.object_size;
+          pool_id = ldir.pool;
+        }
+        if (pool != null)
+          pool_id = Arrays.asList(POOLS).indexOf(pool);
+        if (pool_id < 0 || su <= 0 || su % STRIPE_UNIT_GRANULARITY != 0 ||
+            sc <= 0 || os <= 0 || os % su != 0)
+          throw error(EINVAL);
+        synchronized (dir) {
+          dir.stripe_unit = su;
+          dir.stripe_count = sc;
+          dir.object_size = os;
+          dir.pool = pool_id;
+          dir.has_layout = true;
+          dir.changed();
+        }
+      }
+      return 0;
+    }
+
+    public String get_default_data_pool_name() {
+      check_mounted();
+      return POOLS[DATA_POOL];
+    }
+
+    public int get_file_replication(int fd) {
+      check_mounted();
+      get_file(fd);
+      return POOL_REPLICATION;
+    }
+
+    public int localize_reads(boolean on) {
+      check_mounted();
+      return 0;
+    }
+
+    public int get_stripe_unit_granularity() {
+      check_mounted();
+      return STRIPE_UNIT_GRANULARITY;
+    }
+
+    public int get_pool_id(String name) throws FileNotFoundException {
+      check_null(name, "@name is null");
+      check_mounted();
+      int id = Arrays.asList(POOLS).indexOf(name);
+      if (id < 0)
+        throw new FileNotFoundException("");
+      return id;
+    }
+
+    public int get_pool_replication(int pool_id) throws FileNotFoundException {
+      check_mounted();
+      if (pool_id < 0 || pool_id >= POOLS.length)
+        throw new FileNotFoundException("");
+      return POOL_REPLICATION;
+    }
+
+    /*
+     * The extent is the rest of the stripe unit holding offset. Objects
+     * are placed on consecutive OSDs, the primary chosen by object number.
+     */
+    public CephFileExtent get_file_extent_osds(int fd, long offset) {
+      check_mounted();
+      Inode inode = get_file(fd).inode;
+      if (offset < 0)
+        throw error(EINVAL);
+      long su, sc, os;
+      synchronized (inode) {
+        su = inode.stripe_unit;
+        sc = inode.stripe_count;
+        os = inode.object_size;
+      }
+      long blockno = offset / su;
+      long stripeno = blockno / sc;
+      long objectsetno = stripeno / (os / su);
+      long objectno = objectsetno * sc + blockno % sc;
+      int[] osds = new int[POOL_REPLICATION];
+      for (int i = 0; i < osds.length; i++)
+        osds[i] = (int)((inode.ino + objectno + i) % NUM_OSDS);
+      return new CephFileExtent(offset, su - offset % su, osds);
+    }
+
+    /*
+     * Extents of [offset, offset + length), cut at the end of the file,
+     * with adjacent extents on the same OSDs merged.
+     */
+    public CephFileExtent[] get_file_extents(int fd, long offset, long length) {
+      check_mounted();
+      check_bounds(offset < 0, "@offset is negative");
+      check_bounds(length < 0, "@length is negative");
+      Inode inode = get_file(fd).inode;
+      long end;
+      synchronized (inode) {
+        end = Math.min(inode.size, offset + Math.min(length, Long.MAX_VALUE - offset));
+      }
+      ArrayList<CephFileExtent> extents = new ArrayList<CephFileExtent>();
+      CephFileExtent last = null;
+      for (long off = offset; off < end; ) {
+        CephFileExtent e = get_file_extent_osds(fd, off);
+        long len = Math.min(e.getLength(), end - off);
+        if (last != null && Arrays.equals(last.getOSDs(), e.getOSDs())) {
+          last = new CephFileExtent(last.getOffset(), last.getLength() + len, last.getOSDs());
+          extents.set(extents.size() - 1, last);
+        } else {
+          last = new CephFileExtent(off, len, e.getOSDs());
+          extents.add(last);
+        }
+        off += len;
+      }
+      return extents.toArray(new CephFileExtent[extents.size()]);
+    }
+
+    public String[] get_osd_crush_location(int osd) {
+      check_mounted();
+      if (osd < 0 || osd >= NUM_OSDS)
+        throw error(ENOENT);
+      return new String[] { "host", "localhost-" + osd, "root", "default" };
+    }
+
+    public InetAddress get_osd_addr(int osd) {
+      check_mounted();
+      if (osd < 0 || osd >= NUM_OSDS)
+        throw error(ENOENT);
+      return InetAddress.getLoopbackAddress();
+    }
+
+    /*
+     * Low-level calls. Inode handles pin the inode, so it stays usable
+     * after it is unlinked. File handles are file descriptors.
+     */
+
+    public long ll_lookup_root() {
+      check_mounted();
+      synchronized (ns_lock) {
+        return new_handle(mount_root);
+      }
+    }
+
+    public long ll_lookup(long parent, String name) {
+      check_null(name, "@name is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode dir = get_handle(parent);
+        if (!dir.isDir())
+          throw error(ENOTDIR);
+        Inode inode;
+        if (name.equals("."))
+          inode = dir;
+        else if (name.equals(".."))
+          inode = dir == mount_root ? dir : dir.parent;
+        else if (name.isEmpty() || name.indexOf('/') >= 0)
+          throw error(EINVAL);
+        else
+          inode = dir.entries.get(name);
+        if (inode == null)
+          throw error(ENOENT);
+        return new_handle(inode);
+      }
+    }
+
+    public long ll_walk(String path) {
+      check_null(path, "@path is null");
+      check_mounted();
+      synchronized (ns_lock) {
+        return new_handle(lookup(path, true));
+      }
+    }
+
+    public int ll_put(long inode) {
+      check_mounted();
+      if (handles.remove(inode) == null)
+        throw error(EBADF);
+      return 0;
+    }
+
+    public int ll_getattr(long handle, long[] packed, int want, int flags) {
+      check_null(packed, "@packed is null");
+      check_bounds(packed.length < CephStat.PACKED_LENGTH, "@packed is too short");
+      check_mounted();
+      synchronized (ns_lock) {
+        Inode inode = get_handle(handle);
+        synchronized (inode) {
+          inode.pack(packed, 0);
+        }
+      }
+      return CephMount.STATX_ALL_STATS;
+    }
+
+    public long ll_opendir(long handle) {
+      check_mounted();
+      DirHandle d;
+      synchronized (ns_lock) {
+        Inode dir = get_handle(handle);
+        if (!dir.isDir())
+          throw error(ENOTDIR);
+        d = new DirHandle(dir, dir.entries.keySet().toArray(new String[dir.entries.size()]));
+      }
+      long dirp = next_dirp.getAndIncrement();
+      dirs.put(dirp, d);
+      return dirp;
+    }
+
+    public String[] ll_readdirplus_batch(long dirp, int max, long[] stats, long[] inodes) {
+      check_null(stats, "@stats is null");
+      check_null(inodes, "@inodes is null");
+      return next_entries(dirp, max, stats, inodes);
+    }
+
+    public int ll_releasedir(long dirp) {
+      return closedir(dirp);
+    }
+
+    public long ll_open(long handle, int flags) {
+      check_mounted();
+      boolean writable = (flags & (CephMount.O_WRONLY | CephMount.O_RDWR)) != 0;
+      boolean readable = (flags & CephMount.O_WRONLY) == 0;
+      Inode inode = get_handle(handle);
+      if (inode.isSymlink())
+        throw error(ELOOP);
+      if (inode.isDir() && writable)
+        throw error(EISDIR);
+      if (!inode.isDir() && (flags & CephMount.O_DIRECTORY) != 0)
+        throw error(ENOTDIR);
+      if (!inode.isDir() && writable && (flags & CephMount.O_TRUNC) != 0) {
+        synchronized (inode) {
+          inode.truncate(0);
+        }
+      }
+      int fd = next_fd.getAndIncrement();
+      files.put(fd, new OpenFile(inode, readable, writable,
+            (flags & CephMount.O_APPEND) != 0));
+      return fd;
+    }
+
+    public long ll_read(long fh, byte[] buf, long size, long offset) {
+      check_bounds(offset < 0, "@offset is negative");
+      return read((int)fh, buf, size, offset);
+    }
+
+    public long ll_read_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+      check_bounds(offset < 0, "@offset is negative");
+      return read_direct((int)fh, buf, pos, size, offset);
+    }
+
+    public long ll_read_region(long fh, byte[] buf, int pos, int size, long offset) {
+      check_bounds(offset < 0, "@offset is negative");
+      return read_region((int)fh, buf, pos, size, offset);
+    }
+
+    public long ll_write(long fh, byte[] buf, long size, long offset) {
+      check_bounds(offset < 0, "@offset is negative");
+      return write((int)fh, buf, size, offset);
+    }
+
+    public long ll_write_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+      check_bounds(offset < 0, "@offset is negative");
+      return write_direct((int)fh, buf, pos, size, offset);
+    }
+
+    public long ll_write_region(long fh, byte[] buf, int pos, int size, long offset) {
+      check_bounds(offset < 0, "@offset is negative");
+      return write_region((int)fh, buf, pos, size, offset);
+    }
+
+    public int ll_close(long fh) {
+      return close((int)fh);
+    }
+  }
+}
@@ -0,0 +1,875 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import com.ceph.fs.CephMountMetrics.Op;
+
+/*
+ * Backend wrapper timing each call of the backend it wraps into a
+ * CephMountMetrics, see there.
+ */
+final class CephMetricsBackend implements CephBackend {
+
+  final CephBackend backend;
+  final CephMountMetrics metrics;
+
+  CephMetricsBackend(CephBackend backend, CephMountMetrics metrics) {
+    this.backend = backend;
+    this.metrics = metrics;
+  }
+
+  private int done(Op op, long start, int ret) {
+    metrics.record(op, start, false);
+    return ret;
+  }
+
+  private long done(Op op, long start, long ret) {
+    metrics.record(op, start, false);
+    return ret;
+  }
+
+  private <T> T done(Op op, long start, T ret) {
+    metrics.record(op, start, false);
+    return ret;
+  }
+
+  private long read(Op op, long start, long ret) {
+    metrics.record(op, start, false);
+    metrics.addBytesRead(ret);
+    return ret;
+  }
+
+  private long written(Op op, long start, long ret) {
+    metrics.record(op, start, false);
+    metrics.addBytesWritten(ret);
+    return ret;
+  }
+
+  /*
+   * Count a failed call and rethrow its exception, which may be a checked
+   * exception the backend method does not declare.
+   */
+  private RuntimeException failed(Op op, long start, Throwable t) {
+    metrics.record(op, start, true);
+    return CephMetricsBackend.<RuntimeException>sneaky(t);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Throwable> T sneaky(Throwable t) throws T {
+    throw (T)t;
+  }
+
+  public int mount(String root) {
+    long start = System.nanoTime();
+    int ret;
+    try {
+      ret = backend.mount(root);
+    } catch (Throwable t) {
+      throw failed(Op.MOUNT, start, t);
+    }
+    metrics.record(Op.MOUNT, start, false);
+    metrics.register();
+    return ret;
+  }
+
+  public int unmount() {
+    long start = System.nanoTime();
+    int ret;
+    try {
+      ret = backend.unmount();
+    } catch (Throwable t) {
+      throw failed(Op.UNMOUNT, start, t);
+    }
+    metrics.record(Op.UNMOUNT, start, false);
+    metrics.unregister();
+    return ret;
+  }
+
+  public int release() {
+    metrics.unregister();
+    return backend.release();
+  }
+
+  public int conf_read_file(String path) {
+    return backend.conf_read_file(path);
+  }
+
+  public int conf_set(String option, String value) {
+    return backend.conf_set(option, value);
+  }
+
+  public String conf_get(String option) {
+    return backend.conf_get(option);
+  }
+
+  public int statfs(String path, CephStatVFS statvfs) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.STATFS, start, backend.statfs(path, statvfs));
+    } catch (Throwable t) {
+      throw failed(Op.STATFS, start, t);
+    }
+  }
+
+  public String getcwd() {
+    return backend.getcwd();
+  }
+
+  public int chdir(String cwd) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.CHDIR, start, backend.chdir(cwd));
+    } catch (Throwable t) {
+      throw failed(Op.CHDIR, start, t);
+    }
+  }
+
+  public String[] listdir(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LISTDIR, start, backend.listdir(path));
+    } catch (Throwable t) {
+      throw failed(Op.LISTDIR, start, t);
+    }
+  }
+
+  public long opendir(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.OPENDIR, start, backend.opendir(path));
+    } catch (Throwable t) {
+      throw failed(Op.OPENDIR, start, t);
+    }
+  }
+
+  public String[] readdir_batch(long dirp, int max) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return done(Op.READDIR, start, backend.readdir_batch(dirp, max));
+    } catch (Throwable t) {
+      throw failed(Op.READDIR, start, t);
+    }
+  }
+
+  public String[] readdirplus_batch(long dirp, int max, long[] stats) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return done(Op.READDIR, start, backend.readdirplus_batch(dirp, max, stats));
+    } catch (Throwable t) {
+      throw failed(Op.READDIR, start, t);
+    }
+  }
+
+  public int closedir(long dirp) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.CLOSEDIR, start, backend.closedir(dirp));
+    } catch (Throwable t) {
+      throw failed(Op.CLOSEDIR, start, t);
+    }
+  }
+
+  public int link(String existing, String newname) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LINK, start, backend.link(existing, newname));
+    } catch (Throwable t) {
+      throw failed(Op.LINK, start, t);
+    }
+  }
+
+  public int unlink(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.UNLINK, start, backend.unlink(path));
+    } catch (Throwable t) {
+      throw failed(Op.UNLINK, start, t);
+    }
+  }
+
+  public int rename(String from, String to) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.RENAME, start, backend.rename(from, to));
+    } catch (Throwable t) {
+      throw failed(Op.RENAME, start, t);
+    }
+  }
+
+  public int mkdir(String path, int mode) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.MKDIR, start, backend.mkdir(path, mode));
+    } catch (Throwable t) {
+      throw failed(Op.MKDIR, start, t);
+    }
+  }
+
+  public int mkdirs(String path, int mode) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.MKDIR, start, backend.mkdirs(path, mode));
+    } catch (Throwable t) {
+      throw failed(Op.MKDIR, start, t);
+    }
+  }
+
+  public int rmdir(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.RMDIR, start, backend.rmdir(path));
+    } catch (Throwable t) {
+      throw failed(Op.RMDIR, start, t);
+    }
+  }
+
+  public String readlink(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.READLINK, start, backend.readlink(path));
+    } catch (Throwable t) {
+      throw failed(Op.READLINK, start, t);
+    }
+  }
+
+  public int symlink(String existing, String newname) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.SYMLINK, start, backend.symlink(existing, newname));
+    } catch (Throwable t) {
+      throw failed(Op.SYMLINK, start, t);
+    }
+  }
+
+  public int stat(String path, long[] packed) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.STAT, start, backend.stat(path, packed));
+    } catch (Throwable t) {
+      throw failed(Op.STAT, start, t);
+    }
+  }
+
+  public int lstat(String path, long[] packed) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LSTAT, start, backend.lstat(path, packed));
+    } catch (Throwable t) {
+      throw failed(Op.LSTAT, start, t);
+    }
+  }
+
+  public int stat_batch(String[] paths, boolean follow, CephStatBatch batch) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.STAT_BATCH, start, backend.stat_batch(paths, follow, batch));
+    } catch (Throwable t) {
+      throw failed(Op.STAT_BATCH, start, t);
+    }
+  }
+
+  public int statx(String path, long[] packed, int want, int flags) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.STATX, start, backend.statx(path, packed, want, flags));
+    } catch (Throwable t) {
+      throw failed(Op.STATX, start, t);
+    }
+  }
+
+  public int setattr(String relpath, CephStat stat, int mask) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.SETATTR, start, backend.setattr(relpath, stat, mask));
+    } catch (Throwable t) {
+      throw failed(Op.SETATTR, start, t);
+    }
+  }
+
+  public int chmod(String path, int mode) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.SETATTR, start, backend.chmod(path, mode));
+    } catch (Throwable t) {
+      throw failed(Op.SETATTR, start, t);
+    }
+  }
+
+  public int fchmod(int fd, int mode) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.SETATTR, start, backend.fchmod(fd, mode));
+    } catch (Throwable t) {
+      throw failed(Op.SETATTR, start, t);
+    }
+  }
+
+  public int truncate(String path, long size) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.TRUNCATE, start, backend.truncate(path, size));
+    } catch (Throwable t) {
+      throw failed(Op.TRUNCATE, start, t);
+    }
+  }
+
+  public int open(String path, int flags, int mode) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.OPEN, start, backend.open(path, flags, mode));
+    } catch (Throwable t) {
+      throw failed(Op.OPEN, start, t);
+    }
+  }
+
+  public int open_layout(String path, int flags, int mode, int stripe_unit,
+      int stripe_count, int object_size, String data_pool) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.OPEN, start, backend.open_layout(path, flags, mode, stripe_unit,
+            stripe_count, object_size, data_pool));
+    } catch (Throwable t) {
+      throw failed(Op.OPEN, start, t);
+    }
+  }
+
+  public int close(int fd) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.CLOSE, start, backend.close(fd));
+    } catch (Throwable t) {
+      throw failed(Op.CLOSE, start, t);
+    }
+  }
+
+  public long lseek(int fd, long offset, int whence) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LSEEK, start, backend.lseek(fd, offset, whence));
+    } catch (Throwable t) {
+      throw failed(Op.LSEEK, start, t);
+    }
+  }
+
+  public long read(int fd, byte[] buf, long size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return read(Op.READ, start, backend.read(fd, buf, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.READ, start, t);
+    }
+  }
+
+  public long write(int fd, byte[] buf, long size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return written(Op.WRITE, start, backend.write(fd, buf, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.WRITE, start, t);
+    }
+  }
+
+  public long read_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return read(Op.READ, start, backend.read_direct(fd, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.READ, start, t);
+    }
+  }
+
+  public long read_region(int fd, byte[] buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return read(Op.READ, start, backend.read_region(fd, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.READ, start, t);
+    }
+  }
+
+  public long write_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return written(Op.WRITE, start, backend.write_direct(fd, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.WRITE, start, t);
+    }
+  }
+
+  public long write_region(int fd, byte[] buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return written(Op.WRITE, start, backend.write_region(fd, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.WRITE, start, t);
+    }
+  }
+
+  public long preadv(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len,
+      long offset) {
+    long start = System.nanoTime();
+    try {
+      return read(Op.READ, start, backend.preadv(fd, direct, heap, pos, len, offset));
+    } catch (Throwable t) {
+      throw failed(Op.READ, start, t);
+    }
+  }
+
+  public long pwritev(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len,
+      long offset) {
+    long start = System.nanoTime();
+    try {
+      return written(Op.WRITE, start, backend.pwritev(fd, direct, heap, pos, len, offset));
+    } catch (Throwable t) {
+      throw failed(Op.WRITE, start, t);
+    }
+  }
+
+  public long copy_file_range(int fd_in, long off_in, int fd_out, long off_out, long len) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.COPY_FILE_RANGE, start,
+          backend.copy_file_range(fd_in, off_in, fd_out, off_out, len));
+    } catch (Throwable t) {
+      throw failed(Op.COPY_FILE_RANGE, start, t);
+    }
+  }
+
+  public int ftruncate(int fd, long size) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.FTRUNCATE, start, backend.ftruncate(fd, size));
+    } catch (Throwable t) {
+      throw failed(Op.FTRUNCATE, start, t);
+    }
+  }
+
+  public int fsync(int fd, boolean dataonly) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.FSYNC, start, backend.fsync(fd, dataonly));
+    } catch (Throwable t) {
+      throw failed(Op.FSYNC, start, t);
+    }
+  }
+
+  public int flock(int fd, int operation, long owner) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.FLOCK, start, backend.flock(fd, operation, owner));
+    } catch (Throwable t) {
+      throw failed(Op.FLOCK, start, t);
+    }
+  }
+
+  public int fstat(int fd, long[] packed) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.FSTAT, start, backend.fstat(fd, packed));
+    } catch (Throwable t) {
+      throw failed(Op.FSTAT, start, t);
+    }
+  }
+
+  public int fstatx(int fd, long[] packed, int want, int flags) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.FSTAT, start, backend.fstatx(fd, packed, want, flags));
+    } catch (Throwable t) {
+      throw failed(Op.FSTAT, start, t);
+    }
+  }
+
+  public int sync_fs() {
+    long start = System.nanoTime();
+    try {
+      return done(Op.SYNC_FS, start, backend.sync_fs());
+    } catch (Throwable t) {
+      throw failed(Op.SYNC_FS, start, t);
+    }
+  }
+
+  public long getxattr(String path, String name, byte[] buf) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.GETXATTR, start, backend.getxattr(path, name, buf));
+    } catch (Throwable t) {
+      throw failed(Op.GETXATTR, start, t);
+    }
+  }
+
+  public long lgetxattr(String path, String name, byte[] buf) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.GETXATTR, start, backend.lgetxattr(path, name, buf));
+    } catch (Throwable t) {
+      throw failed(Op.GETXATTR, start, t);
+    }
+  }
+
+  public String[] listxattr(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LISTXATTR, start, backend.listxattr(path));
+    } catch (Throwable t) {
+      throw failed(Op.LISTXATTR, start, t);
+    }
+  }
+
+  public String[] llistxattr(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LISTXATTR, start, backend.llistxattr(path));
+    } catch (Throwable t) {
+      throw failed(Op.LISTXATTR, start, t);
+    }
+  }
+
+  public int removexattr(String path, String name) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.REMOVEXATTR, start, backend.removexattr(path, name));
+    } catch (Throwable t) {
+      throw failed(Op.REMOVEXATTR, start, t);
+    }
+  }
+
+  public int lremovexattr(String path, String name) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.REMOVEXATTR, start, backend.lremovexattr(path, name));
+    } catch (Throwable t) {
+      throw failed(Op.REMOVEXATTR, start, t);
+    }
+  }
+
+  public int setxattr(String path, String name, byte[] buf, long size, int flags) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.SETXATTR, start, backend.setxattr(path, name, buf, size, flags));
+    } catch (Throwable t) {
+      throw failed(Op.SETXATTR, start, t);
+    }
+  }
+
+  public int lsetxattr(String path, String name, byte[] buf, long size, int flags) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.SETXATTR, start, backend.lsetxattr(path, name, buf, size, flags));
+    } catch (Throwable t) {
+      throw failed(Op.SETXATTR, start, t);
+    }
+  }
+
+  public int get_dir_rstats(String path, long[] packed) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.DIR_RSTATS, start, backend.get_dir_rstats(path, packed));
+    } catch (Throwable t) {
+      throw failed(Op.DIR_RSTATS, start, t);
+    }
+  }
+
+  public int get_dir_rstats_batch(String[] paths, long[] packed, int[] errors) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.DIR_RSTATS, start, backend.get_dir_rstats_batch(paths, packed, errors));
+    } catch (Throwable t) {
+      throw failed(Op.DIR_RSTATS, start, t);
+    }
+  }
+
+  public int get_file_stripe_unit(int fd) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_file_stripe_unit(fd));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public String get_file_pool_name(int fd) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_file_pool_name(fd));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public String get_default_data_pool_name() {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_default_data_pool_name());
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public int get_file_replication(int fd) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_file_replication(fd));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public String get_file_layout(int fd, int[] layout) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_file_layout(fd, layout));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public String get_path_layout(String path, int[] layout) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_path_layout(path, layout));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public int set_dir_layout(String path, int stripe_unit, int stripe_count, int object_size,
+      String pool) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start,
+          backend.set_dir_layout(path, stripe_unit, stripe_count, object_size, pool));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public int localize_reads(boolean on) {
+    return backend.localize_reads(on);
+  }
+
+  public int get_stripe_unit_granularity() {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_stripe_unit_granularity());
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public int get_pool_id(String name) throws FileNotFoundException {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_pool_id(name));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public int get_pool_replication(int pool_id) throws FileNotFoundException {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LAYOUT, start, backend.get_pool_replication(pool_id));
+    } catch (Throwable t) {
+      throw failed(Op.LAYOUT, start, t);
+    }
+  }
+
+  public CephFileExtent get_file_extent_osds(int fd, long offset) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.PLACEMENT, start, backend.get_file_extent_osds(fd, offset));
+    } catch (Throwable t) {
+      throw failed(Op.PLACEMENT, start, t);
+    }
+  }
+
+  public String[] get_osd_crush_location(int osd) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.PLACEMENT, start, backend.get_osd_crush_location(osd));
+    } catch (Throwable t) {
+      throw failed(Op.PLACEMENT, start, t);
+    }
+  }
+
+  public InetAddress get_osd_addr(int osd) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.PLACEMENT, start, backend.get_osd_addr(osd));
+    } catch (Throwable t) {
+      throw failed(Op.PLACEMENT, start, t);
+    }
+  }
+
+  public CephFileExtent[] get_file_extents(int fd, long offset, long length) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.PLACEMENT, start, backend.get_file_extents(fd, offset, length));
+    } catch (Throwable t) {
+      throw failed(Op.PLACEMENT, start, t);
+    }
+  }
+
+  public long ll_lookup_root() {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LOOKUP, start, backend.ll_lookup_root());
+    } catch (Throwable t) {
+      throw failed(Op.LOOKUP, start, t);
+    }
+  }
+
+  public long ll_lookup(long parent, String name) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LOOKUP, start, backend.ll_lookup(parent, name));
+    } catch (Throwable t) {
+      throw failed(Op.LOOKUP, start, t);
+    }
+  }
+
+  public long ll_walk(String path) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.LOOKUP, start, backend.ll_walk(path));
+    } catch (Throwable t) {
+      throw failed(Op.LOOKUP, start, t);
+    }
+  }
+
+  public int ll_put(long inode) {
+    return backend.ll_put(inode);
+  }
+
+  public int ll_getattr(long inode, long[] packed, int want, int flags) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.STAT, start, backend.ll_getattr(inode, packed, want, flags));
+    } catch (Throwable t) {
+      throw failed(Op.STAT, start, t);
+    }
+  }
+
+  public long ll_opendir(long dir) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.OPENDIR, start, backend.ll_opendir(dir));
+    } catch (Throwable t) {
+      throw failed(Op.OPENDIR, start, t);
+    }
+  }
+
+  public String[] ll_readdirplus_batch(long dirp, int max, long[] stats, long[] inodes)
+    throws IOException {
+    long start = System.nanoTime();
+    try {
+      return done(Op.READDIR, start, backend.ll_readdirplus_batch(dirp, max, stats, inodes));
+    } catch (Throwable t) {
+      throw failed(Op.READDIR, start, t);
+    }
+  }
+
+  public int ll_releasedir(long dirp) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.CLOSEDIR, start, backend.ll_releasedir(dirp));
+    } catch (Throwable t) {
+      throw failed(Op.CLOSEDIR, start, t);
+    }
+  }
+
+  public long ll_open(long inode, int flags) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.OPEN, start, backend.ll_open(inode, flags));
+    } catch (Throwable t) {
+      throw failed(Op.OPEN, start, t);
+    }
+  }
+
+  public long ll_read(long fh, byte[] buf, long size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return read(Op.READ, start, backend.ll_read(fh, buf, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.READ, start, t);
+    }
+  }
+
+  public long ll_read_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return read(Op.READ, start, backend.ll_read_direct(fh, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.READ, start, t);
+    }
+  }
+
+  public long ll_read_region(long fh, byte[] buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return read(Op.READ, start, backend.ll_read_region(fh, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.READ, start, t);
+    }
+  }
+
+  public long ll_write(long fh, byte[] buf, long size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return written(Op.WRITE, start, backend.ll_write(fh, buf, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.WRITE, start, t);
+    }
+  }
+
+  public long ll_write_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return written(Op.WRITE, start, backend.ll_write_direct(fh, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.WRITE, start, t);
+    }
+  }
+
+  public long ll_write_region(long fh, byte[] buf, int pos, int size, long offset) {
+    long start = System.nanoTime();
+    try {
+      return written(Op.WRITE, start, backend.ll_write_region(fh, buf, pos, size, offset));
+    } catch (Throwable t) {
+      throw failed(Op.WRITE, start, t);
+    }
+  }
+
+  public int ll_close(long fh) {
+    long start = System.nanoTime();
+    try {
+      return done(Op.CLOSE, start, backend.ll_close(fh));
+    } catch (Throwable t) {
+      throw failed(Op.CLOSE, start, t);
+    }
+  }
+}
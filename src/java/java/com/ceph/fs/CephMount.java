@@ -22,8 +22,16 @@ package com.ceph.fs;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.DirectoryIteratorException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.lang.String;
 
 import com.ceph.crush.Bucket;
@@ -91,12 +99,65 @@ public class CephMount {
   public static final int LOCK_UN       = 8;
 
   /*
-   * This is run by the class loader and will report early any problems
-   * finding or linking in the shared JNI library.
+   * Field masks for statx(). These are the CEPH_STATX_* values.
+   *
+   * Must be synchronized with JNI if changed.
    */
-  static {
-    loadLibrary();
-  }
+  public static final int STATX_MODE        = 0x0001;
+  public static final int STATX_NLINK       = 0x0002;
+  public static final int STATX_UID         = 0x0004;
+  public static final int STATX_GID         = 0x0008;
+  public static final int STATX_ATIME       = 0x0020;
+  public static final int STATX_MTIME       = 0x0040;
+  public static final int STATX_CTIME       = 0x0080;
+  public static final int STATX_INO         = 0x0100;
+  public static final int STATX_SIZE        = 0x0200;
+  public static final int STATX_BLOCKS      = 0x0400;
+  public static final int STATX_BASIC_STATS = 0x07ff;
+  public static final int STATX_BTIME       = 0x0800;
+  public static final int STATX_VERSION     = 0x1000;
+  public static final int STATX_ALL_STATS   = 0x1fff;
+
+  /* Fields fetched by the packed stat calls: all of CephStat */
+  private static final int STATX_PACKED = STATX_BASIC_STATS | STATX_BTIME | STATX_VERSION;
+
+  /*
+   * Flags for statx().
+   *
+   * Must be synchronized with JNI if changed.
+   */
+  public static final int AT_SYMLINK_NOFOLLOW = 1;
+  public static final int AT_STATX_DONT_SYNC  = 2;
+
+  /* Older name of AT_STATX_DONT_SYNC, as in libcephfs */
+  public static final int AT_NO_ATTR_SYNC     = AT_STATX_DONT_SYNC;
+
+  /*
+   * System property selecting the backend of mounts created without an
+   * explicit provider; see CephBackendProvider.
+   */
+  static final String BACKEND_PROPERTY = "com.ceph.fs.backend";
+
+  /* Provider behind the "ffm" shorthand, built separately for Java 22+ */
+  static final String FFM_PROVIDER = "com.ceph.fs.CephFfmBackend";
+
+  /*
+   * System property wrapping the backend of every mount in the Flight
+   * Recorder backend, which is built separately for Java 11+.
+   */
+  static final String JFR_PROPERTY = "com.ceph.fs.jfr";
+  static final String JFR_BACKEND = "com.ceph.fs.CephJfrBackend";
+
+  /*
+   * Provider of the JNI backend. The shared library is loaded when the
+   * first JNI backend is created, so mounts using another backend do not
+   * need it.
+   */
+  static final CephBackendProvider JNI_PROVIDER = new CephBackendProvider() {
+    public CephBackend create(CephMount mount, String id) {
+      return new JniBackend(mount, id);
+    }
+  };
 
   static synchronized void loadLibrary() {
     CephNativeLoader.getInstance().loadLibrary();
@@ -108,12 +169,42 @@ public class CephMount {
   static native void native_initialize();
 
   /*
-   * RW lock used for fine grained synchronization to native
+   * RW lock used for fine grained synchronization to native. The read lock
+   * is taken around every native call and must not be taken recursively;
+   * see StripedReadWriteLock.
    */
-  private final ReentrantReadWriteLock rwlock = new ReentrantReadWriteLock();
+  private final StripedReadWriteLock rwlock = new StripedReadWriteLock();
   private final Lock rlock = rwlock.readLock();
   private final Lock wlock = rwlock.writeLock();
 
+  /*
+   * Directory streams that are still open. They hold native state that
+   * does not survive an unmount, so unmount() closes them first.
+   */
+  private final Set<CephDirectoryStream<?>> open_dirs =
+    Collections.newSetFromMap(new ConcurrentHashMap<CephDirectoryStream<?>, Boolean>());
+
+  /*
+   * Inode references and low-level file handles that are still open. Like
+   * directory streams, they do not survive an unmount.
+   */
+  private final Set<CephInode> open_inodes =
+    Collections.newSetFromMap(new ConcurrentHashMap<CephInode, Boolean>());
+  private final ConcurrentHashMap<Long, AtomicInteger> open_fhs =
+    new ConcurrentHashMap<Long, AtomicInteger>();
+
+  /*
+   * Addresses and CRUSH locations of OSDs, filled in by getOsdInfo. They
+   * change rarely, so they are kept until clearOsdInfoCache or unmount.
+   */
+  private final ConcurrentHashMap<Integer, CephOsdInfo> osd_info =
+    new ConcurrentHashMap<Integer, CephOsdInfo>();
+
+  /*
+   * Default number of entries fetched per readdir batch.
+   */
+  private static final int DIRECTORY_BATCH_SIZE = 1024;
+
   /*
    * Controls clean-up synchronization between the constructor and finalize().
    * If native_ceph_create fails, then we want a call to finalize() to not
@@ -121,6 +212,11 @@ public class CephMount {
    */
   private boolean initialized = false;
 
+  /*
+   * The file system client all calls are forwarded to.
+   */
+  private final CephBackend backend;
+
   /*
    * Try to clean-up. First, unmount() will catch users who forget to do the
    * unmount manually. Second, release() will destroy the entire context. It
@@ -132,7 +228,7 @@ public class CephMount {
         unmount();
       } catch (Exception e) {}
       try {
-        native_ceph_release(instance_ptr);
+        backend.release();
       } catch (Exception e) {}
     }
     super.finalize();
@@ -144,7 +240,22 @@ public class CephMount {
    * @param id client id.
    */
   public CephMount(String id) {
-    native_ceph_create(this, id);
+    this(id, default_provider());
+  }
+
+  /**
+   * Create a new CephMount with specific client id and backend.
+   *
+   * @param id client id.
+   * @param provider creates the backend of this mount.
+   */
+  public CephMount(String id, CephBackendProvider provider) {
+    CephBackend b = provider.create(this, id);
+    if (Boolean.getBoolean(JFR_PROPERTY))
+      b = jfr_backend(b);
+    if (Boolean.getBoolean(CephMountMetrics.METRICS_PROPERTY))
+      b = CephMountMetrics.instrument(b, id);
+    backend = b;
     initialized = true;
   }
 
@@ -157,6 +268,59 @@ public class CephMount {
     this(null);
   }
 
+  static CephBackendProvider default_provider() {
+    String name = System.getProperty(BACKEND_PROPERTY, "jni");
+    if (name.equals("jni"))
+      return JNI_PROVIDER;
+    if (name.equals("memory"))
+      return CephMemoryBackend.getDefault();
+    if (name.equals("ffm"))
+      name = FFM_PROVIDER;
+    try {
+      return (CephBackendProvider)Class.forName(name).getConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("invalid " + BACKEND_PROPERTY + ": " + name, e);
+    } catch (ClassCastException e) {
+      throw new IllegalArgumentException("invalid " + BACKEND_PROPERTY + ": " + name, e);
+    }
+  }
+
+  /**
+   * Get the metrics of this mount.
+   *
+   * Mounts are instrumented when created with a provider wrapped by
+   * CephMountMetrics.instrument(), or with the com.ceph.fs.metrics system
+   * property set to "true".
+   *
+   * @return The metrics, or null if this mount is not instrumented.
+   */
+  public CephMountMetrics getMetrics() {
+    if (backend instanceof CephMetricsBackend)
+      return ((CephMetricsBackend)backend).metrics;
+    return null;
+  }
+
+  /*
+   * Wrap @backend in the Flight Recorder backend. It goes under the metrics
+   * wrapper, if any, which getMetrics() looks for.
+   */
+  static CephBackend jfr_backend(CephBackend backend) {
+    if (backend instanceof CephMetricsBackend) {
+      CephMetricsBackend metrics = (CephMetricsBackend)backend;
+      return new CephMetricsBackend(jfr_backend(metrics.backend), metrics.metrics);
+    }
+    if (backend.getClass().getName().equals(JFR_BACKEND))
+      return backend;
+    try {
+      return (CephBackend)Class.forName(JFR_BACKEND)
+        .getConstructor(CephBackend.class).newInstance(backend);
+    } catch (ReflectiveOperationException e) {
+      backend.release();
+      throw new IllegalArgumentException("invalid " + JFR_PROPERTY + ": " + JFR_BACKEND +
+          " not found", e);
+    }
+  }
+
   /**
    * Activate the mount with a given root path.
    *
@@ -165,7 +329,7 @@ public class CephMount {
   public void mount(String root) {
     wlock.lock();
     try {
-      native_ceph_mount(instance_ptr, root);
+      backend.mount(root);
     } finally {
       wlock.unlock();
     }
@@ -182,7 +346,14 @@ public class CephMount {
   public void unmount() {
     wlock.lock();
     try {
-      native_ceph_unmount(instance_ptr);
+      for (CephDirectoryStream<?> stream : open_dirs)
+        closedir_locked(stream);
+      for (CephInode inode : open_inodes)
+        ll_put_locked(inode);
+      /* libcephfs closes the file handles */
+      open_fhs.clear();
+      osd_info.clear();
+      backend.unmount();
     } finally {
       wlock.unlock();
     }
@@ -190,6 +361,25 @@ public class CephMount {
 
   private static native int native_ceph_unmount(long mountp);
 
+  /**
+   * Destroy the client context of a mount that is not mounted, without
+   * waiting for the mount to be garbage collected. The mount must not be
+   * used afterwards.
+   *
+   * @throws IOException if the mount is mounted.
+   */
+  public void release() throws IOException {
+    wlock.lock();
+    try {
+      if (!initialized)
+        return;
+      backend.release();
+      initialized = false;
+    } finally {
+      wlock.unlock();
+    }
+  }
+
   /*
    * Private access to low-level ceph_release.
    */
@@ -203,7 +393,7 @@ public class CephMount {
   public void conf_read_file(String path) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_conf_read_file(instance_ptr, path);
+      backend.conf_read_file(path);
     } finally {
       rlock.unlock();
     }
@@ -220,7 +410,7 @@ public class CephMount {
   public void conf_set(String option, String value) {
     rlock.lock();
     try {
-      native_ceph_conf_set(instance_ptr, option, value);
+      backend.conf_set(option, value);
     } finally {
       rlock.unlock();
     }
@@ -237,7 +427,7 @@ public class CephMount {
   public String conf_get(String option) {
     rlock.lock();
     try {
-      return native_ceph_conf_get(instance_ptr, option);
+      return backend.conf_get(option);
     } finally {
       rlock.unlock();
     }
@@ -254,7 +444,7 @@ public class CephMount {
   public void statfs(String path, CephStatVFS statvfs) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_statfs(instance_ptr, path, statvfs);
+      backend.statfs(path, statvfs);
     } finally {
       rlock.unlock();
     }
@@ -270,7 +460,7 @@ public class CephMount {
   public String getcwd() {
     rlock.lock();
     try {
-      return native_ceph_getcwd(instance_ptr);
+      return backend.getcwd();
     } finally {
       rlock.unlock();
     }
@@ -286,7 +476,7 @@ public class CephMount {
   public void chdir(String path) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_chdir(instance_ptr, path);
+      backend.chdir(path);
     } finally {
       rlock.unlock();
     }
@@ -303,7 +493,7 @@ public class CephMount {
   public String[] listdir(String dir) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_listdir(instance_ptr, dir);
+      return backend.listdir(dir);
     } finally {
       rlock.unlock();
     }
@@ -311,6 +501,164 @@ public class CephMount {
 
   private static native String[] native_ceph_listdir(long mountp, String path);
 
+  /**
+   * Open a directory for incremental listing.
+   *
+   * @param dir The directory.
+   * @return A stream over the entries of the directory.
+   */
+  public CephDirectoryStream<String> opendir(String dir) throws FileNotFoundException {
+    return opendir(dir, DIRECTORY_BATCH_SIZE);
+  }
+
+  /**
+   * Open a directory for incremental listing.
+   *
+   * @param dir The directory.
+   * @param batch_size Maximum number of entries fetched per native call.
+   * @return A stream over the entries of the directory.
+   */
+  public CephDirectoryStream<String> opendir(String dir, int batch_size) throws FileNotFoundException {
+    return opendir(dir, batch_size, false);
+  }
+
+  /**
+   * List the contents of a directory together with the status of each
+   * entry. This is equivalent to calling lstat on every name returned by
+   * listdir, but the status is returned by the same request that reads the
+   * directory.
+   *
+   * @param dir The directory.
+   * @return List of entries excluding "." and "..".
+   */
+  public CephDirEntry[] listdirPlus(String dir) throws FileNotFoundException {
+    ArrayList<CephDirEntry> entries = new ArrayList<CephDirEntry>();
+    CephDirectoryStream<CephDirEntry> stream = opendirPlus(dir);
+    try {
+      for (CephDirEntry entry : stream)
+        entries.add(entry);
+    } catch (DirectoryIteratorException e) {
+      if (e.getCause() instanceof FileNotFoundException)
+        throw (FileNotFoundException)e.getCause();
+      throw e;
+    } finally {
+      stream.close();
+    }
+    return entries.toArray(new CephDirEntry[entries.size()]);
+  }
+
+  /**
+   * Open a directory for incremental listing with entry status.
+   *
+   * @param dir The directory.
+   * @return A stream over the entries of the directory.
+   */
+  public CephDirectoryStream<CephDirEntry> opendirPlus(String dir) throws FileNotFoundException {
+    return opendirPlus(dir, DIRECTORY_BATCH_SIZE);
+  }
+
+  /**
+   * Open a directory for incremental listing with entry status.
+   *
+   * @param dir The directory.
+   * @param batch_size Maximum number of entries fetched per native call.
+   * @return A stream over the entries of the directory.
+   */
+  public CephDirectoryStream<CephDirEntry> opendirPlus(String dir, int batch_size)
+    throws FileNotFoundException {
+    return opendir(dir, batch_size, true);
+  }
+
+  private <T> CephDirectoryStream<T> opendir(String dir, int batch_size, boolean with_stats)
+    throws FileNotFoundException {
+    if (batch_size <= 0)
+      throw new IllegalArgumentException("batch size must be positive");
+    rlock.lock();
+    try {
+      long dirp = backend.opendir(dir);
+      CephDirectoryStream<T> stream = new CephDirectoryStream<T>(this, dirp, batch_size, with_stats,
+          false);
+      open_dirs.add(stream);
+      return stream;
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_opendir(long mountp, String path);
+
+  /*
+   * Package-private: called from CephDirectoryStream
+   */
+  String[] readdir_batch(CephDirectoryStream<?> stream, int max) throws IOException {
+    rlock.lock();
+    try {
+      if (stream.dirp == 0)
+        return new String[0];
+      return backend.readdir_batch(stream.dirp, max);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native String[] native_ceph_readdir_batch(long mountp, long dirp, int max)
+    throws IOException;
+
+  /*
+   * Package-private: called from CephDirectoryStream
+   */
+  CephDirEntry[] readdirplus_batch(CephDirectoryStream<?> stream, int max) throws IOException {
+    String[] names;
+    long[] stats = new long[max * CephStat.PACKED_LENGTH];
+    rlock.lock();
+    try {
+      if (stream.dirp == 0)
+        return new CephDirEntry[0];
+      names = backend.readdirplus_batch(stream.dirp, max, stats);
+    } finally {
+      rlock.unlock();
+    }
+    CephDirEntry[] entries = new CephDirEntry[names.length];
+    for (int i = 0; i < names.length; i++) {
+      CephStat stat = new CephStat();
+      stat.unpack(stats, i * CephStat.PACKED_LENGTH);
+      entries[i] = new CephDirEntry(names[i], stat);
+    }
+    return entries;
+  }
+
+  private static native String[] native_ceph_readdirplus_batch(long mountp, long dirp, int max,
+      long[] stats) throws IOException;
+
+  /*
+   * Package-private: called from CephDirectoryStream
+   */
+  void closedir(CephDirectoryStream<?> stream) {
+    rlock.lock();
+    try {
+      closedir_locked(stream);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  /*
+   * Only the caller that removes the stream from open_dirs releases it, so a
+   * close racing with unmount() cannot free the native state twice.
+   */
+  private void closedir_locked(CephDirectoryStream<?> stream) {
+    if (!open_dirs.remove(stream))
+      return;
+    long dirp = stream.dirp;
+    stream.dirp = 0;
+    if (stream.low_level)
+      backend.ll_releasedir(dirp);
+    else
+      backend.closedir(dirp);
+  }
+
+  private static native int native_ceph_closedir(long mountp, long dirp);
+
   /**
    * Create a hard link to an existing file.
    *
@@ -320,7 +668,7 @@ public class CephMount {
   public void link(String oldpath, String newpath) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_link(instance_ptr, oldpath, newpath);
+      backend.link(oldpath, newpath);
     } finally {
       rlock.unlock();
     }
@@ -336,7 +684,7 @@ public class CephMount {
   public void unlink(String path) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_unlink(instance_ptr, path);
+      backend.unlink(path);
     } finally {
       rlock.unlock();
     }
@@ -353,7 +701,7 @@ public class CephMount {
   public void rename(String from, String to) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_rename(instance_ptr, from, to);
+      backend.rename(from, to);
     } finally {
       rlock.unlock();
     }
@@ -370,7 +718,7 @@ public class CephMount {
   public void mkdir(String path, int mode) {
     rlock.lock();
     try {
-      native_ceph_mkdir(instance_ptr, path, mode);
+      backend.mkdir(path, mode);
     } finally {
       rlock.unlock();
     }
@@ -387,7 +735,7 @@ public class CephMount {
   public void mkdirs(String path, int mode) throws IOException {
     rlock.lock();
     try {
-      native_ceph_mkdirs(instance_ptr, path, mode);
+      backend.mkdirs(path, mode);
     } finally {
       rlock.unlock();
     }
@@ -403,7 +751,7 @@ public class CephMount {
   public void rmdir(String path) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_rmdir(instance_ptr, path);
+      backend.rmdir(path);
     } finally {
       rlock.unlock();
     }
@@ -417,7 +765,7 @@ public class CephMount {
   public String readlink(String path) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_readlink(instance_ptr, path);
+      return backend.readlink(path);
     } finally {
       rlock.unlock();
     }
@@ -434,7 +782,7 @@ public class CephMount {
   public void symlink(String oldpath, String newpath) {
     rlock.lock();
     try {
-      native_ceph_symlink(instance_ptr, oldpath, newpath);
+      backend.symlink(oldpath, newpath);
     } finally {
       rlock.unlock();
     }
@@ -449,15 +797,39 @@ public class CephMount {
    * @param stat CephStat structure to hold file status.
    */
   public void stat(String path, CephStat stat) throws FileNotFoundException, CephNotDirectoryException {
+    if (stat == null)
+      throw new NullPointerException("@stat is null");
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    rlock.lock();
+    try {
+      backend.stat(path, packed);
+    } finally {
+      rlock.unlock();
+    }
+    stat.unpack(packed, 0);
+  }
+
+  /**
+   * Get file status packed into an array, without allocating a CephStat.
+   *
+   * The fields are stored at the indexes given by the CephStat.PACKED_*
+   * constants; CephStat.fromPacked converts the result. Unlike stat, every
+   * field of CephStat is fetched, including ino, nlink, c_time, b_time and
+   * version, which takes more capabilities from the MDS.
+   *
+   * @param path Path of file to stat.
+   * @param packed Array of at least CephStat.PACKED_LENGTH elements.
+   */
+  public void statPacked(String path, long[] packed) throws FileNotFoundException, CephNotDirectoryException {
     rlock.lock();
     try {
-      native_ceph_stat(instance_ptr, path, stat);
+      backend.statx(path, packed, STATX_PACKED, 0);
     } finally {
       rlock.unlock();
     }
   }
 
-  private static native int native_ceph_stat(long mountp, String path, CephStat stat);
+  private static native int native_ceph_stat(long mountp, String path, long[] packed);
 
   /**
    * Get file status, without following symlinks.
@@ -466,15 +838,109 @@ public class CephMount {
    * @param stat CephStat structure to hold file status.
    */
   public void lstat(String path, CephStat stat) throws FileNotFoundException, CephNotDirectoryException {
+    if (stat == null)
+      throw new NullPointerException("@stat is null");
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    rlock.lock();
+    try {
+      backend.lstat(path, packed);
+    } finally {
+      rlock.unlock();
+    }
+    stat.unpack(packed, 0);
+  }
+
+  /**
+   * Get file status packed into an array, without following symlinks.
+   *
+   * @param path Path of file to stat.
+   * @param packed Array of at least CephStat.PACKED_LENGTH elements.
+   * @see #statPacked
+   */
+  public void lstatPacked(String path, long[] packed) throws FileNotFoundException, CephNotDirectoryException {
+    rlock.lock();
+    try {
+      backend.statx(path, packed, STATX_PACKED, AT_SYMLINK_NOFOLLOW);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_lstat(long mountp, String path, long[] packed);
+
+  /**
+   * Get the status of many files in one call, following symlinks.
+   *
+   * Failed lookups do not raise an exception; their errno values are
+   * reported per entry in the result.
+   *
+   * @param paths The paths to stat. Elements must not be null.
+   * @return The status of each path, in order.
+   */
+  public CephStatBatch statBatch(String[] paths) {
+    return stat_batch(paths, true);
+  }
+
+  /**
+   * Get the status of many files in one call, without following symlinks.
+   *
+   * Failed lookups do not raise an exception; their errno values are
+   * reported per entry in the result.
+   *
+   * @param paths The paths to stat. Elements must not be null.
+   * @return The status of each path, in order.
+   */
+  public CephStatBatch lstatBatch(String[] paths) {
+    return stat_batch(paths, false);
+  }
+
+  private CephStatBatch stat_batch(String[] paths, boolean follow) {
+    CephStatBatch batch = new CephStatBatch(paths.length);
+    rlock.lock();
+    try {
+      backend.stat_batch(paths, follow, batch);
+    } finally {
+      rlock.unlock();
+    }
+    return batch;
+  }
+
+  /**
+   * Get selected file status.
+   *
+   * Only the fields in wantMask are guaranteed to be fetched, which lets
+   * the client skip asking the MDS for capabilities it does not need. With
+   * AT_STATX_DONT_SYNC the client answers from its cache where it can,
+   * without syncing attributes that other clients may be changing; the
+   * result may then be stale. out.mask tells which fields were returned,
+   * which may be more or fewer than requested.
+   *
+   * @param path Path of file to stat.
+   * @param wantMask The fields wanted, a combination of STATX_*.
+   * @param flags A combination of AT_SYMLINK_NOFOLLOW and
+   *        AT_STATX_DONT_SYNC, or 0.
+   * @param out CephStatx structure to hold file status.
+   */
+  public void statx(String path, int wantMask, int flags, CephStatx out)
+    throws FileNotFoundException, CephNotDirectoryException {
+    if (out == null)
+      throw new NullPointerException("@out is null");
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    int mask;
     rlock.lock();
     try {
-      native_ceph_lstat(instance_ptr, path, stat);
+      mask = backend.statx(path, packed, wantMask, flags);
     } finally {
       rlock.unlock();
     }
+    out.unpack(packed, mask);
   }
 
-  private static native int native_ceph_lstat(long mountp, String path, CephStat stat);
+  private static native int native_ceph_statx(long mountp, String path, long[] packed,
+      int want, int flags);
+
+  private static native int native_ceph_stat_batch(long mountp, String[] paths, boolean follow,
+      CephStatBatch batch);
 
   /**
    * Set file attributes.
@@ -486,7 +952,7 @@ public class CephMount {
   public void setattr(String path, CephStat stat, int mask) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_setattr(instance_ptr, path, stat, mask);
+      backend.setattr(path, stat, mask);
     } finally {
       rlock.unlock();
     }
@@ -503,7 +969,7 @@ public class CephMount {
   public void chmod(String path, int mode) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_chmod(instance_ptr, path, mode);
+      backend.chmod(path, mode);
     } finally {
       rlock.unlock();
     }
@@ -520,7 +986,7 @@ public class CephMount {
   public void fchmod(int fd, int mode) {
     rlock.lock();
     try {
-      native_ceph_fchmod(instance_ptr, fd, mode);
+      backend.fchmod(fd, mode);
     } finally {
       rlock.unlock();
     }
@@ -537,7 +1003,7 @@ public class CephMount {
   public void truncate(String path, long size) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_truncate(instance_ptr, path, size);
+      backend.truncate(path, size);
     } finally {
       rlock.unlock();
     }
@@ -556,7 +1022,7 @@ public class CephMount {
   public int open(String path, int flags, int mode) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_open(instance_ptr, path, flags, mode);
+      return backend.open(path, flags, mode);
     } finally {
       rlock.unlock();
     }
@@ -580,7 +1046,7 @@ public class CephMount {
       int object_size, String data_pool) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_open_layout(instance_ptr, path, flags, mode, stripe_unit,
+      return backend.open_layout(path, flags, mode, stripe_unit,
           stripe_count, object_size, data_pool);
     } finally {
       rlock.unlock();
@@ -598,7 +1064,7 @@ public class CephMount {
   public void close(int fd) {
     rlock.lock();
     try {
-      native_ceph_close(instance_ptr, fd);
+      backend.close(fd);
     } finally {
       rlock.unlock();
     }
@@ -617,7 +1083,7 @@ public class CephMount {
   public long lseek(int fd, long offset, int whence) {
     rlock.lock();
     try {
-      return native_ceph_lseek(instance_ptr, fd, offset, whence);
+      return backend.lseek(fd, offset, whence);
     } finally {
       rlock.unlock();
     }
@@ -637,7 +1103,7 @@ public class CephMount {
   public long read(int fd, byte[] buf, long size, long offset) {
     rlock.lock();
     try {
-      return native_ceph_read(instance_ptr, fd, buf, size, offset);
+      return backend.read(fd, buf, size, offset);
     } finally {
       rlock.unlock();
     }
@@ -657,7 +1123,7 @@ public class CephMount {
   public long write(int fd, byte[] buf, long size, long offset) {
     rlock.lock();
     try {
-      return native_ceph_write(instance_ptr, fd, buf, size, offset);
+      return backend.write(fd, buf, size, offset);
     } finally {
       rlock.unlock();
     }
@@ -666,95 +1132,335 @@ public class CephMount {
   private static native long native_ceph_write(long mountp, int fd, byte[] buf, long size, long offset);
 
   /**
-   * Truncate a file.
+   * Read from a file into a buffer.
    *
-   * @param fd File descriptor of the file to truncate.
-   * @param size New file size.
+   * Data is read into the buffer starting at its position, up to its limit,
+   * and the position is advanced by the number of bytes read. Direct buffers
+   * are filled in place. For heap buffers only the bytes actually read are
+   * copied into the backing array.
+   *
+   * @param fd The file descriptor.
+   * @param dst Buffer for data read.
+   * @param offset Offset to read from (-1 for current position).
+   * @return The number of bytes read.
    */
-  public void ftruncate(int fd, long size) {
+  public long read(int fd, ByteBuffer dst, long offset) {
+    if (dst.isReadOnly())
+      throw new ReadOnlyBufferException();
+    int pos = dst.position();
+    int len = dst.remaining();
+    long ret;
     rlock.lock();
     try {
-      native_ceph_ftruncate(instance_ptr, fd, size);
+      if (dst.isDirect())
+        ret = backend.read_direct(fd, dst, pos, len, offset);
+      else
+        ret = backend.read_region(fd, dst.array(),
+            dst.arrayOffset() + pos, len, offset);
     } finally {
       rlock.unlock();
     }
+    dst.position(pos + (int)ret);
+    return ret;
   }
 
-  private static native int native_ceph_ftruncate(long mountp, int fd, long size);
+  private static native long native_ceph_read_direct(long mountp, int fd, ByteBuffer buf, int pos, int size, long offset);
+
+  private static native long native_ceph_read_region(long mountp, int fd, byte[] buf, int pos, int size, long offset);
 
   /**
-   * Synchronize a file with the file system.
+   * Write to a file from a buffer.
    *
-   * @param fd File descriptor to synchronize.
-   * @param dataonly Synchronize only data.
+   * Data is written from the buffer starting at its position, up to its
+   * limit, and the position is advanced by the number of bytes written.
+   * Direct buffers are passed to libcephfs in place.
+   *
+   * @param fd The file descriptor.
+   * @param src Buffer to write.
+   * @param offset Offset to write from (-1 for current position).
+   * @return The number of bytes written.
    */
-  public void fsync(int fd, boolean dataonly) {
+  public long write(int fd, ByteBuffer src, long offset) {
+    int pos = src.position();
+    int len = src.remaining();
+    long ret;
     rlock.lock();
     try {
-      native_ceph_fsync(instance_ptr, fd, dataonly);
+      if (src.isDirect()) {
+        ret = backend.write_direct(fd, src, pos, len, offset);
+      } else if (src.hasArray()) {
+        ret = backend.write_region(fd, src.array(),
+            src.arrayOffset() + pos, len, offset);
+      } else {
+        /* read-only heap buffer: no access to the backing array */
+        byte[] tmp = new byte[len];
+        src.duplicate().get(tmp);
+        ret = backend.write_region(fd, tmp, 0, len, offset);
+      }
     } finally {
       rlock.unlock();
     }
+    src.position(pos + (int)ret);
+    return ret;
   }
 
-  private static native int native_ceph_fsync(long mountp, int fd, boolean dataonly);
+  private static native long native_ceph_write_direct(long mountp, int fd, ByteBuffer buf, int pos, int size, long offset);
+
+  private static native long native_ceph_write_region(long mountp, int fd, byte[] buf, int pos, int size, long offset);
 
   /**
-   * Apply or remove an advisory lock.
+   * Read from a file into several buffers with a single call.
    *
-   * @param fd File descriptor to lock or unlock.
-   * @param operation the advisory lock operation to be performed on the file
-   * descriptor among LOCK_SH (shared lock), LOCK_EX (exclusive lock),
-   * or LOCK_UN (remove lock). The LOCK_NB value can be ORed to perform a
-   * non-blocking operation.
-   * @param owner the user-supplied owner identifier (an arbitrary integer)
+   * Buffers are filled in order, and the position of each buffer is
+   * advanced by the number of bytes stored in it. Direct buffers are
+   * filled in place.
+   *
+   * @param fd The file descriptor to read from.
+   * @param dsts The buffers to read into.
+   * @param offset Offset to read from (-1 for current position).
+   * @return The number of bytes read.
    */
-  public void flock(int fd, int operation, long owner) throws IOException {
-    rlock.lock();
-    try {
-      native_ceph_flock(instance_ptr, fd, operation, owner);
-    } finally {
-      rlock.unlock();
+  public long preadv(int fd, ByteBuffer[] dsts, long offset) {
+    for (ByteBuffer dst : dsts) {
+      if (dst.isReadOnly())
+        throw new ReadOnlyBufferException();
     }
+    return vectored_io(fd, dsts, offset, false);
   }
 
-  private static native int native_ceph_flock(long mountp, int fd, int operation, long owner);
-
   /**
-   * Get file status.
+   * Write several buffers to a file with a single call.
    *
-   * @param fd The file descriptor.
-   * @param stat The object in which to store the status.
+   * Buffers are written in order, and the position of each buffer is
+   * advanced by the number of bytes written from it. Direct buffers are
+   * written in place.
+   *
+   * @param fd The file descriptor to write to.
+   * @param srcs The buffers to write.
+   * @param offset Offset to write to (-1 for current position).
+   * @return The number of bytes written.
    */
-  public void fstat(int fd, CephStat stat) {
+  public long pwritev(int fd, ByteBuffer[] srcs, long offset) {
+    return vectored_io(fd, srcs, offset, true);
+  }
+
+  private long vectored_io(int fd, ByteBuffer[] bufs, long offset, boolean write) {
+    int count = bufs.length;
+    ByteBuffer[] direct = new ByteBuffer[count];
+    byte[][] heap = new byte[count][];
+    int[] pos = new int[count];
+    int[] len = new int[count];
+
+    for (int i = 0; i < count; i++) {
+      ByteBuffer buf = bufs[i];
+      len[i] = buf.remaining();
+      if (buf.isDirect()) {
+        direct[i] = buf;
+        pos[i] = buf.position();
+      } else if (buf.hasArray()) {
+        heap[i] = buf.array();
+        pos[i] = buf.arrayOffset() + buf.position();
+      } else {
+        /* read-only heap buffer (writes only): no access to the backing array */
+        heap[i] = new byte[len[i]];
+        buf.duplicate().get(heap[i]);
+      }
+    }
+
+    long ret;
     rlock.lock();
     try {
-      native_ceph_fstat(instance_ptr, fd, stat);
+      if (write)
+        ret = backend.pwritev(fd, direct, heap, pos, len, offset);
+      else
+        ret = backend.preadv(fd, direct, heap, pos, len, offset);
     } finally {
       rlock.unlock();
     }
+
+    long left = ret;
+    for (int i = 0; i < count && left > 0; i++) {
+      int n = (int)Math.min(left, len[i]);
+      bufs[i].position(bufs[i].position() + n);
+      left -= n;
+    }
+    return ret;
   }
 
-  private static native int native_ceph_fstat(long mountp, int fd, CephStat stat);
+  private static native long native_ceph_preadv(long mountp, int fd, ByteBuffer[] direct,
+      byte[][] heap, int[] pos, int[] len, long offset);
+
+  private static native long native_ceph_pwritev(long mountp, int fd, ByteBuffer[] direct,
+      byte[][] heap, int[] pos, int[] len, long offset);
 
   /**
-   * Synchronize the client with the file system.
-   */
-  public void sync_fs() {
+   * Copy data between two open files.
+   *
+   * The data is moved entirely in native code and never passes through the
+   * Java heap. Copying stops early if the end of the source file is reached,
+   * or if an error occurs after some data was copied, in which case the
+   * count copied so far is returned; an error is only thrown when nothing
+   * could be copied. With off_in -1 the position of fd_in is advanced by
+   * exactly the count copied, so the next read resumes after the last
+   * byte written.
+   *
+   * @param fd_in The file descriptor to copy from.
+   * @param off_in Offset to read from (-1 for current position).
+   * @param fd_out The file descriptor to copy to.
+   * @param off_out Offset to write to (-1 for current position).
+   * @param len Number of bytes to copy.
+   * @return The number of bytes copied.
+   */
+  public long copy_file_range(int fd_in, long off_in, int fd_out, long off_out, long len) {
     rlock.lock();
     try {
-      native_ceph_sync_fs(instance_ptr);
+      return backend.copy_file_range(fd_in, off_in, fd_out, off_out, len);
     } finally {
       rlock.unlock();
     }
   }
 
-  private static native int native_ceph_sync_fs(long mountp);
+  private static native long native_ceph_copy_file_range(long mountp, int fd_in, long off_in,
+      int fd_out, long off_out, long len);
 
   /**
-   * Get an extended attribute value.
+   * Truncate a file.
    *
-   * If the buffer is large enough to hold the entire attribute value, or
+   * @param fd File descriptor of the file to truncate.
+   * @param size New file size.
+   */
+  public void ftruncate(int fd, long size) {
+    rlock.lock();
+    try {
+      backend.ftruncate(fd, size);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_ftruncate(long mountp, int fd, long size);
+
+  /**
+   * Synchronize a file with the file system.
+   *
+   * @param fd File descriptor to synchronize.
+   * @param dataonly Synchronize only data.
+   */
+  public void fsync(int fd, boolean dataonly) {
+    rlock.lock();
+    try {
+      backend.fsync(fd, dataonly);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_fsync(long mountp, int fd, boolean dataonly);
+
+  /**
+   * Apply or remove an advisory lock.
+   *
+   * @param fd File descriptor to lock or unlock.
+   * @param operation the advisory lock operation to be performed on the file
+   * descriptor among LOCK_SH (shared lock), LOCK_EX (exclusive lock),
+   * or LOCK_UN (remove lock). The LOCK_NB value can be ORed to perform a
+   * non-blocking operation.
+   * @param owner the user-supplied owner identifier (an arbitrary integer)
+   * @throws CephWouldBlockException if LOCK_NB is given and the lock is
+   *         held by another owner.
+   */
+  public void flock(int fd, int operation, long owner) throws IOException {
+    rlock.lock();
+    try {
+      backend.flock(fd, operation, owner);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_flock(long mountp, int fd, int operation, long owner);
+
+  /**
+   * Get file status.
+   *
+   * @param fd The file descriptor.
+   * @param stat The object in which to store the status.
+   */
+  public void fstat(int fd, CephStat stat) {
+    if (stat == null)
+      throw new NullPointerException("@stat is null");
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    rlock.lock();
+    try {
+      backend.fstat(fd, packed);
+    } finally {
+      rlock.unlock();
+    }
+    stat.unpack(packed, 0);
+  }
+
+  /**
+   * Get file status packed into an array.
+   *
+   * @param fd The file descriptor.
+   * @param packed Array of at least CephStat.PACKED_LENGTH elements.
+   * @see #statPacked
+   */
+  public void fstatPacked(int fd, long[] packed) {
+    rlock.lock();
+    try {
+      backend.fstatx(fd, packed, STATX_PACKED, 0);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_fstat(long mountp, int fd, long[] packed);
+
+  /**
+   * Get selected file status.
+   *
+   * @param fd The file descriptor.
+   * @param wantMask The fields wanted, a combination of STATX_*.
+   * @param flags AT_STATX_DONT_SYNC or 0.
+   * @param out CephStatx structure to hold file status.
+   * @see #statx
+   */
+  public void fstatx(int fd, int wantMask, int flags, CephStatx out) {
+    if (out == null)
+      throw new NullPointerException("@out is null");
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    int mask;
+    rlock.lock();
+    try {
+      mask = backend.fstatx(fd, packed, wantMask, flags);
+    } finally {
+      rlock.unlock();
+    }
+    out.unpack(packed, mask);
+  }
+
+  private static native int native_ceph_fstatx(long mountp, int fd, long[] packed,
+      int want, int flags);
+
+  /**
+   * Synchronize the client with the file system.
+   */
+  public void sync_fs() {
+    rlock.lock();
+    try {
+      backend.sync_fs();
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_sync_fs(long mountp);
+
+  /**
+   * Get an extended attribute value.
+   *
+   * If the buffer is large enough to hold the entire attribute value, or
    * buf is null, the size of the value is returned.
    *
    * @param path File path.
@@ -766,7 +1472,7 @@ public class CephMount {
   public long getxattr(String path, String name, byte[] buf) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_getxattr(instance_ptr, path, name, buf);
+      return backend.getxattr(path, name, buf);
     } finally {
       rlock.unlock();
     }
@@ -789,7 +1495,7 @@ public class CephMount {
   public long lgetxattr(String path, String name, byte[] buf) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_lgetxattr(instance_ptr, path, name, buf);
+      return backend.lgetxattr(path, name, buf);
     } finally {
       rlock.unlock();
     }
@@ -806,7 +1512,7 @@ public class CephMount {
   public String[] listxattr(String path) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_listxattr(instance_ptr, path);
+      return backend.listxattr(path);
     } finally {
       rlock.unlock();
     }
@@ -823,7 +1529,7 @@ public class CephMount {
   public String[] llistxattr(String path) throws FileNotFoundException {
     rlock.lock();
     try {
-      return native_ceph_llistxattr(instance_ptr, path);
+      return backend.llistxattr(path);
     } finally {
       rlock.unlock();
     }
@@ -840,7 +1546,7 @@ public class CephMount {
   public void removexattr(String path, String name) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_removexattr(instance_ptr, path, name);
+      backend.removexattr(path, name);
     } finally {
       rlock.unlock();
     }
@@ -857,7 +1563,7 @@ public class CephMount {
   public void lremovexattr(String path, String name) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_lremovexattr(instance_ptr, path, name);
+      backend.lremovexattr(path, name);
     } finally {
       rlock.unlock();
     }
@@ -877,7 +1583,7 @@ public class CephMount {
   public void setxattr(String path, String name, byte[] buf, long size, int flags) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_setxattr(instance_ptr, path, name, buf, size, flags);
+      backend.setxattr(path, name, buf, size, flags);
     } finally {
       rlock.unlock();
     }
@@ -897,7 +1603,7 @@ public class CephMount {
   public void lsetxattr(String path, String name, byte[] buf, long size, int flags) throws FileNotFoundException {
     rlock.lock();
     try {
-      native_ceph_lsetxattr(instance_ptr, path, name, buf, size, flags);
+      backend.lsetxattr(path, name, buf, size, flags);
     } finally {
       rlock.unlock();
     }
@@ -905,6 +1611,74 @@ public class CephMount {
 
   private static native int native_ceph_lsetxattr(long mountp, String path, String name, byte[] buf, long size, int flags);
 
+  /**
+   * Get the recursive statistics of a directory.
+   *
+   * The statistics come from the ceph.dir.r* virtual extended attributes,
+   * which the MDS keeps up to date, so this does not walk the subtree. The
+   * values are propagated lazily and may lag recent changes. The path is
+   * resolved once, but each value is read from the MDS separately, so they
+   * are not an atomic snapshot of the subtree.
+   *
+   * @param dir The directory path.
+   * @return The statistics of the subtree below dir.
+   * @throws IOException If dir is not a directory (ENODATA).
+   */
+  public CephDirStats getDirRecursiveStats(String dir)
+    throws FileNotFoundException, CephNotDirectoryException {
+    long[] packed = new long[CephDirStats.PACKED_LENGTH];
+    rlock.lock();
+    try {
+      backend.get_dir_rstats(dir, packed);
+    } finally {
+      rlock.unlock();
+    }
+    CephDirStats stats = new CephDirStats();
+    stats.unpack(packed, 0);
+    return stats;
+  }
+
+  /**
+   * Get the recursive statistics of many directories in one call.
+   *
+   * Failed lookups do not raise an exception: their entry in the result is
+   * null and, if errors is given, errors[i] holds the positive errno value
+   * (e.g. ENOENT, or ENODATA for a path that is not a directory).
+   *
+   * @param dirs The directory paths. Elements must not be null.
+   * @param errors Array of at least dirs.length elements to receive the
+   *               errno of each entry, zero on success; or null.
+   * @return The statistics of each directory, in order.
+   */
+  public CephDirStats[] getDirRecursiveStats(String[] dirs, int[] errors) {
+    if (dirs == null)
+      throw new NullPointerException("@dirs is null");
+    if (errors == null)
+      errors = new int[dirs.length];
+    else if (errors.length < dirs.length)
+      throw new IndexOutOfBoundsException("@errors is too short");
+    long[] packed = new long[dirs.length * CephDirStats.PACKED_LENGTH];
+    rlock.lock();
+    try {
+      backend.get_dir_rstats_batch(dirs, packed, errors);
+    } finally {
+      rlock.unlock();
+    }
+    CephDirStats[] result = new CephDirStats[dirs.length];
+    for (int i = 0; i < dirs.length; i++) {
+      if (errors[i] != 0)
+        continue;
+      result[i] = new CephDirStats();
+      result[i].unpack(packed, i * CephDirStats.PACKED_LENGTH);
+    }
+    return result;
+  }
+
+  private static native int native_ceph_get_dir_rstats(long mountp, String path, long[] packed);
+
+  private static native int native_ceph_get_dir_rstats_batch(long mountp, String[] paths,
+      long[] packed, int[] errors);
+
   /**
    * Get the stripe unit of a file.
    *
@@ -914,7 +1688,7 @@ public class CephMount {
   public int get_file_stripe_unit(int fd) {
     rlock.lock();
     try {
-      return native_ceph_get_file_stripe_unit(instance_ptr, fd);
+      return backend.get_file_stripe_unit(fd);
     } finally {
       rlock.unlock();
     }
@@ -931,7 +1705,7 @@ public class CephMount {
   public String get_file_pool_name(int fd) {
     rlock.lock();
     try {
-      return native_ceph_get_file_pool_name(instance_ptr, fd);
+      return backend.get_file_pool_name(fd);
     } finally {
       rlock.unlock();
     }
@@ -947,7 +1721,7 @@ public class CephMount {
   public String get_default_data_pool_name() {
     rlock.lock();
     try {
-      return native_ceph_get_default_data_pool_name(instance_ptr);
+      return backend.get_default_data_pool_name();
     } finally {
       rlock.unlock();
     }
@@ -964,7 +1738,7 @@ public class CephMount {
   public int get_file_replication(int fd) {
     rlock.lock();
     try {
-      return native_ceph_get_file_replication(instance_ptr, fd);
+      return backend.get_file_replication(fd);
     } finally {
       rlock.unlock();
     }
@@ -972,6 +1746,77 @@ public class CephMount {
 
   private static native int native_ceph_get_file_replication(long mountp, int fd);
 
+  /**
+   * Get the layout of an open file.
+   *
+   * The layout is read in one call, together with the name and
+   * replication of its pool.
+   *
+   * @param fd The file descriptor.
+   * @return The file layout.
+   */
+  public CephFileLayout getLayout(int fd) {
+    int[] layout = new int[CephFileLayout.PACKED_LENGTH];
+    String pool;
+    rlock.lock();
+    try {
+      pool = backend.get_file_layout(fd, layout);
+    } finally {
+      rlock.unlock();
+    }
+    return new CephFileLayout(layout, pool);
+  }
+
+  private static native String native_ceph_get_file_layout(long mountp, int fd, int[] layout);
+
+  /**
+   * Get the layout of a file or directory.
+   *
+   * @param path The path.
+   * @return The layout.
+   */
+  public CephFileLayout getLayout(String path) throws FileNotFoundException {
+    int[] layout = new int[CephFileLayout.PACKED_LENGTH];
+    String pool;
+    rlock.lock();
+    try {
+      pool = backend.get_path_layout(path, layout);
+    } finally {
+      rlock.unlock();
+    }
+    return new CephFileLayout(layout, pool);
+  }
+
+  private static native String native_ceph_get_path_layout(long mountp, String path, int[] layout);
+
+  /**
+   * Set the layout of a directory.
+   *
+   * Files created below the directory afterwards get the new layout,
+   * unless a directory closer to them has its own; existing files keep
+   * theirs. The fields set in layout are applied in one update, fields
+   * left unset keep their current value.
+   *
+   * @param dir The directory path.
+   * @param layout The layout, with at least one field set.
+   */
+  public void setDirLayout(String dir, CephFileLayout layout) throws FileNotFoundException {
+    if (layout == null)
+      throw new NullPointerException("@layout is null");
+    if (layout.isEmpty())
+      throw new IllegalArgumentException("@layout has no field set");
+    rlock.lock();
+    try {
+      backend.set_dir_layout(dir, layout.getStripeUnit(), layout.getStripeCount(),
+          layout.getObjectSize(), layout.getPool());
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_set_dir_layout(long mountp, String path,
+      int stripe_unit, int stripe_count, int object_size, String pool);
+
   /**
    * Favor reading from local replicas when possible.
    *
@@ -980,7 +1825,7 @@ public class CephMount {
   public void localize_reads(boolean state) {
     rlock.lock();
     try {
-      native_ceph_localize_reads(instance_ptr, state);
+      backend.localize_reads(state);
     } finally {
       rlock.unlock();
     }
@@ -996,7 +1841,7 @@ public class CephMount {
   public int get_stripe_unit_granularity() {
     rlock.lock();
     try {
-      return native_ceph_get_stripe_unit_granularity(instance_ptr);
+      return backend.get_stripe_unit_granularity();
     } finally {
       rlock.unlock();
     }
@@ -1013,7 +1858,7 @@ public class CephMount {
   public int get_pool_id(String name) throws CephPoolException {
     rlock.lock();
     try {
-      return native_ceph_get_pool_id(instance_ptr, name);
+      return backend.get_pool_id(name);
     } catch (FileNotFoundException e) {
       throw new CephPoolException("pool name " + name + " not found");
     } finally {
@@ -1032,7 +1877,7 @@ public class CephMount {
   public int get_pool_replication(int pool_id) throws CephPoolException {
     rlock.lock();
     try {
-      return native_ceph_get_pool_replication(instance_ptr, pool_id);
+      return backend.get_pool_replication(pool_id);
     } catch (FileNotFoundException e) {
       throw new CephPoolException("pool id " + pool_id + " not found");
     } finally {
@@ -1052,7 +1897,7 @@ public class CephMount {
   public CephFileExtent get_file_extent(int fd, long offset) {
     rlock.lock();
     try {
-      return native_ceph_get_file_extent_osds(instance_ptr, fd, offset);
+      return backend.get_file_extent_osds(fd, offset);
     } finally {
       rlock.unlock();
     }
@@ -1072,7 +1917,7 @@ public class CephMount {
   public Bucket[] get_osd_crush_location(int osd) {
     rlock.lock();
     try {
-      String[] parts = native_ceph_get_osd_crush_location(instance_ptr, osd);
+      String[] parts = backend.get_osd_crush_location(osd);
       Bucket[] path = new Bucket[parts.length / 2];
       for (int i = 0; i < path.length; i++)
         path[i] = new Bucket(parts[i*2], parts[i*2+1]);
@@ -1093,11 +1938,945 @@ public class CephMount {
   public InetAddress get_osd_address(int osd) {
     rlock.lock();
     try {
-      return native_ceph_get_osd_addr(instance_ptr, osd);
+      return backend.get_osd_addr(osd);
     } finally {
       rlock.unlock();
     }
   }
 
   private static native InetAddress native_ceph_get_osd_addr(long mountp, int osd);
+
+  /**
+   * Get the extents of a range of a file with the OSDs storing them.
+   *
+   * All extents are resolved in one call, adjacent extents stored on the
+   * same OSDs are merged, and the address and CRUSH location of each OSD
+   * involved is looked up once, through the cache of getOsdInfo.
+   *
+   * @param fd The file descriptor.
+   * @param start Offset of the range.
+   * @param length Length of the range. The range is cut at the end of the
+   *               file.
+   * @return The block map of the range.
+   */
+  public CephFileBlockMap getFileBlockMap(int fd, long start, long length) {
+    if (start < 0)
+      throw new IllegalArgumentException("@start is negative");
+    if (length < 0)
+      throw new IllegalArgumentException("@length is negative");
+    CephFileExtent[] extents;
+    rlock.lock();
+    try {
+      extents = backend.get_file_extents(fd, start, length);
+    } finally {
+      rlock.unlock();
+    }
+    HashMap<Integer, CephOsdInfo> osds = new HashMap<Integer, CephOsdInfo>();
+    for (CephFileExtent extent : extents) {
+      for (int osd : extent.getOSDs()) {
+        if (!osds.containsKey(osd))
+          osds.put(osd, getOsdInfo(osd));
+      }
+    }
+    return new CephFileBlockMap(extents, osds);
+  }
+
+  private static native CephFileExtent[] native_ceph_get_file_extents(long mountp, int fd,
+      long offset, long length);
+
+  /**
+   * Get the address and CRUSH location of an OSD.
+   *
+   * Results are cached per mount, as the OSD map rarely changes them. Use
+   * clearOsdInfoCache after a change to the cluster.
+   *
+   * @param osd The OSD device id.
+   * @return The OSD information.
+   */
+  public CephOsdInfo getOsdInfo(int osd) {
+    CephOsdInfo info = osd_info.get(osd);
+    if (info == null) {
+      info = new CephOsdInfo(osd, get_osd_address(osd), get_osd_crush_location(osd));
+      CephOsdInfo prev = osd_info.putIfAbsent(osd, info);
+      if (prev != null)
+        info = prev;
+    }
+    return info;
+  }
+
+  /**
+   * Drop the OSD information cached by getOsdInfo.
+   */
+  public void clearOsdInfoCache() {
+    osd_info.clear();
+  }
+
+  /*
+   * Low-level, inode based calls. The shared mount lock only keeps
+   * unmount() out; it does not stop another thread from closing an inode
+   * or file handle while a call is using it. So every call pins the handle
+   * it passes down for its duration, and closing only drops the pin held
+   * while the handle is open: the native put or close is done by whoever
+   * drops the last pin, which may be a call still in progress on another
+   * thread. Pins are only taken and dropped under the mount lock.
+   */
+
+  private long pin_inode(CephInode inode) {
+    if (inode.getMount() != this)
+      throw new IllegalArgumentException("inode belongs to another mount");
+    while (!inode.released) {
+      int n = inode.pins.get();
+      if (n == 0)
+        break;
+      if (inode.pins.compareAndSet(n, n + 1)) {
+        /* lost a race with close(): back out */
+        if (inode.released) {
+          unpin_inode(inode);
+          break;
+        }
+        return inode.handle;
+      }
+    }
+    throw new IllegalStateException("inode is released");
+  }
+
+  private void unpin_inode(CephInode inode) {
+    if (inode.pins.decrementAndGet() == 0)
+      backend.ll_put(inode.handle);
+  }
+
+  private AtomicInteger pin_fh(long fh) throws IOException {
+    AtomicInteger pins = open_fhs.get(fh);
+    while (pins != null) {
+      int n = pins.get();
+      if (n == 0)
+        break;
+      if (pins.compareAndSet(n, n + 1)) {
+        /* lost a race with ll_close(), maybe followed by a reuse of fh */
+        if (open_fhs.get(fh) != pins) {
+          unpin_fh(fh, pins);
+          break;
+        }
+        return pins;
+      }
+    }
+    throw new IOException("Bad file descriptor");
+  }
+
+  /*
+   * Drop a pin taken by pin_fh. A close left to a call that was still using
+   * the handle has no caller to report errors to, so they are dropped.
+   */
+  private void unpin_fh(long fh, AtomicInteger pins) {
+    if (pins.decrementAndGet() != 0)
+      return;
+    try {
+      backend.ll_close(fh);
+    } catch (Exception e) {}
+  }
+
+  private CephInode ll_track(long handle) {
+    CephInode inode = new CephInode(this, handle);
+    open_inodes.add(inode);
+    return inode;
+  }
+
+  /**
+   * Get a reference to the root inode of the mount.
+   *
+   * @return The root inode, to be closed by the caller.
+   */
+  public CephInode ll_lookup_root() {
+    rlock.lock();
+    try {
+      return ll_track(backend.ll_lookup_root());
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_ll_lookup_root(long mountp);
+
+  /**
+   * Look up a name in a directory. Symlinks are not followed.
+   *
+   * @param parent The directory.
+   * @param name A single path component, or "." or "..".
+   * @return The inode, to be closed by the caller.
+   */
+  public CephInode ll_lookup(CephInode parent, String name)
+    throws FileNotFoundException, CephNotDirectoryException {
+    rlock.lock();
+    try {
+      long handle = pin_inode(parent);
+      try {
+        return ll_track(backend.ll_lookup(handle, name));
+      } finally {
+        unpin_inode(parent);
+      }
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_ll_lookup(long mountp, long parent, String name);
+
+  /**
+   * Resolve a path to an inode, following symlinks.
+   *
+   * @param path The path, absolute or relative to the working directory.
+   * @return The inode, to be closed by the caller.
+   */
+  public CephInode ll_walk(String path) throws FileNotFoundException, CephNotDirectoryException {
+    rlock.lock();
+    try {
+      return ll_track(backend.ll_walk(path));
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_ll_walk(long mountp, String path);
+
+  /*
+   * Package-private: called from CephInode when the last reference is
+   * dropped.
+   */
+  void ll_put(CephInode inode) {
+    rlock.lock();
+    try {
+      ll_put_locked(inode);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  /*
+   * Only the caller that removes the inode from open_inodes drops its open
+   * pin, so a close racing with unmount() cannot drop the reference twice.
+   */
+  private void ll_put_locked(CephInode inode) {
+    if (!open_inodes.remove(inode))
+      return;
+    inode.released = true;
+    unpin_inode(inode);
+  }
+
+  private static native int native_ceph_ll_put(long mountp, long inode);
+
+  /**
+   * Get selected status of an inode.
+   *
+   * @param inode The inode.
+   * @param wantMask The fields wanted, see statx.
+   * @param flags AT_STATX_DONT_SYNC or 0.
+   * @param out CephStatx structure to hold the status.
+   */
+  public void ll_getattr(CephInode inode, int wantMask, int flags, CephStatx out) {
+    if (out == null)
+      throw new NullPointerException("@out is null");
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    int mask;
+    rlock.lock();
+    try {
+      long handle = pin_inode(inode);
+      try {
+        mask = backend.ll_getattr(handle, packed, wantMask, flags);
+      } finally {
+        unpin_inode(inode);
+      }
+    } finally {
+      rlock.unlock();
+    }
+    out.unpack(packed, mask);
+  }
+
+  private static native int native_ceph_ll_getattr(long mountp, long inode, long[] packed,
+      int want, int flags);
+
+  /**
+   * List the names in a directory, without "." and "..".
+   *
+   * The names are read in batches; use ll_opendir to stop early or to get
+   * the status and inode of each entry.
+   *
+   * @param dir The directory.
+   * @return The names.
+   */
+  public String[] ll_readdir(CephInode dir) throws CephNotDirectoryException {
+    ArrayList<String> names = new ArrayList<String>();
+    CephDirectoryStream<String> stream = ll_opendir(dir, DIRECTORY_BATCH_SIZE, false);
+    try {
+      for (String name : stream)
+        names.add(name);
+    } catch (DirectoryIteratorException e) {
+      if (e.getCause() instanceof CephNotDirectoryException)
+        throw (CephNotDirectoryException)e.getCause();
+      throw e;
+    } finally {
+      stream.close();
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Open a directory inode for incremental listing.
+   *
+   * Each entry carries its status and its inode, fetched in the same call
+   * as the name, so the entries can be used with the other ll_* calls
+   * without a lookup. The inode of each entry returned is to be closed by
+   * the caller.
+   *
+   * @param dir The directory.
+   * @return A stream over the entries of the directory.
+   */
+  public CephDirectoryStream<CephDirEntry> ll_opendir(CephInode dir)
+    throws CephNotDirectoryException {
+    return ll_opendir(dir, DIRECTORY_BATCH_SIZE);
+  }
+
+  /**
+   * Open a directory inode for incremental listing.
+   *
+   * @param dir The directory.
+   * @param batch_size Maximum number of entries fetched per native call.
+   * @return A stream over the entries of the directory.
+   * @see #ll_opendir(CephInode)
+   */
+  public CephDirectoryStream<CephDirEntry> ll_opendir(CephInode dir, int batch_size)
+    throws CephNotDirectoryException {
+    return ll_opendir(dir, batch_size, true);
+  }
+
+  private <T> CephDirectoryStream<T> ll_opendir(CephInode dir, int batch_size, boolean with_stats)
+    throws CephNotDirectoryException {
+    if (batch_size <= 0)
+      throw new IllegalArgumentException("batch size must be positive");
+    rlock.lock();
+    try {
+      long handle = pin_inode(dir);
+      try {
+        long dirp = backend.ll_opendir(handle);
+        CephDirectoryStream<T> stream = new CephDirectoryStream<T>(this, dirp, batch_size,
+            with_stats, true);
+        open_dirs.add(stream);
+        return stream;
+      } finally {
+        unpin_inode(dir);
+      }
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_ll_opendir(long mountp, long dir);
+
+  /*
+   * Package-private: called from CephDirectoryStream. The inodes are
+   * tracked before the lock is dropped so that unmount() releases them.
+   */
+  CephDirEntry[] ll_readdirplus_batch(CephDirectoryStream<?> stream, int max) throws IOException {
+    long[] stats = new long[max * CephStat.PACKED_LENGTH];
+    long[] inodes = new long[max];
+    rlock.lock();
+    try {
+      if (stream.dirp == 0)
+        return new CephDirEntry[0];
+      String[] names = backend.ll_readdirplus_batch(stream.dirp, max, stats, inodes);
+      CephDirEntry[] entries = new CephDirEntry[names.length];
+      for (int i = 0; i < names.length; i++) {
+        CephStat stat = new CephStat();
+        stat.unpack(stats, i * CephStat.PACKED_LENGTH);
+        entries[i] = new CephDirEntry(names[i], stat, ll_track(inodes[i]));
+      }
+      return entries;
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native String[] native_ceph_ll_readdirplus_batch(long mountp, long dirp, int max,
+      long[] stats, long[] inodes) throws IOException;
+
+  private static native int native_ceph_ll_releasedir(long mountp, long dirp);
+
+  /**
+   * Open an inode.
+   *
+   * The file handle is used with ll_read, ll_write and ll_close, not with
+   * the calls taking a file descriptor. O_CREAT is not supported.
+   *
+   * @param inode The inode.
+   * @param flags Open flags, as for open().
+   * @return A file handle.
+   */
+  public long ll_open(CephInode inode, int flags) throws IOException {
+    rlock.lock();
+    try {
+      long handle = pin_inode(inode);
+      try {
+        long fh = backend.ll_open(handle, flags);
+        open_fhs.put(fh, new AtomicInteger(1));
+        return fh;
+      } finally {
+        unpin_inode(inode);
+      }
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_ll_open(long mountp, long inode, int flags);
+
+  /**
+   * Read from a file handle.
+   *
+   * @param fh The file handle.
+   * @param buf Buffer to hold the data.
+   * @param size Number of bytes to read.
+   * @param offset Offset in the file to read from.
+   * @return The number of bytes read, 0 at end of file.
+   */
+  public long ll_read(long fh, byte[] buf, long size, long offset) throws IOException {
+    rlock.lock();
+    try {
+      AtomicInteger pins = pin_fh(fh);
+      try {
+        return backend.ll_read(fh, buf, size, offset);
+      } finally {
+        unpin_fh(fh, pins);
+      }
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_ll_read(long mountp, long fh, byte[] buf, long size,
+      long offset);
+
+  /**
+   * Read from a file handle into a buffer.
+   *
+   * Data is read into the buffer starting at its position, up to its limit,
+   * and the position is advanced by the number of bytes read. Direct buffers
+   * are filled in place. For heap buffers only the bytes actually read are
+   * copied into the backing array.
+   *
+   * @param fh The file handle.
+   * @param dst Buffer for data read.
+   * @param offset Offset in the file to read from.
+   * @return The number of bytes read, 0 at end of file.
+   */
+  public long ll_read(long fh, ByteBuffer dst, long offset) throws IOException {
+    if (dst.isReadOnly())
+      throw new ReadOnlyBufferException();
+    int pos = dst.position();
+    int len = dst.remaining();
+    long ret;
+    rlock.lock();
+    try {
+      AtomicInteger pins = pin_fh(fh);
+      try {
+        if (dst.isDirect())
+          ret = backend.ll_read_direct(fh, dst, pos, len, offset);
+        else
+          ret = backend.ll_read_region(fh, dst.array(),
+              dst.arrayOffset() + pos, len, offset);
+      } finally {
+        unpin_fh(fh, pins);
+      }
+    } finally {
+      rlock.unlock();
+    }
+    dst.position(pos + (int)ret);
+    return ret;
+  }
+
+  private static native long native_ceph_ll_read_direct(long mountp, long fh, ByteBuffer buf,
+      int pos, int size, long offset);
+
+  private static native long native_ceph_ll_read_region(long mountp, long fh, byte[] buf,
+      int pos, int size, long offset);
+
+  /**
+   * Write to a file handle.
+   *
+   * @param fh The file handle.
+   * @param buf The data to write.
+   * @param size Number of bytes to write.
+   * @param offset Offset in the file to write at.
+   * @return The number of bytes written.
+   */
+  public long ll_write(long fh, byte[] buf, long size, long offset) throws IOException {
+    rlock.lock();
+    try {
+      AtomicInteger pins = pin_fh(fh);
+      try {
+        return backend.ll_write(fh, buf, size, offset);
+      } finally {
+        unpin_fh(fh, pins);
+      }
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native long native_ceph_ll_write(long mountp, long fh, byte[] buf, long size,
+      long offset);
+
+  /**
+   * Write to a file handle from a buffer.
+   *
+   * Data is written from the buffer starting at its position, up to its
+   * limit, and the position is advanced by the number of bytes written.
+   * Direct buffers are passed to libcephfs in place.
+   *
+   * @param fh The file handle.
+   * @param src Buffer to write.
+   * @param offset Offset in the file to write at.
+   * @return The number of bytes written.
+   */
+  public long ll_write(long fh, ByteBuffer src, long offset) throws IOException {
+    int pos = src.position();
+    int len = src.remaining();
+    long ret;
+    rlock.lock();
+    try {
+      AtomicInteger pins = pin_fh(fh);
+      try {
+        if (src.isDirect()) {
+          ret = backend.ll_write_direct(fh, src, pos, len, offset);
+        } else if (src.hasArray()) {
+          ret = backend.ll_write_region(fh, src.array(),
+              src.arrayOffset() + pos, len, offset);
+        } else {
+          /* read-only heap buffer: no access to the backing array */
+          byte[] tmp = new byte[len];
+          src.duplicate().get(tmp);
+          ret = backend.ll_write_region(fh, tmp, 0, len, offset);
+        }
+      } finally {
+        unpin_fh(fh, pins);
+      }
+    } finally {
+      rlock.unlock();
+    }
+    src.position(pos + (int)ret);
+    return ret;
+  }
+
+  private static native long native_ceph_ll_write_direct(long mountp, long fh, ByteBuffer buf,
+      int pos, int size, long offset);
+
+  private static native long native_ceph_ll_write_region(long mountp, long fh, byte[] buf,
+      int pos, int size, long offset);
+
+  /**
+   * Close a file handle.
+   *
+   * If another thread is reading or writing through the handle, the handle
+   * is closed when that call returns, and errors from closing it are then
+   * not reported.
+   *
+   * @param fh The file handle.
+   */
+  public void ll_close(long fh) throws IOException {
+    rlock.lock();
+    try {
+      AtomicInteger pins = open_fhs.remove(fh);
+      if (pins == null)
+        throw new IOException("Bad file descriptor");
+      if (pins.decrementAndGet() == 0)
+        backend.ll_close(fh);
+    } finally {
+      rlock.unlock();
+    }
+  }
+
+  private static native int native_ceph_ll_close(long mountp, long fh);
+
+  /*
+   * Backend forwarding to libcephfs through the natives above. Not final so
+   * that CephFfmBackend can replace the hot paths and keep the rest.
+   */
+  static class JniBackend implements CephBackend {
+
+    /*
+     * This is run by the class loader and will report early any problems
+     * finding or linking in the shared JNI library.
+     */
+    static {
+      loadLibrary();
+    }
+
+    final long mountp;
+
+    JniBackend(CephMount mount, String id) {
+      native_ceph_create(mount, id);
+      mountp = mount.instance_ptr;
+    }
+
+    public int mount(String root) {
+      return native_ceph_mount(mountp, root);
+    }
+
+    public int unmount() {
+      return native_ceph_unmount(mountp);
+    }
+
+    public int release() {
+      return native_ceph_release(mountp);
+    }
+
+    public int conf_read_file(String path) {
+      return native_ceph_conf_read_file(mountp, path);
+    }
+
+    public int conf_set(String option, String value) {
+      return native_ceph_conf_set(mountp, option, value);
+    }
+
+    public String conf_get(String option) {
+      return native_ceph_conf_get(mountp, option);
+    }
+
+    public int statfs(String path, CephStatVFS statvfs) {
+      return native_ceph_statfs(mountp, path, statvfs);
+    }
+
+    public String getcwd() {
+      return native_ceph_getcwd(mountp);
+    }
+
+    public int chdir(String cwd) {
+      return native_ceph_chdir(mountp, cwd);
+    }
+
+    public String[] listdir(String path) {
+      return native_ceph_listdir(mountp, path);
+    }
+
+    public long opendir(String path) {
+      return native_ceph_opendir(mountp, path);
+    }
+
+    public String[] readdir_batch(long dirp, int max) throws IOException {
+      return native_ceph_readdir_batch(mountp, dirp, max);
+    }
+
+    public String[] readdirplus_batch(long dirp, int max, long[] stats) throws IOException {
+      return native_ceph_readdirplus_batch(mountp, dirp, max, stats);
+    }
+
+    public int closedir(long dirp) {
+      return native_ceph_closedir(mountp, dirp);
+    }
+
+    public int link(String existing, String newname) {
+      return native_ceph_link(mountp, existing, newname);
+    }
+
+    public int unlink(String path) {
+      return native_ceph_unlink(mountp, path);
+    }
+
+    public int rename(String from, String to) {
+      return native_ceph_rename(mountp, from, to);
+    }
+
+    public int mkdir(String path, int mode) {
+      return native_ceph_mkdir(mountp, path, mode);
+    }
+
+    public int mkdirs(String path, int mode) {
+      return native_ceph_mkdirs(mountp, path, mode);
+    }
+
+    public int rmdir(String path) {
+      return native_ceph_rmdir(mountp, path);
+    }
+
+    public String readlink(String path) {
+      return native_ceph_readlink(mountp, path);
+    }
+
+    public int symlink(String existing, String newname) {
+      return native_ceph_symlink(mountp, existing, newname);
+    }
+
+    public int stat(String path, long[] packed) {
+      return native_ceph_stat(mountp, path, packed);
+    }
+
+    public int lstat(String path, long[] packed) {
+      return native_ceph_lstat(mountp, path, packed);
+    }
+
+    public int stat_batch(String[] paths, boolean follow, CephStatBatch batch) {
+      return native_ceph_stat_batch(mountp, paths, follow, batch);
+    }
+
+    public int statx(String path, long[] packed, int want, int flags) {
+      return native_ceph_statx(mountp, path, packed, want, flags);
+    }
+
+    public int setattr(String relpath, CephStat stat, int mask) {
+      return native_ceph_setattr(mountp, relpath, stat, mask);
+    }
+
+    public int chmod(String path, int mode) {
+      return native_ceph_chmod(mountp, path, mode);
+    }
+
+    public int fchmod(int fd, int mode) {
+      return native_ceph_fchmod(mountp, fd, mode);
+    }
+
+    public int truncate(String path, long size) {
+      return native_ceph_truncate(mountp, path, size);
+    }
+
+    public int open(String path, int flags, int mode) {
+      return native_ceph_open(mountp, path, flags, mode);
+    }
+
+    public int open_layout(String path, int flags, int mode, int stripe_unit, int stripe_count, int object_size, String data_pool) {
+      return native_ceph_open_layout(mountp, path, flags, mode, stripe_unit, stripe_count, object_size, data_pool);
+    }
+
+    public int close(int fd) {
+      return native_ceph_close(mountp, fd);
+    }
+
+    public long lseek(int fd, long offset, int whence) {
+      return native_ceph_lseek(mountp, fd, offset, whence);
+    }
+
+    public long read(int fd, byte[] buf, long size, long offset) {
+      return native_ceph_read(mountp, fd, buf, size, offset);
+    }
+
+    public long write(int fd, byte[] buf, long size, long offset) {
+      return native_ceph_write(mountp, fd, buf, size, offset);
+    }
+
+    public long read_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+      return native_ceph_read_direct(mountp, fd, buf, pos, size, offset);
+    }
+
+    public long read_region(int fd, byte[] buf, int pos, int size, long offset) {
+      return native_ceph_read_region(mountp, fd, buf, pos, size, offset);
+    }
+
+    public long write_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+      return native_ceph_write_direct(mountp, fd, buf, pos, size, offset);
+    }
+
+    public long write_region(int fd, byte[] buf, int pos, int size, long offset) {
+      return native_ceph_write_region(mountp, fd, buf, pos, size, offset);
+    }
+
+    public long preadv(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len, long offset) {
+      return native_ceph_preadv(mountp, fd, direct, heap, pos, len, offset);
+    }
+
+    public long pwritev(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len, long offset) {
+      return native_ceph_pwritev(mountp, fd, direct, heap, pos, len, offset);
+    }
+
+    public long copy_file_range(int fd_in, long off_in, int fd_out, long off_out, long len) {
+      return native_ceph_copy_file_range(mountp, fd_in, off_in, fd_out, off_out, len);
+    }
+
+    public int ftruncate(int fd, long size) {
+      return native_ceph_ftruncate(mountp, fd, size);
+    }
+
+    public int fsync(int fd, boolean dataonly) {
+      return native_ceph_fsync(mountp, fd, dataonly);
+    }
+
+    public int flock(int fd, int operation, long owner) {
+      return native_ceph_flock(mountp, fd, operation, owner);
+    }
+
+    public int fstat(int fd, long[] packed) {
+      return native_ceph_fstat(mountp, fd, packed);
+    }
+
+    public int fstatx(int fd, long[] packed, int want, int flags) {
+      return native_ceph_fstatx(mountp, fd, packed, want, flags);
+    }
+
+    public int sync_fs() {
+      return native_ceph_sync_fs(mountp);
+    }
+
+    public long getxattr(String path, String name, byte[] buf) {
+      return native_ceph_getxattr(mountp, path, name, buf);
+    }
+
+    public long lgetxattr(String path, String name, byte[] buf) {
+      return native_ceph_lgetxattr(mountp, path, name, buf);
+    }
+
+    public String[] listxattr(String path) {
+      return native_ceph_listxattr(mountp, path);
+    }
+
+    public String[] llistxattr(String path) {
+      return native_ceph_llistxattr(mountp, path);
+    }
+
+    public int removexattr(String path, String name) {
+      return native_ceph_removexattr(mountp, path, name);
+    }
+
+    public int lremovexattr(String path, String name) {
+      return native_ceph_lremovexattr(mountp, path, name);
+    }
+
+    public int setxattr(String path, String name, byte[] buf, long size, int flags) {
+      return native_ceph_setxattr(mountp, path, name, buf, size, flags);
+    }
+
+    public int lsetxattr(String path, String name, byte[] buf, long size, int flags) {
+      return native_ceph_lsetxattr(mountp, path, name, buf, size, flags);
+    }
+
+    public int get_dir_rstats(String path, long[] packed) {
+      return native_ceph_get_dir_rstats(mountp, path, packed);
+    }
+
+    public int get_dir_rstats_batch(String[] paths, long[] packed, int[] errors) {
+      return native_ceph_get_dir_rstats_batch(mountp, paths, packed, errors);
+    }
+
+    public int get_file_stripe_unit(int fd) {
+      return native_ceph_get_file_stripe_unit(mountp, fd);
+    }
+
+    public String get_file_pool_name(int fd) {
+      return native_ceph_get_file_pool_name(mountp, fd);
+    }
+
+    public String get_default_data_pool_name() {
+      return native_ceph_get_default_data_pool_name(mountp);
+    }
+
+    public int get_file_replication(int fd) {
+      return native_ceph_get_file_replication(mountp, fd);
+    }
+
+    public String get_file_layout(int fd, int[] layout) {
+      return native_ceph_get_file_layout(mountp, fd, layout);
+    }
+
+    public String get_path_layout(String path, int[] layout) {
+      return native_ceph_get_path_layout(mountp, path, layout);
+    }
+
+    public int set_dir_layout(String path, int stripe_unit, int stripe_count, int object_size,
+        String pool) {
+      return native_ceph_set_dir_layout(mountp, path, stripe_unit, stripe_count, object_size,
+          pool);
+    }
+
+    public int localize_reads(boolean on) {
+      return native_ceph_localize_reads(mountp, on);
+    }
+
+    public int get_stripe_unit_granularity() {
+      return native_ceph_get_stripe_unit_granularity(mountp);
+    }
+
+    public int get_pool_id(String name) throws FileNotFoundException {
+      return native_ceph_get_pool_id(mountp, name);
+    }
+
+    public int get_pool_replication(int pool_id) throws FileNotFoundException {
+      return native_ceph_get_pool_replication(mountp, pool_id);
+    }
+
+    public CephFileExtent get_file_extent_osds(int fd, long offset) {
+      return native_ceph_get_file_extent_osds(mountp, fd, offset);
+    }
+
+    public String[] get_osd_crush_location(int osd) {
+      return native_ceph_get_osd_crush_location(mountp, osd);
+    }
+
+    public InetAddress get_osd_addr(int osd) {
+      return native_ceph_get_osd_addr(mountp, osd);
+    }
+
+    public CephFileExtent[] get_file_extents(int fd, long offset, long length) {
+      return native_ceph_get_file_extents(mountp, fd, offset, length);
+    }
+
+    public long ll_lookup_root() {
+      return native_ceph_ll_lookup_root(mountp);
+    }
+
+    public long ll_lookup(long parent, String name) {
+      return native_ceph_ll_lookup(mountp, parent, name);
+    }
+
+    public long ll_walk(String path) {
+      return native_ceph_ll_walk(mountp, path);
+    }
+
+    public int ll_put(long inode) {
+      return native_ceph_ll_put(mountp, inode);
+    }
+
+    public int ll_getattr(long inode, long[] packed, int want, int flags) {
+      return native_ceph_ll_getattr(mountp, inode, packed, want, flags);
+    }
+
+    public long ll_opendir(long dir) {
+      return native_ceph_ll_opendir(mountp, dir);
+    }
+
+    public String[] ll_readdirplus_batch(long dirp, int max, long[] stats, long[] inodes)
+      throws IOException {
+      return native_ceph_ll_readdirplus_batch(mountp, dirp, max, stats, inodes);
+    }
+
+    public int ll_releasedir(long dirp) {
+      return native_ceph_ll_releasedir(mountp, dirp);
+    }
+
+    public long ll_open(long inode, int flags) {
+      return native_ceph_ll_open(mountp, inode, flags);
+    }
+
+    public long ll_read(long fh, byte[] buf, long size, long offset) {
+      return native_ceph_ll_read(mountp, fh, buf, size, offset);
+    }
+
+    public long ll_read_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+      return native_ceph_ll_read_direct(mountp, fh, buf, pos, size, offset);
+    }
+
+    public long ll_read_region(long fh, byte[] buf, int pos, int size, long offset) {
+      return native_ceph_ll_read_region(mountp, fh, buf, pos, size, offset);
+    }
+
+    public long ll_write(long fh, byte[] buf, long size, long offset) {
+      return native_ceph_ll_write(mountp, fh, buf, size, offset);
+    }
+
+    public long ll_write_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+      return native_ceph_ll_write_direct(mountp, fh, buf, pos, size, offset);
+    }
+
+    public long ll_write_region(long fh, byte[] buf, int pos, int size, long offset) {
+      return native_ceph_ll_write_region(mountp, fh, buf, pos, size, offset);
+    }
+
+    public int ll_close(long fh) {
+      return native_ceph_ll_close(mountp, fh);
+    }
+  }
 }
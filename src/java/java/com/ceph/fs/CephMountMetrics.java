@@ -0,0 +1,302 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Call counts, error counts and latency histograms of the operations of a
+ * CephMount, and the bytes it read and wrote.
+ *
+ * Metrics are collected by a backend wrapped around the real one, so a
+ * mount without metrics runs exactly the code it would otherwise. Mounts
+ * are instrumented when created with a provider from {@link #instrument},
+ * or when the com.ceph.fs.metrics system property is "true"; their metrics
+ * are returned by CephMount.getMetrics() and published as an MXBean while
+ * they are mounted.
+ *
+ * Latencies are those of the backend call, in nanoseconds, and do not
+ * include waiting for the mount lock. Configuration calls and releasing
+ * handles are not counted.
+ */
+public class CephMountMetrics implements CephMountMetricsMXBean {
+
+  /* System property instrumenting every CephMount when "true" */
+  static final String METRICS_PROPERTY = "com.ceph.fs.metrics";
+
+  /**
+   * Operations counted. Variants of a call share its operation: READ
+   * covers reads into arrays, direct buffers and vectors and through
+   * ll_read, OPEN covers open with a layout and ll_open, and so on.
+   */
+  public enum Op {
+    MOUNT, UNMOUNT, STATFS, CHDIR,
+    LISTDIR, OPENDIR, READDIR, CLOSEDIR,
+    LINK, UNLINK, RENAME, MKDIR, RMDIR, READLINK, SYMLINK,
+    STAT, LSTAT, STAT_BATCH, STATX, FSTAT, SETATTR, TRUNCATE,
+    OPEN, CLOSE, LSEEK, READ, WRITE, COPY_FILE_RANGE, FTRUNCATE, FSYNC, FLOCK, SYNC_FS,
+    GETXATTR, SETXATTR, LISTXATTR, REMOVEXATTR,
+    DIR_RSTATS, LAYOUT, PLACEMENT, LOOKUP;
+
+    private final String name = name().toLowerCase(Locale.ROOT);
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static final Op[] OPS = Op.values();
+
+  private static final AtomicLong next_instance = new AtomicLong();
+
+  private static final class Counters {
+    final LongAdder count = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    final CephLatencyHistogram histogram = new CephLatencyHistogram();
+  }
+
+  private final String id;
+  private final long instance = next_instance.getAndIncrement();
+  private final Counters[] counters = new Counters[OPS.length];
+  private final LongAdder bytes_read = new LongAdder();
+  private final LongAdder bytes_written = new LongAdder();
+
+  /* Name while registered with the platform MBean server */
+  private ObjectName registered;
+
+  CephMountMetrics(String id) {
+    this.id = id;
+    for (int i = 0; i < counters.length; i++)
+      counters[i] = new Counters();
+  }
+
+  /**
+   * Wrap a provider so that the mounts it creates collect metrics.
+   *
+   * @param provider The provider to wrap, or null for the default one.
+   * @return A provider of instrumented backends.
+   */
+  public static CephBackendProvider instrument(final CephBackendProvider provider) {
+    return new CephBackendProvider() {
+      public CephBackend create(CephMount mount, String id) {
+        CephBackendProvider p = (provider == null) ? CephMount.default_provider() : provider;
+        return instrument(p.create(mount, id), id);
+      }
+    };
+  }
+
+  static CephBackend instrument(CephBackend backend, String id) {
+    if (backend instanceof CephMetricsBackend)
+      return backend;
+    return new CephMetricsBackend(backend, new CephMountMetrics(id));
+  }
+
+  /*
+   * Called by CephMetricsBackend when an operation started at @start (a
+   * System.nanoTime() value) returns or throws.
+   */
+  void record(Op op, long start, boolean failed) {
+    long nanos = System.nanoTime() - start;
+    Counters c = counters[op.ordinal()];
+    c.count.increment();
+    if (failed)
+      c.errors.increment();
+    c.nanos.add(nanos);
+    c.max.accumulate(nanos);
+    c.histogram.record(nanos);
+  }
+
+  void addBytesRead(long bytes) {
+    if (bytes > 0)
+      bytes_read.add(bytes);
+  }
+
+  void addBytesWritten(long bytes) {
+    if (bytes > 0)
+      bytes_written.add(bytes);
+  }
+
+  public long getBytesRead() {
+    return bytes_read.sum();
+  }
+
+  public long getBytesWritten() {
+    return bytes_written.sum();
+  }
+
+  /**
+   * Get the statistics of an operation.
+   */
+  public OperationStats getOperation(Op op) {
+    return new OperationStats(counters[op.ordinal()]);
+  }
+
+  public Map<String, OperationStats> getOperations() {
+    Map<String, OperationStats> ops = new LinkedHashMap<String, OperationStats>();
+    for (Op op : OPS) {
+      if (counters[op.ordinal()].count.sum() > 0)
+        ops.put(op.toString(), getOperation(op));
+    }
+    return ops;
+  }
+
+  /**
+   * Get a latency percentile of an operation.
+   *
+   * @param op The operation.
+   * @param fraction The fraction of calls, between 0 and 1.
+   * @return The latency in nanoseconds at or under which that fraction of
+   *         the calls completed, to within 1/8, or 0 if there were none.
+   */
+  public long getLatencyPercentile(Op op, double fraction) {
+    if (fraction < 0 || fraction > 1)
+      throw new IllegalArgumentException("fraction not between 0 and 1: " + fraction);
+    return counters[op.ordinal()].histogram.percentile(fraction);
+  }
+
+  public void reset() {
+    for (Counters c : counters) {
+      c.count.reset();
+      c.errors.reset();
+      c.nanos.reset();
+      c.max.reset();
+      c.histogram.reset();
+    }
+    bytes_read.reset();
+    bytes_written.reset();
+  }
+
+  /*
+   * Publish the metrics while the mount is mounted. Failing to register
+   * must not fail the mount, so JMX errors are ignored.
+   */
+  synchronized void register() {
+    if (registered != null)
+      return;
+    try {
+      ObjectName name = new ObjectName("com.ceph.fs:type=CephMount,id=" +
+          ObjectName.quote(id == null ? "default" : id) + ",instance=" + instance);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      registered = name;
+    } catch (JMException e) {
+    }
+  }
+
+  synchronized void unregister() {
+    if (registered == null)
+      return;
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+    } catch (JMException e) {
+    }
+    registered = null;
+  }
+
+  /* The name the metrics are registered under, or null */
+  synchronized ObjectName getObjectName() {
+    return registered;
+  }
+
+  /**
+   * Statistics of one operation, as of when they were read.
+   */
+  public static final class OperationStats {
+    private final long count;
+    private final long errors;
+    private final long total_nanos;
+    private final long max_nanos;
+    private final long p50_nanos;
+    private final long p90_nanos;
+    private final long p99_nanos;
+    private final long p999_nanos;
+
+    private OperationStats(Counters c) {
+      count = c.count.sum();
+      errors = c.errors.sum();
+      total_nanos = c.nanos.sum();
+      max_nanos = c.max.get();
+      p50_nanos = c.histogram.percentile(0.5);
+      p90_nanos = c.histogram.percentile(0.9);
+      p99_nanos = c.histogram.percentile(0.99);
+      p999_nanos = c.histogram.percentile(0.999);
+    }
+
+    /**
+     * Get the number of calls, including failed ones.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Get the number of calls that threw.
+     */
+    public long getErrors() {
+      return errors;
+    }
+
+    public long getTotalNanos() {
+      return total_nanos;
+    }
+
+    public long getMeanNanos() {
+      return (count == 0) ? 0 : total_nanos / count;
+    }
+
+    public long getMaxNanos() {
+      return max_nanos;
+    }
+
+    public long getP50Nanos() {
+      return p50_nanos;
+    }
+
+    public long getP90Nanos() {
+      return p90_nanos;
+    }
+
+    public long getP99Nanos() {
+      return p99_nanos;
+    }
+
+    public long getP999Nanos() {
+      return p999_nanos;
+    }
+
+    /**
+     * Pretty print.
+     */
+    public String toString() {
+      return "count " + count + " errors " + errors + " mean " + getMeanNanos() +
+        "ns p50 " + p50_nanos + "ns p99 " + p99_nanos + "ns max " + max_nanos + "ns";
+    }
+  }
+}
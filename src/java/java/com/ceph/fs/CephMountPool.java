@@ -0,0 +1,571 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * A pool of CephMounts of the same file system, used through one facade.
+ *
+ * Each CephMount is a separate libcephfs client, with its own client lock
+ * and caches. A single mount serializes metadata work from many threads on
+ * that lock; spreading the work over several mounts lets one process scale
+ * metadata and small I/O throughput with the number of cores.
+ *
+ * Path based calls are routed to a mount chosen by a hash of the path, so
+ * calls on the same path always use the same mount and its caches. File
+ * descriptors returned by open encode the mount that opened them, and calls
+ * on a descriptor go to that mount. A descriptor of the pool is therefore
+ * only valid with the pool, never with one of its mounts; use getMountForFd
+ * and getMountFd to call a CephMount method the pool does not wrap.
+ *
+ * The mounts are distinct clients of the cluster. CephFS keeps them
+ * coherent, but alternating calls on the same file through different
+ * mounts (e.g. a path call on a file open through another mount) makes
+ * the MDS move capabilities between them. Paths should be absolute: the
+ * mounts do not share a working directory.
+ */
+public class CephMountPool {
+
+  private final CephMount[] mounts;
+
+  /**
+   * Create a pool of mounts with a specific client id.
+   *
+   * @param size The number of mounts.
+   * @param id The client id of every mount.
+   */
+  public CephMountPool(int size, String id) {
+    this(size, id, null);
+  }
+
+  /**
+   * Create a pool of mounts with a specific client id and backend.
+   *
+   * @param size The number of mounts.
+   * @param id The client id of every mount.
+   * @param provider Creates the backend of each mount, or null for the
+   *                 default backend.
+   */
+  public CephMountPool(int size, String id, CephBackendProvider provider) {
+    if (size <= 0)
+      throw new IllegalArgumentException("pool size must be positive");
+    mounts = new CephMount[size];
+    for (int i = 0; i < size; i++)
+      mounts[i] = provider == null ? new CephMount(id) : new CephMount(id, provider);
+  }
+
+  /**
+   * Get the number of mounts.
+   */
+  public int size() {
+    return mounts.length;
+  }
+
+  /**
+   * Get one of the mounts.
+   *
+   * @param index The mount index, from 0 to size() - 1.
+   */
+  public CephMount getMount(int index) {
+    return mounts[index];
+  }
+
+  /**
+   * Get the mount that calls on a path are routed to.
+   *
+   * @param path The path.
+   */
+  public CephMount getMountFor(String path) {
+    return mounts[index(path)];
+  }
+
+  /**
+   * Get the mount that opened a file descriptor of the pool.
+   *
+   * @param fd A file descriptor returned by open.
+   */
+  public CephMount getMountForFd(int fd) {
+    return mounts[fd_index(fd)];
+  }
+
+  /**
+   * Get the file descriptor, valid with getMountForFd(fd), that a file
+   * descriptor of the pool stands for.
+   *
+   * @param fd A file descriptor returned by open.
+   */
+  public int getMountFd(int fd) {
+    return mount_fd(fd);
+  }
+
+  /*
+   * A null path or a negative file descriptor is sent to the first mount,
+   * which rejects it as usual.
+   */
+  private int index(String path) {
+    if (path == null)
+      return 0;
+    return (path.hashCode() & Integer.MAX_VALUE) % mounts.length;
+  }
+
+  private int fd_index(int fd) {
+    return fd < 0 ? 0 : fd % mounts.length;
+  }
+
+  private CephMount fd_mount(int fd) {
+    return mounts[fd_index(fd)];
+  }
+
+  private int mount_fd(int fd) {
+    return fd < 0 ? fd : fd / mounts.length;
+  }
+
+  private int pool_fd(String path, int fd) {
+    if (fd > (Integer.MAX_VALUE - mounts.length) / mounts.length)
+      throw new IllegalStateException("file descriptor out of range: " + fd);
+    return fd * mounts.length + index(path);
+  }
+
+  /*
+   * Configuration and mounting
+   */
+
+  /**
+   * Load configuration from a file into every mount.
+   *
+   * @see CephMount#conf_read_file(String)
+   */
+  public void conf_read_file(String path) throws FileNotFoundException {
+    for (CephMount m : mounts)
+      m.conf_read_file(path);
+  }
+
+  /**
+   * Set a configuration value on every mount.
+   *
+   * @see CephMount#conf_set(String, String)
+   */
+  public void conf_set(String option, String value) {
+    for (CephMount m : mounts)
+      m.conf_set(option, value);
+  }
+
+  /**
+   * Get a configuration value, from the first mount.
+   *
+   * @see CephMount#conf_get(String)
+   */
+  public String conf_get(String option) {
+    return mounts[0].conf_get(option);
+  }
+
+  /**
+   * Activate every mount, in parallel.
+   *
+   * If a mount fails, the mounts that succeeded are unmounted again and
+   * the first failure is thrown.
+   *
+   * @param root The path to use as the root (pass null for "/").
+   * @see CephMount#mount(String)
+   */
+  public void mount(final String root) throws IOException {
+    ThreadPoolExecutor executor = CephIOExecutor.create("cephfs-pool-mount", mounts.length);
+    List<Future<Void>> results = new ArrayList<Future<Void>>(mounts.length);
+    try {
+      for (final CephMount m : mounts) {
+        results.add(executor.submit(new Callable<Void>() {
+          public Void call() {
+            m.mount(root);
+            return null;
+          }
+        }));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    Throwable failure = null;
+    boolean interrupted = false;
+    for (int i = 0; i < mounts.length; i++) {
+      for (;;) {
+        try {
+          results.get(i).get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (failure == null)
+            failure = e.getCause();
+          results.set(i, null);
+          break;
+        }
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    if (failure == null)
+      return;
+
+    for (int i = 0; i < mounts.length; i++) {
+      if (results.get(i) != null) {
+        try {
+          mounts[i].unmount();
+        } catch (Exception e) {}
+      }
+    }
+    if (failure instanceof IOException)
+      throw (IOException)failure;
+    if (failure instanceof RuntimeException)
+      throw (RuntimeException)failure;
+    if (failure instanceof Error)
+      throw (Error)failure;
+    throw new IOException(failure);
+  }
+
+  /**
+   * Deactivate every mount.
+   *
+   * @see CephMount#unmount()
+   */
+  public void unmount() {
+    RuntimeException failure = null;
+    for (CephMount m : mounts) {
+      try {
+        m.unmount();
+      } catch (RuntimeException e) {
+        if (failure == null)
+          failure = e;
+      }
+    }
+    if (failure != null)
+      throw failure;
+  }
+
+  /*
+   * Path based calls
+   */
+
+  /**
+   * @see CephMount#statfs(String, CephStatVFS)
+   */
+  public void statfs(String path, CephStatVFS statvfs) throws FileNotFoundException {
+    getMountFor(path).statfs(path, statvfs);
+  }
+
+  /**
+   * @see CephMount#listdir(String)
+   */
+  public String[] listdir(String dir) throws FileNotFoundException {
+    return getMountFor(dir).listdir(dir);
+  }
+
+  /**
+   * @see CephMount#listdirPlus(String)
+   */
+  public CephDirEntry[] listdirPlus(String dir) throws FileNotFoundException {
+    return getMountFor(dir).listdirPlus(dir);
+  }
+
+  /**
+   * @see CephMount#link(String, String)
+   */
+  public void link(String oldpath, String newpath) throws FileNotFoundException {
+    getMountFor(newpath).link(oldpath, newpath);
+  }
+
+  /**
+   * @see CephMount#unlink(String)
+   */
+  public void unlink(String path) throws FileNotFoundException {
+    getMountFor(path).unlink(path);
+  }
+
+  /**
+   * @see CephMount#rename(String, String)
+   */
+  public void rename(String from, String to) throws FileNotFoundException {
+    getMountFor(from).rename(from, to);
+  }
+
+  /**
+   * @see CephMount#mkdir(String, int)
+   */
+  public void mkdir(String path, int mode) {
+    getMountFor(path).mkdir(path, mode);
+  }
+
+  /**
+   * @see CephMount#mkdirs(String, int)
+   */
+  public void mkdirs(String path, int mode) throws IOException {
+    getMountFor(path).mkdirs(path, mode);
+  }
+
+  /**
+   * @see CephMount#rmdir(String)
+   */
+  public void rmdir(String path) throws FileNotFoundException {
+    getMountFor(path).rmdir(path);
+  }
+
+  /**
+   * @see CephMount#readlink(String)
+   */
+  public String readlink(String path) throws FileNotFoundException {
+    return getMountFor(path).readlink(path);
+  }
+
+  /**
+   * @see CephMount#symlink(String, String)
+   */
+  public void symlink(String oldpath, String newpath) {
+    getMountFor(newpath).symlink(oldpath, newpath);
+  }
+
+  /**
+   * @see CephMount#stat(String, CephStat)
+   */
+  public void stat(String path, CephStat stat) throws FileNotFoundException, CephNotDirectoryException {
+    getMountFor(path).stat(path, stat);
+  }
+
+  /**
+   * @see CephMount#lstat(String, CephStat)
+   */
+  public void lstat(String path, CephStat stat) throws FileNotFoundException, CephNotDirectoryException {
+    getMountFor(path).lstat(path, stat);
+  }
+
+  /**
+   * @see CephMount#statx(String, int, int, CephStatx)
+   */
+  public void statx(String path, int wantMask, int flags, CephStatx out)
+    throws FileNotFoundException, CephNotDirectoryException {
+    getMountFor(path).statx(path, wantMask, flags, out);
+  }
+
+  /**
+   * @see CephMount#setattr(String, CephStat, int)
+   */
+  public void setattr(String path, CephStat stat, int mask) throws FileNotFoundException {
+    getMountFor(path).setattr(path, stat, mask);
+  }
+
+  /**
+   * @see CephMount#chmod(String, int)
+   */
+  public void chmod(String path, int mode) throws FileNotFoundException {
+    getMountFor(path).chmod(path, mode);
+  }
+
+  /**
+   * @see CephMount#truncate(String, long)
+   */
+  public void truncate(String path, long size) throws FileNotFoundException {
+    getMountFor(path).truncate(path, size);
+  }
+
+  /**
+   * @see CephMount#getxattr(String, String, byte[])
+   */
+  public long getxattr(String path, String name, byte[] buf) throws FileNotFoundException {
+    return getMountFor(path).getxattr(path, name, buf);
+  }
+
+  /**
+   * @see CephMount#listxattr(String)
+   */
+  public String[] listxattr(String path) throws FileNotFoundException {
+    return getMountFor(path).listxattr(path);
+  }
+
+  /**
+   * @see CephMount#removexattr(String, String)
+   */
+  public void removexattr(String path, String name) throws FileNotFoundException {
+    getMountFor(path).removexattr(path, name);
+  }
+
+  /**
+   * @see CephMount#setxattr(String, String, byte[], long, int)
+   */
+  public void setxattr(String path, String name, byte[] buf, long size, int flags) throws FileNotFoundException {
+    getMountFor(path).setxattr(path, name, buf, size, flags);
+  }
+
+  /**
+   * @see CephMount#getDirRecursiveStats(String)
+   */
+  public CephDirStats getDirRecursiveStats(String dir)
+    throws FileNotFoundException, CephNotDirectoryException {
+    return getMountFor(dir).getDirRecursiveStats(dir);
+  }
+
+  /**
+   * @see CephMount#getLayout(String)
+   */
+  public CephFileLayout getLayout(String path) throws FileNotFoundException {
+    return getMountFor(path).getLayout(path);
+  }
+
+  /**
+   * @see CephMount#setDirLayout(String, CephFileLayout)
+   */
+  public void setDirLayout(String dir, CephFileLayout layout) throws FileNotFoundException {
+    getMountFor(dir).setDirLayout(dir, layout);
+  }
+
+  /*
+   * File descriptor based calls
+   */
+
+  /**
+   * Open a file on the mount the path is routed to.
+   *
+   * @return A file descriptor of the pool.
+   * @see CephMount#open(String, int, int)
+   */
+  public int open(String path, int flags, int mode) throws FileNotFoundException {
+    return pool_fd(path, getMountFor(path).open(path, flags, mode));
+  }
+
+  /**
+   * Open a file with a specific file layout on the mount the path is
+   * routed to.
+   *
+   * @return A file descriptor of the pool.
+   * @see CephMount#open(String, int, int, int, int, int, String)
+   */
+  public int open(String path, int flags, int mode, int stripe_unit, int stripe_count,
+      int object_size, String data_pool) throws FileNotFoundException {
+    return pool_fd(path, getMountFor(path).open(path, flags, mode, stripe_unit,
+          stripe_count, object_size, data_pool));
+  }
+
+  /**
+   * @see CephMount#close(int)
+   */
+  public void close(int fd) {
+    fd_mount(fd).close(mount_fd(fd));
+  }
+
+  /**
+   * @see CephMount#lseek(int, long, int)
+   */
+  public long lseek(int fd, long offset, int whence) {
+    return fd_mount(fd).lseek(mount_fd(fd), offset, whence);
+  }
+
+  /**
+   * @see CephMount#read(int, byte[], long, long)
+   */
+  public long read(int fd, byte[] buf, long size, long offset) {
+    return fd_mount(fd).read(mount_fd(fd), buf, size, offset);
+  }
+
+  /**
+   * @see CephMount#write(int, byte[], long, long)
+   */
+  public long write(int fd, byte[] buf, long size, long offset) {
+    return fd_mount(fd).write(mount_fd(fd), buf, size, offset);
+  }
+
+  /**
+   * @see CephMount#read(int, ByteBuffer, long)
+   */
+  public long read(int fd, ByteBuffer dst, long offset) {
+    return fd_mount(fd).read(mount_fd(fd), dst, offset);
+  }
+
+  /**
+   * @see CephMount#write(int, ByteBuffer, long)
+   */
+  public long write(int fd, ByteBuffer src, long offset) {
+    return fd_mount(fd).write(mount_fd(fd), src, offset);
+  }
+
+  /**
+   * @see CephMount#ftruncate(int, long)
+   */
+  public void ftruncate(int fd, long size) {
+    fd_mount(fd).ftruncate(mount_fd(fd), size);
+  }
+
+  /**
+   * @see CephMount#fsync(int, boolean)
+   */
+  public void fsync(int fd, boolean dataonly) {
+    fd_mount(fd).fsync(mount_fd(fd), dataonly);
+  }
+
+  /**
+   * @see CephMount#flock(int, int, long)
+   */
+  public void flock(int fd, int operation, long owner) throws IOException {
+    fd_mount(fd).flock(mount_fd(fd), operation, owner);
+  }
+
+  /**
+   * @see CephMount#fstat(int, CephStat)
+   */
+  public void fstat(int fd, CephStat stat) {
+    fd_mount(fd).fstat(mount_fd(fd), stat);
+  }
+
+  /**
+   * @see CephMount#fchmod(int, int)
+   */
+  public void fchmod(int fd, int mode) {
+    fd_mount(fd).fchmod(mount_fd(fd), mode);
+  }
+
+  /**
+   * @see CephMount#getLayout(int)
+   */
+  public CephFileLayout getLayout(int fd) {
+    return fd_mount(fd).getLayout(mount_fd(fd));
+  }
+
+  /**
+   * @see CephMount#getFileBlockMap(int, long, long)
+   */
+  public CephFileBlockMap getFileBlockMap(int fd, long start, long length) {
+    return fd_mount(fd).getFileBlockMap(mount_fd(fd), start, length);
+  }
+
+  /**
+   * Synchronize every mount with the cluster.
+   *
+   * @see CephMount#sync_fs()
+   */
+  public void sync_fs() {
+    for (CephMount m : mounts)
+      m.sync_fs();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import com.ceph.crush.Bucket;
+
+/**
+ * Holds the network address and CRUSH location of an OSD.
+ */
+public class CephOsdInfo {
+  private final int id;
+  private final InetAddress address;
+  private final Bucket[] location;
+
+  CephOsdInfo(int id, InetAddress address, Bucket[] location) {
+    this.id = id;
+    this.address = address;
+    this.location = location;
+  }
+
+  /**
+   * Get the OSD id.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Get the network address of the OSD.
+   */
+  public InetAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * Get the CRUSH location of the OSD, from the OSD up to the root.
+   */
+  public Bucket[] getCrushLocation() {
+    return location.clone();
+  }
+
+  /**
+   * Get the name of the CRUSH bucket of the given type holding the OSD,
+   * e.g. "host" or "rack".
+   *
+   * @param type The bucket type.
+   * @return The bucket name, or null if the location has no bucket of
+   *         that type.
+   */
+  public String getBucket(String type) {
+    for (Bucket b : location) {
+      if (b.getType().equals(type))
+        return b.getName();
+    }
+    return null;
+  }
+
+  /**
+   * Get the name of the host holding the OSD: its CRUSH host bucket, or
+   * the host name of its address if it has none.
+   */
+  public String getHost() {
+    String host = getBucket("host");
+    return host != null ? host : address.getHostName();
+  }
+
+  /**
+   * Pretty print.
+   */
+  public String toString() {
+    return "osd[" + id + "," + address + "," + Arrays.toString(location) + "]";
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An OutputStream writing to an open file in a CephMount.
+ *
+ * Small writes are coalesced into buffers whose size is a multiple of the
+ * file's stripe unit. Full buffers are written in the background while the
+ * caller fills the next one, with at most write_behind buffers in flight;
+ * a write_behind of zero writes synchronously in the calling thread.
+ * flush() waits for all buffered data to reach the file.
+ *
+ * A failed write leaves a hole in the file that later data cannot fill,
+ * so once a write has failed, whether in the background or not, every
+ * later call to write(), flush() or close() throws its error. The stream
+ * writes at explicit offsets starting from the file position at
+ * construction, and does not move the file position.
+ * It takes ownership of the file descriptor, which is closed when the
+ * stream is closed. Streams are not safe for use by multiple threads.
+ */
+public class CephOutputStream extends OutputStream {
+
+  /* Default buffer size, in stripe units */
+  public static final int DEFAULT_STRIPE_UNITS = 1;
+
+  /* Default number of buffers written in the background */
+  public static final int DEFAULT_WRITE_BEHIND = 2;
+
+  private final CephMount mount;
+  private final int fd;
+  private final int buffer_size;
+  private final int write_behind;
+  private final ExecutorService executor;
+
+  private byte[] buf;
+  private int buf_len = 0;
+  /* File offset of buf[0] */
+  private long offset;
+  private boolean closed = false;
+
+  /* Guarded by this: in-flight writes and spare buffers */
+  private int in_flight = 0;
+  private final ArrayDeque<byte[]> spare = new ArrayDeque<byte[]>();
+
+  /* The first write error, set under this and never cleared */
+  private volatile IOException error = null;
+
+  private final AtomicLong write_ops = new AtomicLong(0);
+  private final AtomicLong bytes_flushed = new AtomicLong(0);
+  private long bytes_written = 0;
+
+  /**
+   * Create or truncate a file for writing with the default buffering.
+   *
+   * @param mount The mount holding the file.
+   * @param path Path of the file.
+   * @param mode Permission mode used if the file is created.
+   */
+  public CephOutputStream(CephMount mount, String path, int mode) throws IOException {
+    this(mount, mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT|CephMount.O_TRUNC, mode));
+  }
+
+  /**
+   * Create a stream with the default buffering for an open file.
+   *
+   * @param mount The mount the file descriptor belongs to.
+   * @param fd An open file descriptor, owned by the stream from now on.
+   */
+  public CephOutputStream(CephMount mount, int fd) throws IOException {
+    this(mount, fd, DEFAULT_STRIPE_UNITS, DEFAULT_WRITE_BEHIND, null);
+  }
+
+  /**
+   * Create a stream for an open file.
+   *
+   * @param mount The mount the file descriptor belongs to.
+   * @param fd An open file descriptor, owned by the stream from now on.
+   * @param stripe_units Buffer size, in stripe units of the file.
+   * @param write_behind Number of buffers that may be written in the
+   *                     background.
+   * @param executor Executor for background writes, or null for a shared
+   *                 pool of platform threads.
+   */
+  public CephOutputStream(CephMount mount, int fd, int stripe_units, int write_behind,
+      ExecutorService executor) throws IOException {
+    if (stripe_units <= 0)
+      throw new IllegalArgumentException("stripe units must be positive");
+    if (write_behind < 0)
+      throw new IllegalArgumentException("write behind is negative");
+    this.mount = mount;
+    this.fd = fd;
+    this.buffer_size = (int)Math.min((long)mount.get_file_stripe_unit(fd) * stripe_units,
+        Integer.MAX_VALUE - 8);
+    this.write_behind = write_behind;
+    this.executor = executor != null ? executor : CephIOExecutor.shared();
+    this.offset = mount.lseek(fd, 0, CephMount.SEEK_CUR);
+    this.buf = new byte[buffer_size];
+  }
+
+  /**
+   * Get the size of the buffers written to the file.
+   */
+  public int getBufferSize() {
+    return buffer_size;
+  }
+
+  /**
+   * Get the number of bytes accepted from the caller.
+   */
+  public long getBytesWritten() {
+    return bytes_written;
+  }
+
+  /**
+   * Get the number of bytes written to the file so far.
+   */
+  public long getBytesFlushed() {
+    return bytes_flushed.get();
+  }
+
+  /**
+   * Get the number of write calls issued to the file.
+   */
+  public long getWriteOps() {
+    return write_ops.get();
+  }
+
+  private void store(byte[] data, int len, long off) throws IOException {
+    ByteBuffer bb = ByteBuffer.wrap(data, 0, len);
+    while (bb.hasRemaining()) {
+      mount.write(fd, bb, off + bb.position());
+      write_ops.incrementAndGet();
+    }
+    bytes_flushed.addAndGet(len);
+  }
+
+  /*
+   * Hand the current buffer to the background, or write it out directly
+   * if write behind is disabled.
+   */
+  private void submit() throws IOException {
+    check_error();
+    if (buf_len == 0)
+      return;
+    final byte[] data = buf;
+    final int len = buf_len;
+    final long off = offset;
+    offset += len;
+    buf_len = 0;
+
+    if (write_behind == 0) {
+      try {
+        store(data, len, off);
+      } catch (IOException e) {
+        failed(e);
+        throw e;
+      }
+      return;
+    }
+
+    synchronized (this) {
+      while (in_flight >= write_behind && error == null)
+        wait_locked();
+      check_error();
+      in_flight++;
+      buf = spare.isEmpty() ? new byte[buffer_size] : spare.poll();
+    }
+
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          IOException e = null;
+          try {
+            store(data, len, off);
+          } catch (IOException ex) {
+            e = ex;
+          } catch (RuntimeException ex) {
+            e = new IOException(ex);
+          }
+          completed(data, e);
+        }
+      });
+    } catch (RuntimeException e) {
+      completed(data, new IOException(e));
+    }
+  }
+
+  private synchronized void failed(IOException e) {
+    if (error == null)
+      error = e;
+  }
+
+  private synchronized void completed(byte[] data, IOException e) {
+    if (e != null)
+      failed(e);
+    spare.add(data);
+    in_flight--;
+    notifyAll();
+  }
+
+  private void wait_locked() throws IOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void check_error() throws IOException {
+    IOException e = error;
+    if (e != null)
+      throw e;
+  }
+
+  /*
+   * Wait until no background write is in flight.
+   */
+  private synchronized void drain() throws IOException {
+    while (in_flight > 0)
+      wait_locked();
+    check_error();
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed)
+      throw new IOException("stream closed");
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    check_error();
+    buf[buf_len++] = (byte)b;
+    bytes_written++;
+    if (buf_len == buffer_size)
+      submit();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off)
+      throw new IndexOutOfBoundsException();
+    ensureOpen();
+    check_error();
+    while (len > 0) {
+      int n = Math.min(len, buffer_size - buf_len);
+      System.arraycopy(b, off, buf, buf_len, n);
+      buf_len += n;
+      off += n;
+      len -= n;
+      bytes_written += n;
+      if (buf_len == buffer_size)
+        submit();
+    }
+  }
+
+  /**
+   * Write out all buffered data and wait for it to reach the file. This
+   * does not fsync the file.
+   */
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    submit();
+    drain();
+  }
+
+  /**
+   * Flush and close the stream and its file descriptor. The descriptor is
+   * closed even if flushing fails. Closing a closed stream has no effect,
+   * other than throwing the error of a failed write again.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      check_error();
+      return;
+    }
+    try {
+      submit();
+    } finally {
+      closed = true;
+      try {
+        drain();
+      } finally {
+        mount.close(fd);
+      }
+    }
+  }
+}
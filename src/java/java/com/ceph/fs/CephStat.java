@@ -21,9 +21,46 @@ package com.ceph.fs;
 
 /**
  * Holds struct stat fields.
+ *
+ * A stat can also be returned packed into a long[] of PACKED_LENGTH
+ * elements, indexed by the PACKED_* constants, which avoids allocating a
+ * CephStat per call. See CephMount.statPacked and fromPacked.
+ *
+ * stat, lstat, fstat and the directory listings only ask the MDS for the
+ * fields that need no extra capabilities; nlink, c_time, b_time and
+ * version are then 0 unless the client already had them. The packed calls
+ * fetch every field.
  */
 public class CephStat {
 
+  /*
+   * Layout of a CephStat packed into a long[], used to return stat results
+   * across JNI in one array.
+   *
+   * Must be synchronized with JNI if changed.
+   */
+  public static final int PACKED_MODE    = 0;
+  public static final int PACKED_UID     = 1;
+  public static final int PACKED_GID     = 2;
+  public static final int PACKED_SIZE    = 3;
+  public static final int PACKED_BLKSIZE = 4;
+  public static final int PACKED_BLOCKS  = 5;
+  public static final int PACKED_A_TIME  = 6;
+  public static final int PACKED_M_TIME  = 7;
+  public static final int PACKED_INO     = 8;
+  public static final int PACKED_NLINK   = 9;
+  public static final int PACKED_C_TIME  = 10;
+  public static final int PACKED_B_TIME  = 11;
+  public static final int PACKED_DEV     = 12;
+  public static final int PACKED_VERSION = 13;
+  public static final int PACKED_LENGTH  = 14;
+
+  /* File type bits of mode */
+  static final int S_IFMT  = 0170000;
+  static final int S_IFREG = 0100000;
+  static final int S_IFDIR = 0040000;
+  static final int S_IFLNK = 0120000;
+
   /* Set from native */
   private boolean is_file;       /* S_ISREG */
   private boolean is_directory;  /* S_ISDIR */
@@ -37,6 +74,12 @@ public class CephStat {
   public long blocks;
   public long a_time;
   public long m_time;
+  public long ino;
+  public long nlink;
+  public long c_time;
+  public long b_time;
+  public long dev;
+  public long version;
 
   public boolean isFile() {
     return is_file;
@@ -50,4 +93,84 @@ public class CephStat {
     return is_symlink;
   }
 
+  /**
+   * Create a CephStat from a packed stat.
+   *
+   * @param packed A stat packed as by CephMount.statPacked.
+   * @return The unpacked stat.
+   */
+  public static CephStat fromPacked(long[] packed) {
+    if (packed.length < PACKED_LENGTH)
+      throw new IndexOutOfBoundsException("@packed is too short");
+    CephStat stat = new CephStat();
+    stat.unpack(packed, 0);
+    return stat;
+  }
+
+  /*
+   * Fill in from a packed stat starting at packed[off].
+   */
+  void unpack(long[] packed, int off) {
+    mode = (int)packed[off + PACKED_MODE];
+    uid = (int)packed[off + PACKED_UID];
+    gid = (int)packed[off + PACKED_GID];
+    size = packed[off + PACKED_SIZE];
+    blksize = packed[off + PACKED_BLKSIZE];
+    blocks = packed[off + PACKED_BLOCKS];
+    a_time = packed[off + PACKED_A_TIME];
+    m_time = packed[off + PACKED_M_TIME];
+    ino = packed[off + PACKED_INO];
+    nlink = packed[off + PACKED_NLINK];
+    c_time = packed[off + PACKED_C_TIME];
+    b_time = packed[off + PACKED_B_TIME];
+    dev = packed[off + PACKED_DEV];
+    version = packed[off + PACKED_VERSION];
+    is_file = (mode & S_IFMT) == S_IFREG;
+    is_directory = (mode & S_IFMT) == S_IFDIR;
+    is_symlink = (mode & S_IFMT) == S_IFLNK;
+  }
+
+  /*
+   * Store all fields into packed starting at packed[off].
+   */
+  void pack(long[] packed, int off) {
+    packed[off + PACKED_MODE] = mode;
+    packed[off + PACKED_UID] = uid;
+    packed[off + PACKED_GID] = gid;
+    packed[off + PACKED_SIZE] = size;
+    packed[off + PACKED_BLKSIZE] = blksize;
+    packed[off + PACKED_BLOCKS] = blocks;
+    packed[off + PACKED_A_TIME] = a_time;
+    packed[off + PACKED_M_TIME] = m_time;
+    packed[off + PACKED_INO] = ino;
+    packed[off + PACKED_NLINK] = nlink;
+    packed[off + PACKED_C_TIME] = c_time;
+    packed[off + PACKED_B_TIME] = b_time;
+    packed[off + PACKED_DEV] = dev;
+    packed[off + PACKED_VERSION] = version;
+  }
+
+  /*
+   * Copy all fields into another CephStat.
+   */
+  void copyTo(CephStat other) {
+    other.mode = mode;
+    other.uid = uid;
+    other.gid = gid;
+    other.size = size;
+    other.blksize = blksize;
+    other.blocks = blocks;
+    other.a_time = a_time;
+    other.m_time = m_time;
+    other.ino = ino;
+    other.nlink = nlink;
+    other.c_time = c_time;
+    other.b_time = b_time;
+    other.dev = dev;
+    other.version = version;
+    other.is_file = is_file;
+    other.is_directory = is_directory;
+    other.is_symlink = is_symlink;
+  }
+
 }
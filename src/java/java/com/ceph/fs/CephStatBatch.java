@@ -0,0 +1,107 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+/**
+ * Holds the results of a batched stat call as parallel arrays.
+ *
+ * Entry i describes the i-th path passed to CephMount.statBatch or
+ * CephMount.lstatBatch. If error[i] is zero the stat fields of entry i are
+ * valid; otherwise error[i] holds the positive errno value of the failed
+ * lookup (e.g. ENOENT) and the stat fields of entry i are zero.
+ */
+public class CephStatBatch {
+
+  /* Set from native */
+  public final int[] mode;
+  public final int[] uid;
+  public final int[] gid;
+  public final long[] size;
+  public final long[] blksize;
+  public final long[] blocks;
+  public final long[] a_time;
+  public final long[] m_time;
+  public final int[] error;
+
+  CephStatBatch(int count) {
+    mode = new int[count];
+    uid = new int[count];
+    gid = new int[count];
+    size = new long[count];
+    blksize = new long[count];
+    blocks = new long[count];
+    a_time = new long[count];
+    m_time = new long[count];
+    error = new int[count];
+  }
+
+  /**
+   * Get the number of entries.
+   */
+  public int count() {
+    return error.length;
+  }
+
+  /**
+   * Check if the lookup of entry i succeeded.
+   */
+  public boolean succeeded(int i) {
+    return error[i] == 0;
+  }
+
+  public boolean isFile(int i) {
+    return error[i] == 0 && (mode[i] & CephStat.S_IFMT) == CephStat.S_IFREG;
+  }
+
+  public boolean isDir(int i) {
+    return error[i] == 0 && (mode[i] & CephStat.S_IFMT) == CephStat.S_IFDIR;
+  }
+
+  public boolean isSymlink(int i) {
+    return error[i] == 0 && (mode[i] & CephStat.S_IFMT) == CephStat.S_IFLNK;
+  }
+
+  /**
+   * Copy entry i into a CephStat.
+   *
+   * The batch does not carry ino, nlink, c_time, b_time, dev or version,
+   * so these are zero in the result.
+   *
+   * @param i The entry.
+   * @param stat The object to fill in.
+   * @return False if the lookup of entry i failed, in which case stat is
+   *         left unchanged.
+   */
+  public boolean getStat(int i, CephStat stat) {
+    if (error[i] != 0)
+      return false;
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    packed[CephStat.PACKED_MODE] = mode[i];
+    packed[CephStat.PACKED_UID] = uid[i];
+    packed[CephStat.PACKED_GID] = gid[i];
+    packed[CephStat.PACKED_SIZE] = size[i];
+    packed[CephStat.PACKED_BLKSIZE] = blksize[i];
+    packed[CephStat.PACKED_BLOCKS] = blocks[i];
+    packed[CephStat.PACKED_A_TIME] = a_time[i];
+    packed[CephStat.PACKED_M_TIME] = m_time[i];
+    stat.unpack(packed, 0);
+    return true;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+/**
+ * Holds struct ceph_statx fields.
+ *
+ * Only the fields named by mask are valid, see CephMount.statx. The others
+ * are zero, except for blksize, dev and the file type bits of mode, which
+ * are always valid.
+ */
+public class CephStatx {
+
+  /* Set from native */
+  public int mask;
+
+  public int mode;
+  public int uid;
+  public int gid;
+  public long size;
+  public long blksize;
+  public long blocks;
+  public long a_time;
+  public long m_time;
+  public long c_time;
+  public long b_time;
+  public long ino;
+  public long nlink;
+  public long dev;
+  public long version;
+
+  /**
+   * Check if all of the given CephMount.STATX_* fields are valid.
+   */
+  public boolean has(int fields) {
+    return (mask & fields) == fields;
+  }
+
+  public boolean isFile() {
+    return (mode & CephStat.S_IFMT) == CephStat.S_IFREG;
+  }
+
+  public boolean isDir() {
+    return (mode & CephStat.S_IFMT) == CephStat.S_IFDIR;
+  }
+
+  public boolean isSymlink() {
+    return (mode & CephStat.S_IFMT) == CephStat.S_IFLNK;
+  }
+
+  /*
+   * Fill in from a packed stat (see CephStat.PACKED_*) whose valid fields
+   * are given by mask.
+   */
+  void unpack(long[] packed, int mask) {
+    this.mask = mask;
+    mode = (int)packed[CephStat.PACKED_MODE];
+    if (!has(CephMount.STATX_MODE))
+      mode &= CephStat.S_IFMT;
+    uid = has(CephMount.STATX_UID) ? (int)packed[CephStat.PACKED_UID] : 0;
+    gid = has(CephMount.STATX_GID) ? (int)packed[CephStat.PACKED_GID] : 0;
+    size = has(CephMount.STATX_SIZE) ? packed[CephStat.PACKED_SIZE] : 0;
+    blksize = packed[CephStat.PACKED_BLKSIZE];
+    blocks = has(CephMount.STATX_BLOCKS) ? packed[CephStat.PACKED_BLOCKS] : 0;
+    a_time = has(CephMount.STATX_ATIME) ? packed[CephStat.PACKED_A_TIME] : 0;
+    m_time = has(CephMount.STATX_MTIME) ? packed[CephStat.PACKED_M_TIME] : 0;
+    c_time = has(CephMount.STATX_CTIME) ? packed[CephStat.PACKED_C_TIME] : 0;
+    b_time = has(CephMount.STATX_BTIME) ? packed[CephStat.PACKED_B_TIME] : 0;
+    ino = has(CephMount.STATX_INO) ? packed[CephStat.PACKED_INO] : 0;
+    nlink = has(CephMount.STATX_NLINK) ? packed[CephStat.PACKED_NLINK] : 0;
+    dev = packed[CephStat.PACKED_DEV];
+    version = has(CephMount.STATX_VERSION) ? packed[CephStat.PACKED_VERSION] : 0;
+  }
+}
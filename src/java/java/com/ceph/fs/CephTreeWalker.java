@@ -0,0 +1,357 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Walks a subtree of a CephMount in parallel on a fork/join pool.
+ *
+ * Each directory is listed with its entry status in the same calls
+ * (CephMount.opendirPlus), so no per-entry lstat is needed. Subdirectories
+ * are handed to other pool threads while the directory is read; once the
+ * number of directories queued or being walked reaches the configured
+ * bound, further subdirectories are walked by the thread that found them,
+ * which keeps memory and open directory streams bounded on wide trees.
+ *
+ * Symlinks are not followed and are reported through visitFile, like any
+ * other entry that is not a directory. The visitor is called concurrently
+ * from the pool threads and must be thread safe. postVisitDirectory is
+ * called for a directory after the whole subtree below it was visited.
+ *
+ * If the visitor throws, or visitFailed rethrows the error it is given,
+ * the walk is abandoned: directories not yet started are skipped and walk
+ * throws the first such exception once running tasks have returned.
+ */
+public class CephTreeWalker implements Closeable {
+
+  /**
+   * Callbacks of a walk. All paths are the root passed to walk with
+   * the names of the entries below it appended.
+   */
+  public interface Visitor {
+    /**
+     * Called for a directory before its entries.
+     *
+     * @return False to skip the entries of the directory, in which case
+     *         postVisitDirectory is not called for it.
+     */
+    boolean preVisitDirectory(String path, CephStat stat) throws IOException;
+
+    /**
+     * Called for each entry that is not a directory.
+     */
+    void visitFile(String path, CephStat stat) throws IOException;
+
+    /**
+     * Called for a directory after all entries below it.
+     */
+    void postVisitDirectory(String path) throws IOException;
+
+    /**
+     * Called when a directory cannot be listed, for example because it was
+     * removed during the walk. Rethrow the exception to abandon the walk.
+     */
+    void visitFailed(String path, IOException e) throws IOException;
+  }
+
+  /**
+   * A Visitor that visits everything and abandons the walk on errors.
+   * Override the callbacks of interest.
+   */
+  public static class SimpleVisitor implements Visitor {
+    public boolean preVisitDirectory(String path, CephStat stat) throws IOException {
+      return true;
+    }
+
+    public void visitFile(String path, CephStat stat) throws IOException {
+    }
+
+    public void postVisitDirectory(String path) throws IOException {
+    }
+
+    public void visitFailed(String path, IOException e) throws IOException {
+      throw e;
+    }
+  }
+
+  /**
+   * Counts of a finished walk.
+   */
+  public static class Stats {
+    private final long directories;
+    private final long files;
+    private final long bytes;
+    private final long errors;
+    private final long elapsed_nanos;
+
+    Stats(long directories, long files, long bytes, long errors, long elapsed_nanos) {
+      this.directories = directories;
+      this.files = files;
+      this.bytes = bytes;
+      this.errors = errors;
+      this.elapsed_nanos = elapsed_nanos;
+    }
+
+    /**
+     * Get the number of directories visited, including the root.
+     */
+    public long getDirectoryCount() {
+      return directories;
+    }
+
+    /**
+     * Get the number of entries passed to visitFile.
+     */
+    public long getFileCount() {
+      return files;
+    }
+
+    /**
+     * Get the total size of the entries passed to visitFile.
+     */
+    public long getByteCount() {
+      return bytes;
+    }
+
+    /**
+     * Get the number of directories that could not be listed.
+     */
+    public long getErrorCount() {
+      return errors;
+    }
+
+    /**
+     * Get the duration of the walk in nanoseconds.
+     */
+    public long getElapsedNanos() {
+      return elapsed_nanos;
+    }
+
+    @Override
+    public String toString() {
+      return "directories=" + directories + " files=" + files + " bytes=" + bytes +
+        " errors=" + errors + " elapsed_ms=" + elapsed_nanos / 1000000;
+    }
+  }
+
+  /*
+   * Default bound on directories queued or being walked, per walk.
+   */
+  private static final int DEFAULT_MAX_OUTSTANDING = 1024;
+
+  private final CephMount mount;
+  private final ForkJoinPool pool;
+  private final int max_outstanding;
+
+  /**
+   * Create a walker with one thread per processor, and at least four, as
+   * most of the time is spent waiting for the MDS.
+   *
+   * @param mount The mount to walk.
+   */
+  public CephTreeWalker(CephMount mount) {
+    this(mount, Math.max(4, Runtime.getRuntime().availableProcessors()), DEFAULT_MAX_OUTSTANDING);
+  }
+
+  /**
+   * Create a walker.
+   *
+   * @param mount The mount to walk.
+   * @param parallelism Number of pool threads, bounding the number of
+   *                    directories listed at once.
+   * @param max_outstanding Maximum number of directories queued or being
+   *                        walked by the pool, per walk.
+   */
+  public CephTreeWalker(CephMount mount, int parallelism, int max_outstanding) {
+    if (parallelism <= 0)
+      throw new IllegalArgumentException("parallelism must be positive");
+    if (max_outstanding <= 0)
+      throw new IllegalArgumentException("max outstanding must be positive");
+    this.mount = mount;
+    this.pool = new ForkJoinPool(parallelism);
+    this.max_outstanding = max_outstanding;
+  }
+
+  /**
+   * Get the mount walked.
+   */
+  public CephMount getMount() {
+    return mount;
+  }
+
+  /*
+   * State of one walk.
+   */
+  private final class Walk {
+    final Visitor visitor;
+    final Semaphore outstanding = new Semaphore(max_outstanding);
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    final LongAdder directories = new LongAdder();
+    final LongAdder files = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    Walk(Visitor visitor) {
+      this.visitor = visitor;
+    }
+
+    boolean abandoned() {
+      return failure.get() != null;
+    }
+
+    void abandon(Exception e) {
+      failure.compareAndSet(null, e);
+    }
+
+    void visitFile(String path, CephStat stat) throws IOException {
+      visitor.visitFile(path, stat);
+      files.increment();
+      bytes.add(stat.size);
+    }
+
+    void failed(String path, IOException e) throws IOException {
+      errors.increment();
+      visitor.visitFailed(path, e);
+    }
+  }
+
+  /*
+   * Visits a directory and, through subtasks or inline, everything below.
+   */
+  private final class DirTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Walk walk;
+    private final String path;
+    private final CephStat stat;
+    private final boolean holds_permit;
+
+    DirTask(Walk walk, String path, CephStat stat, boolean holds_permit) {
+      this.walk = walk;
+      this.path = path;
+      this.stat = stat;
+      this.holds_permit = holds_permit;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        visit();
+      } catch (IOException e) {
+        walk.abandon(e);
+      } catch (RuntimeException e) {
+        walk.abandon(e);
+      } finally {
+        if (holds_permit)
+          walk.outstanding.release();
+      }
+    }
+
+    private void visit() throws IOException {
+      if (walk.abandoned() || !walk.visitor.preVisitDirectory(path, stat))
+        return;
+      walk.directories.increment();
+
+      ArrayList<DirTask> forked = new ArrayList<DirTask>();
+      CephDirectoryStream<CephDirEntry> stream;
+      try {
+        stream = mount.opendirPlus(path);
+      } catch (IOException e) {
+        walk.failed(path, e);
+        return;
+      }
+      try {
+        for (CephDirEntry entry : stream) {
+          if (walk.abandoned())
+            break;
+          String child = path.endsWith("/") ? path + entry.getName() : path + "/" + entry.getName();
+          if (!entry.getStat().isDir()) {
+            walk.visitFile(child, entry.getStat());
+          } else if (walk.outstanding.tryAcquire()) {
+            DirTask task = new DirTask(walk, child, entry.getStat(), true);
+            task.fork();
+            forked.add(task);
+          } else {
+            new DirTask(walk, child, entry.getStat(), false).visit();
+          }
+        }
+      } catch (DirectoryIteratorException e) {
+        walk.failed(path, e.getCause());
+      } finally {
+        stream.close();
+        for (int i = forked.size() - 1; i >= 0; i--)
+          forked.get(i).join();
+      }
+
+      if (!walk.abandoned())
+        walk.visitor.postVisitDirectory(path);
+    }
+  }
+
+  /**
+   * Walk the tree below a path.
+   *
+   * @param root The path to start from. If it is not a directory it is
+   *             passed to visitFile alone.
+   * @param visitor The callbacks.
+   * @return Counts of what was visited.
+   * @throws IOException The first exception thrown by the visitor, or
+   *                     raised looking up root.
+   */
+  public Stats walk(String root, Visitor visitor) throws IOException {
+    if (root == null || visitor == null)
+      throw new NullPointerException();
+    long start = System.nanoTime();
+    Walk walk = new Walk(visitor);
+
+    CephStat stat = new CephStat();
+    mount.lstat(root, stat);
+    if (stat.isDir())
+      pool.invoke(new DirTask(walk, root, stat, false));
+    else
+      walk.visitFile(root, stat);
+
+    Exception e = walk.failure.get();
+    if (e instanceof IOException)
+      throw (IOException)e;
+    if (e != null)
+      throw (RuntimeException)e;
+
+    return new Stats(walk.directories.sum(), walk.files.sum(), walk.bytes.sum(),
+        walk.errors.sum(), System.nanoTime() - start);
+  }
+
+  /**
+   * Shut down the thread pool. Walks in progress complete.
+   */
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Read-write lock optimized for many concurrent readers and rare writers.
+ *
+ * CephMount takes the read lock around every native call only to keep
+ * unmount() from tearing down the mount underneath it, while the write lock
+ * is taken by mount() and unmount(). With ReentrantReadWriteLock every
+ * reader CASes the same counter, which becomes a hotspot once many threads
+ * share a mount. Here readers instead increment one of several counters,
+ * each on its own cache line, chosen by thread id, so readers on different
+ * stripes never touch the same line.
+ *
+ * A writer first takes the writer mutex, announces itself through the
+ * volatile writer flag, and then waits for all reader counters to drain.
+ * A reader increments its counter and then checks the flag; if a writer is
+ * present it backs out and queues on the writer mutex, and increments its
+ * counter while holding the mutex, when no writer can be active. Both
+ * sides write their own variable before reading the other's, so either the
+ * writer sees the reader's count or the reader sees the writer's flag.
+ *
+ * Differences from ReentrantReadWriteLock:
+ *  - the read lock must not be taken recursively: a thread holding the read
+ *    lock that tries to take it again while a writer waits will deadlock.
+ *    CephMount never nests lock acquisitions.
+ *  - the thread holding the write lock may take the read lock, as it is
+ *    then granted through the writer mutex.
+ *  - writers are preferred, and neither lock supports conditions.
+ */
+class StripedReadWriteLock implements ReadWriteLock {
+
+  /* longs per stripe, so that each counter sits on its own cache line */
+  private static final int PAD = 16;
+
+  private final int stripe_mask;
+  private final AtomicLongArray readers;
+  private final ReentrantLock writer_lock = new ReentrantLock();
+  private volatile boolean writer = false;
+
+  private final Lock read_lock = new ReadLock();
+  private final Lock write_lock = new WriteLock();
+
+  StripedReadWriteLock() {
+    this(Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  StripedReadWriteLock(int min_stripes) {
+    int stripes = 1;
+    while (stripes < min_stripes && stripes < 1024)
+      stripes <<= 1;
+    stripe_mask = stripes - 1;
+    readers = new AtomicLongArray(stripes * PAD);
+  }
+
+  @Override
+  public Lock readLock() {
+    return read_lock;
+  }
+
+  @Override
+  public Lock writeLock() {
+    return write_lock;
+  }
+
+  /*
+   * Index of the calling thread's reader counter. A thread always maps to
+   * the same stripe, so unlock() finds the counter that lock() incremented.
+   */
+  private int stripe() {
+    long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return ((int)(h >>> 32) & stripe_mask) * PAD;
+  }
+
+  private boolean readers_drained() {
+    for (int i = 0; i <= stripe_mask; i++)
+      if (readers.get(i * PAD) != 0)
+        return false;
+    return true;
+  }
+
+  /*
+   * Called by a writer holding writer_lock with the flag set. Waits until
+   * no reader remains, or until the deadline if timed. Returns false on
+   * timeout.
+   */
+  private boolean await_readers(boolean interruptible, boolean timed, long deadline)
+    throws InterruptedException {
+    int spins = 0;
+    while (!readers_drained()) {
+      if (interruptible && Thread.interrupted())
+        throw new InterruptedException();
+      if (timed && System.nanoTime() - deadline >= 0)
+        return false;
+      if (++spins < 64)
+        Thread.yield();
+      else
+        LockSupport.parkNanos(this, 10000);
+    }
+    return true;
+  }
+
+  /*
+   * Fast path: succeeds unless a writer holds or is waiting for the lock.
+   */
+  private boolean try_read(int idx) {
+    readers.incrementAndGet(idx);
+    if (!writer)
+      return true;
+    readers.decrementAndGet(idx);
+    return false;
+  }
+
+  private class ReadLock implements Lock {
+    @Override
+    public void lock() {
+      int idx = stripe();
+      if (try_read(idx))
+        return;
+      writer_lock.lock();
+      try {
+        readers.incrementAndGet(idx);
+      } finally {
+        writer_lock.unlock();
+      }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      int idx = stripe();
+      if (try_read(idx))
+        return;
+      writer_lock.lockInterruptibly();
+      try {
+        readers.incrementAndGet(idx);
+      } finally {
+        writer_lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean tryLock() {
+      return try_read(stripe());
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      int idx = stripe();
+      if (try_read(idx))
+        return true;
+      if (!writer_lock.tryLock(time, unit))
+        return false;
+      try {
+        readers.incrementAndGet(idx);
+      } finally {
+        writer_lock.unlock();
+      }
+      return true;
+    }
+
+    @Override
+    public void unlock() {
+      readers.decrementAndGet(stripe());
+    }
+
+    @Override
+    public Condition newCondition() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private class WriteLock implements Lock {
+
+    /*
+     * Called with writer_lock newly acquired. Re-entry by the holder does
+     * not wait again: its own readers, if any, were granted while it
+     * already held the lock.
+     */
+    private boolean acquired(boolean interruptible, boolean timed, long deadline)
+      throws InterruptedException {
+      if (writer_lock.getHoldCount() > 1)
+        return true;
+      writer = true;
+      boolean ok = false;
+      try {
+        ok = await_readers(interruptible, timed, deadline);
+      } finally {
+        if (!ok) {
+          writer = false;
+          writer_lock.unlock();
+        }
+      }
+      return ok;
+    }
+
+    @Override
+    public void lock() {
+      writer_lock.lock();
+      try {
+        acquired(false, false, 0);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+      writer_lock.lockInterruptibly();
+      acquired(true, false, 0);
+    }
+
+    @Override
+    public boolean tryLock() {
+      if (!writer_lock.tryLock())
+        return false;
+      try {
+        return acquired(false, true, System.nanoTime());
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(time);
+      if (!writer_lock.tryLock(time, unit))
+        return false;
+      return acquired(true, true, deadline);
+    }
+
+    @Override
+    public void unlock() {
+      if (writer_lock.getHoldCount() == 1)
+        writer = false;
+      writer_lock.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
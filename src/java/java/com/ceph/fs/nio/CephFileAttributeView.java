@@ -0,0 +1,207 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs.nio;
+
+import java.io.IOException;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ceph.fs.CephMount;
+import com.ceph.fs.CephStat;
+
+/**
+ * The "basic", "posix" and "owner" views of a file. Reads are served by a
+ * single stat; updates go to setattr and chmod.
+ */
+final class CephFileAttributeView implements PosixFileAttributeView {
+
+  private static final List<String> BASIC = Arrays.asList("lastModifiedTime",
+      "lastAccessTime", "creationTime", "size", "isRegularFile", "isDirectory",
+      "isSymbolicLink", "isOther", "fileKey");
+  private static final List<String> OWNER = Arrays.asList("owner");
+  private static final List<String> POSIX = Arrays.asList("lastModifiedTime",
+      "lastAccessTime", "creationTime", "size", "isRegularFile", "isDirectory",
+      "isSymbolicLink", "isOther", "fileKey", "owner", "permissions", "group");
+
+  private final CephPath path;
+  private final String name;
+  private final boolean follow;
+
+  CephFileAttributeView(CephPath path, String name, boolean follow) {
+    this.path = path;
+    this.name = name;
+    this.follow = follow;
+  }
+
+  private List<String> attributeNames() {
+    if (name.equals("posix"))
+      return POSIX;
+    if (name.equals("owner"))
+      return OWNER;
+    return BASIC;
+  }
+
+  @Override
+  public String name() {
+    return name;
+  }
+
+  @Override
+  public CephFileAttributes readAttributes() throws IOException {
+    return path.getFileSystem().provider().readAttributes(path, follow);
+  }
+
+  /*
+   * Read the comma separated @attributes of this view, "*" for all of them,
+   * from one stat.
+   */
+  Map<String, Object> readAttributes(String attributes) throws IOException {
+    List<String> names = attributeNames();
+    CephFileAttributes attrs = readAttributes();
+    Map<String, Object> map = new HashMap<String, Object>();
+    for (String attr : attributes.split(",")) {
+      if (attr.equals("*")) {
+        for (String n : names)
+          map.put(n, get(attrs, n));
+      } else if (names.contains(attr)) {
+        map.put(attr, get(attrs, attr));
+      } else {
+        throw new IllegalArgumentException("'" + name + ":" + attr + "' not recognized");
+      }
+    }
+    return map;
+  }
+
+  private static Object get(CephFileAttributes attrs, String attr) {
+    if (attr.equals("lastModifiedTime"))
+      return attrs.lastModifiedTime();
+    if (attr.equals("lastAccessTime"))
+      return attrs.lastAccessTime();
+    if (attr.equals("creationTime"))
+      return attrs.creationTime();
+    if (attr.equals("size"))
+      return attrs.size();
+    if (attr.equals("isRegularFile"))
+      return attrs.isRegularFile();
+    if (attr.equals("isDirectory"))
+      return attrs.isDirectory();
+    if (attr.equals("isSymbolicLink"))
+      return attrs.isSymbolicLink();
+    if (attr.equals("isOther"))
+      return attrs.isOther();
+    if (attr.equals("fileKey"))
+      return attrs.fileKey();
+    if (attr.equals("owner"))
+      return attrs.owner();
+    if (attr.equals("permissions"))
+      return attrs.permissions();
+    return attrs.group();
+  }
+
+  @SuppressWarnings("unchecked")
+  void setAttribute(String attr, Object value) throws IOException {
+    if (!attributeNames().contains(attr))
+      throw new IllegalArgumentException("'" + name + ":" + attr + "' not recognized");
+    if (attr.equals("lastModifiedTime"))
+      setTimes((FileTime)value, null, null);
+    else if (attr.equals("lastAccessTime"))
+      setTimes(null, (FileTime)value, null);
+    else if (attr.equals("creationTime"))
+      setTimes(null, null, (FileTime)value);
+    else if (attr.equals("owner"))
+      setOwner((UserPrincipal)value);
+    else if (attr.equals("permissions"))
+      setPermissions((Set<PosixFilePermission>)value);
+    else if (attr.equals("group"))
+      setGroup((GroupPrincipal)value);
+    else
+      throw new IllegalArgumentException("'" + name + ":" + attr + "' is read-only");
+  }
+
+  private void setattr(CephStat stat, int mask) throws IOException {
+    CephFileSystem fs = path.getFileSystem();
+    fs.ensureOpen();
+    try {
+      fs.getMount().setattr(path.mountPath(), stat, mask);
+    } catch (IOException e) {
+      throw CephFileSystemProvider.translate(e, path, null);
+    }
+  }
+
+  /**
+   * Set the modification and access times. The creation time of a CephFS
+   * file cannot be changed and is ignored.
+   */
+  @Override
+  public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime,
+      FileTime createTime) throws IOException {
+    CephStat stat = new CephStat();
+    int mask = 0;
+    if (lastModifiedTime != null) {
+      stat.m_time = lastModifiedTime.toMillis();
+      mask |= CephMount.SETATTR_MTIME;
+    }
+    if (lastAccessTime != null) {
+      stat.a_time = lastAccessTime.toMillis();
+      mask |= CephMount.SETATTR_ATIME;
+    }
+    if (mask != 0)
+      setattr(stat, mask);
+  }
+
+  @Override
+  public void setPermissions(Set<PosixFilePermission> perms) throws IOException {
+    CephStat stat = new CephStat();
+    stat.mode = CephFileAttributes.toMode(perms);
+    setattr(stat, CephMount.SETATTR_MODE);
+  }
+
+  @Override
+  public UserPrincipal getOwner() throws IOException {
+    return readAttributes().owner();
+  }
+
+  @Override
+  public void setOwner(UserPrincipal owner) throws IOException {
+    if (!(owner instanceof CephFileAttributes.Principal))
+      throw new ProviderMismatchException();
+    CephStat stat = new CephStat();
+    stat.uid = ((CephFileAttributes.Principal)owner).id;
+    setattr(stat, CephMount.SETATTR_UID);
+  }
+
+  @Override
+  public void setGroup(GroupPrincipal group) throws IOException {
+    if (!(group instanceof CephFileAttributes.Principal))
+      throw new ProviderMismatchException();
+    CephStat stat = new CephStat();
+    stat.gid = ((CephFileAttributes.Principal)group).id;
+    setattr(stat, CephMount.SETATTR_GID);
+  }
+}
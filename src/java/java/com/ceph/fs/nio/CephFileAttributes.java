@@ -0,0 +1,182 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs.nio;
+
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalNotFoundException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.ceph.fs.CephStat;
+
+/**
+ * Attributes of a file, all read by the one stat call that created them.
+ */
+final class CephFileAttributes implements PosixFileAttributes {
+
+  private static final PosixFilePermission[] PERMISSIONS = PosixFilePermission.values();
+
+  private final CephStat stat;
+
+  CephFileAttributes(CephStat stat) {
+    this.stat = stat;
+  }
+
+  /*
+   * PosixFilePermission is declared in mode bit order, from OWNER_READ
+   * (0400) to OTHERS_EXECUTE (01).
+   */
+  static Set<PosixFilePermission> toPermissions(int mode) {
+    Set<PosixFilePermission> perms = EnumSet.noneOf(PosixFilePermission.class);
+    for (PosixFilePermission perm : PERMISSIONS) {
+      if ((mode & (0400 >> perm.ordinal())) != 0)
+        perms.add(perm);
+    }
+    return perms;
+  }
+
+  static int toMode(Set<?> perms) {
+    int mode = 0;
+    for (Object perm : perms) {
+      if (!(perm instanceof PosixFilePermission))
+        throw new ClassCastException();
+      mode |= 0400 >> ((PosixFilePermission)perm).ordinal();
+    }
+    return mode;
+  }
+
+  static FileTime toFileTime(long msec) {
+    return FileTime.from(msec, TimeUnit.MILLISECONDS);
+  }
+
+  CephStat getStat() {
+    return stat;
+  }
+
+  @Override
+  public FileTime lastModifiedTime() {
+    return toFileTime(stat.m_time);
+  }
+
+  @Override
+  public FileTime lastAccessTime() {
+    return toFileTime(stat.a_time);
+  }
+
+  @Override
+  public FileTime creationTime() {
+    return toFileTime(stat.b_time);
+  }
+
+  @Override
+  public boolean isRegularFile() {
+    return stat.isFile();
+  }
+
+  @Override
+  public boolean isDirectory() {
+    return stat.isDir();
+  }
+
+  @Override
+  public boolean isSymbolicLink() {
+    return stat.isSymlink();
+  }
+
+  @Override
+  public boolean isOther() {
+    return !stat.isFile() && !stat.isDir() && !stat.isSymlink();
+  }
+
+  @Override
+  public long size() {
+    return stat.size;
+  }
+
+  /* Inode numbers are unique within a CephFS file system */
+  @Override
+  public Object fileKey() {
+    return stat.ino;
+  }
+
+  @Override
+  public UserPrincipal owner() {
+    return new Principal(stat.uid, false);
+  }
+
+  @Override
+  public GroupPrincipal group() {
+    return new Principal(stat.gid, true);
+  }
+
+  @Override
+  public Set<PosixFilePermission> permissions() {
+    return toPermissions(stat.mode);
+  }
+
+  /*
+   * A user or group, identified by its numeric id.
+   */
+  static final class Principal implements GroupPrincipal {
+    final int id;
+    final boolean is_group;
+
+    Principal(int id, boolean is_group) {
+      this.id = id;
+      this.is_group = is_group;
+    }
+
+    static Principal parse(String name, boolean is_group) throws UserPrincipalNotFoundException {
+      try {
+        return new Principal(Integer.parseInt(name), is_group);
+      } catch (NumberFormatException e) {
+        throw new UserPrincipalNotFoundException(name);
+      }
+    }
+
+    @Override
+    public String getName() {
+      return Integer.toString(id);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Principal))
+        return false;
+      Principal that = (Principal)other;
+      return that.id == id && that.is_group == is_group;
+    }
+
+    @Override
+    public int hashCode() {
+      return is_group ? ~id : id;
+    }
+
+    @Override
+    public String toString() {
+      return getName();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs.nio;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileOwnerAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+import com.ceph.fs.CephStatVFS;
+
+/**
+ * The single store of a CephFileSystem. Space is reported from statfs on
+ * the root of the mount.
+ */
+final class CephFileStore extends FileStore {
+
+  private final CephFileSystem fs;
+
+  CephFileStore(CephFileSystem fs) {
+    this.fs = fs;
+  }
+
+  private CephStatVFS statfs() throws IOException {
+    fs.ensureOpen();
+    CephStatVFS statvfs = new CephStatVFS();
+    try {
+      fs.getMount().statfs("/", statvfs);
+    } catch (IOException e) {
+      throw CephFileSystemProvider.translate(e, fs.getRoot(), null);
+    }
+    return statvfs;
+  }
+
+  @Override
+  public String name() {
+    return fs.toString();
+  }
+
+  @Override
+  public String type() {
+    return "ceph";
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return false;
+  }
+
+  @Override
+  public long getTotalSpace() throws IOException {
+    CephStatVFS statvfs = statfs();
+    return statvfs.blocks * statvfs.frsize;
+  }
+
+  @Override
+  public long getUsableSpace() throws IOException {
+    CephStatVFS statvfs = statfs();
+    return statvfs.bavail * statvfs.frsize;
+  }
+
+  /* statvfs has no f_bfree here; CephFS reports the two as equal anyway */
+  @Override
+  public long getUnallocatedSpace() throws IOException {
+    return getUsableSpace();
+  }
+
+  @Override
+  public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+    return type == BasicFileAttributeView.class ||
+      type == PosixFileAttributeView.class ||
+      type == FileOwnerAttributeView.class;
+  }
+
+  @Override
+  public boolean supportsFileAttributeView(String name) {
+    return fs.supportedFileAttributeViews().contains(name);
+  }
+
+  @Override
+  public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+    return null;
+  }
+
+  @Override
+  public Object getAttribute(String attribute) throws IOException {
+    if (attribute.equals("totalSpace"))
+      return getTotalSpace();
+    if (attribute.equals("usableSpace"))
+      return getUsableSpace();
+    if (attribute.equals("unallocatedSpace"))
+      return getUnallocatedSpace();
+    throw new UnsupportedOperationException("'" + attribute + "' not recognized");
+  }
+
+  @Override
+  public String toString() {
+    return name();
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs.nio;
+
+import java.io.IOException;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.ceph.fs.CephMount;
+
+/**
+ * A java.nio.file view of a CephMount.
+ *
+ * File systems are created with FileSystems.newFileSystem() on a ceph URI,
+ * ceph://[authority]/, where the authority names the file system within
+ * the provider. The environment map passed on creation either holds an
+ * existing mount under "mount", which is used as is and left mounted when
+ * the file system is closed, or describes a new one: "id" (client id),
+ * "conf_file" (configuration file to read), "conf.OPTION" (configuration
+ * options to set) and "root" (the root to mount). A mount created that way
+ * is unmounted when the file system is closed.
+ *
+ * The "basic", "posix" and "owner" attribute views are supported. Owners
+ * and groups are identified by their numeric id; watch services are not
+ * supported.
+ */
+public class CephFileSystem extends FileSystem {
+
+  private static final Set<String> VIEWS = Collections.unmodifiableSet(
+      new HashSet<String>(Arrays.asList("basic", "posix", "owner")));
+
+  private final CephFileSystemProvider provider;
+  private final String authority;
+  private final CephMount mount;
+  private final boolean owns_mount;
+  private final CephPath root;
+  private final CephFileStore store;
+
+  private volatile boolean open = true;
+
+  CephFileSystem(CephFileSystemProvider provider, String authority, CephMount mount,
+      boolean owns_mount) {
+    this.provider = provider;
+    this.authority = authority;
+    this.mount = mount;
+    this.owns_mount = owns_mount;
+    this.root = new CephPath(this, "/");
+    this.store = new CephFileStore(this);
+  }
+
+  /**
+   * Get the mount behind this file system.
+   */
+  public CephMount getMount() {
+    return mount;
+  }
+
+  String getAuthority() {
+    return authority;
+  }
+
+  CephPath getRoot() {
+    return root;
+  }
+
+  CephFileStore getStore() {
+    return store;
+  }
+
+  void ensureOpen() {
+    if (!open)
+      throw new ClosedFileSystemException();
+  }
+
+  @Override
+  public CephFileSystemProvider provider() {
+    return provider;
+  }
+
+  /**
+   * Close the file system, unmounting the mount if it was created by the
+   * provider. Channels and directory streams still open are closed by the
+   * unmount.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (!open)
+        return;
+      open = false;
+    }
+    provider.remove(this);
+    if (owns_mount)
+      mount.unmount();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return false;
+  }
+
+  @Override
+  public String getSeparator() {
+    return "/";
+  }
+
+  @Override
+  public Iterable<Path> getRootDirectories() {
+    return Collections.<Path>singletonList(root);
+  }
+
+  @Override
+  public Iterable<FileStore> getFileStores() {
+    return Collections.<FileStore>singletonList(store);
+  }
+
+  @Override
+  public Set<String> supportedFileAttributeViews() {
+    return VIEWS;
+  }
+
+  @Override
+  public CephPath getPath(String first, String... more) {
+    if (more.length == 0)
+      return new CephPath(this, first);
+    StringBuilder sb = new StringBuilder(first);
+    for (String segment : more) {
+      if (segment.isEmpty())
+        continue;
+      if (sb.length() > 0)
+        sb.append('/');
+      sb.append(segment);
+    }
+    return new CephPath(this, sb.toString());
+  }
+
+  @Override
+  public PathMatcher getPathMatcher(String syntaxAndPattern) {
+    int colon = syntaxAndPattern.indexOf(':');
+    if (colon <= 0)
+      throw new IllegalArgumentException("syntax:pattern expected: " + syntaxAndPattern);
+    String syntax = syntaxAndPattern.substring(0, colon);
+    String pattern = syntaxAndPattern.substring(colon + 1);
+
+    String regex;
+    if (syntax.equalsIgnoreCase("glob"))
+      regex = globToRegex(pattern);
+    else if (syntax.equalsIgnoreCase("regex"))
+      regex = pattern;
+    else
+      throw new UnsupportedOperationException("syntax '" + syntax + "' not recognized");
+
+    final Pattern compiled = Pattern.compile(regex);
+    return new PathMatcher() {
+      @Override
+      public boolean matches(Path path) {
+        return compiled.matcher(path.toString()).matches();
+      }
+    };
+  }
+
+  /*
+   * Translate a glob, as documented by FileSystem.getPathMatcher, into a
+   * regular expression.
+   */
+  static String globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder("^");
+    boolean in_group = false;
+
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '\\':
+          if (++i == glob.length())
+            throw new PatternSyntaxException("No character to escape", glob, i - 1);
+          regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+          break;
+        case '/':
+          regex.append('/');
+          break;
+        case '*':
+          if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+            regex.append(".*");
+            i++;
+          } else {
+            regex.append("[^/]*");
+          }
+          break;
+        case '?':
+          regex.append("[^/]");
+          break;
+        case '[': {
+          int end = glob.indexOf(']', i + 2);
+          if (end < 0)
+            throw new PatternSyntaxException("Missing ']'", glob, i);
+          String set = glob.substring(i + 1, end);
+          if (set.contains("/"))
+            throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i);
+          if (set.startsWith("!"))
+            set = "^" + set.substring(1);
+          else if (set.startsWith("^"))
+            set = "\\" + set;
+          regex.append('[').append(set.replace("[", "\\[").replace("&&", "&\\&")).append(']');
+          i = end;
+          break;
+        }
+        case '{':
+          if (in_group)
+            throw new PatternSyntaxException("Cannot nest groups", glob, i);
+          regex.append("(?:");
+          in_group = true;
+          break;
+        case '}':
+          if (in_group) {
+            regex.append(')');
+            in_group = false;
+          } else {
+            regex.append("\\}");
+          }
+          break;
+        case ',':
+          regex.append(in_group ? "|" : ",");
+          break;
+        default:
+          if ("^$.|+()".indexOf(c) >= 0)
+            regex.append('\\');
+          regex.append(c);
+          break;
+      }
+    }
+    if (in_group)
+      throw new PatternSyntaxException("Missing '}'", glob, glob.length() - 1);
+    return regex.append('$').toString();
+  }
+
+  @Override
+  public UserPrincipalLookupService getUserPrincipalLookupService() {
+    return new UserPrincipalLookupService() {
+      @Override
+      public UserPrincipal lookupPrincipalByName(String name) throws IOException {
+        return CephFileAttributes.Principal.parse(name, false);
+      }
+
+      @Override
+      public GroupPrincipal lookupPrincipalByGroupName(String group) throws IOException {
+        return CephFileAttributes.Principal.parse(group, true);
+      }
+    };
+  }
+
+  @Override
+  public WatchService newWatchService() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String toString() {
+    return CephFileSystemProvider.SCHEME + "://" + authority + "/";
+  }
+}
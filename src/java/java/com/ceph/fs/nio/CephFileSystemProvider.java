@@ -0,0 +1,724 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs.nio;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.NotLinkException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileOwnerAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.ceph.fs.CephDirectoryNotEmptyException;
+import com.ceph.fs.CephDirectoryStream;
+import com.ceph.fs.CephFileAlreadyExistsException;
+import com.ceph.fs.CephFileChannel;
+import com.ceph.fs.CephMount;
+import com.ceph.fs.CephNotDirectoryException;
+import com.ceph.fs.CephPermissionDeniedException;
+import com.ceph.fs.CephStat;
+
+/**
+ * A java.nio.file provider for the "ceph" URI scheme.
+ *
+ * Files are opened as CephFileChannels, so byte channels do positional
+ * reads and writes straight into direct buffers. Directory streams read
+ * entries incrementally with CephMount.opendir, and each attribute read,
+ * whether through a BasicFileAttributes, a PosixFileAttributes or a map of
+ * named attributes, is a single stat. See CephFileSystem for the URIs and
+ * environment used to create file systems.
+ */
+public class CephFileSystemProvider extends FileSystemProvider {
+
+  static final String SCHEME = "ceph";
+
+  /* Mode of files and directories created without a permissions attribute */
+  private static final int DEFAULT_FILE_MODE = 0666;
+  private static final int DEFAULT_DIR_MODE = 0777;
+
+  /* Open file systems, by URI authority */
+  private final Map<String, CephFileSystem> filesystems =
+    new HashMap<String, CephFileSystem>();
+
+  public CephFileSystemProvider() {}
+
+  @Override
+  public String getScheme() {
+    return SCHEME;
+  }
+
+  private static String authority(URI uri) {
+    if (!SCHEME.equalsIgnoreCase(uri.getScheme()))
+      throw new IllegalArgumentException("URI scheme is not \"" + SCHEME + "\": " + uri);
+    String authority = uri.getAuthority();
+    return (authority == null) ? "" : authority;
+  }
+
+  /**
+   * Create a file system for a ceph URI. See CephFileSystem for the
+   * environment.
+   *
+   * @throws FileSystemAlreadyExistsException if a file system with the same
+   *         authority is open.
+   */
+  @Override
+  public CephFileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+    String authority = authority(uri);
+    synchronized (filesystems) {
+      if (filesystems.containsKey(authority))
+        throw new FileSystemAlreadyExistsException(uri.toString());
+
+      CephFileSystem fs;
+      Object mount = env.get("mount");
+      if (mount != null)
+        fs = new CephFileSystem(this, authority, (CephMount)mount, false);
+      else
+        fs = new CephFileSystem(this, authority, create_mount(env), true);
+      filesystems.put(authority, fs);
+      return fs;
+    }
+  }
+
+  private static CephMount create_mount(Map<String, ?> env) throws IOException {
+    CephMount mount = new CephMount((String)env.get("id"));
+    try {
+      String conf_file = (String)env.get("conf_file");
+      if (conf_file != null)
+        mount.conf_read_file(conf_file);
+      for (Map.Entry<String, ?> entry : env.entrySet()) {
+        if (entry.getKey().startsWith("conf."))
+          mount.conf_set(entry.getKey().substring(5), String.valueOf(entry.getValue()));
+      }
+      mount.mount((String)env.get("root"));
+    } catch (Exception e) {
+      try {
+        mount.release();
+      } catch (Exception re) {}
+      throw e;
+    }
+    return mount;
+  }
+
+  void remove(CephFileSystem fs) {
+    synchronized (filesystems) {
+      if (filesystems.get(fs.getAuthority()) == fs)
+        filesystems.remove(fs.getAuthority());
+    }
+  }
+
+  @Override
+  public CephFileSystem getFileSystem(URI uri) {
+    String authority = authority(uri);
+    synchronized (filesystems) {
+      CephFileSystem fs = filesystems.get(authority);
+      if (fs == null)
+        throw new FileSystemNotFoundException(uri.toString());
+      return fs;
+    }
+  }
+
+  @Override
+  public CephPath getPath(URI uri) {
+    String path = uri.getPath();
+    if (path == null || !path.startsWith("/"))
+      throw new IllegalArgumentException("URI path is not absolute: " + uri);
+    return getFileSystem(uri).getPath(path);
+  }
+
+  /*
+   * Map the exceptions thrown by CephMount, whose class gives the errno,
+   * to their java.nio.file counterparts. Takes any Exception since some
+   * CephMount calls throw IOExceptions they do not declare.
+   */
+  static IOException translate(Exception e, CephPath path, CephPath other) {
+    if (e instanceof RuntimeException)
+      throw (RuntimeException)e;
+    String file = (path == null) ? null : path.toString();
+    String other_file = (other == null) ? null : other.toString();
+    String msg = e.getMessage();
+    IOException ret;
+    if (e instanceof FileNotFoundException)
+      ret = new NoSuchFileException(file, other_file, null);
+    else if (e instanceof CephFileAlreadyExistsException)
+      ret = new FileAlreadyExistsException(file, other_file, null);
+    else if (e instanceof CephNotDirectoryException)
+      ret = new NotDirectoryException(file);
+    else if (e instanceof CephDirectoryNotEmptyException)
+      ret = new DirectoryNotEmptyException(file);
+    else if (e instanceof CephPermissionDeniedException)
+      ret = new AccessDeniedException(file, other_file, msg);
+    else
+      ret = new FileSystemException(file, other_file, msg);
+    ret.initCause(e);
+    return ret;
+  }
+
+  static boolean followLinks(LinkOption... options) {
+    boolean follow = true;
+    for (LinkOption option : options) {
+      if (option == LinkOption.NOFOLLOW_LINKS)
+        follow = false;
+      else if (option == null)
+        throw new NullPointerException();
+    }
+    return follow;
+  }
+
+  private static CephMount mount(CephPath path) {
+    CephFileSystem fs = path.getFileSystem();
+    fs.ensureOpen();
+    return fs.getMount();
+  }
+
+  void stat(CephPath path, CephStat stat, boolean follow) throws IOException {
+    CephMount mount = mount(path);
+    try {
+      if (follow)
+        mount.stat(path.mountPath(), stat);
+      else
+        mount.lstat(path.mountPath(), stat);
+    } catch (IOException e) {
+      throw translate(e, path, null);
+    }
+  }
+
+  CephFileAttributes readAttributes(CephPath path, boolean follow) throws IOException {
+    CephStat stat = new CephStat();
+    stat(path, stat, follow);
+    return new CephFileAttributes(stat);
+  }
+
+  private static boolean exists(CephPath path) throws IOException {
+    try {
+      mount(path).lstat(path.mountPath(), new CephStat());
+      return true;
+    } catch (FileNotFoundException e) {
+      return false;
+    } catch (IOException e) {
+      throw translate(e, path, null);
+    }
+  }
+
+  /*
+   * The mode given by a "posix:permissions" attribute, or @dflt. No other
+   * attribute can be set atomically on creation.
+   */
+  private static int mode(FileAttribute<?>[] attrs, int dflt) {
+    int mode = dflt;
+    for (FileAttribute<?> attr : attrs) {
+      String name = attr.name();
+      if (!name.equals("posix:permissions") && !name.equals("unix:permissions"))
+        throw new UnsupportedOperationException("'" + name + "' not supported as initial attribute");
+      mode = CephFileAttributes.toMode((Set<?>)attr.value());
+    }
+    return mode;
+  }
+
+  /**
+   * Open a file as a CephFileChannel. DELETE_ON_CLOSE is not supported;
+   * SPARSE, SYNC and DSYNC are accepted and ignored.
+   */
+  @Override
+  public CephFileChannel newFileChannel(Path path, Set<? extends OpenOption> options,
+      FileAttribute<?>... attrs) throws IOException {
+    CephPath file = CephPath.check(path);
+    boolean read = false, write = false, append = false, truncate = false;
+    boolean create = false, create_new = false, follow = true;
+    for (OpenOption option : options) {
+      if (option == StandardOpenOption.READ)
+        read = true;
+      else if (option == StandardOpenOption.WRITE)
+        write = true;
+      else if (option == StandardOpenOption.APPEND)
+        append = true;
+      else if (option == StandardOpenOption.TRUNCATE_EXISTING)
+        truncate = true;
+      else if (option == StandardOpenOption.CREATE)
+        create = true;
+      else if (option == StandardOpenOption.CREATE_NEW)
+        create_new = true;
+      else if (option == LinkOption.NOFOLLOW_LINKS)
+        follow = false;
+      else if (option == StandardOpenOption.DELETE_ON_CLOSE)
+        throw new UnsupportedOperationException("DELETE_ON_CLOSE not supported");
+      else if (option == null)
+        throw new NullPointerException();
+      else if (!(option instanceof StandardOpenOption))
+        throw new UnsupportedOperationException("'" + option + "' not supported");
+    }
+    if (append && (read || truncate))
+      throw new IllegalArgumentException("APPEND not allowed with READ or TRUNCATE_EXISTING");
+
+    write |= append;
+    int flags;
+    if (read && write)
+      flags = CephMount.O_RDWR;
+    else if (write)
+      flags = CephMount.O_WRONLY;
+    else
+      flags = CephMount.O_RDONLY;
+    if (write) {
+      if (append)
+        flags |= CephMount.O_APPEND;
+      if (truncate)
+        flags |= CephMount.O_TRUNC;
+      if (create_new)
+        flags |= CephMount.O_CREAT | CephMount.O_EXCL;
+      else if (create)
+        flags |= CephMount.O_CREAT;
+    }
+    int mode = mode(attrs, DEFAULT_FILE_MODE);
+
+    CephMount mount = mount(file);
+    if (!follow) {
+      /* libcephfs has no O_NOFOLLOW; refuse links up front */
+      CephStat stat = new CephStat();
+      try {
+        mount.lstat(file.mountPath(), stat);
+        if (stat.isSymlink())
+          throw new FileSystemException(file.toString(), null,
+              "Too many levels of symbolic links");
+      } catch (FileNotFoundException e) {
+        /* created below, if asked to */
+      }
+    }
+    try {
+      return CephFileChannel.open(mount, file.mountPath(), flags, mode);
+    } catch (FileSystemException e) {
+      throw e;
+    } catch (IOException e) {
+      throw translate(e, file, null);
+    }
+  }
+
+  @Override
+  public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
+      FileAttribute<?>... attrs) throws IOException {
+    return newFileChannel(path, options, attrs);
+  }
+
+  @Override
+  public DirectoryStream<Path> newDirectoryStream(Path dir,
+      DirectoryStream.Filter<? super Path> filter) throws IOException {
+    CephPath path = CephPath.check(dir);
+    if (filter == null)
+      throw new NullPointerException();
+    try {
+      return new DirStream(path, mount(path).opendir(path.mountPath()), filter);
+    } catch (IOException e) {
+      throw translate(e, path, null);
+    }
+  }
+
+  /*
+   * Directory stream yielding entries resolved against the directory, as
+   * they are read from the underlying CephDirectoryStream.
+   */
+  private static final class DirStream implements DirectoryStream<Path> {
+    private final CephPath dir;
+    private final CephDirectoryStream<String> stream;
+    private final DirectoryStream.Filter<? super Path> filter;
+
+    DirStream(CephPath dir, CephDirectoryStream<String> stream,
+        DirectoryStream.Filter<? super Path> filter) {
+      this.dir = dir;
+      this.stream = stream;
+      this.filter = filter;
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+      final Iterator<String> names = stream.iterator();
+      return new Iterator<Path>() {
+        private Path next;
+
+        @Override
+        public boolean hasNext() {
+          while (next == null && names.hasNext()) {
+            Path entry = dir.resolve(names.next());
+            try {
+              if (filter.accept(entry))
+                next = entry;
+            } catch (IOException e) {
+              throw new DirectoryIteratorException(e);
+            }
+          }
+          return next != null;
+        }
+
+        @Override
+        public Path next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          Path ret = next;
+          next = null;
+          return ret;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public void close() {
+      stream.close();
+    }
+  }
+
+  @Override
+  public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+    CephPath path = CephPath.check(dir);
+    int mode = mode(attrs, DEFAULT_DIR_MODE);
+    try {
+      mount(path).mkdir(path.mountPath(), mode);
+    } catch (Exception e) {
+      throw translate(e, path, null);
+    }
+  }
+
+  @Override
+  public void createSymbolicLink(Path link, Path target, FileAttribute<?>... attrs)
+      throws IOException {
+    CephPath path = CephPath.check(link);
+    CephPath.check(target);
+    if (attrs.length > 0)
+      throw new UnsupportedOperationException("symbolic links have no initial attributes");
+    try {
+      mount(path).symlink(target.toString(), path.mountPath());
+    } catch (Exception e) {
+      throw translate(e, path, null);
+    }
+  }
+
+  @Override
+  public void createLink(Path link, Path existing) throws IOException {
+    CephPath path = CephPath.check(link);
+    CephPath old = CephPath.check(existing);
+    try {
+      mount(path).link(old.mountPath(), path.mountPath());
+    } catch (IOException e) {
+      throw translate(e, path, old);
+    }
+  }
+
+  @Override
+  public Path readSymbolicLink(Path link) throws IOException {
+    CephPath path = CephPath.check(link);
+    if (!readAttributes(path, false).isSymbolicLink())
+      throw new NotLinkException(path.toString());
+    try {
+      return path.getFileSystem().getPath(mount(path).readlink(path.mountPath()));
+    } catch (IOException e) {
+      throw translate(e, path, null);
+    }
+  }
+
+  @Override
+  public void delete(Path path) throws IOException {
+    CephPath file = CephPath.check(path);
+    CephMount mount = mount(file);
+    boolean dir = readAttributes(file, false).isDirectory();
+    try {
+      if (dir)
+        mount.rmdir(file.mountPath());
+      else
+        mount.unlink(file.mountPath());
+    } catch (IOException e) {
+      throw translate(e, file, null);
+    }
+  }
+
+  /**
+   * Copy a file, directory (without its entries) or symbolic link. File
+   * data is moved by CephFileChannel.transferTo, in libcephfs when both
+   * paths are on the same mount. ATOMIC_MOVE is not supported.
+   */
+  @Override
+  public void copy(Path source, Path target, CopyOption... options) throws IOException {
+    CephPath src = CephPath.check(source);
+    CephPath dst = CephPath.check(target);
+    boolean replace = false, copy_attrs = false, follow = true;
+    for (CopyOption option : options) {
+      if (option == StandardCopyOption.REPLACE_EXISTING)
+        replace = true;
+      else if (option == StandardCopyOption.COPY_ATTRIBUTES)
+        copy_attrs = true;
+      else if (option == LinkOption.NOFOLLOW_LINKS)
+        follow = false;
+      else if (option == null)
+        throw new NullPointerException();
+      else
+        throw new UnsupportedOperationException("'" + option + "' not supported");
+    }
+    copy(src, dst, replace, copy_attrs, follow);
+  }
+
+  private void copy(CephPath src, CephPath dst, boolean replace, boolean copy_attrs,
+      boolean follow) throws IOException {
+    CephStat stat = readAttributes(src, follow).getStat();
+    if (exists(dst)) {
+      if (src.getFileSystem() == dst.getFileSystem() && isSameFile(src, dst))
+        return;
+      if (!replace)
+        throw new FileAlreadyExistsException(dst.toString());
+      delete(dst);
+    }
+
+    CephMount src_mount = mount(src);
+    CephMount dst_mount = mount(dst);
+    int mode = stat.mode & 07777;
+    try {
+      if (stat.isDir()) {
+        dst_mount.mkdir(dst.mountPath(), mode);
+      } else if (stat.isSymlink()) {
+        dst_mount.symlink(src_mount.readlink(src.mountPath()), dst.mountPath());
+        return;
+      } else {
+        copy_data(src_mount, src, dst_mount, dst, mode);
+      }
+    } catch (FileSystemException e) {
+      throw e;
+    } catch (IOException e) {
+      throw translate(e, src, dst);
+    }
+
+    if (copy_attrs) {
+      CephFileAttributeView view = new CephFileAttributeView(dst, "posix", true);
+      view.setPermissions(CephFileAttributes.toPermissions(mode));
+      view.setTimes(CephFileAttributes.toFileTime(stat.m_time),
+          CephFileAttributes.toFileTime(stat.a_time), null);
+    }
+  }
+
+  private static void copy_data(CephMount src_mount, CephPath src, CephMount dst_mount,
+      CephPath dst, int mode) throws IOException {
+    FileChannel in = CephFileChannel.open(src_mount, src.mountPath(), CephMount.O_RDONLY, 0);
+    try {
+      FileChannel out = CephFileChannel.open(dst_mount, dst.mountPath(),
+          CephMount.O_WRONLY | CephMount.O_CREAT | CephMount.O_EXCL, mode);
+      try {
+        long size = in.size();
+        long pos = 0;
+        while (pos < size) {
+          long n = in.transferTo(pos, size - pos, out);
+          if (n <= 0)
+            break;
+          pos += n;
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Move a file or directory. Within a file system this is a rename, which
+   * is always atomic; between file systems the source is copied with its
+   * attributes and then deleted.
+   */
+  @Override
+  public void move(Path source, Path target, CopyOption... options) throws IOException {
+    CephPath src = CephPath.check(source);
+    CephPath dst = CephPath.check(target);
+    boolean replace = false, atomic = false;
+    for (CopyOption option : options) {
+      if (option == StandardCopyOption.REPLACE_EXISTING)
+        replace = true;
+      else if (option == StandardCopyOption.ATOMIC_MOVE)
+        atomic = true;
+      else if (option == null)
+        throw new NullPointerException();
+      else if (option != StandardCopyOption.COPY_ATTRIBUTES && option != LinkOption.NOFOLLOW_LINKS)
+        throw new UnsupportedOperationException("'" + option + "' not supported");
+    }
+
+    if (src.getFileSystem() != dst.getFileSystem()) {
+      if (atomic)
+        throw new AtomicMoveNotSupportedException(src.toString(), dst.toString(),
+            "move between file systems");
+      copy(src, dst, replace, true, false);
+      delete(src);
+      return;
+    }
+
+    CephMount mount = mount(src);
+    if (!replace && !atomic) {
+      /* rename replaces its target, which Files.move does not by default */
+      readAttributes(src, false);
+      if (!src.equals(dst) && exists(dst))
+        throw new FileAlreadyExistsException(dst.toString());
+    }
+    try {
+      mount.rename(src.mountPath(), dst.mountPath());
+    } catch (IOException e) {
+      throw translate(e, src, dst);
+    }
+  }
+
+  @Override
+  public boolean isSameFile(Path path, Path path2) throws IOException {
+    CephPath a = CephPath.check(path);
+    if (a.equals(path2))
+      return true;
+    if (!(path2 instanceof CephPath) || a.getFileSystem() != ((CephPath)path2).getFileSystem())
+      return false;
+    CephPath b = (CephPath)path2;
+    return readAttributes(a, true).getStat().ino == readAttributes(b, true).getStat().ino;
+  }
+
+  @Override
+  public boolean isHidden(Path path) throws IOException {
+    CephPath name = CephPath.check(path).getFileName();
+    return name != null && name.toString().startsWith(".");
+  }
+
+  @Override
+  public FileStore getFileStore(Path path) throws IOException {
+    CephPath file = CephPath.check(path);
+    readAttributes(file, true);
+    return file.getFileSystem().getStore();
+  }
+
+  /**
+   * Check that a file exists and, approximately, that it may be accessed.
+   * The client does not know the credentials libcephfs will check, so an
+   * access mode is granted if any of the owner, group or other permission
+   * bits allows it.
+   */
+  @Override
+  public void checkAccess(Path path, AccessMode... modes) throws IOException {
+    CephPath file = CephPath.check(path);
+    int mode = readAttributes(file, true).getStat().mode;
+    for (AccessMode access : modes) {
+      int bits;
+      switch (access) {
+        case READ:
+          bits = 0444;
+          break;
+        case WRITE:
+          bits = 0222;
+          break;
+        default:
+          bits = 0111;
+          break;
+      }
+      if ((mode & bits) == 0)
+        throw new AccessDeniedException(file.toString());
+    }
+  }
+
+  private static String view_name(Class<?> type) {
+    if (type == BasicFileAttributeView.class)
+      return "basic";
+    if (type == PosixFileAttributeView.class)
+      return "posix";
+    if (type == FileOwnerAttributeView.class)
+      return "owner";
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type,
+      LinkOption... options) {
+    CephPath file = CephPath.check(path);
+    String name = view_name(type);
+    if (name == null)
+      return null;
+    return (V)new CephFileAttributeView(file, name, followLinks(options));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type,
+      LinkOption... options) throws IOException {
+    CephPath file = CephPath.check(path);
+    if (type != BasicFileAttributes.class && type != PosixFileAttributes.class)
+      throw new UnsupportedOperationException(type.getName() + " not supported");
+    return (A)readAttributes(file, followLinks(options));
+  }
+
+  /*
+   * Split "view:names" into the view and the names, basic if there is no
+   * view.
+   */
+  private static CephFileAttributeView view(CephPath path, String attribute, String[] names,
+      LinkOption... options) {
+    int colon = attribute.indexOf(':');
+    String name = (colon < 0) ? "basic" : attribute.substring(0, colon);
+    if (!path.getFileSystem().supportedFileAttributeViews().contains(name))
+      throw new UnsupportedOperationException("view '" + name + "' not supported");
+    names[0] = attribute.substring(colon + 1);
+    return new CephFileAttributeView(path, name, followLinks(options));
+  }
+
+  @Override
+  public Map<String, Object> readAttributes(Path path, String attributes,
+      LinkOption... options) throws IOException {
+    CephPath file = CephPath.check(path);
+    String[] names = new String[1];
+    return view(file, attributes, names, options).readAttributes(names[0]);
+  }
+
+  @Override
+  public void setAttribute(Path path, String attribute, Object value,
+      LinkOption... options) throws IOException {
+    CephPath file = CephPath.check(path);
+    String[] names = new String[1];
+    view(file, attribute, names, options).setAttribute(names[0], value);
+  }
+}
@@ -0,0 +1,443 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.ceph.fs.CephMount;
+import com.ceph.fs.CephStat;
+
+/**
+ * A path in a CephFileSystem.
+ *
+ * Paths are kept as normalized strings: repeated slashes are collapsed and
+ * a trailing slash is dropped. Relative paths are resolved by libcephfs
+ * against the working directory of the mount.
+ */
+final class CephPath implements Path {
+
+  /* Symbolic links followed by toRealPath before giving up, as SYMLOOP_MAX */
+  private static final int MAX_LINKS = 40;
+
+  private final CephFileSystem fs;
+  private final String path;
+
+  /* Offset of each name in path, computed on first use */
+  private volatile int[] offsets;
+
+  CephPath(CephFileSystem fs, String input) {
+    this.fs = fs;
+    this.path = normalize_string(input);
+  }
+
+  private static String normalize_string(String input) {
+    StringBuilder sb = new StringBuilder(input.length());
+    char prev = 0;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (c == '\u0000')
+        throw new InvalidPathException(input, "Nul character not allowed");
+      if (c == '/' && prev == '/')
+        continue;
+      sb.append(c);
+      prev = c;
+    }
+    if (sb.length() > 1 && prev == '/')
+      sb.setLength(sb.length() - 1);
+    return sb.toString();
+  }
+
+  static CephPath check(Path path) {
+    if (path == null)
+      throw new NullPointerException();
+    if (!(path instanceof CephPath))
+      throw new ProviderMismatchException();
+    return (CephPath)path;
+  }
+
+  /*
+   * The path handed to CephMount. The empty path names the working
+   * directory.
+   */
+  String mountPath() {
+    return path.isEmpty() ? "." : path;
+  }
+
+  private int[] offsets() {
+    int[] o = offsets;
+    if (o == null) {
+      List<Integer> list = new ArrayList<Integer>();
+      if (path.isEmpty()) {
+        list.add(0);
+      } else {
+        for (int i = 0; i < path.length(); i++) {
+          if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/'))
+            list.add(i);
+        }
+      }
+      o = new int[list.size()];
+      for (int i = 0; i < o.length; i++)
+        o[i] = list.get(i);
+      offsets = o;
+    }
+    return o;
+  }
+
+  private String name(int i) {
+    int[] o = offsets();
+    int end = (i + 1 < o.length) ? o[i + 1] - 1 : path.length();
+    return path.substring(o[i], end);
+  }
+
+  @Override
+  public CephFileSystem getFileSystem() {
+    return fs;
+  }
+
+  @Override
+  public boolean isAbsolute() {
+    return path.startsWith("/");
+  }
+
+  @Override
+  public CephPath getRoot() {
+    return isAbsolute() ? fs.getRoot() : null;
+  }
+
+  @Override
+  public CephPath getFileName() {
+    int count = getNameCount();
+    if (count == 0)
+      return null;
+    if (count == 1 && !isAbsolute())
+      return this;
+    return new CephPath(fs, name(count - 1));
+  }
+
+  @Override
+  public CephPath getParent() {
+    int count = getNameCount();
+    if (count == 0)
+      return null;
+    if (count == 1)
+      return getRoot();
+    return new CephPath(fs, path.substring(0, offsets()[count - 1] - 1));
+  }
+
+  @Override
+  public int getNameCount() {
+    return offsets().length;
+  }
+
+  @Override
+  public CephPath getName(int index) {
+    if (index < 0 || index >= getNameCount())
+      throw new IllegalArgumentException();
+    return new CephPath(fs, name(index));
+  }
+
+  @Override
+  public CephPath subpath(int beginIndex, int endIndex) {
+    int count = getNameCount();
+    if (beginIndex < 0 || beginIndex >= count || endIndex > count || beginIndex >= endIndex)
+      throw new IllegalArgumentException();
+    int[] o = offsets();
+    int end = (endIndex < count) ? o[endIndex] - 1 : path.length();
+    return new CephPath(fs, path.substring(o[beginIndex], end));
+  }
+
+  @Override
+  public boolean startsWith(Path other) {
+    if (!(other instanceof CephPath))
+      return false;
+    CephPath that = (CephPath)other;
+    if (that.fs != fs || that.isAbsolute() != isAbsolute())
+      return false;
+    if (that.path.isEmpty())
+      return path.isEmpty();
+    int count = that.getNameCount();
+    if (count > getNameCount())
+      return false;
+    for (int i = 0; i < count; i++) {
+      if (!name(i).equals(that.name(i)))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean startsWith(String other) {
+    return startsWith(new CephPath(fs, other));
+  }
+
+  @Override
+  public boolean endsWith(Path other) {
+    if (!(other instanceof CephPath))
+      return false;
+    CephPath that = (CephPath)other;
+    if (that.fs != fs)
+      return false;
+    if (that.isAbsolute())
+      return that.path.equals(path);
+    if (that.path.isEmpty())
+      return path.isEmpty();
+    int count = that.getNameCount();
+    int off = getNameCount() - count;
+    if (off < 0)
+      return false;
+    for (int i = 0; i < count; i++) {
+      if (!name(off + i).equals(that.name(i)))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean endsWith(String other) {
+    return endsWith(new CephPath(fs, other));
+  }
+
+  @Override
+  public CephPath normalize() {
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < getNameCount(); i++) {
+      String name = name(i);
+      if (name.equals(".") || name.isEmpty())
+        continue;
+      if (name.equals("..")) {
+        int last = names.size() - 1;
+        if (last >= 0 && !names.get(last).equals("..")) {
+          names.remove(last);
+          continue;
+        }
+        /* ".." of the root is the root */
+        if (isAbsolute())
+          continue;
+      }
+      names.add(name);
+    }
+    StringBuilder sb = new StringBuilder();
+    if (isAbsolute())
+      sb.append('/');
+    for (int i = 0; i < names.size(); i++) {
+      if (i > 0)
+        sb.append('/');
+      sb.append(names.get(i));
+    }
+    String normalized = sb.toString();
+    return normalized.equals(path) ? this : new CephPath(fs, normalized);
+  }
+
+  @Override
+  public CephPath resolve(Path other) {
+    CephPath that = check(other);
+    if (that.isAbsolute() || path.isEmpty())
+      return that;
+    if (that.path.isEmpty())
+      return this;
+    if (path.equals("/"))
+      return new CephPath(fs, "/" + that.path);
+    return new CephPath(fs, path + "/" + that.path);
+  }
+
+  @Override
+  public CephPath resolve(String other) {
+    return resolve(new CephPath(fs, other));
+  }
+
+  @Override
+  public CephPath resolveSibling(Path other) {
+    CephPath that = check(other);
+    CephPath parent = getParent();
+    return (parent == null) ? that : parent.resolve(that);
+  }
+
+  @Override
+  public CephPath resolveSibling(String other) {
+    return resolveSibling(new CephPath(fs, other));
+  }
+
+  @Override
+  public CephPath relativize(Path other) {
+    CephPath that = check(other);
+    if (that.isAbsolute() != isAbsolute())
+      throw new IllegalArgumentException("'other' is different type of Path");
+    if (path.isEmpty())
+      return that;
+    if (that.equals(this))
+      return new CephPath(fs, "");
+
+    int count = getNameCount();
+    int other_count = that.getNameCount();
+    int common = 0;
+    while (common < count && common < other_count && name(common).equals(that.name(common)))
+      common++;
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = common; i < count; i++) {
+      if (sb.length() > 0)
+        sb.append('/');
+      sb.append("..");
+    }
+    for (int i = common; i < other_count; i++) {
+      if (sb.length() > 0)
+        sb.append('/');
+      sb.append(that.name(i));
+    }
+    return new CephPath(fs, sb.toString());
+  }
+
+  @Override
+  public URI toUri() {
+    try {
+      return new URI(CephFileSystemProvider.SCHEME, fs.getAuthority(),
+          toAbsolutePath().path, null, null);
+    } catch (URISyntaxException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override
+  public CephPath toAbsolutePath() {
+    if (isAbsolute())
+      return this;
+    fs.ensureOpen();
+    return new CephPath(fs, fs.getMount().getcwd()).resolve(this);
+  }
+
+  /*
+   * Resolve symbolic links a name at a time, as realpath(3) does, since
+   * libcephfs has no realpath of its own.
+   */
+  @Override
+  public CephPath toRealPath(LinkOption... options) throws IOException {
+    boolean follow = CephFileSystemProvider.followLinks(options);
+    CephMount mount = fs.getMount();
+    CephPath abs = toAbsolutePath().normalize();
+    CephStat stat = new CephStat();
+
+    if (!follow) {
+      fs.provider().stat(abs, stat, false);
+      return abs;
+    }
+
+    List<String> pending = new ArrayList<String>();
+    for (int i = abs.getNameCount() - 1; i >= 0; i--)
+      pending.add(abs.name(i));
+    CephPath resolved = fs.getRoot();
+    int links = 0;
+
+    while (!pending.isEmpty()) {
+      String name = pending.remove(pending.size() - 1);
+      if (name.equals("."))
+        continue;
+      if (name.equals("..")) {
+        CephPath parent = resolved.getParent();
+        if (parent != null)
+          resolved = parent;
+        continue;
+      }
+      CephPath next = resolved.resolve(name);
+      fs.provider().stat(next, stat, false);
+      if (!stat.isSymlink()) {
+        resolved = next;
+        continue;
+      }
+      if (++links > MAX_LINKS)
+        throw new FileSystemLoopException(toString());
+      String target;
+      try {
+        target = mount.readlink(next.path);
+      } catch (IOException e) {
+        throw CephFileSystemProvider.translate(e, next, null);
+      }
+      CephPath link = new CephPath(fs, target);
+      for (int i = link.getNameCount() - 1; i >= 0 && !link.path.isEmpty(); i--)
+        pending.add(link.name(i));
+      if (link.isAbsolute())
+        resolved = fs.getRoot();
+    }
+    return resolved;
+  }
+
+  @Override
+  public File toFile() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events,
+      WatchEvent.Modifier... modifiers) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events)
+      throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Iterator<Path> iterator() {
+    int count = getNameCount();
+    Path[] names = new Path[count];
+    for (int i = 0; i < count; i++)
+      names[i] = getName(i);
+    return Arrays.asList(names).iterator();
+  }
+
+  @Override
+  public int compareTo(Path other) {
+    return path.compareTo(((CephPath)other).path);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof CephPath))
+      return false;
+    CephPath that = (CephPath)other;
+    return that.fs == fs && that.path.equals(path);
+  }
+
+  @Override
+  public int hashCode() {
+    return path.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+}
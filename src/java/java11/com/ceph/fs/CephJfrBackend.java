@@ -0,0 +1,955 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Backend wrapper emitting Java Flight Recorder events for the calls of
+ * the backend it wraps.
+ *
+ * Opening, closing, reading, writing, stat, listing a directory, fsync and
+ * the namespace calls (mkdir, rmdir, unlink, rename, link and symlink)
+ * emit com.ceph.fs.Open, Close, Read, Write, Stat, Listdir, Fsync and
+ * Namespace events. Each carries the path or file descriptor, the byte
+ * counts where there are some, the duration and, for failed calls, the
+ * errno and error message, so time spent in libcephfs can be lined up with
+ * GC pauses and safepoints in JDK Mission Control.
+ *
+ * Like the JDK file I/O events, the events are only recorded for calls
+ * over a threshold, 20 ms unless the recording settings set another one.
+ * When no recording is running, or a call finishes under the threshold,
+ * nothing but the start and end time is taken.
+ *
+ * Enable it for every mount with -Dcom.ceph.fs.jfr=true and
+ * libcephfs-jfr.jar on the class path, or for some mounts by creating
+ * them with a provider wrapped by instrument().
+ */
+public final class CephJfrBackend implements CephBackend {
+
+  /* Linux errno values of the exceptions the backends raise */
+  private static final int ENOENT = 2;
+  private static final int EEXIST = 17;
+  private static final int ENOTDIR = 20;
+  private static final int ENOTCONN = 107;
+
+  private final CephBackend backend;
+
+  /**
+   * Wrap a backend.
+   *
+   * @param backend The backend calls are forwarded to.
+   */
+  public CephJfrBackend(CephBackend backend) {
+    this.backend = backend;
+  }
+
+  /**
+   * Wrap a provider so that the mounts it creates emit events.
+   *
+   * @param provider The provider to wrap, or null for the default one.
+   * @return A provider of backends emitting events.
+   */
+  public static CephBackendProvider instrument(final CephBackendProvider provider) {
+    return new CephBackendProvider() {
+      public CephBackend create(CephMount mount, String id) {
+        CephBackendProvider p = (provider == null) ? CephMount.default_provider() : provider;
+        return CephMount.jfr_backend(p.create(mount, id));
+      }
+    };
+  }
+
+  private static long total(int[] len) {
+    long total = 0;
+    for (int l : len)
+      total += l;
+    return total;
+  }
+
+  @Category("CephFS")
+  @StackTrace(true)
+  @Threshold("20 ms")
+  abstract static class CephEvent extends Event {
+    @Label("Errno")
+    @Description("Error number of a failed call, -1 if not known")
+    int errno;
+
+    @Label("Error")
+    String error;
+
+    /*
+     * Note the failure of the call and rethrow its exception, which may be
+     * a checked exception the backend method does not declare.
+     */
+    RuntimeException failed(Throwable t) {
+      if (t instanceof FileNotFoundException)
+        errno = ENOENT;
+      else if (t instanceof CephFileAlreadyExistsException)
+        errno = EEXIST;
+      else if (t instanceof CephNotDirectoryException)
+        errno = ENOTDIR;
+      else if (t instanceof CephNotMountedException)
+        errno = ENOTCONN;
+      else
+        errno = -1;
+      error = t.toString();
+      return CephJfrBackend.<RuntimeException>sneaky(t);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Throwable> T sneaky(Throwable t) throws T {
+    throw (T)t;
+  }
+
+  @Name("com.ceph.fs.Open")
+  @Label("CephFS Open")
+  static final class OpenEvent extends CephEvent {
+    @Label("Path")
+    String path;
+
+    @Label("Flags")
+    int flags;
+
+    @Label("Mode")
+    int mode;
+
+    @Label("File Descriptor")
+    int fd;
+  }
+
+  @Name("com.ceph.fs.Close")
+  @Label("CephFS Close")
+  @Description("Closing a file, which flushes the data buffered for it")
+  static final class CloseEvent extends CephEvent {
+    @Label("File Descriptor")
+    int fd;
+  }
+
+  @Name("com.ceph.fs.Read")
+  @Label("CephFS Read")
+  static final class ReadEvent extends CephEvent {
+    @Label("File Descriptor")
+    int fd;
+
+    @Label("Offset")
+    long offset;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+  }
+
+  @Name("com.ceph.fs.Write")
+  @Label("CephFS Write")
+  static final class WriteEvent extends CephEvent {
+    @Label("File Descriptor")
+    int fd;
+
+    @Label("Offset")
+    long offset;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+  }
+
+  @Name("com.ceph.fs.Stat")
+  @Label("CephFS Stat")
+  @Description("stat, lstat and statx of a path, or fstat of a file")
+  static final class StatEvent extends CephEvent {
+    @Label("Path")
+    String path;
+
+    @Label("File Descriptor")
+    @Description("-1 for a path")
+    int fd;
+  }
+
+  @Name("com.ceph.fs.Listdir")
+  @Label("CephFS Listdir")
+  static final class ListdirEvent extends CephEvent {
+    @Label("Path")
+    String path;
+
+    @Label("Entries")
+    int entries;
+  }
+
+  @Name("com.ceph.fs.Fsync")
+  @Label("CephFS Fsync")
+  @Description("fsync of a file, or sync of the whole file system")
+  static final class FsyncEvent extends CephEvent {
+    @Label("File Descriptor")
+    @Description("-1 for a file system sync")
+    int fd;
+
+    @Label("Data Only")
+    boolean dataOnly;
+  }
+
+  @Name("com.ceph.fs.Namespace")
+  @Label("CephFS Namespace")
+  @Description("mkdir, rmdir, unlink, rename, link or symlink")
+  static final class NamespaceEvent extends CephEvent {
+    @Label("Operation")
+    String operation;
+
+    @Label("Path")
+    String path;
+
+    @Label("Target")
+    @Description("Destination of a rename, or what a link points to")
+    String target;
+  }
+
+  public int mount(String root) {
+    return backend.mount(root);
+  }
+
+  public int unmount() {
+    return backend.unmount();
+  }
+
+  public int release() {
+    return backend.release();
+  }
+
+  public int conf_read_file(String path) {
+    return backend.conf_read_file(path);
+  }
+
+  public int conf_set(String option, String value) {
+    return backend.conf_set(option, value);
+  }
+
+  public String conf_get(String option) {
+    return backend.conf_get(option);
+  }
+
+  public int statfs(String path, CephStatVFS statvfs) {
+    return backend.statfs(path, statvfs);
+  }
+
+  public String getcwd() {
+    return backend.getcwd();
+  }
+
+  public int chdir(String cwd) {
+    return backend.chdir(cwd);
+  }
+
+  public String[] listdir(String path) {
+    ListdirEvent event = new ListdirEvent();
+    event.begin();
+    try {
+      String[] names = backend.listdir(path);
+      event.entries = names.length;
+      return names;
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = path;
+        event.commit();
+      }
+    }
+  }
+
+  public long opendir(String path) {
+    return backend.opendir(path);
+  }
+
+  public String[] readdir_batch(long dirp, int max) throws IOException {
+    return backend.readdir_batch(dirp, max);
+  }
+
+  public String[] readdirplus_batch(long dirp, int max, long[] stats) throws IOException {
+    return backend.readdirplus_batch(dirp, max, stats);
+  }
+
+  public int closedir(long dirp) {
+    return backend.closedir(dirp);
+  }
+
+  public int link(String existing, String newname) {
+    NamespaceEvent event = new NamespaceEvent();
+    event.begin();
+    try {
+      return backend.link(existing, newname);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = "link";
+        event.path = newname;
+        event.target = existing;
+        event.commit();
+      }
+    }
+  }
+
+  public int unlink(String path) {
+    NamespaceEvent event = new NamespaceEvent();
+    event.begin();
+    try {
+      return backend.unlink(path);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = "unlink";
+        event.path = path;
+        event.commit();
+      }
+    }
+  }
+
+  public int rename(String from, String to) {
+    NamespaceEvent event = new NamespaceEvent();
+    event.begin();
+    try {
+      return backend.rename(from, to);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = "rename";
+        event.path = from;
+        event.target = to;
+        event.commit();
+      }
+    }
+  }
+
+  public int mkdir(String path, int mode) {
+    NamespaceEvent event = new NamespaceEvent();
+    event.begin();
+    try {
+      return backend.mkdir(path, mode);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = "mkdir";
+        event.path = path;
+        event.commit();
+      }
+    }
+  }
+
+  public int mkdirs(String path, int mode) {
+    NamespaceEvent event = new NamespaceEvent();
+    event.begin();
+    try {
+      return backend.mkdirs(path, mode);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = "mkdirs";
+        event.path = path;
+        event.commit();
+      }
+    }
+  }
+
+  public int rmdir(String path) {
+    NamespaceEvent event = new NamespaceEvent();
+    event.begin();
+    try {
+      return backend.rmdir(path);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = "rmdir";
+        event.path = path;
+        event.commit();
+      }
+    }
+  }
+
+  public String readlink(String path) {
+    return backend.readlink(path);
+  }
+
+  public int symlink(String existing, String newname) {
+    NamespaceEvent event = new NamespaceEvent();
+    event.begin();
+    try {
+      return backend.symlink(existing, newname);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = "symlink";
+        event.path = newname;
+        event.target = existing;
+        event.commit();
+      }
+    }
+  }
+
+  public int stat(String path, long[] packed) {
+    StatEvent event = new StatEvent();
+    event.begin();
+    try {
+      return backend.stat(path, packed);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = path;
+        event.fd = -1;
+        event.commit();
+      }
+    }
+  }
+
+  public int lstat(String path, long[] packed) {
+    StatEvent event = new StatEvent();
+    event.begin();
+    try {
+      return backend.lstat(path, packed);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = path;
+        event.fd = -1;
+        event.commit();
+      }
+    }
+  }
+
+  public int stat_batch(String[] paths, boolean follow, CephStatBatch batch) {
+    return backend.stat_batch(paths, follow, batch);
+  }
+
+  public int statx(String path, long[] packed, int want, int flags) {
+    StatEvent event = new StatEvent();
+    event.begin();
+    try {
+      return backend.statx(path, packed, want, flags);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = path;
+        event.fd = -1;
+        event.commit();
+      }
+    }
+  }
+
+  public int setattr(String relpath, CephStat stat, int mask) {
+    return backend.setattr(relpath, stat, mask);
+  }
+
+  public int chmod(String path, int mode) {
+    return backend.chmod(path, mode);
+  }
+
+  public int fchmod(int fd, int mode) {
+    return backend.fchmod(fd, mode);
+  }
+
+  public int truncate(String path, long size) {
+    return backend.truncate(path, size);
+  }
+
+  public int open(String path, int flags, int mode) {
+    OpenEvent event = new OpenEvent();
+    event.begin();
+    try {
+      return event.fd = backend.open(path, flags, mode);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = path;
+        event.flags = flags;
+        event.mode = mode;
+        event.commit();
+      }
+    }
+  }
+
+  public int open_layout(String path, int flags, int mode, int stripe_unit,
+      int stripe_count, int object_size, String data_pool) {
+    OpenEvent event = new OpenEvent();
+    event.begin();
+    try {
+      return event.fd = backend.open_layout(path, flags, mode, stripe_unit, stripe_count,
+          object_size, data_pool);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = path;
+        event.flags = flags;
+        event.mode = mode;
+        event.commit();
+      }
+    }
+  }
+
+  public int close(int fd) {
+    CloseEvent event = new CloseEvent();
+    event.begin();
+    try {
+      return backend.close(fd);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.commit();
+      }
+    }
+  }
+
+  public long lseek(int fd, long offset, int whence) {
+    return backend.lseek(fd, offset, whence);
+  }
+
+  public long read(int fd, byte[] buf, long size, long offset) {
+    ReadEvent event = new ReadEvent();
+    event.begin();
+    try {
+      return event.bytesRead = backend.read(fd, buf, size, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = size;
+        event.commit();
+      }
+    }
+  }
+
+  public long write(int fd, byte[] buf, long size, long offset) {
+    WriteEvent event = new WriteEvent();
+    event.begin();
+    try {
+      return event.bytesWritten = backend.write(fd, buf, size, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = size;
+        event.commit();
+      }
+    }
+  }
+
+  public long read_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+    ReadEvent event = new ReadEvent();
+    event.begin();
+    try {
+      return event.bytesRead = backend.read_direct(fd, buf, pos, size, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = size;
+        event.commit();
+      }
+    }
+  }
+
+  public long read_region(int fd, byte[] buf, int pos, int size, long offset) {
+    ReadEvent event = new ReadEvent();
+    event.begin();
+    try {
+      return event.bytesRead = backend.read_region(fd, buf, pos, size, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = size;
+        event.commit();
+      }
+    }
+  }
+
+  public long write_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+    WriteEvent event = new WriteEvent();
+    event.begin();
+    try {
+      return event.bytesWritten = backend.write_direct(fd, buf, pos, size, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = size;
+        event.commit();
+      }
+    }
+  }
+
+  public long write_region(int fd, byte[] buf, int pos, int size, long offset) {
+    WriteEvent event = new WriteEvent();
+    event.begin();
+    try {
+      return event.bytesWritten = backend.write_region(fd, buf, pos, size, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = size;
+        event.commit();
+      }
+    }
+  }
+
+  public long preadv(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len,
+      long offset) {
+    ReadEvent event = new ReadEvent();
+    event.begin();
+    try {
+      return event.bytesRead = backend.preadv(fd, direct, heap, pos, len, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = total(len);
+        event.commit();
+      }
+    }
+  }
+
+  public long pwritev(int fd, ByteBuffer[] direct, byte[][] heap, int[] pos, int[] len,
+      long offset) {
+    WriteEvent event = new WriteEvent();
+    event.begin();
+    try {
+      return event.bytesWritten = backend.pwritev(fd, direct, heap, pos, len, offset);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.offset = offset;
+        event.size = total(len);
+        event.commit();
+      }
+    }
+  }
+
+  public long copy_file_range(int fd_in, long off_in, int fd_out, long off_out, long len) {
+    return backend.copy_file_range(fd_in, off_in, fd_out, off_out, len);
+  }
+
+  public int ftruncate(int fd, long size) {
+    return backend.ftruncate(fd, size);
+  }
+
+  public int fsync(int fd, boolean dataonly) {
+    FsyncEvent event = new FsyncEvent();
+    event.begin();
+    try {
+      return backend.fsync(fd, dataonly);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.dataOnly = dataonly;
+        event.commit();
+      }
+    }
+  }
+
+  public int flock(int fd, int operation, long owner) {
+    return backend.flock(fd, operation, owner);
+  }
+
+  public int fstat(int fd, long[] packed) {
+    StatEvent event = new StatEvent();
+    event.begin();
+    try {
+      return backend.fstat(fd, packed);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.commit();
+      }
+    }
+  }
+
+  public int fstatx(int fd, long[] packed, int want, int flags) {
+    StatEvent event = new StatEvent();
+    event.begin();
+    try {
+      return backend.fstatx(fd, packed, want, flags);
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = fd;
+        event.commit();
+      }
+    }
+  }
+
+  public int sync_fs() {
+    FsyncEvent event = new FsyncEvent();
+    event.begin();
+    try {
+      return backend.sync_fs();
+    } catch (Throwable t) {
+      throw event.failed(t);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.fd = -1;
+        event.commit();
+      }
+    }
+  }
+
+  public long getxattr(String path, String name, byte[] buf) {
+    return backend.getxattr(path, name, buf);
+  }
+
+  public long lgetxattr(String path, String name, byte[] buf) {
+    return backend.lgetxattr(path, name, buf);
+  }
+
+  public String[] listxattr(String path) {
+    return backend.listxattr(path);
+  }
+
+  public String[] llistxattr(String path) {
+    return backend.llistxattr(path);
+  }
+
+  public int removexattr(String path, String name) {
+    return backend.removexattr(path, name);
+  }
+
+  public int lremovexattr(String path, String name) {
+    return backend.lremovexattr(path, name);
+  }
+
+  public int setxattr(String path, String name, byte[] buf, long size, int flags) {
+    return backend.setxattr(path, name, buf, size, flags);
+  }
+
+  public int lsetxattr(String path, String name, byte[] buf, long size, int flags) {
+    return backend.lsetxattr(path, name, buf, size, flags);
+  }
+
+  public int get_dir_rstats(String path, long[] packed) {
+    return backend.get_dir_rstats(path, packed);
+  }
+
+  public int get_dir_rstats_batch(String[] paths, long[] packed, int[] errors) {
+    return backend.get_dir_rstats_batch(paths, packed, errors);
+  }
+
+  public int get_file_stripe_unit(int fd) {
+    return backend.get_file_stripe_unit(fd);
+  }
+
+  public String get_file_pool_name(int fd) {
+    return backend.get_file_pool_name(fd);
+  }
+
+  public String get_default_data_pool_name() {
+    return backend.get_default_data_pool_name();
+  }
+
+  public int get_file_replication(int fd) {
+    return backend.get_file_replication(fd);
+  }
+
+  public String get_file_layout(int fd, int[] layout) {
+    return backend.get_file_layout(fd, layout);
+  }
+
+  public String get_path_layout(String path, int[] layout) {
+    return backend.get_path_layout(path, layout);
+  }
+
+  public int set_dir_layout(String path, int stripe_unit, int stripe_count, int object_size,
+      String pool) {
+    return backend.set_dir_layout(path, stripe_unit, stripe_count, object_size, pool);
+  }
+
+  public int localize_reads(boolean on) {
+    return backend.localize_reads(on);
+  }
+
+  public int get_stripe_unit_granularity() {
+    return backend.get_stripe_unit_granularity();
+  }
+
+  public int get_pool_id(String name) throws FileNotFoundException {
+    return backend.get_pool_id(name);
+  }
+
+  public int get_pool_replication(int pool_id) throws FileNotFoundException {
+    return backend.get_pool_replication(pool_id);
+  }
+
+  public CephFileExtent get_file_extent_osds(int fd, long offset) {
+    return backend.get_file_extent_osds(fd, offset);
+  }
+
+  public String[] get_osd_crush_location(int osd) {
+    return backend.get_osd_crush_location(osd);
+  }
+
+  public InetAddress get_osd_addr(int osd) {
+    return backend.get_osd_addr(osd);
+  }
+
+  public CephFileExtent[] get_file_extents(int fd, long offset, long length) {
+    return backend.get_file_extents(fd, offset, length);
+  }
+
+  public long ll_lookup_root() {
+    return backend.ll_lookup_root();
+  }
+
+  public long ll_lookup(long parent, String name) {
+    return backend.ll_lookup(parent, name);
+  }
+
+  public long ll_walk(String path) {
+    return backend.ll_walk(path);
+  }
+
+  public int ll_put(long inode) {
+    return backend.ll_put(inode);
+  }
+
+  public int ll_getattr(long inode, long[] packed, int want, int flags) {
+    return backend.ll_getattr(inode, packed, want, flags);
+  }
+
+  public long ll_opendir(long dir) {
+    return backend.ll_opendir(dir);
+  }
+
+  public String[] ll_readdirplus_batch(long dirp, int max, long[] stats, long[] inodes)
+    throws IOException {
+    return backend.ll_readdirplus_batch(dirp, max, stats, inodes);
+  }
+
+  public int ll_releasedir(long dirp) {
+    return backend.ll_releasedir(dirp);
+  }
+
+  public long ll_open(long inode, int flags) {
+    return backend.ll_open(inode, flags);
+  }
+
+  public long ll_read(long fh, byte[] buf, long size, long offset) {
+    return backend.ll_read(fh, buf, size, offset);
+  }
+
+  public long ll_read_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+    return backend.ll_read_direct(fh, buf, pos, size, offset);
+  }
+
+  public long ll_read_region(long fh, byte[] buf, int pos, int size, long offset) {
+    return backend.ll_read_region(fh, buf, pos, size, offset);
+  }
+
+  public long ll_write(long fh, byte[] buf, long size, long offset) {
+    return backend.ll_write(fh, buf, size, offset);
+  }
+
+  public long ll_write_direct(long fh, ByteBuffer buf, int pos, int size, long offset) {
+    return backend.ll_write_direct(fh, buf, pos, size, offset);
+  }
+
+  public long ll_write_region(long fh, byte[] buf, int pos, int size, long offset) {
+    return backend.ll_write_region(fh, buf, pos, size, offset);
+  }
+
+  public int ll_close(long fh) {
+    return backend.ll_close(fh);
+  }
+}
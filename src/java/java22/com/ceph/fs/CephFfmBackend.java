@@ -0,0 +1,639 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * Backend calling libcephfs through the Java 22 foreign function and memory
+ * API instead of the JNI shim.
+ *
+ * The mount is still created and configured through JNI, but stat, open,
+ * close, lseek, read, write and the common namespace calls go straight to
+ * libcephfs: paths are encoded into a per-thread native buffer, struct
+ * ceph_statx is read through a layout, and direct ByteBuffers are passed
+ * without copying. Errors are reported exactly as the JNI backend does.
+ *
+ * Select it with -Dcom.ceph.fs.backend=ffm, with libcephfs-ffm.jar on the
+ * class path and --enable-native-access=ALL-UNNAMED to allow the downcalls.
+ */
+public class CephFfmBackend implements CephBackendProvider {
+
+  public CephFfmBackend() {}
+
+  public CephBackend create(CephMount mount, String id) {
+    return new Backend(mount, id);
+  }
+
+  /* libcephfs soname, used if the JNI library does not expose it */
+  private static final String LIBRARY = "libcephfs.so.2";
+
+  /*
+   * Fields fetched by stat, lstat and fstat, the same as
+   * CEPH_J_CEPHSTAT_MASK in the JNI layer. The packed calls ask for every
+   * field through statx and fstatx instead.
+   */
+  private static final int CEPHSTAT_MASK = CephMount.STATX_UID |
+    CephMount.STATX_GID | CephMount.STATX_SIZE | CephMount.STATX_BLOCKS |
+    CephMount.STATX_MTIME | CephMount.STATX_ATIME;
+
+  /* libc values of the flags the JNI layer translates */
+  private static final int AT_SYMLINK_NOFOLLOW = 0x100;
+  private static final int AT_STATX_DONT_SYNC = 0x4000;
+
+  private static final int O_RDONLY = 0;
+  private static final int O_WRONLY = 01;
+  private static final int O_RDWR = 02;
+  private static final int O_CREAT = 0100;
+  private static final int O_EXCL = 0200;
+  private static final int O_TRUNC = 01000;
+  private static final int O_APPEND = 02000;
+  private static final int O_DIRECTORY = o_directory();
+
+  private static final int SEEK_SET = 0;
+  private static final int SEEK_CUR = 1;
+  private static final int SEEK_END = 2;
+
+  private static final int EPERM = 1;
+  private static final int ENOENT = 2;
+  private static final int EACCES = 13;
+  private static final int EEXIST = 17;
+  private static final int ENOTDIR = 20;
+  private static final int ENOTEMPTY = 39;
+
+  /* O_DIRECTORY is one of the few flags that differ between Linux ports */
+  private static int o_directory() {
+    String arch = System.getProperty("os.arch");
+    if (arch.startsWith("aarch64") || arch.startsWith("arm") || arch.startsWith("ppc"))
+      return 040000;
+    return 0200000;
+  }
+
+  /*
+   * struct ceph_statx, see include/cephfs/ceph_ll_client.h. dev_t and the
+   * timespec fields are 64 bits on the LP64 Linux ports.
+   */
+  private static final StructLayout TIMESPEC = MemoryLayout.structLayout(
+      JAVA_LONG.withName("tv_sec"),
+      JAVA_LONG.withName("tv_nsec"));
+
+  static final StructLayout STATX = MemoryLayout.structLayout(
+      JAVA_INT.withName("stx_mask"),
+      JAVA_INT.withName("stx_blksize"),
+      JAVA_INT.withName("stx_nlink"),
+      JAVA_INT.withName("stx_uid"),
+      JAVA_INT.withName("stx_gid"),
+      JAVA_SHORT.withName("stx_mode"),
+      MemoryLayout.paddingLayout(2),
+      JAVA_LONG.withName("stx_ino"),
+      JAVA_LONG.withName("stx_size"),
+      JAVA_LONG.withName("stx_blocks"),
+      JAVA_LONG.withName("stx_dev"),
+      JAVA_LONG.withName("stx_rdev"),
+      TIMESPEC.withName("stx_atime"),
+      TIMESPEC.withName("stx_ctime"),
+      TIMESPEC.withName("stx_mtime"),
+      TIMESPEC.withName("stx_btime"),
+      JAVA_LONG.withName("stx_version"));
+
+  private static final long STX_MASK = offset("stx_mask");
+  private static final long STX_BLKSIZE = offset("stx_blksize");
+  private static final long STX_NLINK = offset("stx_nlink");
+  private static final long STX_UID = offset("stx_uid");
+  private static final long STX_GID = offset("stx_gid");
+  private static final long STX_MODE = offset("stx_mode");
+  private static final long STX_INO = offset("stx_ino");
+  private static final long STX_SIZE = offset("stx_size");
+  private static final long STX_BLOCKS = offset("stx_blocks");
+  private static final long STX_DEV = offset("stx_dev");
+  private static final long STX_ATIME = offset("stx_atime");
+  private static final long STX_CTIME = offset("stx_ctime");
+  private static final long STX_MTIME = offset("stx_mtime");
+  private static final long STX_BTIME = offset("stx_btime");
+  private static final long STX_VERSION = offset("stx_version");
+
+  private static long offset(String field) {
+    return STATX.byteOffset(groupElement(field));
+  }
+
+  /*
+   * Per-thread native scratch: a ceph_statx and a buffer that paths and
+   * small heap array transfers are copied through. Larger transfers use a
+   * confined arena for the duration of the call.
+   */
+  private static final long SCRATCH_SIZE = 8192;
+  private static final long SCRATCH_MAX = 1 << 20;
+
+  private static final class Scratch {
+    final MemorySegment stx = Arena.ofAuto().allocate(STATX);
+    MemorySegment buf = Arena.ofAuto().allocate(SCRATCH_SIZE, 8);
+
+    MemorySegment buffer(long size) {
+      if (buf.byteSize() < size)
+        buf = Arena.ofAuto().allocate(Math.max(size, buf.byteSize() * 2), 8);
+      return buf;
+    }
+  }
+
+  private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+  /*
+   * Encode @s as a NUL terminated UTF-8 string into @seg at @off, returning
+   * the offset just past it.
+   */
+  private static long encode(MemorySegment seg, long off, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    MemorySegment.copy(bytes, 0, seg, JAVA_BYTE, off, bytes.length);
+    seg.set(JAVA_BYTE, off + bytes.length, (byte)0);
+    return off + bytes.length + 1;
+  }
+
+  private static long encoded_length(String s) {
+    /* upper bound, a char never takes more than three UTF-8 bytes */
+    return (long)s.length() * 3 + 1;
+  }
+
+  private static void check_null(Object arg, String msg) {
+    if (arg == null)
+      throw new NullPointerException(msg);
+  }
+
+  private static void check_bounds(boolean cond, String msg) {
+    if (cond)
+      throw new IndexOutOfBoundsException(msg);
+  }
+
+  private static int fixup_open_flags(int flags) {
+    int ret = 0;
+    if ((flags & CephMount.O_RDONLY) != 0)
+      ret |= O_RDONLY;
+    if ((flags & CephMount.O_RDWR) != 0)
+      ret |= O_RDWR;
+    if ((flags & CephMount.O_APPEND) != 0)
+      ret |= O_APPEND;
+    if ((flags & CephMount.O_CREAT) != 0)
+      ret |= O_CREAT;
+    if ((flags & CephMount.O_TRUNC) != 0)
+      ret |= O_TRUNC;
+    if ((flags & CephMount.O_EXCL) != 0)
+      ret |= O_EXCL;
+    if ((flags & CephMount.O_WRONLY) != 0)
+      ret |= O_WRONLY;
+    if ((flags & CephMount.O_DIRECTORY) != 0)
+      ret |= O_DIRECTORY;
+    return ret;
+  }
+
+  private static int fixup_statx_flags(int flags) {
+    int ret = 0;
+    if ((flags & CephMount.AT_SYMLINK_NOFOLLOW) != 0)
+      ret |= AT_SYMLINK_NOFOLLOW;
+    if ((flags & CephMount.AT_STATX_DONT_SYNC) != 0)
+      ret |= AT_STATX_DONT_SYNC;
+    return ret;
+  }
+
+  private static long timespec_to_msec(MemorySegment stx, long off) {
+    long sec = stx.get(JAVA_LONG, off);
+    long nsec = stx.get(JAVA_LONG, off + JAVA_LONG.byteSize());
+    return sec * 1000 + nsec / 1000000;
+  }
+
+  /* Same packing as pack_cephstat() in the JNI layer */
+  private static void pack_cephstat(long[] packed, MemorySegment stx) {
+    packed[CephStat.PACKED_MODE] = stx.get(JAVA_SHORT, STX_MODE) & 0xffff;
+    packed[CephStat.PACKED_UID] = Integer.toUnsignedLong(stx.get(JAVA_INT, STX_UID));
+    packed[CephStat.PACKED_GID] = Integer.toUnsignedLong(stx.get(JAVA_INT, STX_GID));
+    packed[CephStat.PACKED_SIZE] = stx.get(JAVA_LONG, STX_SIZE);
+    packed[CephStat.PACKED_BLKSIZE] = Integer.toUnsignedLong(stx.get(JAVA_INT, STX_BLKSIZE));
+    packed[CephStat.PACKED_BLOCKS] = stx.get(JAVA_LONG, STX_BLOCKS);
+
+    packed[CephStat.PACKED_A_TIME] = timespec_to_msec(stx, STX_ATIME);
+    packed[CephStat.PACKED_M_TIME] = timespec_to_msec(stx, STX_MTIME);
+    packed[CephStat.PACKED_INO] = stx.get(JAVA_LONG, STX_INO);
+    packed[CephStat.PACKED_NLINK] = Integer.toUnsignedLong(stx.get(JAVA_INT, STX_NLINK));
+    packed[CephStat.PACKED_C_TIME] = timespec_to_msec(stx, STX_CTIME);
+    packed[CephStat.PACKED_B_TIME] = timespec_to_msec(stx, STX_BTIME);
+    packed[CephStat.PACKED_DEV] = stx.get(JAVA_LONG, STX_DEV);
+    packed[CephStat.PACKED_VERSION] = stx.get(JAVA_LONG, STX_VERSION);
+  }
+
+  /*
+   * Throw the exception handle_error() in the JNI layer raises for @rc,
+   * without having to declare it.
+   */
+  private static RuntimeException error(int rc) {
+    IOException e;
+    switch (-rc) {
+      case ENOENT:
+        e = new FileNotFoundException("");
+        break;
+      case EEXIST:
+        e = new CephFileAlreadyExistsException("");
+        break;
+      case ENOTDIR:
+        e = new CephNotDirectoryException("");
+        break;
+      case ENOTEMPTY:
+        e = new CephDirectoryNotEmptyException(strerror(-rc));
+        break;
+      case EACCES:
+      case EPERM:
+        e = new CephPermissionDeniedException(strerror(-rc));
+        break;
+      default:
+        e = new IOException(strerror(-rc));
+        break;
+    }
+    return CephFfmBackend.<RuntimeException>sneaky(e);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Throwable> T sneaky(Throwable t) throws T {
+    throw (T)t;
+  }
+
+  /* A downcall failed in the linker rather than in libcephfs */
+  private static RuntimeException rethrow(Throwable t) {
+    if (t instanceof RuntimeException)
+      throw (RuntimeException)t;
+    if (t instanceof Error)
+      throw (Error)t;
+    throw new IllegalStateException(t);
+  }
+
+  private static String strerror(int errno) {
+    MemorySegment msg;
+    try {
+      msg = (MemorySegment)STRERROR.invokeExact(errno);
+    } catch (Throwable t) {
+      throw rethrow(t);
+    }
+    msg = msg.reinterpret(1024);
+    long len = 0;
+    while (len < msg.byteSize() && msg.get(JAVA_BYTE, len) != 0)
+      len++;
+    return new String(msg.asSlice(0, len).toArray(JAVA_BYTE), StandardCharsets.UTF_8);
+  }
+
+  /*
+   * Bound libcephfs functions. The JNI library is loaded first (by the
+   * JniBackend class initializer) and links libcephfs, so its symbols are
+   * looked up through it; that guarantees both sides share one libcephfs
+   * and one struct ceph_mount_info.
+   */
+  private static final Linker LINKER = Linker.nativeLinker();
+  private static SymbolLookup libcephfs;
+
+  private static MethodHandle downcall(String name, FunctionDescriptor desc) {
+    if (libcephfs == null) {
+      SymbolLookup loader = SymbolLookup.loaderLookup();
+      if (loader.find(name).isPresent())
+        libcephfs = loader;
+      else
+        libcephfs = SymbolLookup.libraryLookup(LIBRARY, Arena.global());
+    }
+    MemorySegment sym = libcephfs.find(name).orElseThrow(() ->
+        new UnsatisfiedLinkError("unresolved symbol: " + name));
+    return LINKER.downcallHandle(sym, desc);
+  }
+
+  private static final MethodHandle STRERROR = LINKER.downcallHandle(
+      LINKER.defaultLookup().find("strerror").orElseThrow(),
+      FunctionDescriptor.of(ADDRESS, JAVA_INT));
+
+  /*
+   * The backend. Handles are resolved when it is first used, after the JNI
+   * library is loaded.
+   */
+  static final class Backend extends CephMount.JniBackend {
+
+    private static final MethodHandle CEPH_IS_MOUNTED = downcall("ceph_is_mounted",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS));
+    private static final MethodHandle CEPH_STATX = downcall("ceph_statx",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT, JAVA_INT));
+    private static final MethodHandle CEPH_FSTATX = downcall("ceph_fstatx",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT));
+    private static final MethodHandle CEPH_OPEN = downcall("ceph_open",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT, JAVA_INT));
+    private static final MethodHandle CEPH_CLOSE = downcall("ceph_close",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT));
+    private static final MethodHandle CEPH_LSEEK = downcall("ceph_lseek",
+        FunctionDescriptor.of(JAVA_LONG, ADDRESS, JAVA_INT, JAVA_LONG, JAVA_INT));
+    private static final MethodHandle CEPH_READ = downcall("ceph_read",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle CEPH_WRITE = downcall("ceph_write",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle CEPH_UNLINK = downcall("ceph_unlink",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    private static final MethodHandle CEPH_MKDIR = downcall("ceph_mkdir",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT));
+    private static final MethodHandle CEPH_RMDIR = downcall("ceph_rmdir",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+    private static final MethodHandle CEPH_RENAME = downcall("ceph_rename",
+        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+
+    private final MemorySegment cmount;
+
+    Backend(CephMount mount, String id) {
+      super(mount, id);
+      cmount = MemorySegment.ofAddress(mountp);
+    }
+
+    private void check_mounted() {
+      int ret;
+      try {
+        ret = (int)CEPH_IS_MOUNTED.invokeExact(cmount);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret == 0)
+        throw CephFfmBackend.<RuntimeException>sneaky(new CephNotMountedException("not mounted"));
+    }
+
+    /* Encode one path into the thread's scratch buffer */
+    private static MemorySegment path(Scratch s, String path) {
+      MemorySegment buf = s.buffer(encoded_length(path));
+      encode(buf, 0, path);
+      return buf;
+    }
+
+    private int namespace_call(MethodHandle mh, String path, int mode, boolean with_mode) {
+      check_null(path, "@path is null");
+      check_mounted();
+
+      MemorySegment c_path = path(scratch.get(), path);
+      int ret;
+      try {
+        ret = with_mode ? (int)mh.invokeExact(cmount, c_path, mode) :
+          (int)mh.invokeExact(cmount, c_path);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret != 0)
+        throw error(ret);
+      return ret;
+    }
+
+    public int unlink(String path) {
+      return namespace_call(CEPH_UNLINK, path, 0, false);
+    }
+
+    public int mkdir(String path, int mode) {
+      return namespace_call(CEPH_MKDIR, path, mode, true);
+    }
+
+    public int rmdir(String path) {
+      return namespace_call(CEPH_RMDIR, path, 0, false);
+    }
+
+    public int rename(String from, String to) {
+      check_null(from, "@from is null");
+      check_null(to, "@to is null");
+      check_mounted();
+
+      Scratch s = scratch.get();
+      MemorySegment buf = s.buffer(encoded_length(from) + encoded_length(to));
+      long to_off = encode(buf, 0, from);
+      encode(buf, to_off, to);
+      int ret;
+      try {
+        ret = (int)CEPH_RENAME.invokeExact(cmount, buf, buf.asSlice(to_off));
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret != 0)
+        throw error(ret);
+      return ret;
+    }
+
+    private int do_statx(String path, long[] packed, int want, int flags) {
+      check_null(path, "@path is null");
+      check_null(packed, "@packed is null");
+      check_bounds(packed.length < CephStat.PACKED_LENGTH, "@packed is too short");
+      check_mounted();
+
+      Scratch s = scratch.get();
+      MemorySegment c_path = path(s, path);
+      s.stx.fill((byte)0);
+      int ret;
+      try {
+        ret = (int)CEPH_STATX.invokeExact(cmount, c_path, s.stx, want, flags);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret != 0)
+        throw error(ret);
+      pack_cephstat(packed, s.stx);
+      return s.stx.get(JAVA_INT, STX_MASK) & CephMount.STATX_ALL_STATS;
+    }
+
+    public int stat(String path, long[] packed) {
+      do_statx(path, packed, CEPHSTAT_MASK, 0);
+      return 0;
+    }
+
+    public int lstat(String path, long[] packed) {
+      do_statx(path, packed, CEPHSTAT_MASK, AT_SYMLINK_NOFOLLOW);
+      return 0;
+    }
+
+    public int statx(String path, long[] packed, int want, int flags) {
+      return do_statx(path, packed, want & CephMount.STATX_ALL_STATS,
+          fixup_statx_flags(flags));
+    }
+
+    public int fstat(int fd, long[] packed) {
+      check_null(packed, "@packed is null");
+      check_bounds(packed.length < CephStat.PACKED_LENGTH, "@packed is too short");
+      check_mounted();
+
+      Scratch s = scratch.get();
+      s.stx.fill((byte)0);
+      int ret;
+      try {
+        ret = (int)CEPH_FSTATX.invokeExact(cmount, fd, s.stx, CEPHSTAT_MASK, 0);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret != 0)
+        throw error(ret);
+      pack_cephstat(packed, s.stx);
+      return ret;
+    }
+
+    public int open(String path, int flags, int mode) {
+      check_null(path, "@path is null");
+      check_mounted();
+
+      MemorySegment c_path = path(scratch.get(), path);
+      int ret;
+      try {
+        ret = (int)CEPH_OPEN.invokeExact(cmount, c_path, fixup_open_flags(flags), mode);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret < 0)
+        throw error(ret);
+      return ret;
+    }
+
+    public int close(int fd) {
+      check_mounted();
+
+      int ret;
+      try {
+        ret = (int)CEPH_CLOSE.invokeExact(cmount, fd);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret != 0)
+        throw error(ret);
+      return ret;
+    }
+
+    public long lseek(int fd, long offset, int whence) {
+      check_mounted();
+
+      int c_whence;
+      switch (whence) {
+        case CephMount.SEEK_SET:
+          c_whence = SEEK_SET;
+          break;
+        case CephMount.SEEK_CUR:
+          c_whence = SEEK_CUR;
+          break;
+        case CephMount.SEEK_END:
+          c_whence = SEEK_END;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown whence value");
+      }
+
+      long ret;
+      try {
+        ret = (long)CEPH_LSEEK.invokeExact(cmount, fd, offset, c_whence);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret < 0)
+        throw error((int)ret);
+      return ret;
+    }
+
+    private long io(MethodHandle mh, int fd, MemorySegment buf, long size, long offset) {
+      int ret;
+      try {
+        ret = (int)mh.invokeExact(cmount, fd, buf, size, offset);
+      } catch (Throwable t) {
+        throw rethrow(t);
+      }
+      if (ret < 0)
+        throw error(ret);
+      return ret;
+    }
+
+    public long read(int fd, byte[] buf, long size, long offset) {
+      check_null(buf, "@buf is null");
+      check_bounds(size < 0, "@size is negative");
+      check_mounted();
+      check_bounds(size > buf.length, "@size > @buf.length");
+
+      if (size > SCRATCH_MAX) {
+        try (Arena arena = Arena.ofConfined()) {
+          MemorySegment c_buf = arena.allocate(size);
+          long ret = io(CEPH_READ, fd, c_buf, size, offset);
+          MemorySegment.copy(c_buf, JAVA_BYTE, 0, buf, 0, (int)ret);
+          return ret;
+        }
+      }
+
+      MemorySegment c_buf = scratch.get().buffer(size);
+      long ret = io(CEPH_READ, fd, c_buf, size, offset);
+      MemorySegment.copy(c_buf, JAVA_BYTE, 0, buf, 0, (int)ret);
+      return ret;
+    }
+
+    public long write(int fd, byte[] buf, long size, long offset) {
+      check_null(buf, "@buf is null");
+      check_bounds(size < 0, "@size is negative");
+      check_mounted();
+      check_bounds(size > buf.length, "@size > @buf.length");
+
+      if (size > SCRATCH_MAX) {
+        try (Arena arena = Arena.ofConfined()) {
+          MemorySegment c_buf = arena.allocate(size);
+          MemorySegment.copy(buf, 0, c_buf, JAVA_BYTE, 0, (int)size);
+          return io(CEPH_WRITE, fd, c_buf, size, offset);
+        }
+      }
+
+      MemorySegment c_buf = scratch.get().buffer(size);
+      MemorySegment.copy(buf, 0, c_buf, JAVA_BYTE, 0, (int)size);
+      return io(CEPH_WRITE, fd, c_buf, size, offset);
+    }
+
+    /* The whole of a direct buffer, addressed by absolute position */
+    private static MemorySegment direct(ByteBuffer buf, int pos, int size) {
+      if (!buf.isDirect())
+        throw new IllegalArgumentException("@buf is not a direct buffer");
+      check_bounds((long)pos + size > buf.capacity(), "@pos + @size > @buf.capacity");
+      ByteBuffer all = buf.duplicate();
+      all.clear();
+      return MemorySegment.ofBuffer(all).asSlice(pos, size);
+    }
+
+    public long read_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+      check_null(buf, "@buf is null");
+      check_bounds(pos < 0, "@pos is negative");
+      check_bounds(size < 0, "@size is negative");
+      check_mounted();
+
+      return io(CEPH_READ, fd, direct(buf, pos, size), size, offset);
+    }
+
+    public long write_direct(int fd, ByteBuffer buf, int pos, int size, long offset) {
+      check_null(buf, "@buf is null");
+      check_bounds(pos < 0, "@pos is negative");
+      check_bounds(size < 0, "@size is negative");
+      check_mounted();
+
+      return io(CEPH_WRITE, fd, direct(buf, pos, size), size, offset);
+    }
+  }
+}
@@ -19,6 +19,10 @@
  */
 #include <sys/types.h>
 #include <sys/stat.h>
+#include <sys/uio.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
 #include <string.h>
 #include <errno.h>
 #include <unistd.h>
@@ -26,6 +30,8 @@
 #include <sys/un.h>
 #include <jni.h>
 
+#include <algorithm>
+
 #include "ScopedLocalRef.h"
 #include "JniConstants.h"
 
@@ -38,12 +44,16 @@
 
 #define CEPH_STAT_CP "com/ceph/fs/CephStat"
 #define CEPH_STAT_VFS_CP "com/ceph/fs/CephStatVFS"
+#define CEPH_STAT_BATCH_CP "com/ceph/fs/CephStatBatch"
 #define CEPH_FILE_EXTENT_CP "com/ceph/fs/CephFileExtent"
 #define CEPH_MOUNT_CP "com/ceph/fs/CephMount"
 #define CEPH_NOTMOUNTED_CP "com/ceph/fs/CephNotMountedException"
 #define CEPH_FILEEXISTS_CP "com/ceph/fs/CephFileAlreadyExistsException"
 #define CEPH_ALREADYMOUNTED_CP "com/ceph/fs/CephAlreadyMountedException"
 #define CEPH_NOTDIR_CP "com/ceph/fs/CephNotDirectoryException"
+#define CEPH_WOULDBLOCK_CP "com/ceph/fs/CephWouldBlockException"
+#define CEPH_NOTEMPTY_CP "com/ceph/fs/CephDirectoryNotEmptyException"
+#define CEPH_PERMISSION_CP "com/ceph/fs/CephPermissionDeniedException"
 
 /*
  * Flags to open(). must be synchronized with CephMount.java
@@ -96,6 +106,52 @@
 #define JAVA_LOCK_NB 4
 #define JAVA_LOCK_UN 8
 
+/*
+ * statx field masks. sync with CephMount.java if changed.
+ *
+ * These are the CEPH_STATX_* values, so masks are passed through as is.
+ */
+#define JAVA_STATX_MODE        0x0001
+#define JAVA_STATX_NLINK       0x0002
+#define JAVA_STATX_UID         0x0004
+#define JAVA_STATX_GID         0x0008
+#define JAVA_STATX_ATIME       0x0020
+#define JAVA_STATX_MTIME       0x0040
+#define JAVA_STATX_CTIME       0x0080
+#define JAVA_STATX_INO         0x0100
+#define JAVA_STATX_SIZE        0x0200
+#define JAVA_STATX_BLOCKS      0x0400
+#define JAVA_STATX_BASIC_STATS 0x07ff
+#define JAVA_STATX_BTIME       0x0800
+#define JAVA_STATX_VERSION     0x1000
+#define JAVA_STATX_ALL_STATS   0x1fff
+
+#define CHECK_STATX_MASK(name) \
+	static_assert(JAVA_##name == CEPH_##name, #name " differs from libcephfs")
+
+CHECK_STATX_MASK(STATX_MODE);
+CHECK_STATX_MASK(STATX_NLINK);
+CHECK_STATX_MASK(STATX_UID);
+CHECK_STATX_MASK(STATX_GID);
+CHECK_STATX_MASK(STATX_ATIME);
+CHECK_STATX_MASK(STATX_MTIME);
+CHECK_STATX_MASK(STATX_CTIME);
+CHECK_STATX_MASK(STATX_INO);
+CHECK_STATX_MASK(STATX_SIZE);
+CHECK_STATX_MASK(STATX_BLOCKS);
+CHECK_STATX_MASK(STATX_BASIC_STATS);
+CHECK_STATX_MASK(STATX_BTIME);
+CHECK_STATX_MASK(STATX_VERSION);
+CHECK_STATX_MASK(STATX_ALL_STATS);
+
+#undef CHECK_STATX_MASK
+
+/*
+ * statx flags. sync with CephMount.java if changed.
+ */
+#define JAVA_AT_SYMLINK_NOFOLLOW 1
+#define JAVA_AT_STATX_DONT_SYNC  2
+
 using namespace std;
 
 /* Map JAVA_O_* open flags to values in libc */
@@ -121,6 +177,23 @@ static inline int fixup_open_flags(jint jflags)
 	return ret;
 }
 
+/* Map JAVA_AT_* statx flags to values in libc and ceph lib */
+static inline int fixup_statx_flags(jint jflags)
+{
+	int ret = 0;
+
+#define FIXUP_STATX_FLAG(name) \
+	if (jflags & JAVA_##name) \
+		ret |= name;
+
+	FIXUP_STATX_FLAG(AT_SYMLINK_NOFOLLOW)
+	FIXUP_STATX_FLAG(AT_STATX_DONT_SYNC)
+
+#undef FIXUP_STATX_FLAG
+
+	return ret;
+}
+
 /* Map JAVA_SETATTR_* to values in ceph lib */
 static inline int fixup_attr_mask(jint jmask)
 {
@@ -145,14 +218,19 @@ static inline int fixup_attr_mask(jint jmask)
 static jfieldID cephstat_mode_fid;
 static jfieldID cephstat_uid_fid;
 static jfieldID cephstat_gid_fid;
-static jfieldID cephstat_size_fid;
-static jfieldID cephstat_blksize_fid;
-static jfieldID cephstat_blocks_fid;
 static jfieldID cephstat_a_time_fid;
 static jfieldID cephstat_m_time_fid;
-static jfieldID cephstat_is_file_fid;
-static jfieldID cephstat_is_directory_fid;
-static jfieldID cephstat_is_symlink_fid;
+
+/* Cached field IDs for com.ceph.fs.CephStatBatch */
+static jfieldID cephstatbatch_mode_fid;
+static jfieldID cephstatbatch_uid_fid;
+static jfieldID cephstatbatch_gid_fid;
+static jfieldID cephstatbatch_size_fid;
+static jfieldID cephstatbatch_blksize_fid;
+static jfieldID cephstatbatch_blocks_fid;
+static jfieldID cephstatbatch_a_time_fid;
+static jfieldID cephstatbatch_m_time_fid;
+static jfieldID cephstatbatch_error_fid;
 
 /* Cached field IDs for com.ceph.fs.CephStatVFS */
 static jfieldID cephstatvfs_bsize_fid;
@@ -170,61 +248,82 @@ static jfieldID cephmount_instance_ptr_fid;
 static jclass cephfileextent_cls;
 static jmethodID cephfileextent_ctor_fid;
 
+/*
+ * Cached global refs for the exception classes thrown from this file, so
+ * that raising an error does not need a FindClass.
+ */
+static jclass nullpointer_cls;
+static jclass outofmemory_cls;
+static jclass internal_cls;
+static jclass indexbounds_cls;
+static jclass illegalarg_cls;
+static jclass runtime_cls;
+static jclass filenotfound_cls;
+static jclass ioexception_cls;
+static jclass cephnotmounted_cls;
+static jclass cephfileexists_cls;
+static jclass cephalreadymounted_cls;
+static jclass cephnotdir_cls;
+static jclass cephwouldblock_cls;
+static jclass cephnotempty_cls;
+static jclass cephpermission_cls;
+
 /*
  * Exception throwing helper. Adapted from Apache Hadoop header
  * org_apache_hadoop.h by adding the do {} while (0) construct.
  */
-#define THROW(env, exception_name, message) \
+#define THROW(env, exception_cls, message) \
 	do { \
-		jclass ecls = env->FindClass(exception_name); \
-		if (ecls) { \
-			int ret = env->ThrowNew(ecls, message); \
-			if (ret < 0) { \
-				printf("(CephFS) Fatal Error\n"); \
-			} \
-			env->DeleteLocalRef(ecls); \
+		int ret = env->ThrowNew(exception_cls, message); \
+		if (ret < 0) { \
+			printf("(CephFS) Fatal Error\n"); \
 		} \
 	} while (0)
 
 
 static void cephThrowNullArg(JNIEnv *env, const char *msg)
 {
-	THROW(env, "java/lang/NullPointerException", msg);
+	THROW(env, nullpointer_cls, msg);
 }
 
 static void cephThrowOutOfMemory(JNIEnv *env, const char *msg)
 {
-	THROW(env, "java/lang/OutOfMemoryError", msg);
+	THROW(env, outofmemory_cls, msg);
 }
 
 static void cephThrowInternal(JNIEnv *env, const char *msg)
 {
-	THROW(env, "java/lang/InternalError", msg);
+	THROW(env, internal_cls, msg);
 }
 
 static void cephThrowIndexBounds(JNIEnv *env, const char *msg)
 {
-	THROW(env, "java/lang/IndexOutOfBoundsException", msg);
+	THROW(env, indexbounds_cls, msg);
 }
 
 static void cephThrowIllegalArg(JNIEnv *env, const char *msg)
 {
-	THROW(env, "java/lang/IllegalArgumentException", msg);
+	THROW(env, illegalarg_cls, msg);
 }
 
 static void cephThrowFNF(JNIEnv *env, const char *msg)
 {
-	THROW(env, "java/io/FileNotFoundException", msg);
+	THROW(env, filenotfound_cls, msg);
 }
 
 static void cephThrowFileExists(JNIEnv *env, const char *msg)
 {
-	THROW(env, CEPH_FILEEXISTS_CP, msg);
+	THROW(env, cephfileexists_cls, msg);
 }
 
 static void cephThrowNotDir(JNIEnv *env, const char *msg)
 {
-	THROW(env, CEPH_NOTDIR_CP, msg);
+	THROW(env, cephnotdir_cls, msg);
+}
+
+static void cephThrowWouldBlock(JNIEnv *env, const char *msg)
+{
+	THROW(env, cephwouldblock_cls, msg);
 }
 
 static void handle_error(JNIEnv *env, int rc)
@@ -239,11 +338,18 @@ static void handle_error(JNIEnv *env, int rc)
 		case -ENOTDIR:
 			cephThrowNotDir(env, "");
 			return;
+		case -ENOTEMPTY:
+			THROW(env, cephnotempty_cls, strerror(-rc));
+			return;
+		case -EACCES:
+		case -EPERM:
+			THROW(env, cephpermission_cls, strerror(-rc));
+			return;
 		default:
 			break;
 	}
 
-	THROW(env, "java/io/IOException", strerror(-rc));
+	THROW(env, ioexception_cls, strerror(-rc));
 }
 
 #define CHECK_ARG_NULL(v, m, r) do { \
@@ -260,7 +366,7 @@ static void handle_error(JNIEnv *env, int rc)
 
 #define CHECK_MOUNTED(_c, _r) do { \
 	if (!ceph_is_mounted((_c))) { \
-		THROW(env, CEPH_NOTMOUNTED_CP, "not mounted"); \
+		THROW(env, cephnotmounted_cls, "not mounted"); \
 		return (_r); \
 	} } while (0)
 
@@ -274,14 +380,128 @@ static inline struct ceph_mount_info *get_ceph_mount(jlong j_mntp)
 	return (struct ceph_mount_info *)j_mntp;
 }
 
+/*
+ * Per-thread scratch space for converting Java strings, mostly paths and
+ * xattr names, to modified UTF-8. GetStringUTFChars mallocs a copy on
+ * every call; get_utf_chars instead copies into this buffer with
+ * GetStringUTFRegion and only falls back to the heap for strings that do
+ * not fit. Space is handed out in stack order and reclaimed once every
+ * string taken from it has been released, so strings may be released in
+ * any order. Returns NULL if a heap copy cannot be allocated.
+ */
+#define UTF_SCRATCH_LEN 8192
+
+struct utf_scratch {
+	char buf[UTF_SCRATCH_LEN];
+	size_t used;
+	int outstanding;
+};
+
+static thread_local struct utf_scratch scratch;
+
+static const char *get_utf_chars(JNIEnv *env, jstring j_str)
+{
+	jsize len = env->GetStringLength(j_str);
+	size_t max_len = 3 * (size_t)len;
+	size_t utf_len;
+	char *buf;
+
+	/*
+	 * A UTF-16 unit takes at most three bytes in modified UTF-8, which never
+	 * contains a zero byte, so reserving the worst case and zero filling it
+	 * lets us find the end without a separate GetStringUTFLength pass.
+	 */
+	if (max_len < UTF_SCRATCH_LEN - scratch.used) {
+		buf = scratch.buf + scratch.used;
+		memset(buf, 0, max_len + 1);
+		env->GetStringUTFRegion(j_str, 0, len, buf);
+		scratch.used += strlen(buf) + 1;
+		scratch.outstanding++;
+		return buf;
+	}
+
+	utf_len = env->GetStringUTFLength(j_str);
+	buf = new (std::nothrow) char[utf_len + 1];
+	if (!buf)
+		return NULL;
+
+	env->GetStringUTFRegion(j_str, 0, len, buf);
+	buf[utf_len] = '\0';
+
+	return buf;
+}
+
+static void release_utf_chars(const char *c_str)
+{
+	uintptr_t p = (uintptr_t)c_str;
+	uintptr_t base = (uintptr_t)scratch.buf;
+
+	if (p >= base && p < base + UTF_SCRATCH_LEN) {
+		if (--scratch.outstanding == 0)
+			scratch.used = 0;
+	} else {
+		delete [] c_str;
+	}
+}
+
+/*
+ * Create a global ref to a class, or return NULL with an exception pending.
+ */
+static jclass global_class(JNIEnv *env, const char *name)
+{
+	jclass cls, local = env->FindClass(name);
+
+	if (!local)
+		return NULL;
+	cls = (jclass)env->NewGlobalRef(local);
+	env->DeleteLocalRef(local);
+
+	return cls;
+}
+
+/*
+ * Setup cached class refs
+ */
+static bool setup_class_refs(JNIEnv *env)
+{
+#define GETCLS(var, name) do { \
+	var = global_class(env, name); \
+	if (!var) \
+		return false; \
+	} while (0)
+
+	GETCLS(nullpointer_cls, "java/lang/NullPointerException");
+	GETCLS(outofmemory_cls, "java/lang/OutOfMemoryError");
+	GETCLS(internal_cls, "java/lang/InternalError");
+	GETCLS(indexbounds_cls, "java/lang/IndexOutOfBoundsException");
+	GETCLS(illegalarg_cls, "java/lang/IllegalArgumentException");
+	GETCLS(runtime_cls, "java/lang/RuntimeException");
+	GETCLS(filenotfound_cls, "java/io/FileNotFoundException");
+	GETCLS(ioexception_cls, "java/io/IOException");
+	GETCLS(cephnotmounted_cls, CEPH_NOTMOUNTED_CP);
+	GETCLS(cephfileexists_cls, CEPH_FILEEXISTS_CP);
+	GETCLS(cephalreadymounted_cls, CEPH_ALREADYMOUNTED_CP);
+	GETCLS(cephnotdir_cls, CEPH_NOTDIR_CP);
+	GETCLS(cephwouldblock_cls, CEPH_WOULDBLOCK_CP);
+	GETCLS(cephnotempty_cls, CEPH_NOTEMPTY_CP);
+	GETCLS(cephpermission_cls, CEPH_PERMISSION_CP);
+	GETCLS(cephfileextent_cls, CEPH_FILE_EXTENT_CP);
+
+#undef GETCLS
+
+	JniConstants::init(env);
+
+	return true;
+}
+
 /*
  * Setup cached field IDs
  */
 static void setup_field_ids(JNIEnv *env, jclass clz)
 {
 	jclass cephstat_cls;
+	jclass cephstatbatch_cls;
 	jclass cephstatvfs_cls;
-	jclass tmp_cephfileextent_cls;
 
 /*
  * Get a fieldID from a class with a specific type
@@ -302,7 +522,7 @@ static void setup_field_ids(JNIEnv *env, jclass clz)
 		return; \
 	} while (0)
 
-	/* Cache CephStat fields */
+	/* Cache CephStat fields, read by setattr */
 
 	cephstat_cls = env->FindClass(CEPH_STAT_CP);
 	if (!cephstat_cls)
@@ -311,14 +531,24 @@ static void setup_field_ids(JNIEnv *env, jclass clz)
 	GETFID(cephstat, mode, I);
 	GETFID(cephstat, uid, I);
 	GETFID(cephstat, gid, I);
-	GETFID(cephstat, size, J);
-	GETFID(cephstat, blksize, J);
-	GETFID(cephstat, blocks, J);
 	GETFID(cephstat, a_time, J);
 	GETFID(cephstat, m_time, J);
-	GETFID(cephstat, is_file, Z);
-	GETFID(cephstat, is_directory, Z);
-	GETFID(cephstat, is_symlink, Z);
+
+	/* Cache CephStatBatch fields */
+
+	cephstatbatch_cls = env->FindClass(CEPH_STAT_BATCH_CP);
+	if (!cephstatbatch_cls)
+		return;
+
+	GETFID(cephstatbatch, mode, [I);
+	GETFID(cephstatbatch, uid, [I);
+	GETFID(cephstatbatch, gid, [I);
+	GETFID(cephstatbatch, size, [J);
+	GETFID(cephstatbatch, blksize, [J);
+	GETFID(cephstatbatch, blocks, [J);
+	GETFID(cephstatbatch, a_time, [J);
+	GETFID(cephstatbatch, m_time, [J);
+	GETFID(cephstatbatch, error, [I);
 
 	/* Cache CephStatVFS fields */
 
@@ -336,19 +566,10 @@ static void setup_field_ids(JNIEnv *env, jclass clz)
 
 	/* Cache CephFileExtent fields */
 
-	tmp_cephfileextent_cls = env->FindClass(CEPH_FILE_EXTENT_CP);
-	if (!tmp_cephfileextent_cls)
-		return;
-
-	cephfileextent_cls = (jclass)env->NewGlobalRef(tmp_cephfileextent_cls);
-	env->DeleteLocalRef(tmp_cephfileextent_cls);
-
 	cephfileextent_ctor_fid = env->GetMethodID(cephfileextent_cls, "<init>", "(JJ[I)V");
 	if (!cephfileextent_ctor_fid)
 		return;
 
-  JniConstants::init(env);
-
 #undef GETFID
 
 	cephmount_instance_ptr_fid = env->GetFieldID(clz, "instance_ptr", "J");
@@ -363,6 +584,8 @@ static void setup_field_ids(JNIEnv *env, jclass clz)
 JNIEXPORT void JNICALL Java_com_ceph_fs_CephMount_native_1initialize
 	(JNIEnv *env, jclass clz)
 {
+	if (!setup_class_refs(env))
+		return;
 	setup_field_ids(env, clz);
 }
 
@@ -381,9 +604,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1create
 	CHECK_ARG_NULL(j_cephmount, "@mount is null", -1);
 
 	if (j_id) {
-		c_id = env->GetStringUTFChars(j_id, NULL);
+		c_id = get_utf_chars(env, j_id);
 		if (!c_id) {
-			cephThrowInternal(env, "Failed to pin memory");
+			cephThrowOutOfMemory(env, "heap allocation failed");
 			return -1;
 		}
 	}
@@ -391,10 +614,10 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1create
 	ret = ceph_create(&cmount, c_id);
 
 	if (c_id)
-		env->ReleaseStringUTFChars(j_id, c_id);
+		release_utf_chars(c_id);
 
 	if (ret) {
-		THROW(env, "java/lang/RuntimeException", "failed to create Ceph mount object");
+		THROW(env, runtime_cls, "failed to create Ceph mount object");
 		return ret;
 	}
 
@@ -420,14 +643,14 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1mount
 	 * Toss a message up if we are already mounted.
 	 */
 	if (ceph_is_mounted(cmount)) {
-		THROW(env, CEPH_ALREADYMOUNTED_CP, "");
+		THROW(env, cephalreadymounted_cls, "");
 		return -1;
 	}
 
 	if (j_root) {
-		c_root = env->GetStringUTFChars(j_root, NULL);
+		c_root = get_utf_chars(env, j_root);
 		if (!c_root) {
-			cephThrowInternal(env, "Failed to pin memory");
+			cephThrowOutOfMemory(env, "heap allocation failed");
 			return -1;
 		}
 	}
@@ -439,7 +662,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1mount
 	ldout(cct, 10) << "jni: ceph_mount: exit ret " << ret << dendl;
 
 	if (c_root)
-		env->ReleaseStringUTFChars(j_root, c_root);
+		release_utf_chars(c_root);
 
 	if (ret)
 		handle_error(env, ret);
@@ -511,16 +734,16 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1conf_1set
 	CHECK_ARG_NULL(j_opt, "@option is null", -1);
 	CHECK_ARG_NULL(j_val, "@value is null", -1);
 
-	c_opt = env->GetStringUTFChars(j_opt, NULL);
+	c_opt = get_utf_chars(env, j_opt);
 	if (!c_opt) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
-	c_val = env->GetStringUTFChars(j_val, NULL);
+	c_val = get_utf_chars(env, j_val);
 	if (!c_val) {
-		env->ReleaseStringUTFChars(j_opt, c_opt);
-		cephThrowInternal(env, "failed to pin memory");
+		release_utf_chars(c_opt);
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -530,8 +753,8 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1conf_1set
 
 	ldout(cct, 10) << "jni: conf_set: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_opt, c_opt);
-	env->ReleaseStringUTFChars(j_val, c_val);
+	release_utf_chars(c_opt);
+	release_utf_chars(c_val);
 
 	if (ret)
 		handle_error(env, ret);
@@ -556,9 +779,9 @@ JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1conf_1get
 
 	CHECK_ARG_NULL(j_opt, "@option is null", NULL);
 
-	c_opt = env->GetStringUTFChars(j_opt, NULL);
+	c_opt = get_utf_chars(env, j_opt);
 	if (!c_opt) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return NULL;
 	}
 
@@ -595,7 +818,7 @@ JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1conf_1get
 	delete [] buf;
 
 out:
-	env->ReleaseStringUTFChars(j_opt, c_opt);
+	release_utf_chars(c_opt);
 	return value;
 }
 
@@ -614,9 +837,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1conf_1read_1file
 
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -626,7 +849,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1conf_1read_1file
 
 	ldout(cct, 10) << "jni: conf_read_file: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -652,9 +875,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1statfs
 	CHECK_ARG_NULL(j_cephstatvfs, "@stat is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -664,7 +887,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1statfs
 
 	ldout(cct, 10) << "jni: statfs: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret) {
 		handle_error(env, ret);
@@ -725,9 +948,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1chdir
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -737,7 +960,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1chdir
 
 	ldout(cct, 10) << "jni: chdir: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -768,9 +991,9 @@ JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1listdir
 	CHECK_ARG_NULL(j_path, "@path is null", NULL);
 	CHECK_MOUNTED(cmount, NULL);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return NULL;
 	}
 
@@ -779,7 +1002,7 @@ JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1listdir
 	/* ret < 0 also includes -ENOTDIR which should return NULL */
 	ret = ceph_opendir(cmount, c_path, &dirp);
 	if (ret) {
-		env->ReleaseStringUTFChars(j_path, c_path);
+		release_utf_chars(c_path);
 		handle_error(env, ret);
 		return NULL;
 	}
@@ -842,7 +1065,7 @@ JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1listdir
 	}
 
 	/* directory list */
-	dirlist = env->NewObjectArray(contents.size(), env->FindClass("java/lang/String"), NULL);
+	dirlist = env->NewObjectArray(contents.size(), JniConstants::stringClass, NULL);
 	if (!dirlist)
 		goto out;
 
@@ -861,17 +1084,145 @@ JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1listdir
 		env->DeleteLocalRef(name);
 	}
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 	ceph_closedir(cmount, dirp);
 
 	return dirlist;
 
 out:
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 	ceph_closedir(cmount, dirp);
 	return NULL;
 }
 
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_opendir
+ * Signature: (JLjava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1opendir
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct ceph_dir_result *dirp;
+	const char *c_path;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", 0);
+	CHECK_MOUNTED(cmount, 0);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return 0;
+	}
+
+	ldout(cct, 10) << "jni: opendir: path " << c_path << dendl;
+
+	ret = ceph_opendir(cmount, c_path, &dirp);
+
+	ldout(cct, 10) << "jni: opendir: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+
+	if (ret) {
+		handle_error(env, ret);
+		return 0;
+	}
+
+	return (jlong)dirp;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_readdir_batch
+ * Signature: (JJI)[Ljava/lang/String;
+ *
+ * Returns up to @max names from an open directory. The "." and ".." entries
+ * are skipped, and an empty array is returned at the end of the directory.
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1readdir_1batch
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_dirp, jint j_max)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct ceph_dir_result *dirp = (struct ceph_dir_result *)j_dirp;
+	vector<string> names;
+	jobjectArray dirlist;
+	struct dirent de;
+	jstring name;
+	int ret = 0;
+
+	CHECK_ARG_NULL(dirp, "@dirp is null", NULL);
+	CHECK_ARG_BOUNDS(j_max <= 0, "@max is not positive", NULL);
+	CHECK_MOUNTED(cmount, NULL);
+
+	ldout(cct, 10) << "jni: readdir_batch: max " << (int)j_max << dendl;
+
+	while ((int)names.size() < j_max) {
+		ret = ceph_readdir_r(cmount, dirp, &de);
+		if (ret <= 0)
+			break;
+
+		/* filter out dot files: xref: java.io.File::list() */
+		if (strcmp(de.d_name, ".") && strcmp(de.d_name, ".."))
+			names.push_back(de.d_name);
+	}
+
+	ldout(cct, 10) << "jni: readdir_batch: exit ret " << ret << " count "
+		<< names.size() << dendl;
+
+	if (ret < 0) {
+		handle_error(env, ret);
+		return NULL;
+	}
+
+	dirlist = env->NewObjectArray(names.size(), JniConstants::stringClass, NULL);
+	if (!dirlist)
+		return NULL;
+
+	for (unsigned i = 0; i < names.size(); i++) {
+		name = env->NewStringUTF(names[i].c_str());
+		if (!name)
+			return NULL;
+		env->SetObjectArrayElement(dirlist, i, name);
+		if (env->ExceptionOccurred())
+			return NULL;
+		env->DeleteLocalRef(name);
+	}
+
+	return dirlist;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_closedir
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1closedir
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_dirp)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct ceph_dir_result *dirp = (struct ceph_dir_result *)j_dirp;
+	int ret;
+
+	CHECK_ARG_NULL(dirp, "@dirp is null", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: closedir" << dendl;
+
+	ret = ceph_closedir(cmount, dirp);
+
+	ldout(cct, 10) << "jni: closedir: exit ret " << ret << dendl;
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
 /*
  * Class:     com_ceph_fs_CephMount
  * Method:    native_ceph_link
@@ -889,16 +1240,16 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1link
 	CHECK_ARG_NULL(j_newpath, "@newpath is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_oldpath = env->GetStringUTFChars(j_oldpath, NULL);
+	c_oldpath = get_utf_chars(env, j_oldpath);
 	if (!c_oldpath) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
-	c_newpath = env->GetStringUTFChars(j_newpath, NULL);
+	c_newpath = get_utf_chars(env, j_newpath);
 	if (!c_newpath) {
-		env->ReleaseStringUTFChars(j_oldpath, c_oldpath);
-		cephThrowInternal(env, "failed to pin memory");
+		release_utf_chars(c_oldpath);
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -909,8 +1260,8 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1link
 
 	ldout(cct, 10) << "jni: link: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_oldpath, c_oldpath);
-	env->ReleaseStringUTFChars(j_newpath, c_newpath);
+	release_utf_chars(c_oldpath);
+	release_utf_chars(c_newpath);
 
 	if (ret)
 		handle_error(env, ret);
@@ -934,9 +1285,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1unlink
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -946,7 +1297,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1unlink
 
 	ldout(cct, 10) << "jni: unlink: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -971,16 +1322,16 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1rename
 	CHECK_ARG_NULL(j_to, "@to is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_from = env->GetStringUTFChars(j_from, NULL);
+	c_from = get_utf_chars(env, j_from);
 	if (!c_from) {
-		cephThrowInternal(env, "Failed to pin memory!");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
-	c_to = env->GetStringUTFChars(j_to, NULL);
+	c_to = get_utf_chars(env, j_to);
 	if (!c_to) {
-		env->ReleaseStringUTFChars(j_from, c_from);
-		cephThrowInternal(env, "Failed to pin memory.");
+		release_utf_chars(c_from);
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -990,8 +1341,8 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1rename
 
 	ldout(cct, 10) << "jni: rename: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_from, c_from);
-	env->ReleaseStringUTFChars(j_to, c_to);
+	release_utf_chars(c_from);
+	release_utf_chars(c_to);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1015,9 +1366,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1mkdir
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1027,7 +1378,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1mkdir
 
 	ldout(cct, 10) << "jni: mkdir: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1051,9 +1402,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1mkdirs
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1063,7 +1414,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1mkdirs
 
 	ldout(cct, 10) << "jni: mkdirs: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1087,9 +1438,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1rmdir
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1099,7 +1450,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1rmdir
 
 	ldout(cct, 10) << "jni: rmdir: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1125,9 +1476,9 @@ JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1readlink
 	CHECK_ARG_NULL(j_path, "@path is null", NULL);
 	CHECK_MOUNTED(cmount, NULL);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return NULL;
 	}
 
@@ -1137,14 +1488,14 @@ JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1readlink
 				     AT_SYMLINK_NOFOLLOW);
 		ldout(cct, 10) << "jni: readlink: lstat exit ret " << ret << dendl;
 		if (ret) {
-			env->ReleaseStringUTFChars(j_path, c_path);
+			release_utf_chars(c_path);
 			handle_error(env, ret);
 			return NULL;
 		}
 
 		linkname = new (std::nothrow) char[stx.stx_size + 1];
 		if (!linkname) {
-			env->ReleaseStringUTFChars(j_path, c_path);
+			release_utf_chars(c_path);
 			cephThrowOutOfMemory(env, "head allocation failed");
 			return NULL;
 		}
@@ -1157,7 +1508,7 @@ JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1readlink
 
 		if (ret < 0) {
 			delete [] linkname;
-			env->ReleaseStringUTFChars(j_path, c_path);
+			release_utf_chars(c_path);
 			handle_error(env, ret);
 			return NULL;
 		}
@@ -1172,7 +1523,7 @@ JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1readlink
 		break;
 	}
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	j_linkname = env->NewStringUTF(linkname);
 	delete [] linkname;
@@ -1197,16 +1548,16 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1symlink
 	CHECK_ARG_NULL(j_newpath, "@newpath is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_oldpath = env->GetStringUTFChars(j_oldpath, NULL);
+	c_oldpath = get_utf_chars(env, j_oldpath);
 	if (!c_oldpath) {
-		cephThrowInternal(env, "failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
-	c_newpath = env->GetStringUTFChars(j_newpath, NULL);
+	c_newpath = get_utf_chars(env, j_newpath);
 	if (!c_newpath) {
-		env->ReleaseStringUTFChars(j_oldpath, c_oldpath);
-		cephThrowInternal(env, "failed to pin memory");
+		release_utf_chars(c_oldpath);
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1217,8 +1568,8 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1symlink
 
 	ldout(cct, 10) << "jni: symlink: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_oldpath, c_oldpath);
-	env->ReleaseStringUTFChars(j_newpath, c_newpath);
+	release_utf_chars(c_oldpath);
+	release_utf_chars(c_newpath);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1226,44 +1577,164 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1symlink
 	return ret;
 }
 
+/*
+ * Fields fetched by stat, lstat, fstat and readdirplus. Asking for nlink,
+ * ctime or version would need the link and xattr caps as well, so those
+ * are only fetched by the statx calls that ask for them; fields that were
+ * not fetched are zeroed, or hold whatever the client already had cached.
+ */
 #define CEPH_J_CEPHSTAT_MASK (CEPH_STATX_UID|CEPH_STATX_GID|CEPH_STATX_SIZE|CEPH_STATX_BLOCKS|CEPH_STATX_MTIME|CEPH_STATX_ATIME)
 
-static void fill_cephstat(JNIEnv *env, jobject j_cephstat, struct ceph_statx *stx)
+/*
+ * Packed CephStat layout, see CephStat.PACKED_*.
+ *
+ * Must be synchronized with Java if changed.
+ */
+#define CEPH_J_PACKED_MODE	0
+#define CEPH_J_PACKED_UID	1
+#define CEPH_J_PACKED_GID	2
+#define CEPH_J_PACKED_SIZE	3
+#define CEPH_J_PACKED_BLKSIZE	4
+#define CEPH_J_PACKED_BLOCKS	5
+#define CEPH_J_PACKED_A_TIME	6
+#define CEPH_J_PACKED_M_TIME	7
+#define CEPH_J_PACKED_INO	8
+#define CEPH_J_PACKED_NLINK	9
+#define CEPH_J_PACKED_C_TIME	10
+#define CEPH_J_PACKED_B_TIME	11
+#define CEPH_J_PACKED_DEV	12
+#define CEPH_J_PACKED_VERSION	13
+#define CEPH_J_PACKED_LENGTH	14
+
+static inline jlong timespec_to_msec(const struct timespec *ts)
 {
-	env->SetIntField(j_cephstat, cephstat_mode_fid, stx->stx_mode);
-	env->SetIntField(j_cephstat, cephstat_uid_fid, stx->stx_uid);
-	env->SetIntField(j_cephstat, cephstat_gid_fid, stx->stx_gid);
-	env->SetLongField(j_cephstat, cephstat_size_fid, stx->stx_size);
-	env->SetLongField(j_cephstat, cephstat_blksize_fid, stx->stx_blksize);
-	env->SetLongField(j_cephstat, cephstat_blocks_fid, stx->stx_blocks);
-
-	long long time = stx->stx_mtime.tv_sec;
+	long long time = ts->tv_sec;
 	time *= 1000;
-	time += stx->stx_mtime.tv_nsec / 1000000;
-	env->SetLongField(j_cephstat, cephstat_m_time_fid, time);
+	time += ts->tv_nsec / 1000000;
+	return time;
+}
 
-	time = stx->stx_atime.tv_sec;
-	time *= 1000;
-	time += stx->stx_atime.tv_nsec / 1000000;
-	env->SetLongField(j_cephstat, cephstat_a_time_fid, time);
+static void pack_cephstat(jlong *packed, struct ceph_statx *stx)
+{
+	packed[CEPH_J_PACKED_MODE] = stx->stx_mode;
+	packed[CEPH_J_PACKED_UID] = stx->stx_uid;
+	packed[CEPH_J_PACKED_GID] = stx->stx_gid;
+	packed[CEPH_J_PACKED_SIZE] = stx->stx_size;
+	packed[CEPH_J_PACKED_BLKSIZE] = stx->stx_blksize;
+	packed[CEPH_J_PACKED_BLOCKS] = stx->stx_blocks;
+
+	packed[CEPH_J_PACKED_A_TIME] = timespec_to_msec(&stx->stx_atime);
+	packed[CEPH_J_PACKED_M_TIME] = timespec_to_msec(&stx->stx_mtime);
+	packed[CEPH_J_PACKED_INO] = stx->stx_ino;
+	packed[CEPH_J_PACKED_NLINK] = stx->stx_nlink;
+	packed[CEPH_J_PACKED_C_TIME] = timespec_to_msec(&stx->stx_ctime);
+	packed[CEPH_J_PACKED_B_TIME] = timespec_to_msec(&stx->stx_btime);
+	packed[CEPH_J_PACKED_DEV] = stx->stx_dev;
+	packed[CEPH_J_PACKED_VERSION] = stx->stx_version;
+}
+
+/*
+ * Pack a stat result into @j_packed with a single array copy. Returns false
+ * with an exception pending on failure.
+ */
+static bool set_packed_cephstat(JNIEnv *env, jlongArray j_packed, struct ceph_statx *stx)
+{
+	jlong packed[CEPH_J_PACKED_LENGTH];
+
+	pack_cephstat(packed, stx);
+	env->SetLongArrayRegion(j_packed, 0, CEPH_J_PACKED_LENGTH, packed);
+
+	return !env->ExceptionOccurred();
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_readdirplus_batch
+ * Signature: (JJI[J)[Ljava/lang/String;
+ *
+ * Like readdir_batch, but also returns the status of each entry. Entry i is
+ * packed into @stats starting at i * CEPH_J_PACKED_LENGTH, and the whole
+ * array is copied back to Java in one call.
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1readdirplus_1batch
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_dirp, jint j_max, jlongArray j_stats)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct ceph_dir_result *dirp = (struct ceph_dir_result *)j_dirp;
+	vector<string> names;
+	vector<jlong> stats;
+	jobjectArray dirlist;
+	struct ceph_statx stx;
+	struct dirent de;
+	jstring name;
+	int ret = 0;
+
+	CHECK_ARG_NULL(dirp, "@dirp is null", NULL);
+	CHECK_ARG_NULL(j_stats, "@stats is null", NULL);
+	CHECK_ARG_BOUNDS(j_max <= 0, "@max is not positive", NULL);
+	CHECK_ARG_BOUNDS((jlong)env->GetArrayLength(j_stats) < (jlong)j_max * CEPH_J_PACKED_LENGTH,
+			"@stats is too small", NULL);
+	CHECK_MOUNTED(cmount, NULL);
+
+	ldout(cct, 10) << "jni: readdirplus_batch: max " << (int)j_max << dendl;
 
-	env->SetBooleanField(j_cephstat, cephstat_is_file_fid,
-			S_ISREG(stx->stx_mode) ? JNI_TRUE : JNI_FALSE);
+	while ((int)names.size() < j_max) {
+		memset(&stx, 0, sizeof(stx));
+		ret = ceph_readdirplus_r(cmount, dirp, &de, &stx,
+				CEPH_J_CEPHSTAT_MASK, AT_SYMLINK_NOFOLLOW, NULL);
+		if (ret <= 0)
+			break;
+
+		/* filter out dot files: xref: java.io.File::list() */
+		if (!strcmp(de.d_name, ".") || !strcmp(de.d_name, ".."))
+			continue;
+
+		names.push_back(de.d_name);
+		stats.resize(names.size() * CEPH_J_PACKED_LENGTH);
+		pack_cephstat(&stats[(names.size() - 1) * CEPH_J_PACKED_LENGTH], &stx);
+	}
+
+	ldout(cct, 10) << "jni: readdirplus_batch: exit ret " << ret << " count "
+		<< names.size() << dendl;
+
+	if (ret < 0) {
+		handle_error(env, ret);
+		return NULL;
+	}
+
+	if (!stats.empty()) {
+		env->SetLongArrayRegion(j_stats, 0, stats.size(), &stats[0]);
+		if (env->ExceptionOccurred())
+			return NULL;
+	}
 
-	env->SetBooleanField(j_cephstat, cephstat_is_directory_fid,
-			S_ISDIR(stx->stx_mode) ? JNI_TRUE : JNI_FALSE);
+	dirlist = env->NewObjectArray(names.size(), JniConstants::stringClass, NULL);
+	if (!dirlist)
+		return NULL;
+
+	for (unsigned i = 0; i < names.size(); i++) {
+		name = env->NewStringUTF(names[i].c_str());
+		if (!name)
+			return NULL;
+		env->SetObjectArrayElement(dirlist, i, name);
+		if (env->ExceptionOccurred())
+			return NULL;
+		env->DeleteLocalRef(name);
+	}
 
-	env->SetBooleanField(j_cephstat, cephstat_is_symlink_fid,
-			S_ISLNK(stx->stx_mode) ? JNI_TRUE : JNI_FALSE);
+	return dirlist;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
  * Method:    native_ceph_lstat
- * Signature: (JLjava/lang/String;Lcom/ceph/fs/CephStat;)I
+ * Signature: (JLjava/lang/String;[J)I
+ *
+ * The result is packed into @packed, see CephStat.PACKED_*.
  */
 JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lstat
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jobject j_cephstat)
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jlongArray j_packed)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
@@ -1272,29 +1743,33 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lstat
 	int ret;
 
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
-	CHECK_ARG_NULL(j_cephstat, "@stat is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_packed) < CEPH_J_PACKED_LENGTH,
+			"@packed is too short", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
 	ldout(cct, 10) << "jni: lstat: path " << c_path << dendl;
 
+	memset(&stx, 0, sizeof(stx));
 	ret = ceph_statx(cmount, c_path, &stx, CEPH_J_CEPHSTAT_MASK, AT_SYMLINK_NOFOLLOW);
 
 	ldout(cct, 10) << "jni: lstat exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret) {
 	    handle_error(env, ret);
 	    return ret;
 	}
 
-	fill_cephstat(env, j_cephstat, &stx);
+	if (!set_packed_cephstat(env, j_packed, &stx))
+		return -1;
 
 	return ret;
 }
@@ -1302,10 +1777,12 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lstat
 /*
  * Class:     com_ceph_fs_CephMount
  * Method:    native_ceph_stat
- * Signature: (JLjava/lang/String;Lcom/ceph/fs/CephStat;)I
+ * Signature: (JLjava/lang/String;[J)I
+ *
+ * The result is packed into @packed, see CephStat.PACKED_*.
  */
 JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1stat
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jobject j_cephstat)
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jlongArray j_packed)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
@@ -1314,33 +1791,204 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1stat
 	int ret;
 
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
-	CHECK_ARG_NULL(j_cephstat, "@stat is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_packed) < CEPH_J_PACKED_LENGTH,
+			"@packed is too short", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
 	ldout(cct, 10) << "jni: stat: path " << c_path << dendl;
 
+	memset(&stx, 0, sizeof(stx));
 	ret = ceph_statx(cmount, c_path, &stx, CEPH_J_CEPHSTAT_MASK, 0);
 
 	ldout(cct, 10) << "jni: stat exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret) {
 		handle_error(env, ret);
 		return ret;
 	}
 
-	fill_cephstat(env, j_cephstat, &stx);
+	if (!set_packed_cephstat(env, j_packed, &stx))
+		return -1;
 
 	return ret;
 }
 
+/*
+ * Copy a vector into a primitive array field of a CephStatBatch in a
+ * single call. Returns false with an exception pending on failure.
+ */
+static bool set_batch_array(JNIEnv *env, jobject j_batch, jfieldID fid, vector<jint>& vec)
+{
+	jintArray arr = (jintArray)env->GetObjectField(j_batch, fid);
+	if (!arr) {
+		cephThrowInternal(env, "CephStatBatch array is null");
+		return false;
+	}
+	if (!vec.empty())
+		env->SetIntArrayRegion(arr, 0, vec.size(), &vec[0]);
+	env->DeleteLocalRef(arr);
+	return !env->ExceptionOccurred();
+}
+
+static bool set_batch_array(JNIEnv *env, jobject j_batch, jfieldID fid, vector<jlong>& vec)
+{
+	jlongArray arr = (jlongArray)env->GetObjectField(j_batch, fid);
+	if (!arr) {
+		cephThrowInternal(env, "CephStatBatch array is null");
+		return false;
+	}
+	if (!vec.empty())
+		env->SetLongArrayRegion(arr, 0, vec.size(), &vec[0]);
+	env->DeleteLocalRef(arr);
+	return !env->ExceptionOccurred();
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_stat_batch
+ * Signature: (J[Ljava/lang/String;ZLcom/ceph/fs/CephStatBatch;)I
+ *
+ * Stats every path and stores the results in the arrays of @batch, which
+ * must have one element per path. A failed lookup records its errno in
+ * batch.error instead of raising an exception. Each result array is
+ * copied to Java with one Set<Type>ArrayRegion call.
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1stat_1batch
+	(JNIEnv *env, jclass clz, jlong j_mntp, jobjectArray j_paths, jboolean j_follow,
+	 jobject j_batch)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	unsigned flags = j_follow ? 0 : AT_SYMLINK_NOFOLLOW;
+	struct ceph_statx stx;
+	const char *c_path;
+	jstring j_path;
+	int count, failed = 0;
+	int ret;
+
+	CHECK_ARG_NULL(j_paths, "@paths is null", -1);
+	CHECK_ARG_NULL(j_batch, "@batch is null", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	count = env->GetArrayLength(j_paths);
+
+	vector<jint> mode(count), uid(count), gid(count), error(count);
+	vector<jlong> size(count), blksize(count), blocks(count), a_time(count), m_time(count);
+
+	ldout(cct, 10) << "jni: stat_batch: count " << count << " follow "
+		<< (int)j_follow << dendl;
+
+	for (int i = 0; i < count; i++) {
+		j_path = (jstring)env->GetObjectArrayElement(j_paths, i);
+		if (env->ExceptionOccurred())
+			return -1;
+		CHECK_ARG_NULL(j_path, "@paths contains null", -1);
+
+		c_path = get_utf_chars(env, j_path);
+		if (!c_path) {
+			env->DeleteLocalRef(j_path);
+			cephThrowOutOfMemory(env, "heap allocation failed");
+			return -1;
+		}
+
+		ret = ceph_statx(cmount, c_path, &stx, CEPH_J_CEPHSTAT_MASK, flags);
+
+		release_utf_chars(c_path);
+		env->DeleteLocalRef(j_path);
+
+		if (ret) {
+			error[i] = -ret;
+			failed++;
+			continue;
+		}
+
+		mode[i] = stx.stx_mode;
+		uid[i] = stx.stx_uid;
+		gid[i] = stx.stx_gid;
+		size[i] = stx.stx_size;
+		blksize[i] = stx.stx_blksize;
+		blocks[i] = stx.stx_blocks;
+		a_time[i] = (jlong)stx.stx_atime.tv_sec * 1000 + stx.stx_atime.tv_nsec / 1000000;
+		m_time[i] = (jlong)stx.stx_mtime.tv_sec * 1000 + stx.stx_mtime.tv_nsec / 1000000;
+	}
+
+	ldout(cct, 10) << "jni: stat_batch: exit failed " << failed << dendl;
+
+	if (!set_batch_array(env, j_batch, cephstatbatch_mode_fid, mode) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_uid_fid, uid) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_gid_fid, gid) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_size_fid, size) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_blksize_fid, blksize) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_blocks_fid, blocks) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_a_time_fid, a_time) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_m_time_fid, m_time) ||
+	    !set_batch_array(env, j_batch, cephstatbatch_error_fid, error))
+		return -1;
+
+	return failed;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_statx
+ * Signature: (JLjava/lang/String;[JII)I
+ *
+ * The result is packed into @packed, see CephStat.PACKED_*. Returns the
+ * mask of the fields that are valid.
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1statx
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jlongArray j_packed,
+	 jint j_want, jint j_flags)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_path;
+	struct ceph_statx stx;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_packed) < CEPH_J_PACKED_LENGTH,
+			"@packed is too short", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: statx: path " << c_path << " want " << (int)j_want
+		<< " flags " << (int)j_flags << dendl;
+
+	memset(&stx, 0, sizeof(stx));
+	ret = ceph_statx(cmount, c_path, &stx, (unsigned)j_want & JAVA_STATX_ALL_STATS,
+			fixup_statx_flags(j_flags));
+
+	ldout(cct, 10) << "jni: statx exit ret " << ret << " mask " << stx.stx_mask << dendl;
+
+	release_utf_chars(c_path);
+
+	if (ret) {
+		handle_error(env, ret);
+		return ret;
+	}
+
+	if (!set_packed_cephstat(env, j_packed, &stx))
+		return -1;
+
+	return stx.stx_mask & JAVA_STATX_ALL_STATS;
+}
+
 /*
  * Class:     com_ceph_fs_CephMount
  * Method:    native_ceph_setattr
@@ -1359,9 +2007,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1setattr
 	CHECK_ARG_NULL(j_cephstat, "@stat is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1383,7 +2031,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1setattr
 
 	ldout(cct, 10) << "jni: setattr: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1407,9 +2055,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1chmod
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1419,7 +2067,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1chmod
 
 	ldout(cct, 10) << "jni: chmod: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1469,9 +2117,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1truncate
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1481,7 +2129,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1truncate
 
 	ldout(cct, 10) << "jni: truncate: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret)
 		handle_error(env, ret);
@@ -1505,9 +2153,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1open
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
@@ -1518,7 +2166,7 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1open
 
 	ldout(cct, 10) << "jni: open: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 
 	if (ret < 0)
 		handle_error(env, ret);
@@ -1543,17 +2191,17 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1open_1layout
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
 	if (j_data_pool) {
-		c_data_pool = env->GetStringUTFChars(j_data_pool, NULL);
+		c_data_pool = get_utf_chars(env, j_data_pool);
 		if (!c_data_pool) {
-			env->ReleaseStringUTFChars(j_path, c_path);
-			cephThrowInternal(env, "Failed to pin memory");
+			release_utf_chars(c_path);
+			cephThrowOutOfMemory(env, "heap allocation failed");
 			return -1;
 		}
 	}
@@ -1568,9 +2216,9 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1open_1layout
 
 	ldout(cct, 10) << "jni: open_layout: exit ret " << ret << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
+	release_utf_chars(c_path);
 	if (j_data_pool)
-		env->ReleaseStringUTFChars(j_data_pool, c_data_pool);
+		release_utf_chars(c_data_pool);
 
 	if (ret < 0)
 		handle_error(env, ret);
@@ -1731,222 +2379,296 @@ JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1write
 	return ret;
 }
 
-
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_ftruncate
- * Signature: (JIJ)I
+ * Method:    native_ceph_read_direct
+ * Signature: (JILjava/nio/ByteBuffer;IIJ)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ftruncate
-	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jlong j_size)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1read_1direct
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jobject j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret;
+	jlong buf_size;
+	char *c_buf;
+	long ret;
 
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	ldout(cct, 10) << "jni: ftruncate: fd " << (int)j_fd <<
-		" size " << (loff_t)j_size << dendl;
+	c_buf = (char *)env->GetDirectBufferAddress(j_buf);
+	if (!c_buf) {
+		cephThrowIllegalArg(env, "@buf is not a direct buffer");
+		return -1;
+	}
 
-	ret = ceph_ftruncate(cmount, (int)j_fd, (loff_t)j_size);
+	buf_size = env->GetDirectBufferCapacity(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.capacity", -1);
 
-	ldout(cct, 10) << "jni: ftruncate: exit ret " << ret << dendl;
+	ldout(cct, 10) << "jni: read_direct: fd " << (int)j_fd << " len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-	if (ret)
-		handle_error(env, ret);
+	ret = ceph_read(cmount, (int)j_fd, c_buf + j_pos, (long)j_size, (long)j_offset);
 
-	return ret;
+	ldout(cct, 10) << "jni: read_direct: exit ret " << ret << dendl;
+
+	if (ret < 0)
+		handle_error(env, (int)ret);
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_fsync
- * Signature: (JIZ)I
+ * Method:    native_ceph_read_region
+ * Signature: (JI[BIIJ)J
+ *
+ * The data is read into a temporary buffer rather than pinning the array,
+ * so that a slow read never holds up the garbage collector. Only the bytes
+ * actually read are copied back, unlike GetByteArrayElements which copies
+ * the whole array in both directions.
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1fsync
-	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jboolean j_dataonly)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1read_1region
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jbyteArray j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret;
+	jsize buf_size;
+	char *c_buf;
+	long ret;
 
-	ldout(cct, 10) << "jni: fsync: fd " << (int)j_fd <<
-		" dataonly " << (j_dataonly ? 1 : 0) << dendl;
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
 
-	ret = ceph_fsync(cmount, (int)j_fd, j_dataonly ? 1 : 0);
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.length", -1);
 
-	ldout(cct, 10) << "jni: fsync: exit ret " << ret << dendl;
+	c_buf = new (std::nothrow) char[j_size];
+	if (!c_buf) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
 
-	if (ret)
-		handle_error(env, ret);
+	ldout(cct, 10) << "jni: read_region: fd " << (int)j_fd << " len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-	return ret;
+	ret = ceph_read(cmount, (int)j_fd, c_buf, (long)j_size, (long)j_offset);
+
+	ldout(cct, 10) << "jni: read_region: exit ret " << ret << dendl;
+
+	if (ret < 0)
+		handle_error(env, (int)ret);
+	else
+		env->SetByteArrayRegion(j_buf, j_pos, (jsize)ret, (jbyte *)c_buf);
+
+	delete [] c_buf;
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_flock
- * Signature: (JIZ)I
+ * Method:    native_ceph_write_direct
+ * Signature: (JILjava/nio/ByteBuffer;IIJ)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1flock
-	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jint j_operation, jlong j_owner)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1write_1direct
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jobject j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret;
-
-	ldout(cct, 10) << "jni: flock: fd " << (int)j_fd <<
-		" operation " << j_operation << " owner " << j_owner << dendl;
+	jlong buf_size;
+	char *c_buf;
+	long ret;
 
-	int operation = 0;
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
 
-#define MAP_FLOCK_FLAG(JNI_MASK, NATIVE_MASK) do {	\
-	if ((j_operation & JNI_MASK) != 0) {		\
-		operation |= NATIVE_MASK; 		\
-		j_operation &= ~JNI_MASK;		\
-	} 						\
-	} while(0)
-	MAP_FLOCK_FLAG(JAVA_LOCK_SH, LOCK_SH);
-	MAP_FLOCK_FLAG(JAVA_LOCK_EX, LOCK_EX);
-	MAP_FLOCK_FLAG(JAVA_LOCK_NB, LOCK_NB);
-	MAP_FLOCK_FLAG(JAVA_LOCK_UN, LOCK_UN);
-	if (j_operation != 0) {
-		cephThrowIllegalArg(env, "flock flags");
-		return -EINVAL;
+	c_buf = (char *)env->GetDirectBufferAddress(j_buf);
+	if (!c_buf) {
+		cephThrowIllegalArg(env, "@buf is not a direct buffer");
+		return -1;
 	}
-#undef MAP_FLOCK_FLAG
 
-	ret = ceph_flock(cmount, (int)j_fd, operation, (uint64_t) j_owner);
+	buf_size = env->GetDirectBufferCapacity(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.capacity", -1);
 
-	ldout(cct, 10) << "jni: flock: exit ret " << ret << dendl;
+	ldout(cct, 10) << "jni: write_direct: fd " << (int)j_fd << " len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-	if (ret)
-		handle_error(env, ret);
+	ret = ceph_write(cmount, (int)j_fd, c_buf + j_pos, (long)j_size, (long)j_offset);
 
-	return ret;
+	ldout(cct, 10) << "jni: write_direct: exit ret " << ret << dendl;
+
+	if (ret < 0)
+		handle_error(env, (int)ret);
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_fstat
- * Signature: (JILcom/ceph/fs/CephStat;)I
+ * Method:    native_ceph_write_region
+ * Signature: (JI[BIIJ)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1fstat
-	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jobject j_cephstat)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1write_1region
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jbyteArray j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	struct ceph_statx stx;
-	int ret;
+	jsize buf_size;
+	char *c_buf;
+	long ret;
 
-	CHECK_ARG_NULL(j_cephstat, "@stat is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	ldout(cct, 10) << "jni: fstat: fd " << (int)j_fd << dendl;
-
-	ret = ceph_fstatx(cmount, (int)j_fd, &stx, CEPH_J_CEPHSTAT_MASK, 0);
-
-	ldout(cct, 10) << "jni: fstat exit ret " << ret << dendl;
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.length", -1);
 
-	if (ret) {
-		handle_error(env, ret);
-		return ret;
+	c_buf = new (std::nothrow) char[j_size];
+	if (!c_buf) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
 	}
 
-	fill_cephstat(env, j_cephstat, &stx);
-
-	return ret;
-}
+	env->GetByteArrayRegion(j_buf, j_pos, j_size, (jbyte *)c_buf);
 
-/*
- * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_sync_fs
- * Signature: (J)I
- */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1sync_1fs
-	(JNIEnv *env, jclass clz, jlong j_mntp)
-{
-	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
-	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret;
+	ldout(cct, 10) << "jni: write_region: fd " << (int)j_fd << " len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-	ldout(cct, 10) << "jni: sync_fs: enter" << dendl;
+	ret = ceph_write(cmount, (int)j_fd, c_buf, (long)j_size, (long)j_offset);
 
-	ret = ceph_sync_fs(cmount);
+	ldout(cct, 10) << "jni: write_region: exit ret " << ret << dendl;
 
-	ldout(cct, 10) << "jni: sync_fs: exit ret " << ret << dendl;
+	delete [] c_buf;
 
-	if (ret)
-		handle_error(env, ret);
+	if (ret < 0)
+		handle_error(env, (int)ret);
 
-	return ret;
+	return (jlong)ret;
 }
 
+/* Bounce buffer size for native_ceph_copy_file_range */
+#define COPY_FILE_RANGE_BUFLEN (4 << 20)
+
 /*
- * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_getxattr
- * Signature: (JLjava/lang/String;Ljava/lang/String;[B)J
+ * Shared implementation of native_ceph_preadv and native_ceph_pwritev.
+ *
+ * Segment i is either the direct buffer j_direct[i] or the byte array
+ * j_heap[i], covering @len[i] bytes from @pos[i]. Direct buffers are used
+ * in place. Array segments are staged in one temporary buffer, so that no
+ * array is pinned for the duration of the call; for reads only the bytes
+ * actually read are copied back.
  */
-JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1getxattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name, jbyteArray j_buf)
+static jlong ceph_vectored_io(JNIEnv *env, struct ceph_mount_info *cmount, jint j_fd,
+		jobjectArray j_direct, jobjectArray j_heap, jintArray j_pos, jintArray j_len,
+		jlong j_offset, bool write)
 {
-	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	const char *c_path;
-	const char *c_name;
-	jsize buf_size;
-	jbyte *c_buf = NULL; /* please gcc with goto */
+	const char *op = write ? "pwritev" : "preadv";
+	jsize count;
+	jlong heap_total = 0;
+	char *tmp = NULL;
 	long ret;
 
-	CHECK_ARG_NULL(j_path, "@path is null", -1);
-	CHECK_ARG_NULL(j_name, "@name is null", -1);
+	CHECK_ARG_NULL(j_direct, "@direct is null", -1);
+	CHECK_ARG_NULL(j_heap, "@heap is null", -1);
+	CHECK_ARG_NULL(j_pos, "@pos is null", -1);
+	CHECK_ARG_NULL(j_len, "@len is null", -1);
+
+	count = env->GetArrayLength(j_direct);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_heap) != count ||
+			env->GetArrayLength(j_pos) != count ||
+			env->GetArrayLength(j_len) != count, "array lengths differ", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
-	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
-		return -1;
-	}
+	vector<jint> pos(count), len(count);
+	vector<struct iovec> iov(count);
+	vector<bool> is_heap(count);
 
-	c_name = env->GetStringUTFChars(j_name, NULL);
-	if (!c_name) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		cephThrowInternal(env, "Failed to pin memory");
-		return -1;
+	if (count) {
+		env->GetIntArrayRegion(j_pos, 0, count, &pos[0]);
+		env->GetIntArrayRegion(j_len, 0, count, &len[0]);
 	}
 
-	/* just lookup the size if buf is null */
-	if (!j_buf) {
-		buf_size = 0;
-		goto do_getxattr;
+	for (jsize i = 0; i < count; i++) {
+		CHECK_ARG_BOUNDS(pos[i] < 0 || len[i] < 0, "segment bounds are negative", -1);
+		ScopedLocalRef<jobject> buf(env, env->GetObjectArrayElement(j_direct, i));
+		if (buf.get()) {
+			char *addr = (char *)env->GetDirectBufferAddress(buf.get());
+			if (!addr) {
+				cephThrowIllegalArg(env, "@direct holds a non-direct buffer");
+				return -1;
+			}
+			CHECK_ARG_BOUNDS((jlong)pos[i] + len[i] > env->GetDirectBufferCapacity(buf.get()),
+					"segment exceeds buffer capacity", -1);
+			iov[i].iov_base = addr + pos[i];
+		} else {
+			ScopedLocalRef<jobject> arr(env, env->GetObjectArrayElement(j_heap, i));
+			CHECK_ARG_NULL(arr.get(), "segment has no buffer", -1);
+			CHECK_ARG_BOUNDS((jlong)pos[i] + len[i] > env->GetArrayLength((jbyteArray)arr.get()),
+					"segment exceeds array length", -1);
+			is_heap[i] = true;
+			heap_total += len[i];
+		}
+		iov[i].iov_len = len[i];
 	}
 
-	c_buf = env->GetByteArrayElements(j_buf, NULL);
-	if (!c_buf) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		env->ReleaseStringUTFChars(j_name, c_name);
-		cephThrowInternal(env, "failed to pin memory");
-		return -1;
+	if (heap_total) {
+		tmp = new (std::nothrow) char[heap_total];
+		if (!tmp) {
+			cephThrowOutOfMemory(env, "head allocation failed");
+			return -1;
+		}
+		char *p = tmp;
+		for (jsize i = 0; i < count; i++) {
+			if (!is_heap[i])
+				continue;
+			iov[i].iov_base = p;
+			if (write) {
+				ScopedLocalRef<jobject> arr(env, env->GetObjectArrayElement(j_heap, i));
+				env->GetByteArrayRegion((jbyteArray)arr.get(), pos[i], len[i], (jbyte *)p);
+			}
+			p += len[i];
+		}
 	}
 
-	buf_size = env->GetArrayLength(j_buf);
-
-do_getxattr:
-
-	ldout(cct, 10) << "jni: getxattr: path " << c_path << " name " << c_name <<
-		" len " << buf_size << dendl;
-
-	ret = ceph_getxattr(cmount, c_path, c_name, c_buf, buf_size);
-	if (ret == -ERANGE)
-		ret = ceph_getxattr(cmount, c_path, c_name, c_buf, 0);
+	ldout(cct, 10) << "jni: " << op << ": fd " << (int)j_fd << " segments " << count
+		<< " offset " << (long)j_offset << dendl;
 
-	ldout(cct, 10) << "jni: getxattr: exit ret " << ret << dendl;
+	if (write)
+		ret = ceph_pwritev(cmount, (int)j_fd, count ? &iov[0] : NULL, count, (int64_t)j_offset);
+	else
+		ret = ceph_preadv(cmount, (int)j_fd, count ? &iov[0] : NULL, count, (int64_t)j_offset);
+
+	ldout(cct, 10) << "jni: " << op << ": exit ret " << ret << dendl;
+
+	if (ret > 0 && !write && heap_total) {
+		long left = ret;
+		for (jsize i = 0; i < count && left > 0; i++) {
+			long n = len[i] < left ? len[i] : left;
+			if (is_heap[i]) {
+				ScopedLocalRef<jobject> arr(env, env->GetObjectArrayElement(j_heap, i));
+				env->SetByteArrayRegion((jbyteArray)arr.get(), pos[i], n,
+						(jbyte *)iov[i].iov_base);
+			}
+			left -= n;
+		}
+	}
 
-	env->ReleaseStringUTFChars(j_path, c_path);
-	env->ReleaseStringUTFChars(j_name, c_name);
-	if (j_buf)
-		env->ReleaseByteArrayElements(j_buf, c_buf, 0);
+	delete[] tmp;
 
 	if (ret < 0)
 		handle_error(env, (int)ret);
@@ -1956,352 +2678,303 @@ do_getxattr:
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_lgetxattr
- * Signature: (JLjava/lang/String;Ljava/lang/String;[B)I
+ * Method:    native_ceph_preadv
+ * Signature: (JI[Ljava/nio/ByteBuffer;[[B[I[IJ)J
  */
-JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lgetxattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name, jbyteArray j_buf)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1preadv
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jobjectArray j_direct,
+	 jobjectArray j_heap, jintArray j_pos, jintArray j_len, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
-	CephContext *cct = ceph_get_mount_context(cmount);
-	const char *c_path;
-	const char *c_name;
-	jsize buf_size;
-	jbyte *c_buf = NULL; /* please gcc with goto */
-	long ret;
 
-	CHECK_ARG_NULL(j_path, "@path is null", -1);
-	CHECK_ARG_NULL(j_name, "@name is null", -1);
-	CHECK_MOUNTED(cmount, -1);
+	return ceph_vectored_io(env, cmount, j_fd, j_direct, j_heap, j_pos, j_len,
+			j_offset, false);
+}
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
-	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
-		return -1;
-	}
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_pwritev
+ * Signature: (JI[Ljava/nio/ByteBuffer;[[B[I[IJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1pwritev
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jobjectArray j_direct,
+	 jobjectArray j_heap, jintArray j_pos, jintArray j_len, jlong j_offset)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 
-	c_name = env->GetStringUTFChars(j_name, NULL);
-	if (!c_name) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		cephThrowInternal(env, "Failed to pin memory");
-		return -1;
-	}
+	return ceph_vectored_io(env, cmount, j_fd, j_direct, j_heap, j_pos, j_len,
+			j_offset, true);
+}
 
-	/* just lookup the size if buf is null */
-	if (!j_buf) {
-		buf_size = 0;
-		goto do_lgetxattr;
-	}
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_copy_file_range
+ * Signature: (JIJIJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1copy_1file_1range
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd_in, jlong j_off_in,
+	 jint j_fd_out, jlong j_off_out, jlong j_len)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int64_t buflen, copied = 0;
+	long ret = 0;
+	char *buf;
 
-	c_buf = env->GetByteArrayElements(j_buf, NULL);
-	if (!c_buf) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		env->ReleaseStringUTFChars(j_name, c_name);
-		cephThrowInternal(env, "failed to pin memory");
+	CHECK_ARG_BOUNDS(j_len < 0, "@len is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	buflen = j_len < COPY_FILE_RANGE_BUFLEN ? j_len : COPY_FILE_RANGE_BUFLEN;
+	buf = new (std::nothrow) char[buflen];
+	if (!buf) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
-	buf_size = env->GetArrayLength(j_buf);
+	ldout(cct, 10) << "jni: copy_file_range: fd_in " << (int)j_fd_in << " off_in "
+		<< (long)j_off_in << " fd_out " << (int)j_fd_out << " off_out "
+		<< (long)j_off_out << " len " << (long)j_len << dendl;
 
-do_lgetxattr:
+	while (copied < j_len) {
+		int64_t chunk = j_len - copied < buflen ? j_len - copied : buflen;
+		int64_t nread, written = 0;
 
-	ldout(cct, 10) << "jni: lgetxattr: path " << c_path << " name " << c_name <<
-		" len " << buf_size << dendl;
+		ret = ceph_read(cmount, (int)j_fd_in, buf, chunk,
+				j_off_in < 0 ? -1 : j_off_in + copied);
+		if (ret <= 0)
+			break;
+		nread = ret;
+
+		/* Write out the whole chunk, retrying short writes */
+		while (written < nread) {
+			ret = ceph_write(cmount, (int)j_fd_out, buf + written, nread - written,
+					j_off_out < 0 ? -1 : j_off_out + copied + written);
+			if (ret <= 0)
+				break;
+			written += ret;
+		}
 
-	ret = ceph_lgetxattr(cmount, c_path, c_name, c_buf, buf_size);
-	if (ret == -ERANGE)
-		ret = ceph_lgetxattr(cmount, c_path, c_name, c_buf, 0);
+		copied += written;
+		if (written < nread) {
+			/*
+			 * With @off_in -1 the read position has moved past the whole
+			 * chunk: move it back to just after the bytes that were written.
+			 */
+			if (j_off_in < 0)
+				ceph_lseek(cmount, (int)j_fd_in, -(nread - written), SEEK_CUR);
+			break;
+		}
+	}
 
-	ldout(cct, 10) << "jni: lgetxattr: exit ret " << ret << dendl;
+	ldout(cct, 10) << "jni: copy_file_range: exit ret " << ret << " copied "
+		<< copied << dendl;
 
-	env->ReleaseStringUTFChars(j_path, c_path);
-	env->ReleaseStringUTFChars(j_name, c_name);
-	if (j_buf)
-		env->ReleaseByteArrayElements(j_buf, c_buf, 0);
+	delete [] buf;
 
-	if (ret < 0)
+	/* An error after some data was copied is reported by the short count */
+	if (ret < 0 && copied == 0) {
 		handle_error(env, (int)ret);
+		return ret;
+	}
 
-	return (jlong)ret;
+	return copied;
 }
 
+
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_listxattr
- * Signature: (JLjava/lang/String;)[Ljava/lang/String;
+ * Method:    native_ceph_ftruncate
+ * Signature: (JIJ)I
  */
-JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1listxattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path)
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ftruncate
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jlong j_size)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	jobjectArray xattrlist;
-	const char *c_path;
-	string *ent;
-	jstring name;
-	list<string>::iterator it;
-	list<string> contents;
-	int ret, buflen, bufpos, i;
-	char *buf;
-
-	CHECK_ARG_NULL(j_path, "@path is null", NULL);
-	CHECK_MOUNTED(cmount, NULL);
+	int ret;
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
-	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
-		return NULL;
-	}
+	CHECK_MOUNTED(cmount, -1);
 
-	buflen = 1024;
-	buf = new (std::nothrow) char[buflen];
-	if (!buf) {
-		cephThrowOutOfMemory(env, "head allocation failed");
-		goto out;
-	}
+	ldout(cct, 10) << "jni: ftruncate: fd " << (int)j_fd <<
+		" size " << (loff_t)j_size << dendl;
 
-	while (1) {
-		ldout(cct, 10) << "jni: listxattr: path " << c_path << " len " << buflen << dendl;
-		ret = ceph_listxattr(cmount, c_path, buf, buflen);
-		if (ret == -ERANGE) {
-			delete [] buf;
-			buflen *= 2;
-			buf = new (std::nothrow) char[buflen];
-			if (!buf)  {
-				cephThrowOutOfMemory(env, "heap allocation failed");
-				goto out;
-			}
-			continue;
-		}
-		break;
-	}
+	ret = ceph_ftruncate(cmount, (int)j_fd, (loff_t)j_size);
 
-	ldout(cct, 10) << "jni: listxattr: ret " << ret << dendl;
+	ldout(cct, 10) << "jni: ftruncate: exit ret " << ret << dendl;
 
-	if (ret < 0) {
-		delete [] buf;
+	if (ret)
 		handle_error(env, ret);
-		goto out;
-	}
 
-	bufpos = 0;
-	while (bufpos < ret) {
-		ent = new (std::nothrow) string(buf + bufpos);
-		if (!ent) {
-			delete [] buf;
-			cephThrowOutOfMemory(env, "heap allocation failed");
-			goto out;
-		}
-		contents.push_back(*ent);
-		bufpos += ent->size() + 1;
-		delete ent;
-	}
+	return ret;
+}
 
-	delete [] buf;
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_fsync
+ * Signature: (JIZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1fsync
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jboolean j_dataonly)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int ret;
 
-	xattrlist = env->NewObjectArray(contents.size(), env->FindClass("java/lang/String"), NULL);
-	if (!xattrlist)
-		goto out;
+	ldout(cct, 10) << "jni: fsync: fd " << (int)j_fd <<
+		" dataonly " << (j_dataonly ? 1 : 0) << dendl;
 
-	for (i = 0, it = contents.begin(); it != contents.end(); ++it) {
-		name = env->NewStringUTF(it->c_str());
-		if (!name)
-			goto out;
-		env->SetObjectArrayElement(xattrlist, i++, name);
-		if (env->ExceptionOccurred())
-			goto out;
-		env->DeleteLocalRef(name);
-	}
+	ret = ceph_fsync(cmount, (int)j_fd, j_dataonly ? 1 : 0);
 
-	env->ReleaseStringUTFChars(j_path, c_path);
-	return xattrlist;
+	ldout(cct, 10) << "jni: fsync: exit ret " << ret << dendl;
 
-out:
-	env->ReleaseStringUTFChars(j_path, c_path);
-	return NULL;
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_llistxattr
- * Signature: (JLjava/lang/String;)[Ljava/lang/String;
+ * Method:    native_ceph_flock
+ * Signature: (JIZ)I
  */
-JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1llistxattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path)
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1flock
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jint j_operation, jlong j_owner)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	jobjectArray xattrlist;
-	const char *c_path;
-	string *ent;
-	jstring name;
-	list<string>::iterator it;
-	list<string> contents;
-	int ret, buflen, bufpos, i;
-	char *buf;
+	int ret;
 
-	CHECK_ARG_NULL(j_path, "@path is null", NULL);
-	CHECK_MOUNTED(cmount, NULL);
+	ldout(cct, 10) << "jni: flock: fd " << (int)j_fd <<
+		" operation " << j_operation << " owner " << j_owner << dendl;
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
-	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
-		return NULL;
-	}
+	int operation = 0;
 
-	buflen = 1024;
-	buf = new (std::nothrow) char[buflen];
-	if (!buf) {
-		cephThrowOutOfMemory(env, "head allocation failed");
-		goto out;
+#define MAP_FLOCK_FLAG(JNI_MASK, NATIVE_MASK) do {	\
+	if ((j_operation & JNI_MASK) != 0) {		\
+		operation |= NATIVE_MASK; 		\
+		j_operation &= ~JNI_MASK;		\
+	} 						\
+	} while(0)
+	MAP_FLOCK_FLAG(JAVA_LOCK_SH, LOCK_SH);
+	MAP_FLOCK_FLAG(JAVA_LOCK_EX, LOCK_EX);
+	MAP_FLOCK_FLAG(JAVA_LOCK_NB, LOCK_NB);
+	MAP_FLOCK_FLAG(JAVA_LOCK_UN, LOCK_UN);
+	if (j_operation != 0) {
+		cephThrowIllegalArg(env, "flock flags");
+		return -EINVAL;
 	}
+#undef MAP_FLOCK_FLAG
 
-	while (1) {
-		ldout(cct, 10) << "jni: llistxattr: path " << c_path << " len " << buflen << dendl;
-		ret = ceph_llistxattr(cmount, c_path, buf, buflen);
-		if (ret == -ERANGE) {
-			delete [] buf;
-			buflen *= 2;
-			buf = new (std::nothrow) char[buflen];
-			if (!buf)  {
-				cephThrowOutOfMemory(env, "heap allocation failed");
-				goto out;
-			}
-			continue;
-		}
-		break;
-	}
+	ret = ceph_flock(cmount, (int)j_fd, operation, (uint64_t) j_owner);
 
-	ldout(cct, 10) << "jni: llistxattr: ret " << ret << dendl;
+	ldout(cct, 10) << "jni: flock: exit ret " << ret << dendl;
 
-	if (ret < 0) {
-		delete [] buf;
+	if (ret == -EWOULDBLOCK)
+		cephThrowWouldBlock(env, strerror(EWOULDBLOCK));
+	else if (ret)
 		handle_error(env, ret);
-		goto out;
-	}
-
-	bufpos = 0;
-	while (bufpos < ret) {
-		ent = new (std::nothrow) string(buf + bufpos);
-		if (!ent) {
-			delete [] buf;
-			cephThrowOutOfMemory(env, "heap allocation failed");
-			goto out;
-		}
-		contents.push_back(*ent);
-		bufpos += ent->size() + 1;
-		delete ent;
-	}
-
-	delete [] buf;
-
-	xattrlist = env->NewObjectArray(contents.size(), env->FindClass("java/lang/String"), NULL);
-	if (!xattrlist)
-		goto out;
-
-	for (i = 0, it = contents.begin(); it != contents.end(); ++it) {
-		name = env->NewStringUTF(it->c_str());
-		if (!name)
-			goto out;
-		env->SetObjectArrayElement(xattrlist, i++, name);
-		if (env->ExceptionOccurred())
-			goto out;
-		env->DeleteLocalRef(name);
-	}
-
-	env->ReleaseStringUTFChars(j_path, c_path);
-	return xattrlist;
 
-out:
-	env->ReleaseStringUTFChars(j_path, c_path);
-	return NULL;
+	return ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_removexattr
- * Signature: (JLjava/lang/String;Ljava/lang/String;)I
+ * Method:    native_ceph_fstat
+ * Signature: (JI[J)I
+ *
+ * The result is packed into @packed, see CephStat.PACKED_*.
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1removexattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name)
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1fstat
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jlongArray j_packed)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	const char *c_path;
-	const char *c_name;
+	struct ceph_statx stx;
 	int ret;
 
-	CHECK_ARG_NULL(j_path, "@path is null", -1);
-	CHECK_ARG_NULL(j_name, "@name is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_packed) < CEPH_J_PACKED_LENGTH,
+			"@packed is too short", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
-	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
-		return -1;
-	}
-
-	c_name = env->GetStringUTFChars(j_name, NULL);
-	if (!c_name) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		cephThrowInternal(env, "Failed to pin memory");
-		return -1;
-	}
-
-	ldout(cct, 10) << "jni: removexattr: path " << c_path << " name " << c_name << dendl;
-
-	ret = ceph_removexattr(cmount, c_path, c_name);
+	ldout(cct, 10) << "jni: fstat: fd " << (int)j_fd << dendl;
 
-	ldout(cct, 10) << "jni: removexattr: exit ret " << ret << dendl;
+	memset(&stx, 0, sizeof(stx));
+	ret = ceph_fstatx(cmount, (int)j_fd, &stx, CEPH_J_CEPHSTAT_MASK, 0);
 
-	env->ReleaseStringUTFChars(j_path, c_path);
-	env->ReleaseStringUTFChars(j_name, c_name);
+	ldout(cct, 10) << "jni: fstat exit ret " << ret << dendl;
 
-	if (ret)
+	if (ret) {
 		handle_error(env, ret);
+		return ret;
+	}
+
+	if (!set_packed_cephstat(env, j_packed, &stx))
+		return -1;
 
 	return ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_lremovexattr
- * Signature: (JLjava/lang/String;Ljava/lang/String;)I
+ * Method:    native_ceph_fstatx
+ * Signature: (JI[JII)I
+ *
+ * The result is packed into @packed, see CephStat.PACKED_*. Returns the
+ * mask of the fields that are valid.
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lremovexattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name)
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1fstatx
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jlongArray j_packed,
+	 jint j_want, jint j_flags)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	const char *c_path;
-	const char *c_name;
+	struct ceph_statx stx;
 	int ret;
 
-	CHECK_ARG_NULL(j_path, "@path is null", -1);
-	CHECK_ARG_NULL(j_name, "@name is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_packed) < CEPH_J_PACKED_LENGTH,
+			"@packed is too short", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	c_path = env->GetStringUTFChars(j_path, NULL);
-	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
-		return -1;
+	ldout(cct, 10) << "jni: fstatx: fd " << (int)j_fd << " want " << (int)j_want
+		<< " flags " << (int)j_flags << dendl;
+
+	memset(&stx, 0, sizeof(stx));
+	ret = ceph_fstatx(cmount, (int)j_fd, &stx, (unsigned)j_want & JAVA_STATX_ALL_STATS,
+			fixup_statx_flags(j_flags));
+
+	ldout(cct, 10) << "jni: fstatx exit ret " << ret << " mask " << stx.stx_mask << dendl;
+
+	if (ret) {
+		handle_error(env, ret);
+		return ret;
 	}
 
-	c_name = env->GetStringUTFChars(j_name, NULL);
-	if (!c_name) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		cephThrowInternal(env, "Failed to pin memory");
+	if (!set_packed_cephstat(env, j_packed, &stx))
 		return -1;
-	}
 
-	ldout(cct, 10) << "jni: lremovexattr: path " << c_path << " name " << c_name << dendl;
+	return stx.stx_mask & JAVA_STATX_ALL_STATS;
+}
 
-	ret = ceph_lremovexattr(cmount, c_path, c_name);
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_sync_fs
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1sync_1fs
+	(JNIEnv *env, jclass clz, jlong j_mntp)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int ret;
 
-	ldout(cct, 10) << "jni: lremovexattr: exit ret " << ret << dendl;
+	ldout(cct, 10) << "jni: sync_fs: enter" << dendl;
+
+	ret = ceph_sync_fs(cmount);
 
-	env->ReleaseStringUTFChars(j_path, c_path);
-	env->ReleaseStringUTFChars(j_name, c_name);
+	ldout(cct, 10) << "jni: sync_fs: exit ret " << ret << dendl;
 
 	if (ret)
 		handle_error(env, ret);
@@ -2311,723 +2984,2329 @@ JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lremovexattr
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_setxattr
- * Signature: (JLjava/lang/String;Ljava/lang/String;[BJI)I
+ * Method:    native_ceph_getxattr
+ * Signature: (JLjava/lang/String;Ljava/lang/String;[B)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1setxattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name,
-	 jbyteArray j_buf, jlong j_size, jint j_flags)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1getxattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name, jbyteArray j_buf)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
 	const char *c_path;
 	const char *c_name;
 	jsize buf_size;
-	jbyte *c_buf;
-	int ret, flags;
+	jbyte *c_buf = NULL; /* please gcc with goto */
+	long ret;
 
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_ARG_NULL(j_name, "@name is null", -1);
-	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
-	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	buf_size = env->GetArrayLength(j_buf);
-	CHECK_ARG_BOUNDS(j_size > buf_size, "@size > @buf.length", -1);
-
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
-	c_name = env->GetStringUTFChars(j_name, NULL);
+	c_name = get_utf_chars(env, j_name);
 	if (!c_name) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		cephThrowInternal(env, "Failed to pin memory");
+		release_utf_chars(c_path);
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
+	/* just lookup the size if buf is null */
+	if (!j_buf) {
+		buf_size = 0;
+		goto do_getxattr;
+	}
+
 	c_buf = env->GetByteArrayElements(j_buf, NULL);
 	if (!c_buf) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		env->ReleaseStringUTFChars(j_name, c_name);
+		release_utf_chars(c_path);
+		release_utf_chars(c_name);
 		cephThrowInternal(env, "failed to pin memory");
 		return -1;
 	}
 
-	switch (j_flags) {
-	case JAVA_XATTR_CREATE:
-		flags = CEPH_XATTR_CREATE;
-		break;
-	case JAVA_XATTR_REPLACE:
-		flags = CEPH_XATTR_REPLACE;
-		break;
-	case JAVA_XATTR_NONE:
-		flags = 0;
-		break;
-	default:
-		env->ReleaseStringUTFChars(j_path, c_path);
-		env->ReleaseStringUTFChars(j_name, c_name);
-		env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
-		cephThrowIllegalArg(env, "setxattr flag");
-		return -1;
-	}
+	buf_size = env->GetArrayLength(j_buf);
 
-	ldout(cct, 10) << "jni: setxattr: path " << c_path << " name " << c_name
-		<< " len " << j_size << " flags " << flags << dendl;
+do_getxattr:
 
-	ret = ceph_setxattr(cmount, c_path, c_name, c_buf, j_size, flags);
+	ldout(cct, 10) << "jni: getxattr: path " << c_path << " name " << c_name <<
+		" len " << buf_size << dendl;
 
-	ldout(cct, 10) << "jni: setxattr: exit ret " << ret << dendl;
+	ret = ceph_getxattr(cmount, c_path, c_name, c_buf, buf_size);
+	if (ret == -ERANGE)
+		ret = ceph_getxattr(cmount, c_path, c_name, c_buf, 0);
 
-	env->ReleaseStringUTFChars(j_path, c_path);
-	env->ReleaseStringUTFChars(j_name, c_name);
-	env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
+	ldout(cct, 10) << "jni: getxattr: exit ret " << ret << dendl;
 
-	if (ret)
-		handle_error(env, ret);
+	release_utf_chars(c_path);
+	release_utf_chars(c_name);
+	if (j_buf)
+		env->ReleaseByteArrayElements(j_buf, c_buf, 0);
 
-	return ret;
+	if (ret < 0)
+		handle_error(env, (int)ret);
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_lsetxattr
- * Signature: (JLjava/lang/String;Ljava/lang/String;[BJI)I
+ * Method:    native_ceph_lgetxattr
+ * Signature: (JLjava/lang/String;Ljava/lang/String;[B)I
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lsetxattr
-	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name,
-	 jbyteArray j_buf, jlong j_size, jint j_flags)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lgetxattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name, jbyteArray j_buf)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
 	const char *c_path;
 	const char *c_name;
 	jsize buf_size;
-	jbyte *c_buf;
-	int ret, flags;
+	jbyte *c_buf = NULL; /* please gcc with goto */
+	long ret;
 
 	CHECK_ARG_NULL(j_path, "@path is null", -1);
 	CHECK_ARG_NULL(j_name, "@name is null", -1);
-	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
-	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	buf_size = env->GetArrayLength(j_buf);
-	CHECK_ARG_BOUNDS(j_size > buf_size, "@size > @buf.length", -1);
-
-	c_path = env->GetStringUTFChars(j_path, NULL);
+	c_path = get_utf_chars(env, j_path);
 	if (!c_path) {
-		cephThrowInternal(env, "Failed to pin memory");
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
-	c_name = env->GetStringUTFChars(j_name, NULL);
+	c_name = get_utf_chars(env, j_name);
 	if (!c_name) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		cephThrowInternal(env, "Failed to pin memory");
+		release_utf_chars(c_path);
+		cephThrowOutOfMemory(env, "heap allocation failed");
 		return -1;
 	}
 
+	/* just lookup the size if buf is null */
+	if (!j_buf) {
+		buf_size = 0;
+		goto do_lgetxattr;
+	}
+
 	c_buf = env->GetByteArrayElements(j_buf, NULL);
 	if (!c_buf) {
-		env->ReleaseStringUTFChars(j_path, c_path);
-		env->ReleaseStringUTFChars(j_name, c_name);
+		release_utf_chars(c_path);
+		release_utf_chars(c_name);
 		cephThrowInternal(env, "failed to pin memory");
 		return -1;
 	}
 
-	switch (j_flags) {
-	case JAVA_XATTR_CREATE:
-		flags = CEPH_XATTR_CREATE;
-		break;
-	case JAVA_XATTR_REPLACE:
-		flags = CEPH_XATTR_REPLACE;
-		break;
-	case JAVA_XATTR_NONE:
-		flags = 0;
-		break;
-	default:
-		env->ReleaseStringUTFChars(j_path, c_path);
-		env->ReleaseStringUTFChars(j_name, c_name);
-		env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
-		cephThrowIllegalArg(env, "lsetxattr flag");
-		return -1;
-	}
+	buf_size = env->GetArrayLength(j_buf);
 
-	ldout(cct, 10) << "jni: lsetxattr: path " << c_path << " name " << c_name
-		<< " len " << j_size << " flags " << flags << dendl;
+do_lgetxattr:
 
-	ret = ceph_lsetxattr(cmount, c_path, c_name, c_buf, j_size, flags);
+	ldout(cct, 10) << "jni: lgetxattr: path " << c_path << " name " << c_name <<
+		" len " << buf_size << dendl;
 
-	ldout(cct, 10) << "jni: lsetxattr: exit ret " << ret << dendl;
+	ret = ceph_lgetxattr(cmount, c_path, c_name, c_buf, buf_size);
+	if (ret == -ERANGE)
+		ret = ceph_lgetxattr(cmount, c_path, c_name, c_buf, 0);
 
-	env->ReleaseStringUTFChars(j_path, c_path);
-	env->ReleaseStringUTFChars(j_name, c_name);
-	env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
+	ldout(cct, 10) << "jni: lgetxattr: exit ret " << ret << dendl;
 
-	if (ret)
-		handle_error(env, ret);
+	release_utf_chars(c_path);
+	release_utf_chars(c_name);
+	if (j_buf)
+		env->ReleaseByteArrayElements(j_buf, c_buf, 0);
 
-	return ret;
+	if (ret < 0)
+		handle_error(env, (int)ret);
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_file_stripe_unit
- * Signature: (JI)I
+ * Method:    native_ceph_listxattr
+ * Signature: (JLjava/lang/String;)[Ljava/lang/String;
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1stripe_1unit
-	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd)
+JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1listxattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret;
-
-	CHECK_MOUNTED(cmount, -1);
-
-	ldout(cct, 10) << "jni: get_file_stripe_unit: fd " << (int)j_fd << dendl;
-
-	ret = ceph_get_file_stripe_unit(cmount, (int)j_fd);
-
+	jobjectArray xattrlist;
+	const char *c_path;
+	string *ent;
+	jstring name;
+	list<string>::iterator it;
+	list<string> contents;
+	int ret, buflen, bufpos, i;
+	char *buf;
+
+	CHECK_ARG_NULL(j_path, "@path is null", NULL);
+	CHECK_MOUNTED(cmount, NULL);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return NULL;
+	}
+
+	buflen = 1024;
+	buf = new (std::nothrow) char[buflen];
+	if (!buf) {
+		cephThrowOutOfMemory(env, "head allocation failed");
+		goto out;
+	}
+
+	while (1) {
+		ldout(cct, 10) << "jni: listxattr: path " << c_path << " len " << buflen << dendl;
+		ret = ceph_listxattr(cmount, c_path, buf, buflen);
+		if (ret == -ERANGE) {
+			delete [] buf;
+			buflen *= 2;
+			buf = new (std::nothrow) char[buflen];
+			if (!buf)  {
+				cephThrowOutOfMemory(env, "heap allocation failed");
+				goto out;
+			}
+			continue;
+		}
+		break;
+	}
+
+	ldout(cct, 10) << "jni: listxattr: ret " << ret << dendl;
+
+	if (ret < 0) {
+		delete [] buf;
+		handle_error(env, ret);
+		goto out;
+	}
+
+	bufpos = 0;
+	while (bufpos < ret) {
+		ent = new (std::nothrow) string(buf + bufpos);
+		if (!ent) {
+			delete [] buf;
+			cephThrowOutOfMemory(env, "heap allocation failed");
+			goto out;
+		}
+		contents.push_back(*ent);
+		bufpos += ent->size() + 1;
+		delete ent;
+	}
+
+	delete [] buf;
+
+	xattrlist = env->NewObjectArray(contents.size(), JniConstants::stringClass, NULL);
+	if (!xattrlist)
+		goto out;
+
+	for (i = 0, it = contents.begin(); it != contents.end(); ++it) {
+		name = env->NewStringUTF(it->c_str());
+		if (!name)
+			goto out;
+		env->SetObjectArrayElement(xattrlist, i++, name);
+		if (env->ExceptionOccurred())
+			goto out;
+		env->DeleteLocalRef(name);
+	}
+
+	release_utf_chars(c_path);
+	return xattrlist;
+
+out:
+	release_utf_chars(c_path);
+	return NULL;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_llistxattr
+ * Signature: (JLjava/lang/String;)[Ljava/lang/String;
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1llistxattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	jobjectArray xattrlist;
+	const char *c_path;
+	string *ent;
+	jstring name;
+	list<string>::iterator it;
+	list<string> contents;
+	int ret, buflen, bufpos, i;
+	char *buf;
+
+	CHECK_ARG_NULL(j_path, "@path is null", NULL);
+	CHECK_MOUNTED(cmount, NULL);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return NULL;
+	}
+
+	buflen = 1024;
+	buf = new (std::nothrow) char[buflen];
+	if (!buf) {
+		cephThrowOutOfMemory(env, "head allocation failed");
+		goto out;
+	}
+
+	while (1) {
+		ldout(cct, 10) << "jni: llistxattr: path " << c_path << " len " << buflen << dendl;
+		ret = ceph_llistxattr(cmount, c_path, buf, buflen);
+		if (ret == -ERANGE) {
+			delete [] buf;
+			buflen *= 2;
+			buf = new (std::nothrow) char[buflen];
+			if (!buf)  {
+				cephThrowOutOfMemory(env, "heap allocation failed");
+				goto out;
+			}
+			continue;
+		}
+		break;
+	}
+
+	ldout(cct, 10) << "jni: llistxattr: ret " << ret << dendl;
+
+	if (ret < 0) {
+		delete [] buf;
+		handle_error(env, ret);
+		goto out;
+	}
+
+	bufpos = 0;
+	while (bufpos < ret) {
+		ent = new (std::nothrow) string(buf + bufpos);
+		if (!ent) {
+			delete [] buf;
+			cephThrowOutOfMemory(env, "heap allocation failed");
+			goto out;
+		}
+		contents.push_back(*ent);
+		bufpos += ent->size() + 1;
+		delete ent;
+	}
+
+	delete [] buf;
+
+	xattrlist = env->NewObjectArray(contents.size(), JniConstants::stringClass, NULL);
+	if (!xattrlist)
+		goto out;
+
+	for (i = 0, it = contents.begin(); it != contents.end(); ++it) {
+		name = env->NewStringUTF(it->c_str());
+		if (!name)
+			goto out;
+		env->SetObjectArrayElement(xattrlist, i++, name);
+		if (env->ExceptionOccurred())
+			goto out;
+		env->DeleteLocalRef(name);
+	}
+
+	release_utf_chars(c_path);
+	return xattrlist;
+
+out:
+	release_utf_chars(c_path);
+	return NULL;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_removexattr
+ * Signature: (JLjava/lang/String;Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1removexattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_path;
+	const char *c_name;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", -1);
+	CHECK_ARG_NULL(j_name, "@name is null", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	c_name = get_utf_chars(env, j_name);
+	if (!c_name) {
+		release_utf_chars(c_path);
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: removexattr: path " << c_path << " name " << c_name << dendl;
+
+	ret = ceph_removexattr(cmount, c_path, c_name);
+
+	ldout(cct, 10) << "jni: removexattr: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+	release_utf_chars(c_name);
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_lremovexattr
+ * Signature: (JLjava/lang/String;Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lremovexattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_path;
+	const char *c_name;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", -1);
+	CHECK_ARG_NULL(j_name, "@name is null", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	c_name = get_utf_chars(env, j_name);
+	if (!c_name) {
+		release_utf_chars(c_path);
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: lremovexattr: path " << c_path << " name " << c_name << dendl;
+
+	ret = ceph_lremovexattr(cmount, c_path, c_name);
+
+	ldout(cct, 10) << "jni: lremovexattr: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+	release_utf_chars(c_name);
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_setxattr
+ * Signature: (JLjava/lang/String;Ljava/lang/String;[BJI)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1setxattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name,
+	 jbyteArray j_buf, jlong j_size, jint j_flags)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_path;
+	const char *c_name;
+	jsize buf_size;
+	jbyte *c_buf;
+	int ret, flags;
+
+	CHECK_ARG_NULL(j_path, "@path is null", -1);
+	CHECK_ARG_NULL(j_name, "@name is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS(j_size > buf_size, "@size > @buf.length", -1);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	c_name = get_utf_chars(env, j_name);
+	if (!c_name) {
+		release_utf_chars(c_path);
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	c_buf = env->GetByteArrayElements(j_buf, NULL);
+	if (!c_buf) {
+		release_utf_chars(c_path);
+		release_utf_chars(c_name);
+		cephThrowInternal(env, "failed to pin memory");
+		return -1;
+	}
+
+	switch (j_flags) {
+	case JAVA_XATTR_CREATE:
+		flags = CEPH_XATTR_CREATE;
+		break;
+	case JAVA_XATTR_REPLACE:
+		flags = CEPH_XATTR_REPLACE;
+		break;
+	case JAVA_XATTR_NONE:
+		flags = 0;
+		break;
+	default:
+		release_utf_chars(c_path);
+		release_utf_chars(c_name);
+		env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
+		cephThrowIllegalArg(env, "setxattr flag");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: setxattr: path " << c_path << " name " << c_name
+		<< " len " << j_size << " flags " << flags << dendl;
+
+	ret = ceph_setxattr(cmount, c_path, c_name, c_buf, j_size, flags);
+
+	ldout(cct, 10) << "jni: setxattr: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+	release_utf_chars(c_name);
+	env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_lsetxattr
+ * Signature: (JLjava/lang/String;Ljava/lang/String;[BJI)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1lsetxattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jstring j_name,
+	 jbyteArray j_buf, jlong j_size, jint j_flags)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_path;
+	const char *c_name;
+	jsize buf_size;
+	jbyte *c_buf;
+	int ret, flags;
+
+	CHECK_ARG_NULL(j_path, "@path is null", -1);
+	CHECK_ARG_NULL(j_name, "@name is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS(j_size > buf_size, "@size > @buf.length", -1);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	c_name = get_utf_chars(env, j_name);
+	if (!c_name) {
+		release_utf_chars(c_path);
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	c_buf = env->GetByteArrayElements(j_buf, NULL);
+	if (!c_buf) {
+		release_utf_chars(c_path);
+		release_utf_chars(c_name);
+		cephThrowInternal(env, "failed to pin memory");
+		return -1;
+	}
+
+	switch (j_flags) {
+	case JAVA_XATTR_CREATE:
+		flags = CEPH_XATTR_CREATE;
+		break;
+	case JAVA_XATTR_REPLACE:
+		flags = CEPH_XATTR_REPLACE;
+		break;
+	case JAVA_XATTR_NONE:
+		flags = 0;
+		break;
+	default:
+		release_utf_chars(c_path);
+		release_utf_chars(c_name);
+		env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
+		cephThrowIllegalArg(env, "lsetxattr flag");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: lsetxattr: path " << c_path << " name " << c_name
+		<< " len " << j_size << " flags " << flags << dendl;
+
+	ret = ceph_lsetxattr(cmount, c_path, c_name, c_buf, j_size, flags);
+
+	ldout(cct, 10) << "jni: lsetxattr: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+	release_utf_chars(c_name);
+	env->ReleaseByteArrayElements(j_buf, c_buf, JNI_ABORT);
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Layout of a CephDirStats packed into a long[].
+ *
+ * Must be synchronized with CephDirStats.java if changed.
+ */
+#define CEPH_J_DIRSTATS_RBYTES		0
+#define CEPH_J_DIRSTATS_RFILES		1
+#define CEPH_J_DIRSTATS_RSUBDIRS	2
+#define CEPH_J_DIRSTATS_RCTIME		3
+#define CEPH_J_DIRSTATS_LENGTH		4
+
+static const char *const dir_rstats_xattrs[CEPH_J_DIRSTATS_LENGTH] = {
+	"ceph.dir.rbytes",
+	"ceph.dir.rfiles",
+	"ceph.dir.rsubdirs",
+	"ceph.dir.rctime",
+};
+
+/*
+ * Parse an rctime value, "seconds.nanoseconds", into milliseconds.
+ */
+static jlong parse_rctime(const char *s)
+{
+	char *end;
+	long long sec = strtoll(s, &end, 10);
+	long long nsec = 0;
+	int digits = 0;
+
+	if (*end == '.') {
+		for (end++; *end >= '0' && *end <= '9' && digits < 9; end++, digits++)
+			nsec = nsec * 10 + (*end - '0');
+		for (; digits < 9; digits++)
+			nsec *= 10;
+	}
+	return (jlong)sec * 1000 + nsec / 1000000;
+}
+
+/*
+ * Reads the recursive statistics of a directory into @out, which holds
+ * CEPH_J_DIRSTATS_LENGTH elements. Returns 0 or a negative errno; a path
+ * that is not a directory fails with -ENODATA.
+ *
+ * The path is resolved once and the attributes are read from the inode.
+ * Each attribute is still fetched from the MDS by its own getattr, so the
+ * values are not an atomic snapshot: a change landing between two reads
+ * shows in one value and not in another.
+ */
+static int get_dir_rstats(struct ceph_mount_info *cmount, const char *path, jlong *out)
+{
+	UserPerm *perms = ceph_mount_perms(cmount);
+	struct ceph_statx stx;
+	struct Inode *in;
+	char buf[64];
+	int ret;
+
+	ret = ceph_ll_walk(cmount, path, &in, &stx, 0, 0, perms);
+	if (ret)
+		return ret;
+
+	for (int i = 0; i < CEPH_J_DIRSTATS_LENGTH; i++) {
+		ret = ceph_ll_getxattr(cmount, in, dir_rstats_xattrs[i], buf, sizeof(buf) - 1, perms);
+		if (ret < 0)
+			break;
+		buf[ret] = '\0';
+		if (i == CEPH_J_DIRSTATS_RCTIME)
+			out[i] = parse_rctime(buf);
+		else
+			out[i] = strtoll(buf, NULL, 10);
+		ret = 0;
+	}
+
+	ceph_ll_put(cmount, in);
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_dir_rstats
+ * Signature: (JLjava/lang/String;[J)I
+ *
+ * The result is packed into @packed, see CephDirStats.PACKED_*.
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1dir_1rstats
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jlongArray j_packed)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	jlong packed[CEPH_J_DIRSTATS_LENGTH];
+	const char *c_path;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_packed) < CEPH_J_DIRSTATS_LENGTH,
+			"@packed is too short", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: get_dir_rstats: path " << c_path << dendl;
+
+	ret = get_dir_rstats(cmount, c_path, packed);
+
+	ldout(cct, 10) << "jni: get_dir_rstats: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+
+	if (ret) {
+		handle_error(env, ret);
+		return ret;
+	}
+
+	env->SetLongArrayRegion(j_packed, 0, CEPH_J_DIRSTATS_LENGTH, packed);
+
+	return 0;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_dir_rstats_batch
+ * Signature: (J[Ljava/lang/String;[J[I)I
+ *
+ * Reads the statistics of every path into @packed, starting at
+ * i * CEPH_J_DIRSTATS_LENGTH for path i. A failed path records its errno
+ * in @errors instead of raising an exception. Both arrays are copied to
+ * Java once, after all paths have been read.
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1dir_1rstats_1batch
+	(JNIEnv *env, jclass clz, jlong j_mntp, jobjectArray j_paths, jlongArray j_packed,
+	 jintArray j_errors)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_path;
+	jstring j_path;
+	int count, failed = 0;
+	int ret;
+
+	CHECK_ARG_NULL(j_paths, "@paths is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_NULL(j_errors, "@errors is null", -1);
+
+	count = env->GetArrayLength(j_paths);
+
+	CHECK_ARG_BOUNDS((jlong)env->GetArrayLength(j_packed) < (jlong)count * CEPH_J_DIRSTATS_LENGTH,
+			"@packed is too short", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_errors) < count, "@errors is too short", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	vector<jlong> packed(count * CEPH_J_DIRSTATS_LENGTH);
+	vector<jint> errors(count);
+
+	ldout(cct, 10) << "jni: get_dir_rstats_batch: count " << count << dendl;
+
+	for (int i = 0; i < count; i++) {
+		j_path = (jstring)env->GetObjectArrayElement(j_paths, i);
+		if (env->ExceptionOccurred())
+			return -1;
+		CHECK_ARG_NULL(j_path, "@paths contains null", -1);
+
+		c_path = get_utf_chars(env, j_path);
+		if (!c_path) {
+			env->DeleteLocalRef(j_path);
+			cephThrowOutOfMemory(env, "heap allocation failed");
+			return -1;
+		}
+
+		ret = get_dir_rstats(cmount, c_path, &packed[i * CEPH_J_DIRSTATS_LENGTH]);
+
+		release_utf_chars(c_path);
+		env->DeleteLocalRef(j_path);
+
+		if (ret) {
+			memset(&packed[i * CEPH_J_DIRSTATS_LENGTH], 0,
+					CEPH_J_DIRSTATS_LENGTH * sizeof(jlong));
+			errors[i] = -ret;
+			failed++;
+		}
+	}
+
+	ldout(cct, 10) << "jni: get_dir_rstats_batch: exit failed " << failed << dendl;
+
+	if (count) {
+		env->SetLongArrayRegion(j_packed, 0, packed.size(), &packed[0]);
+		env->SetIntArrayRegion(j_errors, 0, count, &errors[0]);
+	}
+
+	return failed;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_file_stripe_unit
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1stripe_1unit
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int ret;
+
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: get_file_stripe_unit: fd " << (int)j_fd << dendl;
+
+	ret = ceph_get_file_stripe_unit(cmount, (int)j_fd);
+
 	ldout(cct, 10) << "jni: get_file_stripe_unit: exit ret " << ret << dendl;
 
-	if (ret < 0)
+	if (ret < 0)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_file_replication
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1replication
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int ret;
+
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: get_file_replication: fd " << (int)j_fd << dendl;
+
+	ret = ceph_get_file_replication(cmount, (int)j_fd);
+
+	ldout(cct, 10) << "jni: get_file_replication: exit ret " << ret << dendl;
+
+	if (ret < 0)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Layout of a CephFileLayout packed into an int[].
+ *
+ * Must be synchronized with CephFileLayout.java if changed.
+ */
+#define CEPH_J_LAYOUT_STRIPE_UNIT	0
+#define CEPH_J_LAYOUT_STRIPE_COUNT	1
+#define CEPH_J_LAYOUT_OBJECT_SIZE	2
+#define CEPH_J_LAYOUT_POOL_ID		3
+#define CEPH_J_LAYOUT_REPLICATION	4
+#define CEPH_J_LAYOUT_LENGTH		5
+
+/*
+ * Completes a layout read by ceph_get_{file,path}_layout with the pool
+ * replication, copies it to @j_layout and returns the pool name. Returns
+ * NULL with an exception pending on failure.
+ */
+static jstring finish_layout(JNIEnv *env, struct ceph_mount_info *cmount,
+		jint *layout, jintArray j_layout)
+{
+	int pool = layout[CEPH_J_LAYOUT_POOL_ID];
+	int ret;
+
+	ret = ceph_get_pool_replication(cmount, pool);
+	if (ret < 0) {
+		handle_error(env, ret);
+		return NULL;
+	}
+	layout[CEPH_J_LAYOUT_REPLICATION] = ret;
+
+	ret = ceph_get_pool_name(cmount, pool, NULL, 0);
+	if (ret < 0) {
+		handle_error(env, ret);
+		return NULL;
+	}
+	vector<char> name(ret + 1);
+	ret = ceph_get_pool_name(cmount, pool, &name[0], name.size() - 1);
+	if (ret < 0) {
+		handle_error(env, ret);
+		return NULL;
+	}
+
+	env->SetIntArrayRegion(j_layout, 0, CEPH_J_LAYOUT_LENGTH, layout);
+	return env->NewStringUTF(&name[0]);
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_file_layout
+ * Signature: (JI[I)Ljava/lang/String;
+ *
+ * The layout is packed into @layout, see CephFileLayout.PACKED_*, and the
+ * pool name returned.
+ */
+JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1layout
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jintArray j_layout)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	jint layout[CEPH_J_LAYOUT_LENGTH];
+	int ret;
+
+	CHECK_ARG_NULL(j_layout, "@layout is null", NULL);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_layout) < CEPH_J_LAYOUT_LENGTH,
+			"@layout is too short", NULL);
+	CHECK_MOUNTED(cmount, NULL);
+
+	ldout(cct, 10) << "jni: get_file_layout: fd " << (int)j_fd << dendl;
+
+	ret = ceph_get_file_layout(cmount, (int)j_fd,
+			&layout[CEPH_J_LAYOUT_STRIPE_UNIT], &layout[CEPH_J_LAYOUT_STRIPE_COUNT],
+			&layout[CEPH_J_LAYOUT_OBJECT_SIZE], &layout[CEPH_J_LAYOUT_POOL_ID]);
+
+	ldout(cct, 10) << "jni: get_file_layout: exit ret " << ret << dendl;
+
+	if (ret < 0) {
+		handle_error(env, ret);
+		return NULL;
+	}
+
+	return finish_layout(env, cmount, layout, j_layout);
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_path_layout
+ * Signature: (JLjava/lang/String;[I)Ljava/lang/String;
+ *
+ * The layout is packed into @layout, see CephFileLayout.PACKED_*, and the
+ * pool name returned.
+ */
+JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1path_1layout
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jintArray j_layout)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	jint layout[CEPH_J_LAYOUT_LENGTH];
+	const char *c_path;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", NULL);
+	CHECK_ARG_NULL(j_layout, "@layout is null", NULL);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_layout) < CEPH_J_LAYOUT_LENGTH,
+			"@layout is too short", NULL);
+	CHECK_MOUNTED(cmount, NULL);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return NULL;
+	}
+
+	ldout(cct, 10) << "jni: get_path_layout: path " << c_path << dendl;
+
+	ret = ceph_get_path_layout(cmount, c_path,
+			&layout[CEPH_J_LAYOUT_STRIPE_UNIT], &layout[CEPH_J_LAYOUT_STRIPE_COUNT],
+			&layout[CEPH_J_LAYOUT_OBJECT_SIZE], &layout[CEPH_J_LAYOUT_POOL_ID]);
+
+	ldout(cct, 10) << "jni: get_path_layout: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+
+	if (ret < 0) {
+		handle_error(env, ret);
+		return NULL;
+	}
+
+	return finish_layout(env, cmount, layout, j_layout);
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_set_dir_layout
+ * Signature: (JLjava/lang/String;IIILjava/lang/String;)I
+ *
+ * Sets the fields that are not zero or null with a single write of the
+ * ceph.dir.layout virtual xattr, so the MDS applies them atomically and
+ * validates them together.
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1set_1dir_1layout
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path, jint j_stripe_unit,
+	 jint j_stripe_count, jint j_object_size, jstring j_pool)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_path;
+	const char *c_pool = NULL;
+	char field[64];
+	string value;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	if (j_stripe_unit) {
+		snprintf(field, sizeof(field), " stripe_unit=%d", (int)j_stripe_unit);
+		value += field;
+	}
+	if (j_stripe_count) {
+		snprintf(field, sizeof(field), " stripe_count=%d", (int)j_stripe_count);
+		value += field;
+	}
+	if (j_object_size) {
+		snprintf(field, sizeof(field), " object_size=%d", (int)j_object_size);
+		value += field;
+	}
+	if (j_pool) {
+		c_pool = get_utf_chars(env, j_pool);
+		if (!c_pool) {
+			cephThrowOutOfMemory(env, "heap allocation failed");
+			return -1;
+		}
+		value += " pool=";
+		value += c_pool;
+		release_utf_chars(c_pool);
+	}
+	if (value.empty()) {
+		cephThrowIllegalArg(env, "@layout has no field set");
+		return -1;
+	}
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: set_dir_layout: path " << c_path << " layout"
+		<< value << dendl;
+
+	ret = ceph_setxattr(cmount, c_path, "ceph.dir.layout", value.c_str() + 1,
+			value.size() - 1, 0);
+
+	ldout(cct, 10) << "jni: set_dir_layout: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_file_pool_name
+ * Signature: (JI)Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1pool_1name
+  (JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	jstring pool = NULL;
+	int ret, buflen = 0;
+	char *buf = NULL;
+
+	CHECK_MOUNTED(cmount, NULL);
+
+	ldout(cct, 10) << "jni: get_file_pool_name: fd " << (int)j_fd << dendl;
+
+	for (;;) {
+		/* get pool name length (len==0) */
+		ret = ceph_get_file_pool_name(cmount, (int)j_fd, NULL, 0);
+		if (ret < 0)
+			break;
+
+		/* allocate buffer */
+		if (buf)
+			delete [] buf;
+		buflen = ret;
+		buf = new (std::nothrow) char[buflen+1]; /* +1 for '\0' */
+		if (!buf) {
+			cephThrowOutOfMemory(env, "head allocation failed");
+			goto out;
+		}
+		memset(buf, 0, (buflen+1)*sizeof(*buf));
+
+		/* handle zero-length pool name!? */
+		if (buflen == 0)
+			break;
+
+		/* fill buffer */
+		ret = ceph_get_file_pool_name(cmount, (int)j_fd, buf, buflen);
+		if (ret == -ERANGE) /* size changed! */
+			continue;
+		else
+			break;
+	}
+
+	ldout(cct, 10) << "jni: get_file_pool_name: ret " << ret << dendl;
+
+	if (ret < 0)
+		handle_error(env, ret);
+	else
+		pool = env->NewStringUTF(buf);
+
+out:
+	if (buf)
+	delete [] buf;
+
+	return pool;
+}
+
+/**
+ * Class: com_ceph_fs_CephMount
+ * Method: native_ceph_get_default_data_pool_name
+ * Signature: (J)Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1default_1data_1pool_1name
+  (JNIEnv *env, jclass clz, jlong j_mntp)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	jstring pool = NULL;
+	int ret, buflen = 0;
+	char *buf = NULL;
+        
+	CHECK_MOUNTED(cmount, NULL);
+	 
+	ldout(cct, 10) << "jni: get_default_data_pool_name" << dendl;
+
+	ret = ceph_get_default_data_pool_name(cmount, NULL, 0);
+	if (ret < 0)
+		goto out;
+	buflen = ret;
+	buf = new (std::nothrow) char[buflen+1]; /* +1 for '\0' */
+	if (!buf) {
+		cephThrowOutOfMemory(env, "head allocation failed");
+		goto out;
+	}
+	memset(buf, 0, (buflen+1)*sizeof(*buf));
+	ret = ceph_get_default_data_pool_name(cmount, buf, buflen);
+	
+	ldout(cct, 10) << "jni: get_default_data_pool_name: ret " << ret << dendl;
+	
+	if (ret < 0)
+		handle_error(env, ret);
+	else
+		pool = env->NewStringUTF(buf);
+
+out:
+	if (buf)
+	delete [] buf;
+
+	return pool;        
+}
+
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_localize_reads
+ * Signature: (JZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1localize_1reads
+	(JNIEnv *env, jclass clz, jlong j_mntp, jboolean j_on)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int ret, val = j_on ? 1 : 0;
+
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: localize_reads: val " << val << dendl;
+
+	ret = ceph_localize_reads(cmount, val);
+
+	ldout(cct, 10) << "jni: localize_reads: exit ret " << ret << dendl;
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_stripe_unit_granularity
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1stripe_1unit_1granularity
+	(JNIEnv *env, jclass clz, jlong j_mntp)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int ret;
+
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: get_stripe_unit_granularity" << dendl;
+
+	ret = ceph_get_stripe_unit_granularity(cmount);
+
+	ldout(cct, 10) << "jni: get_stripe_unit_granularity: exit ret " << ret << dendl;
+
+	if (ret < 0)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_pool_id
+ * Signature: (JLjava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1pool_1id
+  (JNIEnv *env, jclass clz, jlong j_mntp, jstring jname)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	const char *c_name;
+	int ret;
+
+	CHECK_MOUNTED(cmount, -1);
+	CHECK_ARG_NULL(jname, "@name is null", -1);
+
+	c_name = get_utf_chars(env, jname);
+	if (!c_name) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: get_pool_id: name " << c_name << dendl;
+
+	ret = ceph_get_pool_id(cmount, c_name);
+	if (ret < 0)
+		handle_error(env, ret);
+
+	ldout(cct, 10) << "jni: get_pool_id: ret " << ret << dendl;
+
+	release_utf_chars(c_name);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_pool_replication
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1pool_1replication
+  (JNIEnv *env, jclass clz, jlong j_mntp, jint jpoolid)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	int ret;
+
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: get_pool_replication: poolid " << jpoolid << dendl;
+
+	ret = ceph_get_pool_replication(cmount, jpoolid);
+	if (ret < 0)
+		handle_error(env, ret);
+
+	ldout(cct, 10) << "jni: get_pool_replication: ret " << ret << dendl;
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_file_extent_osds
+ * Signature: (JIJ)Lcom/ceph/fs/CephFileExtent;
+ */
+JNIEXPORT jobject JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1extent_1osds
+  (JNIEnv *env, jclass clz, jlong mntp, jint fd, jlong off)
+{
+  struct ceph_mount_info *cmount = get_ceph_mount(mntp);
+  CephContext *cct = ceph_get_mount_context(cmount);
+  jobject extent = NULL;
+  int ret, nosds, *osds = NULL;
+  jintArray osd_array;
+  loff_t len;
+
+	CHECK_MOUNTED(cmount, NULL);
+
+	ldout(cct, 10) << "jni: get_file_extent_osds: fd " << fd << " off " << off << dendl;
+
+  for (;;) {
+    /* get pg size */
+    ret = ceph_get_file_extent_osds(cmount, fd, off, NULL, NULL, 0);
+    if (ret < 0)
+      break;
+
+    /* alloc osd id array */
+    if (osds)
+      delete [] osds;
+    nosds = ret;
+    osds = new int[nosds];
+
+    /* get osd ids */
+    ret = ceph_get_file_extent_osds(cmount, fd, off, &len, osds, nosds);
+    if (ret == -ERANGE)
+      continue;
+    else
+      break;
+  }
+
+	ldout(cct, 10) << "jni: get_file_extent_osds: ret " << ret << dendl;
+
+  if (ret < 0) {
+    handle_error(env, ret);
+    goto out;
+  }
+
+  nosds = ret;
+
+  osd_array = env->NewIntArray(nosds);
+  if (!osd_array)
+    goto out;
+
+  env->SetIntArrayRegion(osd_array, 0, nosds, osds);
+  if (env->ExceptionOccurred())
+    goto out;
+
+  extent = env->NewObject(cephfileextent_cls, cephfileextent_ctor_fid, off, len, osd_array);
+  if (!extent)
+    goto out;
+
+out:
+  if (osds)
+    delete [] osds;
+
+  return extent;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_osd_crush_location
+ * Signature: (JI)[Ljava/lang/String;
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1osd_1crush_1location
+  (JNIEnv *env, jclass clz, jlong j_mntp, jint osdid)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+  jobjectArray path = NULL;
+  vector<string> str_path;
+	int ret, bufpos, buflen = 0;
+  char *buf = NULL;
+
+	CHECK_MOUNTED(cmount, NULL);
+
+  ldout(cct, 10) << "jni: osd loc: osd " << osdid << dendl;
+
+  for (;;) {
+    /* get length of the location path */
+    ret = ceph_get_osd_crush_location(cmount, osdid, NULL, 0);
+    if (ret < 0)
+      break;
+
+    /* alloc path buffer */
+    if (buf)
+      delete [] buf;
+    buflen = ret;
+    buf = new char[buflen+1];
+    memset(buf, 0, buflen*sizeof(*buf));
+
+    /* empty path */
+    if (buflen == 0)
+      break;
+
+    /* get the path */
+    ret = ceph_get_osd_crush_location(cmount, osdid, buf, buflen);
+    if (ret == -ERANGE)
+      continue;
+    else
+      break;
+  }
+
+  ldout(cct, 10) << "jni: osd loc: osd " << osdid << " ret " << ret << dendl;
+
+  if (ret < 0) {
+    handle_error(env, ret);
+    goto out;
+  }
+
+  bufpos = 0;
+  while (bufpos < ret) {
+    string type(buf + bufpos);
+    bufpos += type.size() + 1;
+    string name(buf + bufpos);
+    bufpos += name.size() + 1;
+    str_path.push_back(type);
+    str_path.push_back(name);
+  }
+
+  path = env->NewObjectArray(str_path.size(), JniConstants::stringClass, NULL);
+  if (!path)
+    goto out;
+
+  for (unsigned i = 0; i < str_path.size(); i++) {
+    jstring ent = env->NewStringUTF(str_path[i].c_str());
+    if (!ent)
+      goto out;
+    env->SetObjectArrayElement(path, i, ent);
+    if (env->ExceptionOccurred())
+      goto out;
+    env->DeleteLocalRef(ent);
+  }
+
+out:
+  if (buf)
+    delete [] buf;
+
+  return path;
+}
+
+/*
+ * sockaddrToInetAddress uses with the following license, and is adapted for
+ * use in this project by using Ceph JNI exception utilities.
+ *
+ * ----
+ *
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+jobject sockaddrToInetAddress(JNIEnv* env, const sockaddr_storage& ss, jint* port) {
+    // Convert IPv4-mapped IPv6 addresses to IPv4 addresses.
+    // The RI states "Java will never return an IPv4-mapped address".
+    const sockaddr_in6& sin6 = reinterpret_cast<const sockaddr_in6&>(ss);
+    if (ss.ss_family == AF_INET6 && IN6_IS_ADDR_V4MAPPED(&sin6.sin6_addr)) {
+        // Copy the IPv6 address into the temporary sockaddr_storage.
+        sockaddr_storage tmp;
+        memset(&tmp, 0, sizeof(tmp));
+        memcpy(&tmp, &ss, sizeof(sockaddr_in6));
+        // Unmap it into an IPv4 address.
+        sockaddr_in& sin = reinterpret_cast<sockaddr_in&>(tmp);
+        sin.sin_family = AF_INET;
+        sin.sin_port = sin6.sin6_port;
+        memcpy(&sin.sin_addr.s_addr, &sin6.sin6_addr.s6_addr[12], 4);
+        // Do the regular conversion using the unmapped address.
+        return sockaddrToInetAddress(env, tmp, port);
+    }
+
+    const void* rawAddress;
+    size_t addressLength;
+    int sin_port = 0;
+    int scope_id = 0;
+    if (ss.ss_family == AF_INET) {
+        const sockaddr_in& sin = reinterpret_cast<const sockaddr_in&>(ss);
+        rawAddress = &sin.sin_addr.s_addr;
+        addressLength = 4;
+        sin_port = ntohs(sin.sin_port);
+    } else if (ss.ss_family == AF_INET6) {
+        const sockaddr_in6& sin6 = reinterpret_cast<const sockaddr_in6&>(ss);
+        rawAddress = &sin6.sin6_addr.s6_addr;
+        addressLength = 16;
+        sin_port = ntohs(sin6.sin6_port);
+        scope_id = sin6.sin6_scope_id;
+    } else if (ss.ss_family == AF_UNIX) {
+        const sockaddr_un& sun = reinterpret_cast<const sockaddr_un&>(ss);
+        rawAddress = &sun.sun_path;
+        addressLength = strlen(sun.sun_path);
+    } else {
+        // We can't throw SocketException. We aren't meant to see bad addresses, so seeing one
+        // really does imply an internal error.
+        //jniThrowExceptionFmt(env, "java/lang/IllegalArgumentException",
+        //                     "sockaddrToInetAddress unsupported ss_family: %i", ss.ss_family);
+        cephThrowIllegalArg(env, "sockaddrToInetAddress unsupposed ss_family");
+        return NULL;
+    }
+    if (port != NULL) {
+        *port = sin_port;
+    }
+
+    ScopedLocalRef<jbyteArray> byteArray(env, env->NewByteArray(addressLength));
+    if (byteArray.get() == NULL) {
+        return NULL;
+    }
+    env->SetByteArrayRegion(byteArray.get(), 0, addressLength,
+			    reinterpret_cast<jbyte*>(const_cast<void*>(rawAddress)));
+
+    if (ss.ss_family == AF_UNIX) {
+        // Note that we get here for AF_UNIX sockets on accept(2). The unix(7) man page claims
+        // that the peer's sun_path will contain the path, but in practice it doesn't, and the
+        // peer length is returned as 2 (meaning only the sun_family field was set).
+        //
+        // Ceph Note: this isn't supported. inetUnixAddress appears to just be
+        // something in Dalvik/Android stuff.
+        cephThrowInternal(env, "OSD address should never be a UNIX socket");
+        return NULL;
+        //static jmethodID ctor = env->GetMethodID(JniConstants::inetUnixAddressClass, "<init>", "([B)V");
+        //return env->NewObject(JniConstants::inetUnixAddressClass, ctor, byteArray.get());
+    }
+
+    if (addressLength == 4) {
+      static jmethodID getByAddressMethod = env->GetStaticMethodID(JniConstants::inetAddressClass,
+          "getByAddress", "(Ljava/lang/String;[B)Ljava/net/InetAddress;");
+      if (getByAddressMethod == NULL) {
+        return NULL;
+      }
+      return env->CallStaticObjectMethod(JniConstants::inetAddressClass, getByAddressMethod,
+          NULL, byteArray.get());
+    } else if (addressLength == 16) {
+      static jmethodID getByAddressMethod = env->GetStaticMethodID(JniConstants::inet6AddressClass,
+          "getByAddress", "(Ljava/lang/String;[BI)Ljava/net/Inet6Address;");
+      if (getByAddressMethod == NULL) {
+        return NULL;
+      }
+      return env->CallStaticObjectMethod(JniConstants::inet6AddressClass, getByAddressMethod,
+          NULL, byteArray.get(), scope_id);
+    } else {
+      abort();
+      return NULL;
+    }
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_osd_addr
+ * Signature: (JI)Ljava/net/InetAddress;
+ */
+JNIEXPORT jobject JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1osd_1addr
+  (JNIEnv *env, jclass clz, jlong j_mntp, jint osd)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+  struct sockaddr_storage addr;
+  int ret;
+
+	CHECK_MOUNTED(cmount, NULL);
+
+  ldout(cct, 10) << "jni: get_osd_addr: osd " << osd << dendl;
+
+  ret = ceph_get_osd_addr(cmount, osd, &addr);
+
+  ldout(cct, 10) << "jni: get_osd_addr: ret " << ret << dendl;
+
+  if (ret < 0) {
+    handle_error(env, ret);
+    return NULL;
+  }
+
+  return sockaddrToInetAddress(env, addr, NULL);
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_get_file_extents
+ * Signature: (JIJJ)[Lcom/ceph/fs/CephFileExtent;
+ *
+ * Resolves every extent of [@offset, @offset + @length), cut at the end of
+ * the file, merging adjacent extents stored on the same OSDs. The OSD ids
+ * of all extents are gathered in one vector and the Java objects built
+ * once the whole range has been resolved.
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1extents
+	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd, jlong j_offset, jlong j_length)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct ceph_statx stx;
+	vector<jlong> offs, lens;
+	vector<int> counts, all_osds;
+	vector<int> osds(16);
+	jobjectArray extents;
+	int64_t off, end, len;
+	size_t pos;
+	int ret;
+
+	CHECK_ARG_BOUNDS(j_offset < 0, "@offset is negative", NULL);
+	CHECK_ARG_BOUNDS(j_length < 0, "@length is negative", NULL);
+	CHECK_MOUNTED(cmount, NULL);
+
+	ldout(cct, 10) << "jni: get_file_extents: fd " << (int)j_fd << " off " << j_offset
+		<< " len " << j_length << dendl;
+
+	ret = ceph_fstatx(cmount, (int)j_fd, &stx, CEPH_STATX_SIZE, 0);
+	if (ret) {
+		handle_error(env, ret);
+		return NULL;
+	}
+
+	end = (int64_t)stx.stx_size;
+	if (j_length < end - j_offset)
+		end = j_offset + j_length;
+
+	for (off = j_offset; off < end; off += len) {
+		ret = ceph_get_file_extent_osds(cmount, (int)j_fd, off, &len, &osds[0], osds.size());
+		if (ret == -ERANGE) {
+			osds.resize(osds.size() * 2);
+			len = 0;
+			continue;
+		}
+		if (ret < 0) {
+			handle_error(env, ret);
+			return NULL;
+		}
+		if (len <= 0)
+			break;
+		if (len > end - off)
+			len = end - off;
+
+		if (!counts.empty() && counts.back() == ret &&
+		    equal(all_osds.end() - ret, all_osds.end(), osds.begin())) {
+			lens.back() += len;
+			continue;
+		}
+		offs.push_back(off);
+		lens.push_back(len);
+		counts.push_back(ret);
+		all_osds.insert(all_osds.end(), osds.begin(), osds.begin() + ret);
+	}
+
+	ldout(cct, 10) << "jni: get_file_extents: exit extents " << offs.size() << dendl;
+
+	extents = env->NewObjectArray(offs.size(), cephfileextent_cls, NULL);
+	if (!extents)
+		return NULL;
+
+	pos = 0;
+	for (size_t i = 0; i < offs.size(); i++) {
+		jintArray osd_array = env->NewIntArray(counts[i]);
+		if (!osd_array)
+			return NULL;
+		if (counts[i])
+			env->SetIntArrayRegion(osd_array, 0, counts[i], &all_osds[pos]);
+		pos += counts[i];
+
+		jobject extent = env->NewObject(cephfileextent_cls, cephfileextent_ctor_fid,
+				offs[i], lens[i], osd_array);
+		env->DeleteLocalRef(osd_array);
+		if (!extent)
+			return NULL;
+		env->SetObjectArrayElement(extents, i, extent);
+		env->DeleteLocalRef(extent);
+		if (env->ExceptionOccurred())
+			return NULL;
+	}
+
+	return extents;
+}
+
+/*
+ * Low-level, inode based calls. Inode and Fh pointers are passed to Java
+ * as opaque handles; CephMount pins them for the duration of each call
+ * that passes them back here, so they are not put or closed underneath
+ * it.
+ */
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_ll_lookup_root
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1lookup_1root
+	(JNIEnv *env, jclass clz, jlong j_mntp)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Inode *in;
+	int ret;
+
+	CHECK_MOUNTED(cmount, 0);
+
+	ldout(cct, 10) << "jni: ll_lookup_root" << dendl;
+
+	ret = ceph_ll_lookup_root(cmount, &in);
+
+	ldout(cct, 10) << "jni: ll_lookup_root: exit ret " << ret << dendl;
+
+	if (ret) {
+		handle_error(env, ret);
+		return 0;
+	}
+
+	return (jlong)in;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_ll_lookup
+ * Signature: (JJLjava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1lookup
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_parent, jstring j_name)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Inode *parent = (struct Inode *)j_parent;
+	struct Inode *in;
+	struct ceph_statx stx;
+	const char *c_name;
+	int ret;
+
+	CHECK_ARG_NULL(parent, "@parent is null", 0);
+	CHECK_ARG_NULL(j_name, "@name is null", 0);
+	CHECK_MOUNTED(cmount, 0);
+
+	c_name = get_utf_chars(env, j_name);
+	if (!c_name) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return 0;
+	}
+
+	ldout(cct, 10) << "jni: ll_lookup: name " << c_name << dendl;
+
+	ret = ceph_ll_lookup(cmount, parent, c_name, &in, &stx, 0, 0,
+			ceph_mount_perms(cmount));
+
+	ldout(cct, 10) << "jni: ll_lookup: exit ret " << ret << dendl;
+
+	release_utf_chars(c_name);
+
+	if (ret) {
+		handle_error(env, ret);
+		return 0;
+	}
+
+	return (jlong)in;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_ll_walk
+ * Signature: (JLjava/lang/String;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1walk
+	(JNIEnv *env, jclass clz, jlong j_mntp, jstring j_path)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Inode *in;
+	struct ceph_statx stx;
+	const char *c_path;
+	int ret;
+
+	CHECK_ARG_NULL(j_path, "@path is null", 0);
+	CHECK_MOUNTED(cmount, 0);
+
+	c_path = get_utf_chars(env, j_path);
+	if (!c_path) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return 0;
+	}
+
+	ldout(cct, 10) << "jni: ll_walk: path " << c_path << dendl;
+
+	ret = ceph_ll_walk(cmount, c_path, &in, &stx, 0, 0, ceph_mount_perms(cmount));
+
+	ldout(cct, 10) << "jni: ll_walk: exit ret " << ret << dendl;
+
+	release_utf_chars(c_path);
+
+	if (ret) {
+		handle_error(env, ret);
+		return 0;
+	}
+
+	return (jlong)in;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_ll_put
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1put
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_inode)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Inode *in = (struct Inode *)j_inode;
+	int ret;
+
+	CHECK_ARG_NULL(in, "@inode is null", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: ll_put" << dendl;
+
+	ret = ceph_ll_put(cmount, in);
+
+	ldout(cct, 10) << "jni: ll_put: exit ret " << ret << dendl;
+
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
+
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_ll_getattr
+ * Signature: (JJ[JII)I
+ *
+ * The result is packed into @packed, see CephStat.PACKED_*. Returns the
+ * mask of the fields that are valid.
+ */
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1getattr
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_inode, jlongArray j_packed,
+	 jint j_want, jint j_flags)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Inode *in = (struct Inode *)j_inode;
+	struct ceph_statx stx;
+	int ret;
+
+	CHECK_ARG_NULL(in, "@inode is null", -1);
+	CHECK_ARG_NULL(j_packed, "@packed is null", -1);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_packed) < CEPH_J_PACKED_LENGTH,
+			"@packed is too short", -1);
+	CHECK_MOUNTED(cmount, -1);
+
+	ldout(cct, 10) << "jni: ll_getattr: want " << (int)j_want << " flags "
+		<< (int)j_flags << dendl;
+
+	memset(&stx, 0, sizeof(stx));
+	ret = ceph_ll_getattr(cmount, in, &stx, (unsigned)j_want & JAVA_STATX_ALL_STATS,
+			fixup_statx_flags(j_flags), ceph_mount_perms(cmount));
+
+	ldout(cct, 10) << "jni: ll_getattr: exit ret " << ret << dendl;
+
+	if (ret) {
 		handle_error(env, ret);
+		return ret;
+	}
 
-	return ret;
+	if (!set_packed_cephstat(env, j_packed, &stx))
+		return -1;
+
+	return stx.stx_mask & JAVA_STATX_ALL_STATS;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_file_replication
- * Signature: (JI)I
+ * Method:    native_ceph_ll_opendir
+ * Signature: (JJ)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1replication
-	(JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1opendir
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_dir)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Inode *in = (struct Inode *)j_dir;
+	struct ceph_dir_result *dirp;
 	int ret;
 
+	CHECK_ARG_NULL(in, "@dir is null", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	ldout(cct, 10) << "jni: get_file_replication: fd " << (int)j_fd << dendl;
+	ldout(cct, 10) << "jni: ll_opendir" << dendl;
 
-	ret = ceph_get_file_replication(cmount, (int)j_fd);
+	ret = ceph_ll_opendir(cmount, in, &dirp, ceph_mount_perms(cmount));
 
-	ldout(cct, 10) << "jni: get_file_replication: exit ret " << ret << dendl;
+	ldout(cct, 10) << "jni: ll_opendir: exit ret " << ret << dendl;
 
-	if (ret < 0)
+	if (ret) {
 		handle_error(env, ret);
+		return -1;
+	}
 
-	return ret;
+	return (jlong)dirp;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_file_pool_name
- * Signature: (JI)Ljava/lang/String;
+ * Method:    native_ceph_ll_readdirplus_batch
+ * Signature: (JJI[J[J)[Ljava/lang/String;
+ *
+ * Like readdirplus_batch, but also returns a reference to the inode of each
+ * entry in @inodes. The references are only handed to Java once every
+ * array has been filled; on any failure before that they are put here.
  */
-JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1pool_1name
-  (JNIEnv *env, jclass clz, jlong j_mntp, jint j_fd)
+JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1readdirplus_1batch
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_dirp, jint j_max, jlongArray j_stats,
+	 jlongArray j_inodes)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	jstring pool = NULL;
-	int ret, buflen = 0;
-	char *buf = NULL;
+	struct ceph_dir_result *dirp = (struct ceph_dir_result *)j_dirp;
+	vector<string> names;
+	vector<jlong> stats;
+	vector<jlong> inodes;
+	jobjectArray dirlist = NULL;
+	struct ceph_statx stx;
+	struct dirent de;
+	struct Inode *in;
+	jstring name;
+	int ret = 0;
 
+	CHECK_ARG_NULL(dirp, "@dirp is null", NULL);
+	CHECK_ARG_NULL(j_stats, "@stats is null", NULL);
+	CHECK_ARG_NULL(j_inodes, "@inodes is null", NULL);
+	CHECK_ARG_BOUNDS(j_max <= 0, "@max is not positive", NULL);
+	CHECK_ARG_BOUNDS((jlong)env->GetArrayLength(j_stats) < (jlong)j_max * CEPH_J_PACKED_LENGTH,
+			"@stats is too small", NULL);
+	CHECK_ARG_BOUNDS(env->GetArrayLength(j_inodes) < j_max, "@inodes is too small", NULL);
 	CHECK_MOUNTED(cmount, NULL);
 
-	ldout(cct, 10) << "jni: get_file_pool_name: fd " << (int)j_fd << dendl;
+	ldout(cct, 10) << "jni: ll_readdirplus_batch: max " << (int)j_max << dendl;
 
-	for (;;) {
-		/* get pool name length (len==0) */
-		ret = ceph_get_file_pool_name(cmount, (int)j_fd, NULL, 0);
-		if (ret < 0)
+	while ((int)names.size() < j_max) {
+		memset(&stx, 0, sizeof(stx));
+		ret = ceph_readdirplus_r(cmount, dirp, &de, &stx,
+				CEPH_J_CEPHSTAT_MASK, AT_SYMLINK_NOFOLLOW, &in);
+		if (ret <= 0)
 			break;
 
-		/* allocate buffer */
-		if (buf)
-			delete [] buf;
-		buflen = ret;
-		buf = new (std::nothrow) char[buflen+1]; /* +1 for '\0' */
-		if (!buf) {
-			cephThrowOutOfMemory(env, "head allocation failed");
-			goto out;
+		/* filter out dot files: xref: java.io.File::list() */
+		if (!strcmp(de.d_name, ".") || !strcmp(de.d_name, "..")) {
+			ceph_ll_put(cmount, in);
+			continue;
 		}
-		memset(buf, 0, (buflen+1)*sizeof(*buf));
-
-		/* handle zero-length pool name!? */
-		if (buflen == 0)
-			break;
 
-		/* fill buffer */
-		ret = ceph_get_file_pool_name(cmount, (int)j_fd, buf, buflen);
-		if (ret == -ERANGE) /* size changed! */
-			continue;
-		else
-			break;
+		names.push_back(de.d_name);
+		inodes.push_back((jlong)in);
+		stats.resize(names.size() * CEPH_J_PACKED_LENGTH);
+		pack_cephstat(&stats[(names.size() - 1) * CEPH_J_PACKED_LENGTH], &stx);
 	}
 
-	ldout(cct, 10) << "jni: get_file_pool_name: ret " << ret << dendl;
+	ldout(cct, 10) << "jni: ll_readdirplus_batch: exit ret " << ret << " count "
+		<< names.size() << dendl;
 
-	if (ret < 0)
+	if (ret < 0) {
 		handle_error(env, ret);
-	else
-		pool = env->NewStringUTF(buf);
+		goto out_put;
+	}
 
-out:
-	if (buf)
-	delete [] buf;
+	dirlist = env->NewObjectArray(names.size(), JniConstants::stringClass, NULL);
+	if (!dirlist)
+		goto out_put;
 
-	return pool;
+	for (unsigned i = 0; i < names.size(); i++) {
+		name = env->NewStringUTF(names[i].c_str());
+		if (!name)
+			goto out_put;
+		env->SetObjectArrayElement(dirlist, i, name);
+		if (env->ExceptionOccurred())
+			goto out_put;
+		env->DeleteLocalRef(name);
+	}
+
+	if (!names.empty()) {
+		env->SetLongArrayRegion(j_stats, 0, stats.size(), &stats[0]);
+		if (env->ExceptionOccurred())
+			goto out_put;
+		env->SetLongArrayRegion(j_inodes, 0, inodes.size(), &inodes[0]);
+		if (env->ExceptionOccurred())
+			goto out_put;
+	}
+
+	return dirlist;
+
+out_put:
+	for (unsigned i = 0; i < inodes.size(); i++)
+		ceph_ll_put(cmount, (struct Inode *)inodes[i]);
+	return NULL;
 }
 
-/**
- * Class: com_ceph_fs_CephMount
- * Method: native_ceph_get_default_data_pool_name
- * Signature: (J)Ljava/lang/String;
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_ll_releasedir
+ * Signature: (JJ)I
  */
-JNIEXPORT jstring JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1default_1data_1pool_1name
-  (JNIEnv *env, jclass clz, jlong j_mntp)
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1releasedir
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_dirp)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	jstring pool = NULL;
-	int ret, buflen = 0;
-	char *buf = NULL;
-        
-	CHECK_MOUNTED(cmount, NULL);
-	 
-	ldout(cct, 10) << "jni: get_default_data_pool_name" << dendl;
+	struct ceph_dir_result *dirp = (struct ceph_dir_result *)j_dirp;
+	int ret;
 
-	ret = ceph_get_default_data_pool_name(cmount, NULL, 0);
-	if (ret < 0)
-		goto out;
-	buflen = ret;
-	buf = new (std::nothrow) char[buflen+1]; /* +1 for '\0' */
-	if (!buf) {
-		cephThrowOutOfMemory(env, "head allocation failed");
-		goto out;
-	}
-	memset(buf, 0, (buflen+1)*sizeof(*buf));
-	ret = ceph_get_default_data_pool_name(cmount, buf, buflen);
-	
-	ldout(cct, 10) << "jni: get_default_data_pool_name: ret " << ret << dendl;
-	
-	if (ret < 0)
-		handle_error(env, ret);
-	else
-		pool = env->NewStringUTF(buf);
+	CHECK_ARG_NULL(dirp, "@dirp is null", -1);
+	CHECK_MOUNTED(cmount, -1);
 
-out:
-	if (buf)
-	delete [] buf;
+	ldout(cct, 10) << "jni: ll_releasedir" << dendl;
 
-	return pool;        
-}
+	ret = ceph_ll_releasedir(cmount, dirp);
+
+	ldout(cct, 10) << "jni: ll_releasedir: exit ret " << ret << dendl;
 
+	if (ret)
+		handle_error(env, ret);
+
+	return ret;
+}
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_localize_reads
- * Signature: (JZ)I
+ * Method:    native_ceph_ll_open
+ * Signature: (JJI)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1localize_1reads
-	(JNIEnv *env, jclass clz, jlong j_mntp, jboolean j_on)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1open
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_inode, jint j_flags)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret, val = j_on ? 1 : 0;
+	struct Inode *in = (struct Inode *)j_inode;
+	struct Fh *fh;
+	int ret, flags = fixup_open_flags(j_flags);
 
-	CHECK_MOUNTED(cmount, -1);
+	CHECK_ARG_NULL(in, "@inode is null", 0);
+	CHECK_MOUNTED(cmount, 0);
 
-	ldout(cct, 10) << "jni: localize_reads: val " << val << dendl;
+	ldout(cct, 10) << "jni: ll_open: flags " << flags << dendl;
 
-	ret = ceph_localize_reads(cmount, val);
+	ret = ceph_ll_open(cmount, in, flags, &fh, ceph_mount_perms(cmount));
 
-	ldout(cct, 10) << "jni: localize_reads: exit ret " << ret << dendl;
+	ldout(cct, 10) << "jni: ll_open: exit ret " << ret << dendl;
 
-	if (ret)
+	if (ret) {
 		handle_error(env, ret);
+		return 0;
+	}
 
-	return ret;
+	return (jlong)fh;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_stripe_unit_granularity
- * Signature: (J)I
+ * Method:    native_ceph_ll_read
+ * Signature: (JJ[BJJ)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1stripe_1unit_1granularity
-	(JNIEnv *env, jclass clz, jlong j_mntp)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1read
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_fh, jbyteArray j_buf, jlong j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret;
+	struct Fh *fh = (struct Fh *)j_fh;
+	jsize buf_size;
+	char *c_buf;
+	long ret;
 
+	CHECK_ARG_NULL(fh, "@fh is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_ARG_BOUNDS(j_offset < 0, "@offset is negative", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	ldout(cct, 10) << "jni: get_stripe_unit_granularity" << dendl;
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS(j_size > buf_size, "@size > @buf.length", -1);
 
-	ret = ceph_get_stripe_unit_granularity(cmount);
+	c_buf = new (std::nothrow) char[j_size];
+	if (!c_buf) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
 
-	ldout(cct, 10) << "jni: get_stripe_unit_granularity: exit ret " << ret << dendl;
+	ldout(cct, 10) << "jni: ll_read: len " << (long)j_size <<
+		" offset " << (long)j_offset << dendl;
+
+	ret = ceph_ll_read(cmount, fh, (int64_t)j_offset, (uint64_t)j_size, c_buf);
+
+	ldout(cct, 10) << "jni: ll_read: exit ret " << ret << dendl;
 
 	if (ret < 0)
-		handle_error(env, ret);
+		handle_error(env, (int)ret);
+	else
+		env->SetByteArrayRegion(j_buf, 0, (jsize)ret, (jbyte *)c_buf);
 
-	return ret;
+	delete [] c_buf;
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_pool_id
- * Signature: (JLjava/lang/String;)I
+ * Method:    native_ceph_ll_read_direct
+ * Signature: (JJLjava/nio/ByteBuffer;IIJ)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1pool_1id
-  (JNIEnv *env, jclass clz, jlong j_mntp, jstring jname)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1read_1direct
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_fh, jobject j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	const char *c_name;
-	int ret;
+	struct Fh *fh = (struct Fh *)j_fh;
+	jlong buf_size;
+	char *c_buf;
+	long ret;
 
+	CHECK_ARG_NULL(fh, "@fh is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_ARG_BOUNDS(j_offset < 0, "@offset is negative", -1);
 	CHECK_MOUNTED(cmount, -1);
-	CHECK_ARG_NULL(jname, "@name is null", -1);
 
-	c_name = env->GetStringUTFChars(jname, NULL);
-	if (!c_name) {
-		cephThrowInternal(env, "failed to pin memory");
+	c_buf = (char *)env->GetDirectBufferAddress(j_buf);
+	if (!c_buf) {
+		cephThrowIllegalArg(env, "@buf is not a direct buffer");
 		return -1;
 	}
 
-	ldout(cct, 10) << "jni: get_pool_id: name " << c_name << dendl;
+	buf_size = env->GetDirectBufferCapacity(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.capacity", -1);
 
-	ret = ceph_get_pool_id(cmount, c_name);
-	if (ret < 0)
-		handle_error(env, ret);
+	ldout(cct, 10) << "jni: ll_read_direct: len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-	ldout(cct, 10) << "jni: get_pool_id: ret " << ret << dendl;
+	ret = ceph_ll_read(cmount, fh, (int64_t)j_offset, (uint64_t)j_size, c_buf + j_pos);
 
-	env->ReleaseStringUTFChars(jname, c_name);
+	ldout(cct, 10) << "jni: ll_read_direct: exit ret " << ret << dendl;
 
-	return ret;
+	if (ret < 0)
+		handle_error(env, (int)ret);
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_pool_replication
- * Signature: (JI)I
+ * Method:    native_ceph_ll_read_region
+ * Signature: (JJ[BIIJ)J
  */
-JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1pool_1replication
-  (JNIEnv *env, jclass clz, jlong j_mntp, jint jpoolid)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1read_1region
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_fh, jbyteArray j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-	int ret;
+	struct Fh *fh = (struct Fh *)j_fh;
+	jsize buf_size;
+	char *c_buf;
+	long ret;
 
+	CHECK_ARG_NULL(fh, "@fh is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_ARG_BOUNDS(j_offset < 0, "@offset is negative", -1);
 	CHECK_MOUNTED(cmount, -1);
 
-	ldout(cct, 10) << "jni: get_pool_replication: poolid " << jpoolid << dendl;
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.length", -1);
+
+	c_buf = new (std::nothrow) char[j_size];
+	if (!c_buf) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
+
+	ldout(cct, 10) << "jni: ll_read_region: len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
+
+	ret = ceph_ll_read(cmount, fh, (int64_t)j_offset, (uint64_t)j_size, c_buf);
+
+	ldout(cct, 10) << "jni: ll_read_region: exit ret " << ret << dendl;
 
-	ret = ceph_get_pool_replication(cmount, jpoolid);
 	if (ret < 0)
-		handle_error(env, ret);
+		handle_error(env, (int)ret);
+	else
+		env->SetByteArrayRegion(j_buf, j_pos, (jsize)ret, (jbyte *)c_buf);
 
-	ldout(cct, 10) << "jni: get_pool_replication: ret " << ret << dendl;
+	delete [] c_buf;
 
-	return ret;
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_file_extent_osds
- * Signature: (JIJ)Lcom/ceph/fs/CephFileExtent;
+ * Method:    native_ceph_ll_write
+ * Signature: (JJ[BJJ)J
  */
-JNIEXPORT jobject JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1file_1extent_1osds
-  (JNIEnv *env, jclass clz, jlong mntp, jint fd, jlong off)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1write
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_fh, jbyteArray j_buf, jlong j_size, jlong j_offset)
 {
-  struct ceph_mount_info *cmount = get_ceph_mount(mntp);
-  CephContext *cct = ceph_get_mount_context(cmount);
-  jobject extent = NULL;
-  int ret, nosds, *osds = NULL;
-  jintArray osd_array;
-  loff_t len;
-
-	CHECK_MOUNTED(cmount, NULL);
-
-	ldout(cct, 10) << "jni: get_file_extent_osds: fd " << fd << " off " << off << dendl;
-
-  for (;;) {
-    /* get pg size */
-    ret = ceph_get_file_extent_osds(cmount, fd, off, NULL, NULL, 0);
-    if (ret < 0)
-      break;
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Fh *fh = (struct Fh *)j_fh;
+	jsize buf_size;
+	char *c_buf;
+	long ret;
 
-    /* alloc osd id array */
-    if (osds)
-      delete [] osds;
-    nosds = ret;
-    osds = new int[nosds];
+	CHECK_ARG_NULL(fh, "@fh is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_ARG_BOUNDS(j_offset < 0, "@offset is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
 
-    /* get osd ids */
-    ret = ceph_get_file_extent_osds(cmount, fd, off, &len, osds, nosds);
-    if (ret == -ERANGE)
-      continue;
-    else
-      break;
-  }
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS(j_size > buf_size, "@size > @buf.length", -1);
 
-	ldout(cct, 10) << "jni: get_file_extent_osds: ret " << ret << dendl;
+	c_buf = new (std::nothrow) char[j_size];
+	if (!c_buf) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
 
-  if (ret < 0) {
-    handle_error(env, ret);
-    goto out;
-  }
+	env->GetByteArrayRegion(j_buf, 0, (jsize)j_size, (jbyte *)c_buf);
 
-  nosds = ret;
+	ldout(cct, 10) << "jni: ll_write: len " << (long)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-  osd_array = env->NewIntArray(nosds);
-  if (!osd_array)
-    goto out;
+	ret = ceph_ll_write(cmount, fh, (int64_t)j_offset, (uint64_t)j_size, c_buf);
 
-  env->SetIntArrayRegion(osd_array, 0, nosds, osds);
-  if (env->ExceptionOccurred())
-    goto out;
+	ldout(cct, 10) << "jni: ll_write: exit ret " << ret << dendl;
 
-  extent = env->NewObject(cephfileextent_cls, cephfileextent_ctor_fid, off, len, osd_array);
-  if (!extent)
-    goto out;
+	delete [] c_buf;
 
-out:
-  if (osds)
-    delete [] osds;
+	if (ret < 0)
+		handle_error(env, (int)ret);
 
-  return extent;
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_osd_crush_location
- * Signature: (JI)[Ljava/lang/String;
+ * Method:    native_ceph_ll_write_direct
+ * Signature: (JJLjava/nio/ByteBuffer;IIJ)J
  */
-JNIEXPORT jobjectArray JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1osd_1crush_1location
-  (JNIEnv *env, jclass clz, jlong j_mntp, jint osdid)
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1write_1direct
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_fh, jobject j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-  jobjectArray path = NULL;
-  vector<string> str_path;
-	int ret, bufpos, buflen = 0;
-  char *buf = NULL;
+	struct Fh *fh = (struct Fh *)j_fh;
+	jlong buf_size;
+	char *c_buf;
+	long ret;
 
-	CHECK_MOUNTED(cmount, NULL);
+	CHECK_ARG_NULL(fh, "@fh is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_ARG_BOUNDS(j_offset < 0, "@offset is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
 
-  ldout(cct, 10) << "jni: osd loc: osd " << osdid << dendl;
+	c_buf = (char *)env->GetDirectBufferAddress(j_buf);
+	if (!c_buf) {
+		cephThrowIllegalArg(env, "@buf is not a direct buffer");
+		return -1;
+	}
 
-  for (;;) {
-    /* get length of the location path */
-    ret = ceph_get_osd_crush_location(cmount, osdid, NULL, 0);
-    if (ret < 0)
-      break;
+	buf_size = env->GetDirectBufferCapacity(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.capacity", -1);
 
-    /* alloc path buffer */
-    if (buf)
-      delete [] buf;
-    buflen = ret;
-    buf = new char[buflen+1];
-    memset(buf, 0, buflen*sizeof(*buf));
+	ldout(cct, 10) << "jni: ll_write_direct: len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-    /* empty path */
-    if (buflen == 0)
-      break;
+	ret = ceph_ll_write(cmount, fh, (int64_t)j_offset, (uint64_t)j_size, c_buf + j_pos);
 
-    /* get the path */
-    ret = ceph_get_osd_crush_location(cmount, osdid, buf, buflen);
-    if (ret == -ERANGE)
-      continue;
-    else
-      break;
-  }
+	ldout(cct, 10) << "jni: ll_write_direct: exit ret " << ret << dendl;
 
-  ldout(cct, 10) << "jni: osd loc: osd " << osdid << " ret " << ret << dendl;
+	if (ret < 0)
+		handle_error(env, (int)ret);
 
-  if (ret < 0) {
-    handle_error(env, ret);
-    goto out;
-  }
+	return (jlong)ret;
+}
 
-  bufpos = 0;
-  while (bufpos < ret) {
-    string type(buf + bufpos);
-    bufpos += type.size() + 1;
-    string name(buf + bufpos);
-    bufpos += name.size() + 1;
-    str_path.push_back(type);
-    str_path.push_back(name);
-  }
+/*
+ * Class:     com_ceph_fs_CephMount
+ * Method:    native_ceph_ll_write_region
+ * Signature: (JJ[BIIJ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1write_1region
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_fh, jbyteArray j_buf, jint j_pos,
+	 jint j_size, jlong j_offset)
+{
+	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
+	CephContext *cct = ceph_get_mount_context(cmount);
+	struct Fh *fh = (struct Fh *)j_fh;
+	jsize buf_size;
+	char *c_buf;
+	long ret;
 
-  path = env->NewObjectArray(str_path.size(), env->FindClass("java/lang/String"), NULL);
-  if (!path)
-    goto out;
+	CHECK_ARG_NULL(fh, "@fh is null", -1);
+	CHECK_ARG_NULL(j_buf, "@buf is null", -1);
+	CHECK_ARG_BOUNDS(j_pos < 0, "@pos is negative", -1);
+	CHECK_ARG_BOUNDS(j_size < 0, "@size is negative", -1);
+	CHECK_ARG_BOUNDS(j_offset < 0, "@offset is negative", -1);
+	CHECK_MOUNTED(cmount, -1);
 
-  for (unsigned i = 0; i < str_path.size(); i++) {
-    jstring ent = env->NewStringUTF(str_path[i].c_str());
-    if (!ent)
-      goto out;
-    env->SetObjectArrayElement(path, i, ent);
-    if (env->ExceptionOccurred())
-      goto out;
-    env->DeleteLocalRef(ent);
-  }
+	buf_size = env->GetArrayLength(j_buf);
+	CHECK_ARG_BOUNDS((jlong)j_pos + j_size > buf_size, "@pos + @size > @buf.length", -1);
 
-out:
-  if (buf)
-    delete [] buf;
+	c_buf = new (std::nothrow) char[j_size];
+	if (!c_buf) {
+		cephThrowOutOfMemory(env, "heap allocation failed");
+		return -1;
+	}
 
-  return path;
-}
+	env->GetByteArrayRegion(j_buf, j_pos, j_size, (jbyte *)c_buf);
 
-/*
- * sockaddrToInetAddress uses with the following license, and is adapted for
- * use in this project by using Ceph JNI exception utilities.
- *
- * ----
- *
- * Copyright (C) 2010 The Android Open Source Project
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-jobject sockaddrToInetAddress(JNIEnv* env, const sockaddr_storage& ss, jint* port) {
-    // Convert IPv4-mapped IPv6 addresses to IPv4 addresses.
-    // The RI states "Java will never return an IPv4-mapped address".
-    const sockaddr_in6& sin6 = reinterpret_cast<const sockaddr_in6&>(ss);
-    if (ss.ss_family == AF_INET6 && IN6_IS_ADDR_V4MAPPED(&sin6.sin6_addr)) {
-        // Copy the IPv6 address into the temporary sockaddr_storage.
-        sockaddr_storage tmp;
-        memset(&tmp, 0, sizeof(tmp));
-        memcpy(&tmp, &ss, sizeof(sockaddr_in6));
-        // Unmap it into an IPv4 address.
-        sockaddr_in& sin = reinterpret_cast<sockaddr_in&>(tmp);
-        sin.sin_family = AF_INET;
-        sin.sin_port = sin6.sin6_port;
-        memcpy(&sin.sin_addr.s_addr, &sin6.sin6_addr.s6_addr[12], 4);
-        // Do the regular conversion using the unmapped address.
-        return sockaddrToInetAddress(env, tmp, port);
-    }
+	ldout(cct, 10) << "jni: ll_write_region: len " << (int)j_size <<
+		" offset " << (long)j_offset << dendl;
 
-    const void* rawAddress;
-    size_t addressLength;
-    int sin_port = 0;
-    int scope_id = 0;
-    if (ss.ss_family == AF_INET) {
-        const sockaddr_in& sin = reinterpret_cast<const sockaddr_in&>(ss);
-        rawAddress = &sin.sin_addr.s_addr;
-        addressLength = 4;
-        sin_port = ntohs(sin.sin_port);
-    } else if (ss.ss_family == AF_INET6) {
-        const sockaddr_in6& sin6 = reinterpret_cast<const sockaddr_in6&>(ss);
-        rawAddress = &sin6.sin6_addr.s6_addr;
-        addressLength = 16;
-        sin_port = ntohs(sin6.sin6_port);
-        scope_id = sin6.sin6_scope_id;
-    } else if (ss.ss_family == AF_UNIX) {
-        const sockaddr_un& sun = reinterpret_cast<const sockaddr_un&>(ss);
-        rawAddress = &sun.sun_path;
-        addressLength = strlen(sun.sun_path);
-    } else {
-        // We can't throw SocketException. We aren't meant to see bad addresses, so seeing one
-        // really does imply an internal error.
-        //jniThrowExceptionFmt(env, "java/lang/IllegalArgumentException",
-        //                     "sockaddrToInetAddress unsupported ss_family: %i", ss.ss_family);
-        cephThrowIllegalArg(env, "sockaddrToInetAddress unsupposed ss_family");
-        return NULL;
-    }
-    if (port != NULL) {
-        *port = sin_port;
-    }
+	ret = ceph_ll_write(cmount, fh, (int64_t)j_offset, (uint64_t)j_size, c_buf);
 
-    ScopedLocalRef<jbyteArray> byteArray(env, env->NewByteArray(addressLength));
-    if (byteArray.get() == NULL) {
-        return NULL;
-    }
-    env->SetByteArrayRegion(byteArray.get(), 0, addressLength,
-			    reinterpret_cast<jbyte*>(const_cast<void*>(rawAddress)));
+	ldout(cct, 10) << "jni: ll_write_region: exit ret " << ret << dendl;
 
-    if (ss.ss_family == AF_UNIX) {
-        // Note that we get here for AF_UNIX sockets on accept(2). The unix(7) man page claims
-        // that the peer's sun_path will contain the path, but in practice it doesn't, and the
-        // peer length is returned as 2 (meaning only the sun_family field was set).
-        //
-        // Ceph Note: this isn't supported. inetUnixAddress appears to just be
-        // something in Dalvik/Android stuff.
-        cephThrowInternal(env, "OSD address should never be a UNIX socket");
-        return NULL;
-        //static jmethodID ctor = env->GetMethodID(JniConstants::inetUnixAddressClass, "<init>", "([B)V");
-        //return env->NewObject(JniConstants::inetUnixAddressClass, ctor, byteArray.get());
-    }
+	delete [] c_buf;
 
-    if (addressLength == 4) {
-      static jmethodID getByAddressMethod = env->GetStaticMethodID(JniConstants::inetAddressClass,
-          "getByAddress", "(Ljava/lang/String;[B)Ljava/net/InetAddress;");
-      if (getByAddressMethod == NULL) {
-        return NULL;
-      }
-      return env->CallStaticObjectMethod(JniConstants::inetAddressClass, getByAddressMethod,
-          NULL, byteArray.get());
-    } else if (addressLength == 16) {
-      static jmethodID getByAddressMethod = env->GetStaticMethodID(JniConstants::inet6AddressClass,
-          "getByAddress", "(Ljava/lang/String;[BI)Ljava/net/Inet6Address;");
-      if (getByAddressMethod == NULL) {
-        return NULL;
-      }
-      return env->CallStaticObjectMethod(JniConstants::inet6AddressClass, getByAddressMethod,
-          NULL, byteArray.get(), scope_id);
-    } else {
-      abort();
-      return NULL;
-    }
+	if (ret < 0)
+		handle_error(env, (int)ret);
+
+	return (jlong)ret;
 }
 
 /*
  * Class:     com_ceph_fs_CephMount
- * Method:    native_ceph_get_osd_addr
- * Signature: (JI)Ljava/net/InetAddress;
+ * Method:    native_ceph_ll_close
+ * Signature: (JJ)I
  */
-JNIEXPORT jobject JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1get_1osd_1addr
-  (JNIEnv *env, jclass clz, jlong j_mntp, jint osd)
+JNIEXPORT jint JNICALL Java_com_ceph_fs_CephMount_native_1ceph_1ll_1close
+	(JNIEnv *env, jclass clz, jlong j_mntp, jlong j_fh)
 {
 	struct ceph_mount_info *cmount = get_ceph_mount(j_mntp);
 	CephContext *cct = ceph_get_mount_context(cmount);
-  struct sockaddr_storage addr;
-  int ret;
+	struct Fh *fh = (struct Fh *)j_fh;
+	int ret;
 
-	CHECK_MOUNTED(cmount, NULL);
+	CHECK_ARG_NULL(fh, "@fh is null", -1);
+	CHECK_MOUNTED(cmount, -1);
 
-  ldout(cct, 10) << "jni: get_osd_addr: osd " << osd << dendl;
+	ldout(cct, 10) << "jni: ll_close" << dendl;
 
-  ret = ceph_get_osd_addr(cmount, osd, &addr);
+	ret = ceph_ll_close(cmount, fh);
 
-  ldout(cct, 10) << "jni: get_osd_addr: ret " << ret << dendl;
+	ldout(cct, 10) << "jni: ll_close: exit ret " << ret << dendl;
 
-  if (ret < 0) {
-    handle_error(env, ret);
-    return NULL;
-  }
+	if (ret)
+		handle_error(env, ret);
 
-  return sockaddrToInetAddress(env, addr, NULL);
+	return ret;
 }
@@ -0,0 +1,136 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class AsyncCephMountTest {
+
+  private static CephMount mount;
+  private static AsyncCephMount amount;
+  private static String basedir = null;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    mount = new CephMount("admin");
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_async_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+
+    amount = new AsyncCephMount(mount, 4);
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    amount.close();
+    String[] list = mount.listdir(basedir);
+    for (String l : list)
+      mount.unlink(basedir + "/" + l);
+    mount.rmdir(basedir);
+    mount.unmount();
+  }
+
+  private String makePath() {
+    return basedir + "/" + UUID.randomUUID();
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_bad_thread_count() throws Exception {
+    new AsyncCephMount(mount, 0);
+  }
+
+  @Test
+  public void test_read_write() throws Exception {
+    String path = makePath();
+    int fd = amount.openAsync(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600).get();
+
+    byte[] out = new byte[8192];
+    for (int i = 0; i < out.length; i++)
+      out[i] = (byte)i;
+
+    /* issue concurrent writes to disjoint ranges */
+    CompletableFuture<Long> w1 = amount.writeAsync(fd, out, 4096, 0);
+    ByteBuffer src = ByteBuffer.allocateDirect(4096);
+    src.put(out, 4096, 4096).flip();
+    CompletableFuture<Long> w2 = amount.writeAsync(fd, src, 4096);
+    assertTrue(w1.get() == 4096);
+    assertTrue(w2.get() == 4096);
+    amount.fsyncAsync(fd, false).get();
+
+    CephStat stat = amount.fstatAsync(fd).get();
+    assertTrue(stat.size == 8192);
+
+    byte[] in = new byte[8192];
+    assertTrue(amount.readAsync(fd, in, 8192, 0).get() == 8192);
+    assertArrayEquals(out, in);
+
+    ByteBuffer dst = ByteBuffer.allocate(100);
+    assertTrue(amount.readAsync(fd, dst, 4096).get() == 100);
+    dst.flip();
+    for (int i = 0; i < 100; i++)
+      assertTrue(dst.get() == out[4096 + i]);
+
+    amount.ftruncateAsync(fd, 10).get();
+    amount.closeAsync(fd).get();
+
+    assertTrue(amount.statAsync(path).get().size == 10);
+    assertTrue(amount.lstatAsync(path).get().isFile());
+    assertTrue(amount.statBatchAsync(new String[] { path }).get().size[0] == 10);
+    assertTrue(amount.listdirPlusAsync(basedir).get().length > 0);
+
+    amount.unlinkAsync(path).get();
+  }
+
+  @Test
+  public void test_exception() throws Exception {
+    try {
+      amount.statAsync(makePath()).get();
+      fail("expected exception");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+  }
+
+  @Test
+  public void test_closed() throws Exception {
+    AsyncCephMount other = new AsyncCephMount(mount, 1);
+    other.close();
+    try {
+      other.statAsync(basedir).get();
+      fail("expected exception");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CachingCephMountTest {
+
+  private static CachingCephMount mount;
+  private static String basedir = null;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    mount = new CachingCephMount("admin", 4, 1, TimeUnit.HOURS);
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_caching_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    String[] list = mount.listdir(basedir);
+    for (String l : list)
+      mount.unlink(basedir + "/" + l);
+    mount.rmdir(basedir);
+    mount.unmount();
+  }
+
+  @Before
+  public void clear() {
+    mount.invalidateAll();
+  }
+
+  private String makePath() {
+    return basedir + "/" + UUID.randomUUID();
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_bad_capacity() {
+    new CachingCephMount(0, 1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void test_hit_miss() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+    mount.close(fd);
+
+    long hits = mount.getHitCount();
+    long misses = mount.getMissCount();
+    CephStat a = new CephStat();
+    mount.stat(path, a);
+    CephStat b = new CephStat();
+    mount.stat(path + "/", b);
+    assertTrue(mount.getMissCount() == misses + 1);
+    assertTrue(mount.getHitCount() == hits + 1);
+    assertTrue(a.mode == b.mode && a.size == b.size && b.isFile());
+
+    /* stat and lstat are cached separately */
+    mount.lstat(path, b);
+    assertTrue(mount.getMissCount() == misses + 2);
+
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_packed_hit() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+    mount.close(fd);
+
+    /* a stat result lacks fields the packed call returns */
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    long hits = mount.getHitCount();
+    long misses = mount.getMissCount();
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    mount.statPacked(path, packed);
+    assertTrue(mount.getMissCount() == misses + 1);
+    assertTrue(packed[CephStat.PACKED_INO] == stat.ino);
+    assertTrue(packed[CephStat.PACKED_MODE] == stat.mode);
+
+    /* a packed result serves both */
+    mount.statPacked(path, packed);
+    mount.stat(path, stat);
+    assertTrue(mount.getHitCount() == hits + 2);
+    assertTrue(packed[CephStat.PACKED_NLINK] == stat.nlink);
+
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_write_invalidates() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    assertTrue(stat.size == 0);
+
+    mount.write(fd, new byte[100], 100, 0);
+    mount.stat(path, stat);
+    assertTrue(stat.size == 100);
+
+    mount.ftruncate(fd, 10);
+    mount.stat(path, stat);
+    assertTrue(stat.size == 10);
+    mount.close(fd);
+
+    stat.mode = 0644;
+    mount.setattr(path, stat, CephMount.SETATTR_MODE);
+    mount.stat(path, stat);
+    assertTrue((stat.mode & 0777) == 0644);
+
+    mount.unlink(path);
+    try {
+      mount.stat(path, stat);
+      fail("expected FileNotFoundException");
+    } catch (FileNotFoundException e) {}
+  }
+
+  @Test
+  public void test_chmod_truncate_invalidate() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+    mount.write(fd, new byte[100], 100, 0);
+    mount.close(fd);
+
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    assertTrue((stat.mode & 0777) == 0600);
+    assertTrue(stat.size == 100);
+
+    mount.chmod(path, 0644);
+    mount.stat(path, stat);
+    assertTrue((stat.mode & 0777) == 0644);
+
+    mount.truncate(path, 10);
+    mount.stat(path, stat);
+    assertTrue(stat.size == 10);
+
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_fchmod_invalidates() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    assertTrue((stat.mode & 0777) == 0600);
+
+    mount.fchmod(fd, 0640);
+    mount.stat(path, stat);
+    assertTrue((stat.mode & 0777) == 0640);
+    mount.close(fd);
+
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_fchmod_read_only_invalidates() throws Exception {
+    String path = makePath();
+    mount.close(mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600));
+    int fd = mount.open(path, CephMount.O_RDONLY, 0);
+    CephStat stat = new CephStat();
+    mount.stat(path, stat);
+    assertTrue((stat.mode & 0777) == 0600);
+
+    mount.fchmod(fd, 0640);
+    mount.stat(path, stat);
+    assertTrue((stat.mode & 0777) == 0640);
+
+    long hits = mount.getHitCount();
+    mount.close(fd);
+    mount.stat(path, stat);
+    assertTrue(mount.getHitCount() == hits + 1);
+
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_xattr_invalidates() throws Exception {
+    String path = makePath();
+    mount.close(mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600));
+    long[] before = new long[CephStat.PACKED_LENGTH];
+    long[] after = new long[CephStat.PACKED_LENGTH];
+    mount.statPacked(path, before);
+
+    mount.setxattr(path, "user.a", new byte[1], 1, CephMount.XATTR_CREATE);
+    mount.statPacked(path, after);
+    assertTrue(after[CephStat.PACKED_VERSION] != before[CephStat.PACKED_VERSION]);
+
+    mount.removexattr(path, "user.a");
+    mount.statPacked(path, before);
+    assertTrue(after[CephStat.PACKED_VERSION] != before[CephStat.PACKED_VERSION]);
+
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_rename_invalidates() throws Exception {
+    String dir = makePath();
+    mount.mkdir(dir, 0777);
+    int fd = mount.open(dir + "/f", CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+    mount.close(fd);
+
+    CephStat stat = new CephStat();
+    mount.stat(dir + "/f", stat);
+
+    String to = makePath();
+    mount.rename(dir, to);
+    try {
+      mount.stat(dir + "/f", stat);
+      fail("expected FileNotFoundException");
+    } catch (FileNotFoundException e) {}
+    mount.stat(to + "/f", stat);
+    assertTrue(stat.isFile());
+
+    mount.unlink(to + "/f");
+    mount.rmdir(to);
+  }
+
+  @Test
+  public void test_eviction() throws Exception {
+    long evictions = mount.getEvictionCount();
+    String[] paths = new String[6];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = makePath();
+      mount.close(mount.open(paths[i], CephMount.O_WRONLY|CephMount.O_CREAT, 0600));
+      mount.stat(paths[i], new CephStat());
+    }
+    assertTrue(mount.getCacheSize() <= 4);
+    assertTrue(mount.getEvictionCount() >= evictions + 2);
+    for (String path : paths)
+      mount.unlink(path);
+  }
+
+  @Test
+  public void test_expiry() throws Exception {
+    CachingCephMount other = new CachingCephMount("admin", 10, 0, TimeUnit.SECONDS);
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      other.conf_read_file(conf_file);
+    other.mount(null);
+    CephStat stat = new CephStat();
+    other.stat(basedir, stat);
+    other.stat(basedir, stat);
+    assertTrue(other.getHitCount() == 0);
+    assertTrue(other.getExpirationCount() == 1);
+    other.unmount();
+  }
+}
@@ -22,6 +22,7 @@ package com.ceph.fs;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.UUID;
+import com.ceph.fs.nio.CephFileSystemTest;
 import org.junit.*;
 import org.junit.runners.Suite;
 import org.junit.runner.RunWith;
@@ -30,10 +31,21 @@ import static org.junit.Assert.*;
 
 @RunWith( Suite.class )
 @Suite.SuiteClasses( { 
+  AsyncCephMountTest.class,
+  CachingCephMountTest.class,
   CephDoubleMountTest.class,
+  CephFileChannelTest.class,
+  CephFileSystemTest.class,
+  CephInodeTest.class,
+  CephMemoryBackendTest.class,
   CephMountCreateTest.class,
+  CephMountMetricsTest.class,
+  CephMountPoolTest.class,
   CephMountTest.class,
+  CephStreamTest.class,
+  CephTreeWalkerTest.class,
   CephUnmountedTest.class,
+  StripedReadWriteLockTest.class,
 })
 
 /**
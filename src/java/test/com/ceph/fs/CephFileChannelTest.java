@@ -0,0 +1,268 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.util.UUID;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CephFileChannelTest {
+
+  private static CephMount mount;
+  private static String basedir = null;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    mount = new CephMount("admin");
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_channel_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    String[] list = mount.listdir(basedir);
+    for (String l : list)
+      mount.unlink(basedir + "/" + l);
+    mount.rmdir(basedir);
+    mount.unmount();
+  }
+
+  private String makePath() {
+    return basedir + "/" + UUID.randomUUID();
+  }
+
+  private CephFileChannel create() throws Exception {
+    return CephFileChannel.open(mount, makePath(),
+        CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+  }
+
+  private static byte[] pattern(int size) {
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++)
+      data[i] = (byte)(i * 31 + 7);
+    return data;
+  }
+
+  @Test
+  public void test_read_write() throws Exception {
+    CephFileChannel ch = create();
+    byte[] data = pattern(10000);
+
+    assertTrue(ch.write(ByteBuffer.wrap(data)) == data.length);
+    assertTrue(ch.position() == data.length);
+    assertTrue(ch.size() == data.length);
+
+    ch.position(0);
+    ByteBuffer dst = ByteBuffer.allocateDirect(data.length);
+    while (dst.hasRemaining())
+      assertTrue(ch.read(dst) > 0);
+    assertTrue(ch.read(dst) == 0);
+    dst.flip();
+    for (int i = 0; i < data.length; i++)
+      assertTrue(dst.get(i) == data[i]);
+
+    /* end of file */
+    assertTrue(ch.read(ByteBuffer.allocate(10)) == -1);
+    ch.close();
+    assertFalse(ch.isOpen());
+  }
+
+  @Test
+  public void test_positional() throws Exception {
+    CephFileChannel ch = create();
+    byte[] data = pattern(4096);
+
+    assertTrue(ch.write(ByteBuffer.wrap(data), 8192) == data.length);
+    /* positional I/O does not move the channel position */
+    assertTrue(ch.position() == 0);
+    assertTrue(ch.size() == 8192 + data.length);
+
+    ByteBuffer dst = ByteBuffer.allocate(data.length);
+    assertTrue(ch.read(dst, 8192) == data.length);
+    assertArrayEquals(data, dst.array());
+    assertTrue(ch.read(ByteBuffer.allocate(1), 100000) == -1);
+    ch.close();
+  }
+
+  @Test
+  public void test_scatter_gather() throws Exception {
+    CephFileChannel ch = create();
+    ByteBuffer[] srcs = new ByteBuffer[] {
+      ByteBuffer.wrap(pattern(100)),
+      ByteBuffer.allocateDirect(0),
+      ByteBuffer.wrap(pattern(300)),
+    };
+    assertTrue(ch.write(srcs) == 400);
+
+    ch.position(0);
+    ByteBuffer[] dsts = new ByteBuffer[] {
+      ByteBuffer.allocate(100),
+      ByteBuffer.allocateDirect(300),
+      ByteBuffer.allocate(50),
+    };
+    assertTrue(ch.read(dsts) == 400);
+    assertArrayEquals(pattern(100), dsts[0].array());
+    dsts[1].flip();
+    byte[] second = new byte[300];
+    dsts[1].get(second);
+    assertArrayEquals(pattern(300), second);
+    assertTrue(dsts[2].position() == 0);
+    assertTrue(ch.read(dsts) == -1);
+    ch.close();
+  }
+
+  @Test
+  public void test_truncate() throws Exception {
+    CephFileChannel ch = create();
+    ch.write(ByteBuffer.wrap(pattern(1000)));
+    ch.truncate(2000);
+    assertTrue(ch.size() == 1000);
+    ch.truncate(500);
+    assertTrue(ch.size() == 500);
+    assertTrue(ch.position() == 500);
+    ch.force(true);
+    ch.force(false);
+    ch.close();
+  }
+
+  @Test(expected=NonWritableChannelException.class)
+  public void test_read_only() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+    mount.close(fd);
+    CephFileChannel ch = CephFileChannel.open(mount, path, CephMount.O_RDONLY, 0);
+    try {
+      ch.write(ByteBuffer.allocate(1));
+    } finally {
+      ch.close();
+    }
+  }
+
+  @Test
+  public void test_transfer_between_channels() throws Exception {
+    CephFileChannel src = create();
+    CephFileChannel dst = create();
+    byte[] data = pattern(3 << 20);
+    src.write(ByteBuffer.wrap(data));
+
+    /* transferTo writes at the target's position */
+    dst.position(10);
+    assertTrue(src.transferTo(0, data.length, dst) == data.length);
+    assertTrue(dst.position() == 10 + data.length);
+
+    /* transferFrom reads at the source's position */
+    src.position(1000);
+    assertTrue(dst.transferFrom(src, 0, 10) == 10);
+    assertTrue(src.position() == 1010);
+
+    ByteBuffer check = ByteBuffer.allocate(data.length);
+    dst.read(check, 10);
+    assertArrayEquals(data, check.array());
+
+    /* nothing left past the end of the source */
+    assertTrue(src.transferTo(data.length, 100, dst) == 0);
+
+    src.close();
+    dst.close();
+  }
+
+  @Test
+  public void test_transfer_foreign_channels() throws Exception {
+    CephFileChannel ch = create();
+    byte[] data = pattern(100000);
+
+    long ret = ch.transferFrom(Channels.newChannel(new ByteArrayInputStream(data)),
+        0, data.length);
+    assertTrue(ret == data.length);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ret = ch.transferTo(0, data.length, Channels.newChannel(out));
+    assertTrue(ret == data.length);
+    assertArrayEquals(data, out.toByteArray());
+    ch.close();
+  }
+
+  @Test
+  public void test_lock() throws Exception {
+    CephFileChannel ch1 = create();
+    FileLock lock = ch1.lock();
+    assertTrue(lock.isValid());
+    assertFalse(lock.isShared());
+    lock.release();
+    assertFalse(lock.isValid());
+
+    lock = ch1.tryLock(0, Long.MAX_VALUE, true);
+    assertTrue(lock != null);
+    lock.release();
+    ch1.close();
+  }
+
+  @Test
+  public void test_try_lock_held() throws Exception {
+    String path = makePath();
+    CephFileChannel ch1 = CephFileChannel.open(mount, path,
+        CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+    CephFileChannel ch2 = CephFileChannel.open(mount, path, CephMount.O_RDWR, 0);
+    FileLock lock = ch1.lock();
+    assertNull(ch2.tryLock());
+    assertNull(ch2.tryLock(0, Long.MAX_VALUE, true));
+    lock.release();
+    lock = ch2.tryLock();
+    assertTrue(lock != null);
+    lock.release();
+    ch1.close();
+    ch2.close();
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void test_lock_range() throws Exception {
+    CephFileChannel ch = create();
+    try {
+      ch.lock(10, 20, false);
+    } finally {
+      ch.close();
+    }
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void test_map() throws Exception {
+    CephFileChannel ch = create();
+    try {
+      ch.map(FileChannel.MapMode.READ_ONLY, 0, 1);
+    } finally {
+      ch.close();
+    }
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CephInodeTest {
+
+  private static CephMount mount;
+  private static String basedir = null;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    mount = new CephMount("admin");
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_inode_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    String[] list = mount.listdir(basedir);
+    for (String l : list)
+      mount.unlink(basedir + "/" + l);
+    mount.rmdir(basedir);
+    mount.unmount();
+  }
+
+  private String makeName() {
+    return UUID.randomUUID().toString();
+  }
+
+  private void createFile(String path, int size) throws Exception {
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+    mount.write(fd, new byte[size], size, 0);
+    mount.close(fd);
+  }
+
+  @Test
+  public void test_lookup() throws Exception {
+    String name = makeName();
+    createFile(basedir + "/" + name, 10);
+
+    CephInode root = mount.ll_lookup_root();
+    CephInode dir = mount.ll_lookup(root, basedir.substring(1));
+    CephInode file = mount.ll_lookup(dir, name);
+    CephInode walked = mount.ll_walk(basedir + "/" + name);
+
+    CephStatx stx = new CephStatx();
+    mount.ll_getattr(file, CephMount.STATX_SIZE|CephMount.STATX_INO, 0, stx);
+    assertTrue(stx.isFile());
+    assertEquals(10, stx.size);
+    long ino = stx.ino;
+    mount.ll_getattr(walked, CephMount.STATX_INO, 0, stx);
+    assertEquals(ino, stx.ino);
+
+    CephInode parent = mount.ll_lookup(dir, "..");
+    mount.ll_getattr(root, CephMount.STATX_INO, 0, stx);
+    long root_ino = stx.ino;
+    mount.ll_getattr(parent, CephMount.STATX_INO, 0, stx);
+    assertEquals(root_ino, stx.ino);
+
+    parent.close();
+    walked.close();
+    file.close();
+    dir.close();
+    root.close();
+    mount.unlink(basedir + "/" + name);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_lookup_dne() throws Exception {
+    CephInode dir = mount.ll_walk(basedir);
+    try {
+      mount.ll_lookup(dir, "does-not-exist");
+    } finally {
+      dir.close();
+    }
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void test_lookup_null_name() throws Exception {
+    CephInode dir = mount.ll_walk(basedir);
+    try {
+      mount.ll_lookup(dir, null);
+    } finally {
+      dir.close();
+    }
+  }
+
+  @Test
+  public void test_readdir() throws Exception {
+    String a = makeName(), b = makeName();
+    createFile(basedir + "/" + a, 0);
+    createFile(basedir + "/" + b, 0);
+
+    CephInode dir = mount.ll_walk(basedir);
+    String[] names = mount.ll_readdir(dir);
+    dir.close();
+    assertTrue(Arrays.asList(names).contains(a));
+    assertTrue(Arrays.asList(names).contains(b));
+    assertFalse(Arrays.asList(names).contains("."));
+
+    mount.unlink(basedir + "/" + a);
+    mount.unlink(basedir + "/" + b);
+  }
+
+  @Test
+  public void test_open_read_write() throws Exception {
+    String path = basedir + "/" + makeName();
+    createFile(path, 0);
+
+    CephInode file = mount.ll_walk(path);
+    long fh = mount.ll_open(file, CephMount.O_RDWR);
+    byte[] buf = "hello inode".getBytes();
+    assertEquals(buf.length, mount.ll_write(fh, buf, buf.length, 0));
+    byte[] out = new byte[buf.length];
+    assertEquals(buf.length, mount.ll_read(fh, out, out.length, 0));
+    assertArrayEquals(buf, out);
+    mount.ll_close(fh);
+
+    /* the handle survives an unlink */
+    mount.unlink(path);
+    CephStatx stx = new CephStatx();
+    mount.ll_getattr(file, CephMount.STATX_SIZE, 0, stx);
+    assertEquals(buf.length, stx.size);
+    file.close();
+
+    try {
+      mount.ll_read(fh, out, out.length, 0);
+      fail("expected IOException");
+    } catch (IOException e) {}
+  }
+
+  @Test
+  public void test_read_write_buffer() throws Exception {
+    String path = basedir + "/" + makeName();
+    createFile(path, 0);
+
+    CephInode file = mount.ll_walk(path);
+    long fh = mount.ll_open(file, CephMount.O_RDWR);
+    byte[] data = "hello buffer".getBytes();
+
+    ByteBuffer src = ByteBuffer.allocateDirect(data.length + 4);
+    src.position(4);
+    src.put(data);
+    src.position(4);
+    assertEquals(data.length, mount.ll_write(fh, src, 0));
+    assertEquals(src.limit(), src.position());
+
+    /* heap buffer at an offset into its backing array */
+    byte[] backing = new byte[data.length + 8];
+    ByteBuffer dst = ByteBuffer.wrap(backing, 3, data.length + 2).slice();
+    assertEquals(data.length, mount.ll_read(fh, dst, 0));
+    assertEquals(data.length, dst.position());
+    assertArrayEquals(data, Arrays.copyOfRange(backing, 3, 3 + data.length));
+    assertEquals(0, backing[3 + data.length]);
+
+    ByteBuffer ro = ByteBuffer.wrap("xy".getBytes()).asReadOnlyBuffer();
+    assertEquals(2, mount.ll_write(fh, ro, data.length));
+    ByteBuffer tail = ByteBuffer.allocateDirect(8);
+    assertEquals(2, mount.ll_read(fh, tail, data.length));
+    assertEquals('x', tail.get(0));
+    assertEquals('y', tail.get(1));
+
+    try {
+      mount.ll_read(fh, ro, 0);
+      fail("expected ReadOnlyBufferException");
+    } catch (ReadOnlyBufferException e) {}
+
+    mount.ll_close(fh);
+    file.close();
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_opendir() throws Exception {
+    String path = basedir + "/" + makeName();
+    mount.mkdir(path, 0777);
+    String a = makeName(), b = makeName(), c = makeName();
+    createFile(path + "/" + a, 1);
+    createFile(path + "/" + b, 2);
+    createFile(path + "/" + c, 3);
+
+    CephInode dir = mount.ll_walk(path);
+    CephDirectoryStream<CephDirEntry> stream = mount.ll_opendir(dir, 2);
+    dir.close();
+    ArrayList<String> names = new ArrayList<String>();
+    for (CephDirEntry entry : stream) {
+      names.add(entry.getName());
+      CephStatx stx = new CephStatx();
+      mount.ll_getattr(entry.getInode(), CephMount.STATX_SIZE, 0, stx);
+      assertEquals(entry.getStat().size, stx.size);
+      entry.getInode().close();
+    }
+    stream.close();
+    assertEquals(3, names.size());
+    assertTrue(names.containsAll(Arrays.asList(a, b, c)));
+
+    CephInode file = mount.ll_walk(path + "/" + a);
+    try {
+      mount.ll_opendir(file);
+      fail("expected CephNotDirectoryException");
+    } catch (CephNotDirectoryException e) {
+    } finally {
+      file.close();
+    }
+
+    mount.unlink(path + "/" + a);
+    mount.unlink(path + "/" + b);
+    mount.unlink(path + "/" + c);
+    mount.rmdir(path);
+  }
+
+  @Test
+  public void test_opendir_close_puts_buffered() throws Exception {
+    String path = basedir + "/" + makeName();
+    mount.mkdir(path, 0777);
+    for (int i = 0; i < 3; i++)
+      createFile(path + "/" + i, 0);
+
+    BlockingBackend handler = new BlockingBackend();
+    CephMount m = blockingMount(handler);
+    CephInode dir = m.ll_walk(path);
+    CephDirectoryStream<CephDirEntry> stream = m.ll_opendir(dir, 3);
+    dir.close();
+    assertEquals(0, handler.open_inodes.get());
+
+    /* one entry is returned, two are left in the batch */
+    try {
+      for (CephDirEntry entry : stream) {
+        entry.getInode().close();
+        break;
+      }
+    } finally {
+      stream.close();
+    }
+    assertEquals(0, handler.open_inodes.get());
+    m.unmount();
+
+    for (int i = 0; i < 3; i++)
+      mount.unlink(path + "/" + i);
+    mount.rmdir(path);
+  }
+
+  @Test
+  public void test_refcount() throws Exception {
+    CephInode dir = mount.ll_walk(basedir);
+    assertSame(dir, dir.retain());
+    dir.close();
+    assertFalse(dir.isReleased());
+    mount.ll_readdir(dir);
+    dir.close();
+    assertTrue(dir.isReleased());
+    dir.close();
+
+    try {
+      mount.ll_readdir(dir);
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {}
+    try {
+      dir.retain();
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {}
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_other_mount() throws Exception {
+    CephMount other = new CephMount("admin");
+    CephInode dir = mount.ll_walk(basedir);
+    try {
+      other.ll_readdir(dir);
+    } finally {
+      dir.close();
+    }
+  }
+
+  @Test
+  public void test_unmount_releases() throws Exception {
+    CephMount other = new CephMount("admin");
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      other.conf_read_file(conf_file);
+    other.mount(null);
+    CephInode root = other.ll_lookup_root();
+    other.unmount();
+    assertTrue(root.isReleased());
+    root.close();
+  }
+
+  /*
+   * Backend that blocks in one call until released, and counts the native
+   * puts and closes, and the inode references held.
+   */
+  private static class BlockingBackend implements InvocationHandler {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch proceed = new CountDownLatch(1);
+    final AtomicInteger puts = new AtomicInteger(0);
+    final AtomicInteger closes = new AtomicInteger(0);
+    final AtomicInteger open_inodes = new AtomicInteger(0);
+    volatile String block = null;
+    CephBackend backend;
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getName().equals(block)) {
+        block = null;
+        entered.countDown();
+        proceed.await();
+      }
+      if (method.getName().equals("ll_put"))
+        puts.incrementAndGet();
+      if (method.getName().equals("ll_close"))
+        closes.incrementAndGet();
+      Object ret;
+      try {
+        ret = method.invoke(backend, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+      String name = method.getName();
+      if (name.equals("ll_lookup_root") || name.equals("ll_lookup") || name.equals("ll_walk"))
+        open_inodes.incrementAndGet();
+      else if (name.equals("ll_readdirplus_batch"))
+        open_inodes.addAndGet(((String[])ret).length);
+      else if (name.equals("ll_put"))
+        open_inodes.decrementAndGet();
+      return ret;
+    }
+  }
+
+  private static CephMount blockingMount(final BlockingBackend handler) throws Exception {
+    CephMount m = new CephMount("admin", new CephBackendProvider() {
+      public CephBackend create(CephMount mount, String id) {
+        handler.backend = CephMount.default_provider().create(mount, id);
+        return (CephBackend)Proxy.newProxyInstance(CephBackend.class.getClassLoader(),
+            new Class<?>[] { CephBackend.class }, handler);
+      }
+    });
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      m.conf_read_file(conf_file);
+    m.conf_set("client_permissions", "0");
+    m.mount(null);
+    return m;
+  }
+
+  @Test
+  public void test_close_during_read() throws Exception {
+    String path = basedir + "/" + makeName();
+    createFile(path, 100);
+
+    BlockingBackend handler = new BlockingBackend();
+    final CephMount m = blockingMount(handler);
+    CephInode file = m.ll_walk(path);
+    final long fh = m.ll_open(file, CephMount.O_RDONLY);
+    file.close();
+
+    final long[] ret = new long[1];
+    handler.block = "ll_read";
+    Thread reader = new Thread() {
+      public void run() {
+        try {
+          ret[0] = m.ll_read(fh, new byte[100], 100, 0);
+        } catch (IOException e) {
+          ret[0] = -1;
+        }
+      }
+    };
+    reader.start();
+    handler.entered.await();
+
+    /* the handle is closed once the read is done with it */
+    m.ll_close(fh);
+    assertEquals(0, handler.closes.get());
+    handler.proceed.countDown();
+    reader.join();
+    assertEquals(100, ret[0]);
+    assertEquals(1, handler.closes.get());
+
+    try {
+      m.ll_read(fh, new byte[100], 100, 0);
+      fail("expected IOException");
+    } catch (IOException e) {}
+    m.unmount();
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_close_during_getattr() throws Exception {
+    BlockingBackend handler = new BlockingBackend();
+    final CephMount m = blockingMount(handler);
+    final CephInode dir = m.ll_walk(basedir);
+
+    final CephStatx stx = new CephStatx();
+    handler.block = "ll_getattr";
+    Thread getattr = new Thread() {
+      public void run() {
+        m.ll_getattr(dir, CephMount.STATX_INO, 0, stx);
+      }
+    };
+    getattr.start();
+    handler.entered.await();
+
+    /* released for new calls at once, put once the getattr returns */
+    dir.close();
+    assertTrue(dir.isReleased());
+    assertEquals(0, handler.puts.get());
+    handler.proceed.countDown();
+    getattr.join();
+    assertTrue(stx.ino != 0);
+    assertEquals(1, handler.puts.get());
+    m.unmount();
+  }
+}
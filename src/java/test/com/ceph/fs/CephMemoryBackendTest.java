@@ -0,0 +1,268 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/*
+ * Behaviour specific to the in-memory backend. The rest of the suite runs
+ * against it with -Dcom.ceph.fs.backend=memory.
+ */
+public class CephMemoryBackendTest {
+
+  private CephMemoryBackend provider;
+  private CephMount mount;
+
+  @Before
+  public void setup() throws Exception {
+    provider = new CephMemoryBackend();
+    mount = newMount(provider);
+  }
+
+  @After
+  public void destroy() throws Exception {
+    mount.unmount();
+  }
+
+  private CephMount newMount(CephBackendProvider p) throws Exception {
+    CephMount m = new CephMount("admin", p);
+    m.mount(null);
+    return m;
+  }
+
+  @Test
+  public void test_shared_namespace() throws Exception {
+    CephMount other = newMount(provider);
+    try {
+      other.mkdir("/dir", 0755);
+      int fd = other.open("/dir/file", CephMount.O_WRONLY|CephMount.O_CREAT, 0644);
+      other.write(fd, new byte[100], 100, -1);
+      other.close(fd);
+
+      CephStat stat = new CephStat();
+      mount.stat("/dir/file", stat);
+      assertTrue(stat.isFile());
+      assertTrue(stat.size == 100);
+    } finally {
+      other.unmount();
+    }
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_separate_providers() throws Exception {
+    mount.mkdir("/dir", 0755);
+    CephMount other = newMount(new CephMemoryBackend());
+    try {
+      other.lstat("/dir", new CephStat());
+    } finally {
+      other.unmount();
+    }
+  }
+
+  @Test
+  public void test_mount_root() throws Exception {
+    mount.mkdirs("/a/b", 0755);
+    CephMount other = new CephMount("admin", provider);
+    other.mount("/a");
+    try {
+      assertTrue(other.listdir("/")[0].equals("b"));
+      other.chdir("b/..");
+      assertTrue(other.getcwd().equals("/"));
+      /* ".." does not leave the mount root */
+      assertTrue(other.listdir("/..").length == 1);
+    } finally {
+      other.unmount();
+    }
+  }
+
+  @Test
+  public void test_symlink_resolution() throws Exception {
+    mount.mkdir("/dir", 0755);
+    mount.symlink("/dir", "/abs");
+    mount.symlink("dir", "/rel");
+    mount.mkdir("/abs/sub", 0755);
+
+    CephStat stat = new CephStat();
+    mount.stat("/rel/sub", stat);
+    assertTrue(stat.isDir());
+    mount.lstat("/rel", stat);
+    assertTrue(stat.isSymlink());
+    assertTrue(stat.size == 3);
+
+    mount.symlink("/loop1", "/loop2");
+    mount.symlink("/loop2", "/loop1");
+    try {
+      mount.stat("/loop1", stat);
+      fail();
+    } catch (FileNotFoundException e) {
+      fail();
+    } catch (IOException e) {}
+  }
+
+  @Test(expected=IOException.class)
+  public void test_rename_into_self() throws Exception {
+    mount.mkdirs("/a/b", 0755);
+    mount.rename("/a", "/a/b/c");
+  }
+
+  @Test
+  public void test_flock_blocks() throws Exception {
+    int fd = mount.open("/file", CephMount.O_RDWR|CephMount.O_CREAT, 0644);
+    mount.flock(fd, CephMount.LOCK_EX, 1);
+
+    final CephMount other = newMount(provider);
+    final int fd2 = other.open("/file", CephMount.O_RDWR, 0);
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicBoolean locked = new AtomicBoolean(false);
+    Thread t = new Thread() {
+      public void run() {
+        started.countDown();
+        try {
+          other.flock(fd2, CephMount.LOCK_SH, 2);
+          locked.set(true);
+        } catch (IOException e) {}
+      }
+    };
+    t.start();
+    started.await();
+    Thread.sleep(100);
+    assertFalse(locked.get());
+
+    mount.flock(fd, CephMount.LOCK_UN, 1);
+    t.join(TimeUnit.SECONDS.toMillis(10));
+    assertTrue(locked.get());
+
+    /* closing the file releases its locks */
+    other.close(fd2);
+    mount.flock(fd, CephMount.LOCK_EX|CephMount.LOCK_NB, 1);
+    mount.close(fd);
+    other.unmount();
+  }
+
+  @Test
+  public void test_open_layout() throws Exception {
+    int fd = mount.open("/file", CephMount.O_WRONLY|CephMount.O_CREAT, 0644,
+        1 << 16, 2, 1 << 17, "cephfs_data");
+    assertTrue(mount.get_file_stripe_unit(fd) == (1 << 16));
+    CephFileExtent e = mount.get_file_extent(fd, (1 << 16) + 1);
+    assertTrue(e.getLength() == (1 << 16) - 1);
+    mount.close(fd);
+
+    try {
+      mount.open("/bad", CephMount.O_WRONLY|CephMount.O_CREAT, 0644, 1000, 1, 1000, null);
+      fail();
+    } catch (IOException e2) {}
+  }
+
+  @Test
+  public void test_dir_rstats() throws Exception {
+    mount.mkdirs("/a/b/c", 0755);
+    mount.mkdir("/a/d", 0755);
+    int fd = mount.open("/a/b/file", CephMount.O_WRONLY|CephMount.O_CREAT, 0644);
+    mount.write(fd, new byte[100], 100, -1);
+    mount.close(fd);
+    fd = mount.open("/a/b/c/file", CephMount.O_WRONLY|CephMount.O_CREAT, 0644);
+    mount.write(fd, new byte[23], 23, -1);
+    mount.close(fd);
+    mount.symlink("/a/b/file", "/a/link");
+
+    CephDirStats stats = mount.getDirRecursiveStats("/a");
+    assertEquals(123, stats.rbytes);
+    assertEquals(3, stats.rfiles);
+    assertEquals(4, stats.rsubdirs);
+    assertEquals(7, stats.getEntries());
+
+    CephStat stat = new CephStat();
+    mount.lstat("/a/link", stat);
+    assertTrue(stats.rctime >= stat.c_time);
+
+    CephDirStats[] batch = mount.getDirRecursiveStats(new String[] { "/a/b", "/a/d" }, null);
+    assertEquals(123, batch[0].rbytes);
+    assertEquals(2, batch[0].rsubdirs);
+    assertEquals(0, batch[1].rfiles);
+    assertEquals(1, batch[1].rsubdirs);
+  }
+
+  @Test
+  public void test_dir_virtual_xattrs() throws Exception {
+    mount.mkdirs("/a/b", 0755);
+    int fd = mount.open("/a/file", CephMount.O_WRONLY|CephMount.O_CREAT, 0644);
+    mount.write(fd, new byte[10], 10, -1);
+    mount.close(fd);
+
+    byte[] buf = new byte[64];
+    long len = mount.getxattr("/a", "ceph.dir.rbytes", buf);
+    assertEquals("10", new String(buf, 0, (int)len));
+    len = mount.getxattr("/a", "ceph.dir.entries", buf);
+    assertEquals("2", new String(buf, 0, (int)len));
+    len = mount.getxattr("/a", "ceph.dir.rentries", buf);
+    assertEquals("3", new String(buf, 0, (int)len));
+    len = mount.getxattr("/a", "ceph.dir.rctime", buf);
+    assertTrue(new String(buf, 0, (int)len).matches("[0-9]+\\.[0-9]{9}"));
+    assertEquals(0, mount.listxattr("/a").length);
+
+    try {
+      mount.getxattr("/a/file", "ceph.dir.rbytes", buf);
+      fail();
+    } catch (IOException e) {}
+  }
+
+  /*
+   * With one stripe per object set, the stripe units of an object are
+   * adjacent and on the same OSDs, so they merge into one extent.
+   */
+  @Test
+  public void test_file_block_map_merge() throws Exception {
+    int fd = mount.open("/file", CephMount.O_RDWR|CephMount.O_CREAT, 0644,
+        1 << 16, 1, 1 << 18, null);
+    mount.write(fd, new byte[1 << 19], 1 << 19, -1);
+    CephFileBlockMap map = mount.getFileBlockMap(fd, 0, 1 << 20);
+    CephFileExtent[] extents = map.getExtents();
+    assertEquals(2, extents.length);
+    assertEquals(0, extents[0].getOffset());
+    assertEquals(1 << 18, extents[0].getLength());
+    assertEquals(1 << 18, extents[1].getOffset());
+    assertEquals(1 << 18, extents[1].getLength());
+    assertEquals("localhost-" + extents[0].getOSDs()[0], map.getHosts(extents[0])[0]);
+    mount.close(fd);
+  }
+
+  @Test
+  public void test_backend_property() throws Exception {
+    String saved = System.getProperty(CephMount.BACKEND_PROPERTY);
+    System.setProperty(CephMount.BACKEND_PROPERTY, "memory");
+    try {
+      CephMount m = new CephMount("admin");
+      m.mount(null);
+      m.unmount();
+    } finally {
+      if (saved == null)
+        System.clearProperty(CephMount.BACKEND_PROPERTY);
+      else
+        System.setProperty(CephMount.BACKEND_PROPERTY, saved);
+    }
+  }
+}
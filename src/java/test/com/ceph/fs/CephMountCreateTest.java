@@ -20,6 +20,7 @@
 package com.ceph.fs;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import org.junit.*;
 import java.util.UUID;
 import static org.junit.Assert.*;
@@ -88,4 +89,17 @@ public class CephMountCreateTest {
     mount.rmdir("/" + dir);
     mount.unmount();
   }
+
+  @Test
+  public void test_release() throws Exception {
+    CephMount mount = setupMount("/");
+    try {
+      mount.release();
+      fail("released a mounted mount");
+    } catch (IOException e) {}
+    mount.unmount();
+    mount.release();
+    /* a second release has no effect */
+    mount.release();
+  }
 }
@@ -0,0 +1,190 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import com.ceph.fs.CephMountMetrics.Op;
+import com.ceph.fs.CephMountMetrics.OperationStats;
+
+public class CephMountMetricsTest {
+
+  private CephMount mount;
+  private CephMountMetrics metrics;
+  private String basedir = null;
+
+  @Before
+  public void setup() throws Exception {
+    mount = new CephMount("admin", CephMountMetrics.instrument(null));
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_metrics_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+
+    metrics = mount.getMetrics();
+    metrics.reset();
+  }
+
+  @After
+  public void destroy() throws Exception {
+    String[] list = mount.listdir(basedir);
+    for (String l : list)
+      mount.unlink(basedir + "/" + l);
+    mount.rmdir(basedir);
+    mount.unmount();
+  }
+
+  @Test
+  public void test_not_instrumented() throws Exception {
+    CephMount m = new CephMount("admin");
+    if (!Boolean.getBoolean(CephMountMetrics.METRICS_PROPERTY))
+      assertNull(m.getMetrics());
+  }
+
+  @Test
+  public void test_instrument_twice() throws Exception {
+    CephBackendProvider provider = CephMountMetrics.instrument(CephMountMetrics.instrument(null));
+    CephMount m = new CephMount("admin", provider);
+    assertNotNull(m.getMetrics());
+  }
+
+  @Test
+  public void test_counts() throws Exception {
+    String path = basedir + "/" + UUID.randomUUID();
+    int fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+    byte[] buf = new byte[1000];
+    assertEquals(1000, mount.write(fd, buf, buf.length, 0));
+    assertEquals(1000, mount.read(fd, buf, buf.length, 0));
+    assertEquals(500, mount.read(fd, buf, buf.length, 500));
+    mount.close(fd);
+
+    CephStat stat = new CephStat();
+    for (int i = 0; i < 10; i++)
+      mount.stat(path, stat);
+
+    assertEquals(1, metrics.getOperation(Op.OPEN).getCount());
+    assertEquals(2, metrics.getOperation(Op.READ).getCount());
+    assertEquals(1, metrics.getOperation(Op.WRITE).getCount());
+    assertEquals(1, metrics.getOperation(Op.CLOSE).getCount());
+    assertEquals(10, metrics.getOperation(Op.STAT).getCount());
+    assertEquals(0, metrics.getOperation(Op.STAT).getErrors());
+    assertEquals(1500, metrics.getBytesRead());
+    assertEquals(1000, metrics.getBytesWritten());
+
+    OperationStats s = metrics.getOperation(Op.STAT);
+    assertTrue(s.getP50Nanos() <= s.getP90Nanos());
+    assertTrue(s.getP90Nanos() <= s.getP99Nanos());
+    assertTrue(s.getP99Nanos() <= s.getP999Nanos());
+    assertTrue(s.getMeanNanos() <= s.getMaxNanos());
+    assertTrue(s.getMaxNanos() <= s.getTotalNanos());
+
+    Map<String, OperationStats> ops = metrics.getOperations();
+    assertTrue(ops.containsKey("stat"));
+    assertTrue(ops.containsKey("read"));
+    assertFalse(ops.containsKey("rename"));
+
+    metrics.reset();
+    assertEquals(0, metrics.getOperation(Op.STAT).getCount());
+    assertEquals(0, metrics.getBytesRead());
+    assertTrue(metrics.getOperations().isEmpty());
+  }
+
+  @Test
+  public void test_errors() throws Exception {
+    String path = basedir + "/" + UUID.randomUUID();
+    try {
+      mount.stat(path, new CephStat());
+      fail();
+    } catch (FileNotFoundException e) {
+    }
+    assertEquals(1, metrics.getOperation(Op.STAT).getCount());
+    assertEquals(1, metrics.getOperation(Op.STAT).getErrors());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_bad_percentile() throws Exception {
+    metrics.getLatencyPercentile(Op.STAT, 1.5);
+  }
+
+  @Test
+  public void test_mbean() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = metrics.getObjectName();
+    assertNotNull(name);
+    assertTrue(server.isRegistered(name));
+
+    mount.listdir(basedir);
+    assertNotNull(server.getAttribute(name, "Operations"));
+    assertEquals(0L, server.getAttribute(name, "BytesWritten"));
+
+    CephMount m = new CephMount("admin", CephMountMetrics.instrument(null));
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      m.conf_read_file(conf_file);
+    m.mount(null);
+    ObjectName other = m.getMetrics().getObjectName();
+    assertFalse(name.equals(other));
+    m.unmount();
+    assertFalse(server.isRegistered(other));
+    assertNull(m.getMetrics().getObjectName());
+  }
+
+  @Test
+  public void test_histogram_buckets() throws Exception {
+    assertEquals(0, CephLatencyHistogram.index(0));
+    assertEquals(0, CephLatencyHistogram.index(-1));
+    for (int i = 0; i < CephLatencyHistogram.BUCKETS - 1; i++) {
+      long high = CephLatencyHistogram.highestValue(i);
+      assertEquals(i, CephLatencyHistogram.index(high));
+      assertEquals(i + 1, CephLatencyHistogram.index(high + 1));
+      /* buckets stay within 1/8 of the values they hold */
+      assertTrue(high - CephLatencyHistogram.highestValue(i - 1) <= Math.max(1, high / 8));
+    }
+    assertEquals(CephLatencyHistogram.BUCKETS - 1, CephLatencyHistogram.index(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void test_histogram_percentile() throws Exception {
+    CephLatencyHistogram h = new CephLatencyHistogram();
+    assertEquals(0, h.percentile(0.5));
+    for (long v = 1; v <= 1000; v++)
+      h.record(v * 1000);
+    long p50 = h.percentile(0.5);
+    long p99 = h.percentile(0.99);
+    assertTrue(p50 >= 500000 && p50 <= 500000 + 500000 / 8);
+    assertTrue(p99 >= 990000 && p99 <= 990000 + 990000 / 8);
+    assertTrue(h.percentile(1) >= 1000000);
+    h.reset();
+    assertEquals(0, h.percentile(1));
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CephMountPoolTest {
+
+  private static final int SIZE = 4;
+
+  private static CephMountPool pool;
+  private static String basedir = null;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    pool = new CephMountPool(SIZE, "admin");
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      pool.conf_read_file(conf_file);
+    pool.conf_set("client_permissions", "0");
+
+    pool.mount(null);
+
+    basedir = "/libcephfs_pool_junit_" + UUID.randomUUID();
+    pool.mkdir(basedir, 0777);
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    String[] list = pool.listdir(basedir);
+    for (String l : list)
+      pool.unlink(basedir + "/" + l);
+    pool.rmdir(basedir);
+    pool.unmount();
+  }
+
+  private String makePath() {
+    return basedir + "/" + UUID.randomUUID();
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_bad_size() throws Exception {
+    new CephMountPool(0, "admin");
+  }
+
+  @Test
+  public void test_conf() throws Exception {
+    assertEquals(SIZE, pool.size());
+    for (int i = 0; i < SIZE; i++)
+      assertEquals("0", pool.getMount(i).conf_get("client_permissions"));
+  }
+
+  @Test(expected=CephAlreadyMountedException.class)
+  public void test_mount_twice() throws Exception {
+    pool.mount(null);
+  }
+
+  @Test
+  public void test_path_routing() throws Exception {
+    Set<CephMount> used = new HashSet<CephMount>();
+    for (int i = 0; i < 64; i++) {
+      String path = makePath();
+      assertSame(pool.getMountFor(path), pool.getMountFor(path));
+      used.add(pool.getMountFor(path));
+    }
+    assertTrue(used.size() > 1);
+  }
+
+  /*
+   * Every mount sees what was done through the others.
+   */
+  @Test
+  public void test_shared_namespace() throws Exception {
+    String path = makePath();
+    pool.mkdir(path, 0777);
+    for (int i = 0; i < SIZE; i++) {
+      CephStat stat = new CephStat();
+      pool.getMount(i).stat(path, stat);
+      assertTrue(stat.isDir());
+    }
+    pool.rmdir(path);
+  }
+
+  @Test
+  public void test_fd_routing() throws Exception {
+    String[] paths = new String[16];
+    int[] fds = new int[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = makePath();
+      fds[i] = pool.open(paths[i], CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+      assertSame(pool.getMountFor(paths[i]), pool.getMountForFd(fds[i]));
+      byte[] buf = paths[i].getBytes();
+      assertEquals(buf.length, pool.write(fds[i], buf, buf.length, 0));
+    }
+
+    /* descriptors are unique within the pool */
+    Set<Integer> seen = new HashSet<Integer>();
+    for (int fd : fds)
+      assertTrue(seen.add(fd));
+
+    for (int i = 0; i < paths.length; i++) {
+      byte[] expected = paths[i].getBytes();
+      byte[] buf = new byte[expected.length];
+      assertEquals(expected.length, pool.read(fds[i], buf, buf.length, 0));
+      assertArrayEquals(expected, buf);
+
+      CephStat stat = new CephStat();
+      pool.fstat(fds[i], stat);
+      assertEquals(expected.length, stat.size);
+
+      /* the translated descriptor is valid with the owning mount */
+      pool.getMountForFd(fds[i]).fstat(pool.getMountFd(fds[i]), stat);
+      assertEquals(expected.length, stat.size);
+
+      pool.close(fds[i]);
+      pool.unlink(paths[i]);
+    }
+  }
+
+  @Test(expected=IOException.class)
+  public void test_close_ebadf() throws Exception {
+    pool.close(-1);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_stat_dne() throws Exception {
+    pool.stat(makePath(), new CephStat());
+  }
+}
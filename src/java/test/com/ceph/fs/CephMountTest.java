@@ -23,6 +23,11 @@ package com.ceph.fs;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.UUID;
 import org.junit.*;
 import static org.junit.Assert.*;
@@ -311,6 +316,144 @@ public class CephMountTest {
     mount.rmdir(dir);
   }
 
+  /*
+   * opendir
+   */
+
+  @Test(expected=NullPointerException.class)
+  public void test_opendir_null() throws Exception {
+    mount.opendir(null);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_opendir_dne() throws Exception {
+    mount.opendir("/this/path/does/not/exist/");
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_opendir_batch_size() throws Exception {
+    mount.opendir("/", 0);
+  }
+
+  @Test
+  public void test_opendir() throws Exception {
+    String dir = makePath();
+    mount.mkdir(dir, 0777);
+
+    /* empty directory */
+    CephDirectoryStream<String> stream = mount.opendir(dir);
+    assertFalse(stream.iterator().hasNext());
+    stream.close();
+
+    /* a batch size smaller than the directory forces several batches */
+    Set<String> expected = new HashSet<String>();
+    for (int i = 0; i < 25; i++) {
+      mount.mkdir(dir + "/" + i, 0777);
+      expected.add(Integer.toString(i));
+    }
+    Set<String> seen = new HashSet<String>();
+    stream = mount.opendir(dir, 4);
+    for (String name : stream)
+      assertTrue(seen.add(name));
+    stream.close();
+    assertTrue(seen.equals(expected));
+
+    /* stop early; closing twice is harmless */
+    stream = mount.opendir(dir, 4);
+    Iterator<String> it = stream.iterator();
+    assertTrue(it.hasNext());
+    it.next();
+    stream.close();
+    stream.close();
+    assertFalse(it.hasNext());
+
+    for (int i = 0; i < 25; i++)
+      mount.rmdir(dir + "/" + i);
+    mount.rmdir(dir);
+  }
+
+  @Test(expected=IllegalStateException.class)
+  public void test_opendir_iterator_twice() throws Exception {
+    CephDirectoryStream<String> stream = mount.opendir(basedir);
+    try {
+      stream.iterator();
+      stream.iterator();
+    } finally {
+      stream.close();
+    }
+  }
+
+  /*
+   * listdirPlus / opendirPlus
+   */
+
+  @Test(expected=NullPointerException.class)
+  public void test_listdirplus_null() throws Exception {
+    mount.listdirPlus(null);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_listdirplus_dne() throws Exception {
+    mount.listdirPlus("/this/path/does/not/exist/");
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_opendirplus_batch_size() throws Exception {
+    mount.opendirPlus("/", -1);
+  }
+
+  @Test
+  public void test_listdirplus() throws Exception {
+    String dir = makePath();
+    mount.mkdir(dir, 0777);
+    assertTrue(mount.listdirPlus(dir).length == 0);
+
+    for (int i = 0; i < 5; i++)
+      mount.mkdir(dir + "/d" + i, 0777);
+    for (int i = 0; i < 5; i++) {
+      int fd = createFile(dir + "/f" + i, i * 10);
+      mount.close(fd);
+    }
+    mount.symlink(dir + "/f0", dir + "/link");
+
+    CephDirEntry[] entries = mount.listdirPlus(dir);
+    assertTrue(entries.length == 11);
+    for (CephDirEntry entry : entries) {
+      CephStat expected = new CephStat();
+      mount.lstat(dir + "/" + entry.getName(), expected);
+      CephStat stat = entry.getStat();
+      assertTrue(stat.mode == expected.mode);
+      assertTrue(stat.uid == expected.uid);
+      assertTrue(stat.gid == expected.gid);
+      assertTrue(stat.size == expected.size);
+      assertTrue(stat.m_time == expected.m_time);
+      assertTrue(stat.isFile() == expected.isFile());
+      assertTrue(stat.isDir() == expected.isDir());
+      assertTrue(stat.isSymlink() == expected.isSymlink());
+      if (entry.getName().startsWith("d"))
+        assertTrue(stat.isDir());
+      else if (entry.getName().startsWith("f"))
+        assertTrue(stat.isFile());
+      else
+        assertTrue(stat.isSymlink());
+    }
+
+    /* streaming form with several batches */
+    Set<String> seen = new HashSet<String>();
+    CephDirectoryStream<CephDirEntry> stream = mount.opendirPlus(dir, 3);
+    for (CephDirEntry entry : stream)
+      assertTrue(seen.add(entry.getName()));
+    stream.close();
+    assertTrue(seen.size() == 11);
+
+    mount.unlink(dir + "/link");
+    for (int i = 0; i < 5; i++) {
+      mount.rmdir(dir + "/d" + i);
+      mount.unlink(dir + "/f" + i);
+    }
+    mount.rmdir(dir);
+  }
+
   /*
    * Missing
    *
@@ -427,6 +570,30 @@ public class CephMountTest {
     mount.lstat(path, st);
   }
 
+  @Test(expected=CephDirectoryNotEmptyException.class)
+  public void test_rmdir_not_empty() throws Exception {
+    String path = makePath();
+    mount.mkdir(path, 0777);
+    mount.mkdir(path + "/x", 0777);
+    try {
+      mount.rmdir(path);
+    } finally {
+      mount.rmdir(path + "/x");
+      mount.rmdir(path);
+    }
+  }
+
+  @Test(expected=CephPermissionDeniedException.class)
+  public void test_link_dir() throws Exception {
+    String path = makePath();
+    mount.mkdir(path, 0777);
+    try {
+      mount.link(path, makePath());
+    } finally {
+      mount.rmdir(path);
+    }
+  }
+
   /*
    * readlink
    * symlink
@@ -535,6 +702,190 @@ public class CephMountTest {
     mount.stat("/path/does/not/exist", new CephStat());
   }
 
+  /*
+   * statPacked / lstatPacked / fstatPacked
+   */
+
+  @Test(expected=NullPointerException.class)
+  public void test_stat_packed_null() throws Exception {
+    mount.statPacked("/", null);
+  }
+
+  @Test(expected=IndexOutOfBoundsException.class)
+  public void test_stat_packed_short() throws Exception {
+    mount.statPacked("/", new long[CephStat.PACKED_LENGTH - 1]);
+  }
+
+  @Test
+  public void test_stat_packed() throws Exception {
+    String path = makePath();
+    int fd = createFile(path, 4321);
+
+    long[] packed = new long[CephStat.PACKED_LENGTH];
+    mount.statPacked(path, packed);
+    CephStat st = CephStat.fromPacked(packed);
+
+    CephStat other_st = new CephStat();
+    mount.stat(path, other_st);
+    assertEquals(other_st.mode, st.mode);
+    assertEquals(other_st.size, st.size);
+    assertEquals(other_st.ino, st.ino);
+    assertEquals(other_st.m_time, st.m_time);
+    assertTrue(st.isFile());
+    assertEquals(4321, packed[CephStat.PACKED_SIZE]);
+    assertEquals(1, st.nlink);
+    assertTrue(st.ino != 0);
+    assertTrue(st.c_time > 0);
+    assertTrue(st.b_time > 0);
+
+    long[] fpacked = new long[CephStat.PACKED_LENGTH];
+    mount.fstatPacked(fd, fpacked);
+    mount.close(fd);
+    assertEquals(st.ino, fpacked[CephStat.PACKED_INO]);
+    assertEquals(st.dev, fpacked[CephStat.PACKED_DEV]);
+
+    /* a hard link shares the inode and bumps the link count */
+    String link = makePath();
+    mount.link(path, link);
+    long[] lpacked = new long[CephStat.PACKED_LENGTH];
+    mount.lstatPacked(link, lpacked);
+    assertEquals(st.ino, lpacked[CephStat.PACKED_INO]);
+    assertEquals(2, lpacked[CephStat.PACKED_NLINK]);
+    assertTrue(lpacked[CephStat.PACKED_VERSION] != st.version);
+
+    mount.unlink(link);
+    mount.unlink(path);
+  }
+
+  /*
+   * statx
+   */
+
+  @Test(expected=NullPointerException.class)
+  public void test_statx_null_out() throws Exception {
+    mount.statx("/", CephMount.STATX_SIZE, 0, null);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_statx_dne() throws Exception {
+    mount.statx("/path/does/not/exist", CephMount.STATX_SIZE, 0, new CephStatx());
+  }
+
+  @Test
+  public void test_statx() throws Exception {
+    String path = makePath();
+    int fd = createFile(path, 1234);
+    mount.close(fd);
+
+    CephStatx stx = new CephStatx();
+    mount.statx(path, CephMount.STATX_SIZE, CephMount.AT_STATX_DONT_SYNC, stx);
+    assertTrue(stx.has(CephMount.STATX_SIZE));
+    assertEquals(1234, stx.size);
+    assertTrue(stx.isFile());
+
+    mount.statx(path, CephMount.STATX_ALL_STATS, 0, stx);
+    assertTrue(stx.has(CephMount.STATX_BASIC_STATS));
+    CephStat st = new CephStat();
+    mount.stat(path, st);
+    assertEquals(st.mode, stx.mode);
+    assertEquals(st.ino, stx.ino);
+    assertEquals(st.m_time, stx.m_time);
+
+    /* symlinks are followed unless asked not to */
+    String link = makePath();
+    mount.symlink(path, link);
+    mount.statx(link, CephMount.STATX_SIZE, 0, stx);
+    assertTrue(stx.isFile());
+    mount.statx(link, CephMount.STATX_SIZE, CephMount.AT_SYMLINK_NOFOLLOW, stx);
+    assertTrue(stx.isSymlink());
+
+    mount.unlink(link);
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_fstatx() throws Exception {
+    String path = makePath();
+    int fd = createFile(path, 1234);
+
+    CephStatx stx = new CephStatx();
+    mount.fstatx(fd, CephMount.STATX_SIZE | CephMount.STATX_NLINK, 0, stx);
+    mount.close(fd);
+    assertTrue(stx.has(CephMount.STATX_SIZE));
+    assertTrue(stx.has(CephMount.STATX_NLINK));
+    assertEquals(1234, stx.size);
+    assertEquals(1, stx.nlink);
+    assertTrue(stx.isFile());
+
+    mount.unlink(path);
+  }
+
+  /*
+   * statBatch / lstatBatch
+   */
+
+  @Test(expected=NullPointerException.class)
+  public void test_stat_batch_null() throws Exception {
+    mount.statBatch(null);
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void test_stat_batch_null_element() throws Exception {
+    mount.statBatch(new String[] { basedir, null });
+  }
+
+  @Test
+  public void test_stat_batch() throws Exception {
+    String path = makePath();
+    int fd = createFile(path, 12345);
+    mount.close(fd);
+    String link = makePath();
+    mount.symlink(path, link);
+    String dne = makePath();
+
+    String[] paths = new String[] { path, dne, link, basedir };
+    CephStatBatch batch = mount.statBatch(paths);
+    CephStatBatch lbatch = mount.lstatBatch(paths);
+    assertTrue(batch.count() == 4);
+    assertTrue(lbatch.count() == 4);
+
+    /* failures are reported per entry */
+    assertFalse(batch.succeeded(1));
+    assertTrue(batch.error[1] == 2); /* ENOENT */
+    assertFalse(batch.getStat(1, new CephStat()));
+    assertFalse(lbatch.succeeded(1));
+
+    for (int i : new int[] { 0, 2, 3 }) {
+      CephStat expected = new CephStat();
+      mount.stat(paths[i], expected);
+      assertTrue(batch.succeeded(i));
+      assertTrue(batch.mode[i] == expected.mode);
+      assertTrue(batch.uid[i] == expected.uid);
+      assertTrue(batch.gid[i] == expected.gid);
+      assertTrue(batch.size[i] == expected.size);
+      assertTrue(batch.blocks[i] == expected.blocks);
+      assertTrue(batch.m_time[i] == expected.m_time);
+
+      CephStat stat = new CephStat();
+      assertTrue(batch.getStat(i, stat));
+      assertTrue(stat.isFile() == expected.isFile());
+      assertTrue(stat.isDir() == expected.isDir());
+    }
+
+    assertTrue(batch.isFile(0));
+    assertTrue(batch.isFile(2));
+    assertTrue(batch.isDir(3));
+    assertTrue(lbatch.isFile(0));
+    assertTrue(lbatch.isSymlink(2));
+    assertTrue(lbatch.isDir(3));
+
+    /* empty batch */
+    assertTrue(mount.statBatch(new String[0]).count() == 0);
+
+    mount.unlink(link);
+    mount.unlink(path);
+  }
+
   @Test(expected=CephNotDirectoryException.class)
   public void test_enotdir() throws Exception {
     String path = makePath();
@@ -757,6 +1108,232 @@ public class CephMountTest {
     mount.unlink(path);
   }
 
+  @Test
+  public void test_read_write_direct_buffer() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+
+    ByteBuffer src = ByteBuffer.allocateDirect(4096);
+    for (int i = 0; i < src.capacity(); i++)
+      src.put((byte)i);
+    src.flip();
+    long ret = mount.write(fd, src, 0);
+    assertTrue(ret == 4096);
+    assertTrue(src.position() == 4096);
+
+    /* read back into the middle of the buffer */
+    ByteBuffer dst = ByteBuffer.allocateDirect(8192);
+    dst.position(100).limit(100 + 4096);
+    ret = mount.read(fd, dst, 0);
+    assertTrue(ret == 4096);
+    assertTrue(dst.position() == 100 + 4096);
+    for (int i = 0; i < 4096; i++)
+      assertTrue(dst.get(100 + i) == (byte)i);
+
+    mount.close(fd);
+    mount.unlink(path);
+  }
+
+  @Test
+  public void test_read_write_heap_buffer() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+
+    byte[] data = new byte[1000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte)(i * 7);
+
+    /* slice so that arrayOffset is non-zero */
+    ByteBuffer src = ByteBuffer.wrap(data, 10, 500).slice();
+    long ret = mount.write(fd, src, 0);
+    assertTrue(ret == 500);
+    assertTrue(!src.hasRemaining());
+
+    /* read-only heap buffers are copied before writing */
+    ret = mount.write(fd, ByteBuffer.wrap(data, 510, 490).asReadOnlyBuffer(), 500);
+    assertTrue(ret == 490);
+
+    ByteBuffer dst = ByteBuffer.allocate(2000);
+    ret = mount.read(fd, dst, 0);
+    assertTrue(ret == 990);
+    assertTrue(dst.position() == 990);
+    for (int i = 0; i < 990; i++)
+      assertTrue(dst.get(i) == data[10 + i]);
+
+    /* reading past EOF leaves the buffer untouched */
+    ret = mount.read(fd, dst, 5000);
+    assertTrue(ret == 0);
+    assertTrue(dst.position() == 990);
+
+    mount.close(fd);
+    mount.unlink(path);
+  }
+
+  @Test(expected=ReadOnlyBufferException.class)
+  public void test_read_readonly_buffer() throws Exception {
+    mount.read(0, ByteBuffer.allocate(10).asReadOnlyBuffer(), 0);
+  }
+
+  /*
+   * preadv / pwritev
+   */
+
+  @Test
+  public void test_preadv_pwritev() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+
+    byte[] header = "header:".getBytes();
+    ByteBuffer payload = ByteBuffer.allocateDirect(5000);
+    for (int i = 0; i < 5000; i++)
+      payload.put((byte)i);
+    payload.flip();
+    ByteBuffer trailer = ByteBuffer.wrap("trailer".getBytes()).asReadOnlyBuffer();
+
+    ByteBuffer[] srcs = new ByteBuffer[] {
+      ByteBuffer.wrap(header), payload, ByteBuffer.allocate(0), trailer
+    };
+    long ret = mount.pwritev(fd, srcs, 0);
+    assertTrue(ret == 7 + 5000 + 7);
+    for (ByteBuffer src : srcs)
+      assertFalse(src.hasRemaining());
+
+    /* scatter into a mix of buffer kinds; heap buffers with an offset */
+    byte[] backing = new byte[20];
+    ByteBuffer first = ByteBuffer.wrap(backing, 3, 7).slice();
+    ByteBuffer second = ByteBuffer.allocateDirect(5000);
+    ByteBuffer third = ByteBuffer.allocate(100);
+    ret = mount.preadv(fd, new ByteBuffer[] { first, second, third }, 0);
+    assertTrue(ret == 5014);
+    assertTrue(new String(backing, 3, 7).equals("header:"));
+    assertFalse(second.hasRemaining());
+    second.flip();
+    for (int i = 0; i < 5000; i++)
+      assertTrue(second.get() == (byte)i);
+    assertTrue(third.position() == 7);
+    assertTrue(new String(third.array(), 0, 7).equals("trailer"));
+
+    /* at the current position */
+    mount.lseek(fd, 7, CephMount.SEEK_SET);
+    ByteBuffer small = ByteBuffer.allocate(10);
+    ret = mount.preadv(fd, new ByteBuffer[] { small }, -1);
+    assertTrue(ret == 10);
+    assertTrue(mount.lseek(fd, 0, CephMount.SEEK_CUR) == 17);
+
+    mount.close(fd);
+    mount.unlink(path);
+  }
+
+  @Test(expected=ReadOnlyBufferException.class)
+  public void test_preadv_readonly_buffer() throws Exception {
+    mount.preadv(0, new ByteBuffer[] { ByteBuffer.allocate(10).asReadOnlyBuffer() }, 0);
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void test_pwritev_null_buffer() throws Exception {
+    mount.pwritev(0, new ByteBuffer[] { null }, 0);
+  }
+
+  /*
+   * copy_file_range
+   */
+
+  @Test
+  public void test_copy_file_range() throws Exception {
+    String src_path = makePath();
+    int src = createFile(src_path, 10000);
+    byte[] data = new byte[10000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte)i;
+    mount.write(src, data, data.length, 0);
+
+    String dst_path = makePath();
+    int dst = mount.open(dst_path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+
+    long ret = mount.copy_file_range(src, 100, dst, 0, 5000);
+    assertTrue(ret == 5000);
+
+    /* stops at end of the source file */
+    ret = mount.copy_file_range(src, 9000, dst, 5000, 5000);
+    assertTrue(ret == 1000);
+
+    byte[] check = new byte[6000];
+    ret = mount.read(dst, check, check.length, 0);
+    assertTrue(ret == 6000);
+    for (int i = 0; i < 5000; i++)
+      assertTrue(check[i] == data[100 + i]);
+    for (int i = 0; i < 1000; i++)
+      assertTrue(check[5000 + i] == data[9000 + i]);
+
+    mount.close(src);
+    mount.close(dst);
+    mount.unlink(src_path);
+    mount.unlink(dst_path);
+  }
+
+  @Test
+  public void test_copy_file_range_position() throws Exception {
+    String src_path = makePath();
+    int src = createFile(src_path, 3000);
+    byte[] data = new byte[3000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte)(i * 7);
+    mount.write(src, data, data.length, 0);
+    mount.lseek(src, 1000, CephMount.SEEK_SET);
+
+    String dst_path = makePath();
+    int dst = mount.open(dst_path, CephMount.O_RDWR|CephMount.O_CREAT, 0600);
+
+    /* copies from and to the current positions, and advances both */
+    assertTrue(mount.copy_file_range(src, -1, dst, -1, 5000) == 2000);
+    assertTrue(mount.lseek(src, 0, CephMount.SEEK_CUR) == 3000);
+    assertTrue(mount.lseek(dst, 0, CephMount.SEEK_CUR) == 2000);
+
+    byte[] check = new byte[2000];
+    assertTrue(mount.read(dst, check, check.length, 0) == 2000);
+    for (int i = 0; i < check.length; i++)
+      assertTrue(check[i] == data[1000 + i]);
+
+    mount.close(src);
+    mount.close(dst);
+    mount.unlink(src_path);
+    mount.unlink(dst_path);
+  }
+
+  @Test
+  public void test_copy_file_range_error() throws Exception {
+    String src_path = makePath();
+    int src = createFile(src_path, 1000);
+    mount.write(src, new byte[1000], 1000, 0);
+
+    String dst_path = makePath();
+    mount.close(createFile(dst_path, 0));
+    int dst = mount.open(dst_path, CephMount.O_RDONLY, 0);
+
+    /* nothing could be copied, so the error is thrown */
+    try {
+      mount.copy_file_range(src, 0, dst, 0, 1000);
+      fail("expected IOException");
+    } catch (Exception e) {
+      assertTrue(e instanceof IOException);
+    }
+
+    /* reading at the current position, the position is left as it was */
+    mount.lseek(src, 100, CephMount.SEEK_SET);
+    try {
+      mount.copy_file_range(src, -1, dst, 0, 1000);
+      fail("expected IOException");
+    } catch (Exception e) {
+      assertTrue(e instanceof IOException);
+    }
+    assertEquals(100, mount.lseek(src, 0, CephMount.SEEK_CUR));
+
+    mount.close(src);
+    mount.close(dst);
+    mount.unlink(src_path);
+    mount.unlink(dst_path);
+  }
+
   /*
    * ftruncate
    */
@@ -823,11 +1400,11 @@ public class CephMountTest {
     try {
       mount.flock(fd, CephMount.LOCK_SH | CephMount.LOCK_NB, 43);
       assertTrue(false);
-    } catch(IOException io) {}
+    } catch(CephWouldBlockException io) {}
     try {
       mount.flock(fd, CephMount.LOCK_EX | CephMount.LOCK_NB, 43);
       assertTrue(false);
-    } catch(IOException io) {}
+    } catch(CephWouldBlockException io) {}
     mount.flock(fd, CephMount.LOCK_SH, 42);  // downgrade
     mount.flock(fd, CephMount.LOCK_SH, 43);
     mount.flock(fd, CephMount.LOCK_UN, 42);
@@ -914,6 +1491,71 @@ public class CephMountTest {
     mount.unlink(path);
   }
 
+  /*
+   * recursive directory statistics
+   *
+   * The MDS propagates these lazily, so only check what holds right away.
+   */
+
+  @Test
+  public void test_dir_rstats() throws Exception {
+    String dir = makePath();
+    mount.mkdir(dir, 0777);
+    mount.mkdir(dir + "/sub", 0777);
+    CephDirStats stats = mount.getDirRecursiveStats(dir);
+    assertTrue(stats.rsubdirs >= 1);
+    assertTrue(stats.rfiles >= 0);
+    assertTrue(stats.rbytes >= 0);
+    assertEquals(stats.rfiles + stats.rsubdirs, stats.getEntries());
+    mount.rmdir(dir + "/sub");
+    mount.rmdir(dir);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_dir_rstats_dne() throws Exception {
+    mount.getDirRecursiveStats(makePath());
+  }
+
+  @Test(expected=IOException.class)
+  public void test_dir_rstats_file() throws Exception {
+    String path = makePath();
+    mount.close(createFile(path, 1));
+    try {
+      mount.getDirRecursiveStats(path);
+    } finally {
+      mount.unlink(path);
+    }
+  }
+
+  @Test(expected=NullPointerException.class)
+  public void test_dir_rstats_batch_null() throws Exception {
+    mount.getDirRecursiveStats(new String[] { basedir, null }, null);
+  }
+
+  @Test(expected=IndexOutOfBoundsException.class)
+  public void test_dir_rstats_batch_short() throws Exception {
+    mount.getDirRecursiveStats(new String[] { basedir, basedir }, new int[1]);
+  }
+
+  @Test
+  public void test_dir_rstats_batch() throws Exception {
+    String file = makePath();
+    mount.close(createFile(file, 1));
+    String[] dirs = { basedir, makePath(), file, "/" };
+    int[] errors = new int[dirs.length];
+    CephDirStats[] stats = mount.getDirRecursiveStats(dirs, errors);
+    assertEquals(dirs.length, stats.length);
+    assertEquals(0, errors[0]);
+    assertTrue(stats[0].rsubdirs >= 1);
+    assertEquals(2, errors[1]);  /* ENOENT */
+    assertNull(stats[1]);
+    assertTrue(errors[2] != 0);
+    assertNull(stats[2]);
+    assertEquals(0, errors[3]);
+    assertTrue(stats[3].rsubdirs >= stats[0].rsubdirs);
+    mount.unlink(file);
+  }
+
   /*
    * get/set/list/remove symlink xattr
    *
@@ -939,6 +1581,90 @@ public class CephMountTest {
     mount.unlink(path);
   }
 
+  /*
+   * file layouts
+   */
+
+  @Test
+  public void test_get_layout() throws Exception {
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600,
+        (1<<20), 2, (1<<22), null);
+    CephFileLayout layout = mount.getLayout(fd);
+    assertEquals(1<<20, layout.getStripeUnit());
+    assertEquals(2, layout.getStripeCount());
+    assertEquals(1<<22, layout.getObjectSize());
+    assertEquals(mount.get_file_pool_name(fd), layout.getPool());
+    assertEquals(mount.get_pool_id(layout.getPool()), layout.getPoolId());
+    assertEquals(mount.get_file_replication(fd), layout.getReplication());
+    mount.close(fd);
+
+    CephFileLayout by_path = mount.getLayout(path);
+    assertEquals(layout.getStripeUnit(), by_path.getStripeUnit());
+    assertEquals(layout.getStripeCount(), by_path.getStripeCount());
+    assertEquals(layout.getObjectSize(), by_path.getObjectSize());
+    assertEquals(layout.getPool(), by_path.getPool());
+    mount.unlink(path);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_get_layout_dne() throws Exception {
+    mount.getLayout(makePath());
+  }
+
+  @Test
+  public void test_set_dir_layout() throws Exception {
+    String dir = makePath();
+    mount.mkdir(dir, 0777);
+    mount.setDirLayout(dir, new CephFileLayout(1<<20, 4, 1<<22, null));
+
+    int fd = createFile(dir + "/file", 1);
+    CephFileLayout layout = mount.getLayout(fd);
+    assertEquals(1<<20, layout.getStripeUnit());
+    assertEquals(4, layout.getStripeCount());
+    assertEquals(1<<22, layout.getObjectSize());
+    assertEquals(getRootPoolName(), layout.getPool());
+    mount.close(fd);
+
+    /* unset fields are kept */
+    mount.setDirLayout(dir, new CephFileLayout(0, 2, 0, null));
+    fd = createFile(dir + "/file2", 1);
+    layout = mount.getLayout(fd);
+    assertEquals(1<<20, layout.getStripeUnit());
+    assertEquals(2, layout.getStripeCount());
+    assertEquals(1<<22, layout.getObjectSize());
+    mount.close(fd);
+
+    /* existing files keep their layout */
+    assertEquals(4, mount.getLayout(dir + "/file").getStripeCount());
+
+    mount.unlink(dir + "/file");
+    mount.unlink(dir + "/file2");
+    mount.rmdir(dir);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_set_dir_layout_empty() throws Exception {
+    mount.setDirLayout(basedir, new CephFileLayout(0, 0, 0, null));
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_layout_negative() throws Exception {
+    new CephFileLayout(-1, 1, 1, null);
+  }
+
+  @Test(expected=IOException.class)
+  public void test_set_dir_layout_invalid() throws Exception {
+    String dir = makePath();
+    mount.mkdir(dir, 0777);
+    try {
+      /* object size not a multiple of the stripe unit */
+      mount.setDirLayout(dir, new CephFileLayout(1<<20, 1, (1<<20) + (1<<16), null));
+    } finally {
+      mount.rmdir(dir);
+    }
+  }
+
   /*
    * stripe unit granularity
    */
@@ -1022,6 +1748,68 @@ public class CephMountTest {
     mount.unlink(path);
   }
 
+  @Test
+  public void test_get_file_block_map() throws Exception {
+    int stripe_unit = 1<<18;
+    String path = makePath();
+    int fd = mount.open(path, CephMount.O_RDWR|CephMount.O_CREAT, 0600,
+        stripe_unit, 2, stripe_unit*2, null);
+    int size = 5*stripe_unit + 100;
+    mount.write(fd, new byte[size], size, 0);
+
+    CephFileBlockMap map = mount.getFileBlockMap(fd, 0, Long.MAX_VALUE);
+    CephFileExtent[] extents = map.getExtents();
+    assertTrue(extents.length > 0);
+    long next = 0;
+    for (CephFileExtent e : extents) {
+      assertEquals(next, e.getOffset());
+      assertTrue(e.getLength() > 0);
+      assertTrue(e.getOSDs().length > 0);
+      for (int osd : e.getOSDs())
+        assertEquals(osd, map.getOsdInfo(osd).getId());
+      assertEquals(e.getOSDs().length, map.getHosts(e).length);
+      next += e.getLength();
+    }
+    assertEquals(size, next);
+    assertTrue(map.getOsds().size() > 0);
+
+    /* a range inside the file */
+    extents = mount.getFileBlockMap(fd, stripe_unit/2, stripe_unit).getExtents();
+    assertEquals(stripe_unit/2, extents[0].getOffset());
+    long total = 0;
+    for (CephFileExtent e : extents)
+      total += e.getLength();
+    assertEquals(stripe_unit, total);
+
+    /* past the end of the file */
+    assertEquals(0, mount.getFileBlockMap(fd, size, 10).getExtents().length);
+
+    mount.close(fd);
+    mount.unlink(path);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_get_file_block_map_negative() throws Exception {
+    mount.getFileBlockMap(0, -1, 1);
+  }
+
+  @Test(expected=IOException.class)
+  public void test_get_file_block_map_ebadf() throws Exception {
+    mount.getFileBlockMap(-40, 0, 1);
+  }
+
+  @Test
+  public void test_get_osd_info() throws Exception {
+    CephOsdInfo info = mount.getOsdInfo(0);
+    assertEquals(0, info.getId());
+    assertEquals(mount.get_osd_address(0), info.getAddress());
+    assertEquals(mount.get_osd_crush_location(0).length, info.getCrushLocation().length);
+    assertNotNull(info.getHost());
+    assertSame(info, mount.getOsdInfo(0));
+    mount.clearOsdInfoCache();
+    assertNotSame(info, mount.getOsdInfo(0));
+  }
+
   @Test
   public void test_get_osd_crush_location() throws Exception {
     Bucket[] path = mount.get_osd_crush_location(0);
@@ -0,0 +1,252 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.IOException;
+import java.util.UUID;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/*
+ * CephInputStream and CephOutputStream
+ */
+public class CephStreamTest {
+
+  private static final int STRIPE_UNIT = 1 << 16;
+
+  private static CephMount mount;
+  private static String basedir = null;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    mount = new CephMount("admin");
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_stream_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    String[] list = mount.listdir(basedir);
+    for (String l : list)
+      mount.unlink(basedir + "/" + l);
+    mount.rmdir(basedir);
+    mount.unmount();
+  }
+
+  private String makePath() {
+    return basedir + "/" + UUID.randomUUID();
+  }
+
+  /*
+   * Open a file with a small stripe unit, so that a few hundred KB span
+   * many stream buffers.
+   */
+  private int openSmallStripes(String path, int flags) throws Exception {
+    return mount.open(path, flags|CephMount.O_CREAT, 0600, STRIPE_UNIT, 1, STRIPE_UNIT, null);
+  }
+
+  private static byte pattern(long i) {
+    return (byte)(i * 31 + (i >> 8));
+  }
+
+  private void writeFile(String path, int size, int write_behind) throws Exception {
+    int fd = openSmallStripes(path, CephMount.O_WRONLY);
+    CephOutputStream out = new CephOutputStream(mount, fd, 1, write_behind, null);
+    assertTrue(out.getBufferSize() == STRIPE_UNIT);
+    /* mix single bytes and odd-sized arrays */
+    int written = 0;
+    byte[] chunk = new byte[7777];
+    while (written < size) {
+      if (written % 3 == 0) {
+        out.write(pattern(written));
+        written++;
+        continue;
+      }
+      int n = Math.min(chunk.length, size - written);
+      for (int i = 0; i < n; i++)
+        chunk[i] = pattern(written + i);
+      out.write(chunk, 0, n);
+      written += n;
+    }
+    out.flush();
+    assertTrue(out.getBytesWritten() == size);
+    assertTrue(out.getBytesFlushed() == size);
+    assertTrue(out.getWriteOps() >= (size + STRIPE_UNIT - 1) / STRIPE_UNIT);
+    out.close();
+  }
+
+  private void checkFile(String path, int size, int readahead) throws Exception {
+    int fd = mount.open(path, CephMount.O_RDONLY, 0);
+    CephInputStream in = new CephInputStream(mount, fd, 2, readahead, null);
+    assertTrue(in.getBufferSize() == 2 * STRIPE_UNIT);
+    byte[] chunk = new byte[5000];
+    long pos = 0;
+    while (true) {
+      int b = in.read();
+      if (b == -1)
+        break;
+      assertTrue((byte)b == pattern(pos));
+      pos++;
+      int n = in.read(chunk, 0, chunk.length);
+      if (n == -1)
+        break;
+      for (int i = 0; i < n; i++)
+        assertTrue(chunk[i] == pattern(pos + i));
+      pos += n;
+    }
+    assertTrue(pos == size);
+    assertTrue(in.read() == -1);
+    assertTrue(in.getBytesRead() == size);
+    assertTrue(in.getReadOps() > 0);
+    in.close();
+  }
+
+  @Test
+  public void test_write_read_background() throws Exception {
+    String path = makePath();
+    int size = 10 * STRIPE_UNIT + 1234;
+    writeFile(path, size, 3);
+    checkFile(path, size, 3);
+  }
+
+  @Test
+  public void test_write_read_sync() throws Exception {
+    String path = makePath();
+    int size = 3 * STRIPE_UNIT + 1;
+    writeFile(path, size, 0);
+    checkFile(path, size, 0);
+  }
+
+  @Test
+  public void test_empty() throws Exception {
+    String path = makePath();
+    writeFile(path, 0, 2);
+    checkFile(path, 0, 2);
+  }
+
+  @Test
+  public void test_skip() throws Exception {
+    String path = makePath();
+    int size = 5 * STRIPE_UNIT;
+    writeFile(path, size, 2);
+
+    CephInputStream in = new CephInputStream(mount, path);
+    assertTrue(in.skip(10) == 10);
+    assertTrue((byte)in.read() == pattern(10));
+    /* unaligned skip beyond the current buffer */
+    long pos = 11 + 2 * STRIPE_UNIT + 17;
+    assertTrue(in.skip(2 * STRIPE_UNIT + 17) == 2 * STRIPE_UNIT + 17);
+    assertTrue((byte)in.read() == pattern(pos));
+    /* skipping past the end stops there */
+    assertTrue(in.skip(size) == size - pos - 1);
+    assertTrue(in.read() == -1);
+    in.close();
+  }
+
+  @Test
+  public void test_start_offset() throws Exception {
+    String path = makePath();
+    int size = 2 * STRIPE_UNIT;
+    writeFile(path, size, 2);
+
+    int fd = mount.open(path, CephMount.O_RDONLY, 0);
+    mount.lseek(fd, 100, CephMount.SEEK_SET);
+    CephInputStream in = new CephInputStream(mount, fd);
+    assertTrue((byte)in.read() == pattern(100));
+    in.close();
+  }
+
+  @Test(expected=IOException.class)
+  public void test_read_closed() throws Exception {
+    String path = makePath();
+    writeFile(path, 10, 0);
+    CephInputStream in = new CephInputStream(mount, path);
+    in.close();
+    in.read();
+  }
+
+  @Test(expected=IOException.class)
+  public void test_write_closed() throws Exception {
+    CephOutputStream out = new CephOutputStream(mount, makePath(), 0600);
+    out.close();
+    out.write(1);
+  }
+
+  /*
+   * Write to a read-only descriptor so that the first buffer written out
+   * fails, and check that every later call fails too.
+   */
+  private void checkStickyError(int write_behind) throws Exception {
+    String path = makePath();
+    mount.close(openSmallStripes(path, CephMount.O_WRONLY));
+    int fd = mount.open(path, CephMount.O_RDONLY, 0);
+    CephOutputStream out = new CephOutputStream(mount, fd, 1, write_behind, null);
+    byte[] data = new byte[STRIPE_UNIT];
+    try {
+      out.write(data, 0, data.length);
+      out.flush();
+      fail("expected IOException");
+    } catch (IOException e) {}
+    try {
+      out.flush();
+      fail("expected IOException");
+    } catch (IOException e) {}
+    try {
+      out.write(1);
+      fail("expected IOException");
+    } catch (IOException e) {}
+    try {
+      out.close();
+      fail("expected IOException");
+    } catch (IOException e) {}
+    try {
+      out.close();
+      fail("expected IOException");
+    } catch (IOException e) {}
+  }
+
+  @Test
+  public void test_write_error_background() throws Exception {
+    checkStickyError(2);
+  }
+
+  @Test
+  public void test_write_error_sync() throws Exception {
+    checkStickyError(0);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_bad_readahead() throws Exception {
+    int fd = openSmallStripes(makePath(), CephMount.O_RDWR);
+    try {
+      new CephInputStream(mount, fd, 1, -1, null);
+    } finally {
+      mount.close(fd);
+    }
+  }
+}
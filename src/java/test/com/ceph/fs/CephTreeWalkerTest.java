@@ -0,0 +1,278 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CephTreeWalkerTest {
+
+  private static CephMount mount;
+  private static String basedir = null;
+
+  /* 3 directories below the root, each with 2 subdirectories of 4 files */
+  private static final int FANOUT = 3;
+  private static final int FILES = 4;
+  private static final int SIZE = 10;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    mount = new CephMount("admin");
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_walker_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+    for (int i = 0; i < FANOUT; i++) {
+      for (int j = 0; j < 2; j++) {
+        String dir = basedir + "/d" + i + "/e" + j;
+        mount.mkdirs(dir, 0777);
+        for (int k = 0; k < FILES; k++)
+          createFile(dir + "/f" + k, SIZE);
+      }
+    }
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    remove(basedir);
+    mount.unmount();
+  }
+
+  private static void remove(String path) throws Exception {
+    CephStat stat = new CephStat();
+    mount.lstat(path, stat);
+    if (stat.isDir()) {
+      for (String name : mount.listdir(path))
+        remove(path + "/" + name);
+      mount.rmdir(path);
+    } else {
+      mount.unlink(path);
+    }
+  }
+
+  private static void createFile(String path, int size) throws Exception {
+    int fd = mount.open(path, CephMount.O_WRONLY|CephMount.O_CREAT, 0600);
+    mount.write(fd, new byte[size], size, 0);
+    mount.close(fd);
+  }
+
+  private static Set<String> newSet() {
+    return Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_bad_parallelism() throws Exception {
+    new CephTreeWalker(mount, 0, 1);
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_bad_outstanding() throws Exception {
+    new CephTreeWalker(mount, 1, 0);
+  }
+
+  @Test(expected=FileNotFoundException.class)
+  public void test_walk_dne() throws Exception {
+    CephTreeWalker walker = new CephTreeWalker(mount);
+    try {
+      walker.walk(basedir + "/" + UUID.randomUUID(), new CephTreeWalker.SimpleVisitor());
+    } finally {
+      walker.close();
+    }
+  }
+
+  private void checkWalk(CephTreeWalker walker) throws Exception {
+    final Set<String> files = newSet();
+    final Set<String> dirs = newSet();
+    CephTreeWalker.Stats stats = walker.walk(basedir, new CephTreeWalker.SimpleVisitor() {
+      @Override
+      public boolean preVisitDirectory(String path, CephStat stat) {
+        assertTrue(stat.isDir());
+        assertTrue(dirs.add(path));
+        return true;
+      }
+      @Override
+      public void visitFile(String path, CephStat stat) {
+        assertTrue(stat.isFile());
+        assertEquals(SIZE, stat.size);
+        assertTrue(files.add(path));
+      }
+    });
+
+    assertEquals(1 + FANOUT * 3, stats.getDirectoryCount());
+    assertEquals(FANOUT * 2 * FILES, stats.getFileCount());
+    assertEquals(FANOUT * 2 * FILES * SIZE, stats.getByteCount());
+    assertEquals(0, stats.getErrorCount());
+    assertTrue(stats.getElapsedNanos() > 0);
+    assertEquals(stats.getDirectoryCount(), dirs.size());
+    assertEquals(stats.getFileCount(), files.size());
+    assertTrue(dirs.contains(basedir));
+    assertTrue(dirs.contains(basedir + "/d0/e1"));
+    assertTrue(files.contains(basedir + "/d2/e0/f3"));
+  }
+
+  @Test
+  public void test_walk() throws Exception {
+    CephTreeWalker walker = new CephTreeWalker(mount);
+    try {
+      checkWalk(walker);
+    } finally {
+      walker.close();
+    }
+  }
+
+  @Test
+  public void test_walk_serial() throws Exception {
+    CephTreeWalker walker = new CephTreeWalker(mount, 1, 1);
+    try {
+      checkWalk(walker);
+      /* walkers are reusable */
+      checkWalk(walker);
+    } finally {
+      walker.close();
+    }
+  }
+
+  /*
+   * Every directory is finished only after everything below it.
+   */
+  @Test
+  public void test_post_order() throws Exception {
+    final Set<String> done = newSet();
+    CephTreeWalker walker = new CephTreeWalker(mount, 4, 2);
+    try {
+      walker.walk(basedir, new CephTreeWalker.SimpleVisitor() {
+        @Override
+        public boolean preVisitDirectory(String path, CephStat stat) {
+          assertFalse(done.contains(path));
+          return true;
+        }
+        @Override
+        public void visitFile(String path, CephStat stat) {
+          done.add(path);
+        }
+        @Override
+        public void postVisitDirectory(String path) throws IOException {
+          for (String name : mount.listdir(path))
+            assertTrue(done.contains(path + "/" + name));
+          done.add(path);
+        }
+      });
+    } finally {
+      walker.close();
+    }
+    assertTrue(done.contains(basedir));
+  }
+
+  @Test
+  public void test_skip_subtree() throws Exception {
+    final Set<String> posted = newSet();
+    CephTreeWalker walker = new CephTreeWalker(mount);
+    CephTreeWalker.Stats stats;
+    try {
+      stats = walker.walk(basedir, new CephTreeWalker.SimpleVisitor() {
+        @Override
+        public boolean preVisitDirectory(String path, CephStat stat) {
+          return !path.endsWith("/d1");
+        }
+        @Override
+        public void postVisitDirectory(String path) {
+          posted.add(path);
+        }
+      });
+    } finally {
+      walker.close();
+    }
+    assertEquals(1 + (FANOUT - 1) * 3, stats.getDirectoryCount());
+    assertEquals((FANOUT - 1) * 2 * FILES, stats.getFileCount());
+    assertFalse(posted.contains(basedir + "/d1"));
+    assertTrue(posted.contains(basedir + "/d0"));
+  }
+
+  @Test
+  public void test_walk_file() throws Exception {
+    final Set<String> files = newSet();
+    CephTreeWalker walker = new CephTreeWalker(mount);
+    CephTreeWalker.Stats stats;
+    try {
+      stats = walker.walk(basedir + "/d0/e0/f0", new CephTreeWalker.SimpleVisitor() {
+        @Override
+        public void visitFile(String path, CephStat stat) {
+          files.add(path);
+        }
+      });
+    } finally {
+      walker.close();
+    }
+    assertEquals(0, stats.getDirectoryCount());
+    assertEquals(1, stats.getFileCount());
+    assertEquals(SIZE, stats.getByteCount());
+    assertTrue(files.contains(basedir + "/d0/e0/f0"));
+  }
+
+  @Test
+  public void test_visitor_exception() throws Exception {
+    final IOException error = new IOException("stop");
+    CephTreeWalker walker = new CephTreeWalker(mount);
+    try {
+      walker.walk(basedir, new CephTreeWalker.SimpleVisitor() {
+        @Override
+        public void visitFile(String path, CephStat stat) throws IOException {
+          if (path.endsWith("/f2"))
+            throw error;
+        }
+      });
+      fail("walk should throw");
+    } catch (IOException e) {
+      assertSame(error, e);
+    } finally {
+      walker.close();
+    }
+  }
+
+  @Test
+  public void test_visitor_runtime_exception() throws Exception {
+    CephTreeWalker walker = new CephTreeWalker(mount, 2, 1);
+    try {
+      walker.walk(basedir, new CephTreeWalker.SimpleVisitor() {
+        @Override
+        public void postVisitDirectory(String path) {
+          throw new IllegalStateException("stop");
+        }
+      });
+      fail("walk should throw");
+    } catch (IllegalStateException e) {
+      assertEquals("stop", e.getMessage());
+    } finally {
+      walker.close();
+    }
+  }
+}
@@ -19,6 +19,7 @@
  */
 package com.ceph.fs;
 
+import java.nio.ByteBuffer;
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -57,6 +58,21 @@ public class CephUnmountedTest {
     mount.listdir("/a/path");
   }
 
+  @Test(expected=CephNotMountedException.class)
+  public void test_opendir() throws Exception {
+    mount.opendir("/a/path");
+  }
+
+  @Test(expected=CephNotMountedException.class)
+  public void test_listdirplus() throws Exception {
+    mount.listdirPlus("/a/path");
+  }
+
+  @Test(expected=CephNotMountedException.class)
+  public void test_opendirplus() throws Exception {
+    mount.opendirPlus("/a/path");
+  }
+
   @Test(expected=CephNotMountedException.class)
   public void test_unlink() throws Exception {
     mount.unlink("/a/path");
@@ -83,6 +99,11 @@ public class CephUnmountedTest {
     mount.stat("/a/path", stat);
   }
 
+  @Test(expected=CephNotMountedException.class)
+  public void test_stat_batch() throws Exception {
+    mount.statBatch(new String[] { "/a/path" });
+  }
+
   @Test(expected=CephNotMountedException.class)
   public void test_lstat() throws Exception {
     CephStat stat = new CephStat();
@@ -127,6 +148,31 @@ public class CephUnmountedTest {
     mount.write(0, buf, 1, 0);
   }
 
+  @Test(expected=CephNotMountedException.class)
+  public void test_read_buffer() throws Exception {
+    mount.read(0, ByteBuffer.allocateDirect(1), 0);
+  }
+
+  @Test(expected=CephNotMountedException.class)
+  public void test_write_buffer() throws Exception {
+    mount.write(0, ByteBuffer.allocate(1), 0);
+  }
+
+  @Test(expected=CephNotMountedException.class)
+  public void test_preadv() throws Exception {
+    mount.preadv(0, new ByteBuffer[] { ByteBuffer.allocate(10) }, 0);
+  }
+
+  @Test(expected=CephNotMountedException.class)
+  public void test_pwritev() throws Exception {
+    mount.pwritev(0, new ByteBuffer[] { ByteBuffer.allocate(10) }, 0);
+  }
+
+  @Test(expected=CephNotMountedException.class)
+  public void test_copy_file_range() throws Exception {
+    mount.copy_file_range(0, 0, 1, 0, 1);
+  }
+
   @Test(expected=CephNotMountedException.class)
   public void test_get_stripe_unit() throws Exception {
     mount.get_file_stripe_unit(0);
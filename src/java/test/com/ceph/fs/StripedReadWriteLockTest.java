@@ -0,0 +1,195 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/*
+ * StripedReadWriteLock does not depend on a running cluster.
+ */
+public class StripedReadWriteLockTest {
+
+  private StripedReadWriteLock lock;
+  private Lock rlock;
+  private Lock wlock;
+
+  @Before
+  public void setup() {
+    lock = new StripedReadWriteLock(4);
+    rlock = lock.readLock();
+    wlock = lock.writeLock();
+  }
+
+  @Test
+  public void test_readers_share() throws Exception {
+    rlock.lock();
+    final AtomicBoolean got = new AtomicBoolean(false);
+    Thread t = new Thread() {
+      public void run() {
+        if (rlock.tryLock()) {
+          got.set(true);
+          rlock.unlock();
+        }
+      }
+    };
+    t.start();
+    t.join();
+    assertTrue(got.get());
+    assertFalse(wlock.tryLock());
+    rlock.unlock();
+    assertTrue(wlock.tryLock());
+    wlock.unlock();
+  }
+
+  @Test
+  public void test_writer_excludes_readers() throws Exception {
+    wlock.lock();
+    final AtomicBoolean got = new AtomicBoolean(true);
+    Thread t = new Thread() {
+      public void run() {
+        got.set(rlock.tryLock());
+      }
+    };
+    t.start();
+    t.join();
+    assertFalse(got.get());
+    wlock.unlock();
+    assertTrue(rlock.tryLock());
+    rlock.unlock();
+  }
+
+  @Test
+  public void test_writer_waits_for_reader() throws Exception {
+    rlock.lock();
+    final CountDownLatch locked = new CountDownLatch(1);
+    Thread t = new Thread() {
+      public void run() {
+        wlock.lock();
+        locked.countDown();
+        wlock.unlock();
+      }
+    };
+    t.start();
+    assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+    rlock.unlock();
+    assertTrue(locked.await(10, TimeUnit.SECONDS));
+    t.join();
+  }
+
+  @Test
+  public void test_reader_waits_for_writer() throws Exception {
+    wlock.lock();
+    final CountDownLatch locked = new CountDownLatch(1);
+    Thread t = new Thread() {
+      public void run() {
+        rlock.lock();
+        locked.countDown();
+        rlock.unlock();
+      }
+    };
+    t.start();
+    assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+    wlock.unlock();
+    assertTrue(locked.await(10, TimeUnit.SECONDS));
+    t.join();
+  }
+
+  @Test
+  public void test_write_reentrant() throws Exception {
+    wlock.lock();
+    wlock.lock();
+    rlock.lock();
+    rlock.unlock();
+    wlock.unlock();
+    assertFalse(rlock.tryLock());
+    wlock.unlock();
+    assertTrue(rlock.tryLock());
+    rlock.unlock();
+  }
+
+  @Test
+  public void test_timed_write() throws Exception {
+    rlock.lock();
+    assertFalse(wlock.tryLock(50, TimeUnit.MILLISECONDS));
+    /* a failed writer must not leave readers blocked */
+    assertTrue(rlock.tryLock());
+    rlock.unlock();
+    rlock.unlock();
+    assertTrue(wlock.tryLock(50, TimeUnit.MILLISECONDS));
+    wlock.unlock();
+  }
+
+  @Test(expected=UnsupportedOperationException.class)
+  public void test_read_condition() {
+    rlock.newCondition();
+  }
+
+  /*
+   * Readers and writers hammer a pair of counters that must always be seen
+   * equal while holding the read lock.
+   */
+  @Test
+  public void test_stress() throws Exception {
+    final int[] pair = new int[2];
+    final AtomicInteger errors = new AtomicInteger(0);
+    final AtomicBoolean stop = new AtomicBoolean(false);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      final boolean is_writer = (i % 4) == 0;
+      threads[i] = new Thread() {
+        public void run() {
+          while (!stop.get()) {
+            if (is_writer) {
+              wlock.lock();
+              try {
+                pair[0]++;
+                Thread.yield();
+                pair[1]++;
+              } finally {
+                wlock.unlock();
+              }
+            } else {
+              rlock.lock();
+              try {
+                if (pair[0] != pair[1])
+                  errors.incrementAndGet();
+              } finally {
+                rlock.unlock();
+              }
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    Thread.sleep(500);
+    stop.set(true);
+    for (Thread t : threads)
+      t.join();
+    assertEquals(0, errors.get());
+    assertTrue(pair[0] > 0);
+  }
+}
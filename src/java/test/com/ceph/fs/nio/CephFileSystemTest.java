@@ -0,0 +1,479 @@
+/*
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.ceph.fs.nio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.ceph.fs.CephMount;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CephFileSystemTest {
+
+  private static CephMount mount;
+  private static CephFileSystemProvider provider;
+  private static CephFileSystem fs;
+  private static URI uri;
+  private static String basedir = null;
+
+  @BeforeClass
+  public static void setup() throws Exception {
+    mount = new CephMount("admin");
+
+    String conf_file = System.getProperty("CEPH_CONF_FILE");
+    if (conf_file != null)
+      mount.conf_read_file(conf_file);
+    mount.conf_set("client_permissions", "0");
+
+    mount.mount(null);
+
+    basedir = "/libcephfs_nio_junit_" + UUID.randomUUID();
+    mount.mkdir(basedir, 0777);
+
+    provider = new CephFileSystemProvider();
+    uri = URI.create("ceph://junit/");
+    Map<String, Object> env = new HashMap<String, Object>();
+    env.put("mount", mount);
+    fs = provider.newFileSystem(uri, env);
+  }
+
+  @AfterClass
+  public static void destroy() throws Exception {
+    remove(fs.getPath(basedir));
+    fs.close();
+    mount.unmount();
+  }
+
+  private static void remove(Path path) throws IOException {
+    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+      DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+      try {
+        for (Path entry : stream)
+          remove(entry);
+      } finally {
+        stream.close();
+      }
+    }
+    Files.delete(path);
+  }
+
+  private static Path path(String name) {
+    return fs.getPath(basedir, name);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /*
+   * Paths
+   */
+
+  @Test
+  public void test_path_names() {
+    Path p = fs.getPath("/a//b/c/");
+    assertEquals("/a/b/c", p.toString());
+    assertTrue(p.isAbsolute());
+    assertEquals(3, p.getNameCount());
+    assertEquals(fs.getPath("c"), p.getFileName());
+    assertEquals(fs.getPath("/a/b"), p.getParent());
+    assertEquals(fs.getPath("/"), p.getRoot());
+    assertEquals(fs.getPath("b/c"), p.subpath(1, 3));
+    assertTrue(p.startsWith("/a/b"));
+    assertFalse(p.startsWith("a"));
+    assertTrue(p.endsWith("b/c"));
+    assertFalse(p.endsWith("/b/c"));
+
+    Path root = fs.getPath("/");
+    assertEquals(0, root.getNameCount());
+    assertNull(root.getFileName());
+    assertNull(root.getParent());
+
+    Path rel = fs.getPath("x");
+    assertFalse(rel.isAbsolute());
+    assertNull(rel.getRoot());
+    assertNull(rel.getParent());
+    assertSame(rel, rel.getFileName());
+  }
+
+  @Test
+  public void test_path_normalize_resolve_relativize() {
+    assertEquals(fs.getPath("/a/c"), fs.getPath("/a/./b/../c").normalize());
+    assertEquals(fs.getPath("/"), fs.getPath("/..").normalize());
+    assertEquals(fs.getPath("../b"), fs.getPath("../a/../b").normalize());
+
+    Path a = fs.getPath("/a/b");
+    assertEquals(fs.getPath("/a/b/c"), a.resolve("c"));
+    assertEquals(fs.getPath("/c"), a.resolve("/c"));
+    assertEquals(a, a.resolve(""));
+    assertEquals(fs.getPath("/a/c"), a.resolveSibling("c"));
+    assertEquals(fs.getPath("/x"), fs.getPath("/").resolve("x"));
+
+    assertEquals(fs.getPath("../c/d"), a.relativize(fs.getPath("/a/c/d")));
+    assertEquals(fs.getPath("c"), a.relativize(fs.getPath("/a/b/c")));
+    assertEquals(fs.getPath(""), a.relativize(a));
+    assertEquals(fs.getPath("a/b"), fs.getPath("/").relativize(a));
+
+    List<String> names = new ArrayList<String>();
+    for (Path name : a)
+      names.add(name.toString());
+    assertEquals(Arrays.asList("a", "b"), names);
+  }
+
+  @Test
+  public void test_uri() throws Exception {
+    Path p = fs.getPath("/a/b");
+    URI u = p.toUri();
+    assertEquals("ceph", u.getScheme());
+    assertEquals("junit", u.getAuthority());
+    assertEquals("/a/b", u.getPath());
+    assertEquals(p, provider.getPath(u));
+    assertSame(fs, provider.getFileSystem(uri));
+  }
+
+  @Test(expected=FileSystemAlreadyExistsException.class)
+  public void test_duplicate_filesystem() throws Exception {
+    Map<String, Object> env = new HashMap<String, Object>();
+    env.put("mount", mount);
+    provider.newFileSystem(uri, env);
+  }
+
+  @Test
+  public void test_failed_filesystem() throws Exception {
+    URI other = URI.create("ceph://junit-failed/");
+    Map<String, Object> env = new HashMap<String, Object>();
+    env.put("conf_file", "/nonexistent/" + UUID.randomUUID());
+    try {
+      provider.newFileSystem(other, env);
+      fail("expected IOException");
+    } catch (IOException e) {}
+    try {
+      provider.getFileSystem(other);
+      fail("failed file system registered");
+    } catch (FileSystemNotFoundException e) {}
+  }
+
+  @Test
+  public void test_close_filesystem() throws Exception {
+    URI other = URI.create("ceph://junit-close/");
+    Map<String, Object> env = new HashMap<String, Object>();
+    env.put("mount", mount);
+    CephFileSystem fs2 = provider.newFileSystem(other, env);
+    assertTrue(fs2.isOpen());
+    fs2.close();
+    assertFalse(fs2.isOpen());
+    /* a file system wrapping an existing mount leaves it mounted */
+    assertNotNull(mount.listdir(basedir));
+    try {
+      provider.getFileSystem(other);
+      fail("closed file system still registered");
+    } catch (FileSystemNotFoundException e) {}
+  }
+
+  @Test
+  public void test_glob() {
+    PathMatcher m = fs.getPathMatcher("glob:**/*.{java,txt}");
+    assertTrue(m.matches(fs.getPath("/a/b/c.java")));
+    assertTrue(m.matches(fs.getPath("a/c.txt")));
+    assertFalse(m.matches(fs.getPath("c.txt")));
+    assertFalse(m.matches(fs.getPath("/a/c.class")));
+
+    m = fs.getPathMatcher("glob:f?[0-9]");
+    assertTrue(m.matches(fs.getPath("fx1")));
+    assertFalse(m.matches(fs.getPath("fx10")));
+    assertFalse(m.matches(fs.getPath("f/1")));
+
+    m = fs.getPathMatcher("regex:.*\\.dat");
+    assertTrue(m.matches(fs.getPath("x.dat")));
+  }
+
+  /*
+   * Files
+   */
+
+  @Test
+  public void test_write_read() throws Exception {
+    Path p = path("write_read");
+    Files.write(p, bytes("hello ceph"));
+    assertArrayEquals(bytes("hello ceph"), Files.readAllBytes(p));
+    assertEquals(10, Files.size(p));
+    assertTrue(Files.exists(p));
+    assertTrue(Files.isRegularFile(p));
+
+    Files.write(p, bytes("!"), StandardOpenOption.APPEND);
+    assertArrayEquals(bytes("hello ceph!"), Files.readAllBytes(p));
+
+    Files.write(p, bytes("bye"));
+    assertArrayEquals(bytes("bye"), Files.readAllBytes(p));
+  }
+
+  @Test
+  public void test_seekable_channel() throws Exception {
+    Path p = path("seekable");
+    SeekableByteChannel ch = Files.newByteChannel(p, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      ch.write(ByteBuffer.wrap(bytes("0123456789")));
+      assertEquals(10, ch.size());
+      ch.position(4);
+      ByteBuffer buf = ByteBuffer.allocateDirect(3);
+      assertEquals(3, ch.read(buf));
+      buf.flip();
+      assertEquals('4', buf.get(0));
+      assertEquals('6', buf.get(2));
+      assertEquals(7, ch.position());
+      ch.truncate(5);
+      assertEquals(5, ch.size());
+    } finally {
+      ch.close();
+    }
+  }
+
+  @Test(expected=FileAlreadyExistsException.class)
+  public void test_create_new_exists() throws Exception {
+    Path p = path("create_new");
+    Files.createFile(p);
+    Files.createFile(p);
+  }
+
+  @Test(expected=NoSuchFileException.class)
+  public void test_missing_file() throws Exception {
+    Files.readAllBytes(path("missing"));
+  }
+
+  @Test
+  public void test_attributes() throws Exception {
+    Path p = path("attrs");
+    Files.createFile(p, PosixFilePermissions.asFileAttribute(
+          PosixFilePermissions.fromString("rw-r-----")));
+    Files.write(p, bytes("abc"));
+
+    PosixFileAttributes attrs = Files.readAttributes(p, PosixFileAttributes.class);
+    assertEquals(3, attrs.size());
+    assertTrue(attrs.isRegularFile());
+    assertFalse(attrs.isDirectory());
+    assertEquals(PosixFilePermissions.fromString("rw-r-----"), attrs.permissions());
+    assertNotNull(attrs.fileKey());
+    assertNotNull(attrs.owner());
+
+    BasicFileAttributes dir = Files.readAttributes(fs.getPath(basedir), BasicFileAttributes.class);
+    assertTrue(dir.isDirectory());
+
+    Map<String, Object> map = Files.readAttributes(p, "posix:size,permissions");
+    assertEquals(2, map.size());
+    assertEquals(3L, map.get("size"));
+    map = Files.readAttributes(p, "*");
+    assertTrue(map.containsKey("lastModifiedTime"));
+    assertFalse(map.containsKey("permissions"));
+    assertEquals(Boolean.TRUE, Files.getAttribute(p, "isRegularFile"));
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void test_unknown_attribute() throws Exception {
+    Path p = path("unknown_attr");
+    Files.createFile(p);
+    Files.readAttributes(p, "basic:permissions");
+  }
+
+  @Test
+  public void test_set_attributes() throws Exception {
+    Path p = path("set_attrs");
+    Files.createFile(p);
+
+    FileTime mtime = FileTime.from(1234567000L, TimeUnit.MILLISECONDS);
+    Files.setLastModifiedTime(p, mtime);
+    assertEquals(mtime, Files.getLastModifiedTime(p));
+
+    Files.setPosixFilePermissions(p, PosixFilePermissions.fromString("r-x------"));
+    assertEquals(PosixFilePermissions.fromString("r-x------"),
+        Files.getPosixFilePermissions(p));
+    assertTrue(Files.isExecutable(p));
+  }
+
+  /*
+   * Directories
+   */
+
+  @Test
+  public void test_directory_stream() throws Exception {
+    Path dir = path("dirstream");
+    Files.createDirectory(dir);
+    for (int i = 0; i < 5; i++)
+      Files.createFile(dir.resolve("f" + i + ".txt"));
+    Files.createFile(dir.resolve("other.dat"));
+
+    List<String> names = new ArrayList<String>();
+    DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.txt");
+    try {
+      for (Path entry : stream) {
+        assertEquals(dir, entry.getParent());
+        names.add(entry.getFileName().toString());
+      }
+    } finally {
+      stream.close();
+    }
+    Collections.sort(names);
+    assertEquals(Arrays.asList("f0.txt", "f1.txt", "f2.txt", "f3.txt", "f4.txt"), names);
+  }
+
+  @Test(expected=NotDirectoryException.class)
+  public void test_directory_stream_file() throws Exception {
+    Path p = path("not_a_dir");
+    Files.createFile(p);
+    Files.newDirectoryStream(p);
+  }
+
+  @Test
+  public void test_walk() throws Exception {
+    Path dir = path("walk");
+    Files.createDirectories(dir.resolve("a/b"));
+    Files.createDirectories(dir.resolve("c"));
+    Files.createFile(dir.resolve("a/f"));
+    Files.createFile(dir.resolve("a/b/g"));
+
+    List<String> found = new ArrayList<String>();
+    Stream<Path> walk = Files.walk(dir);
+    try {
+      Iterator<Path> it = walk.iterator();
+      while (it.hasNext())
+        found.add(dir.relativize(it.next()).toString());
+    } finally {
+      walk.close();
+    }
+    Collections.sort(found);
+    assertEquals(Arrays.asList("", "a", "a/b", "a/b/g", "a/f", "c"), found);
+  }
+
+  @Test
+  public void test_delete() throws Exception {
+    Path dir = path("delete");
+    Files.createDirectory(dir);
+    Files.createFile(dir.resolve("f"));
+    try {
+      Files.delete(dir);
+      fail("deleted a non-empty directory");
+    } catch (DirectoryNotEmptyException e) {}
+    Files.delete(dir.resolve("f"));
+    Files.delete(dir);
+    assertFalse(Files.exists(dir));
+    assertFalse(Files.deleteIfExists(dir));
+  }
+
+  /*
+   * Copy, move and links
+   */
+
+  @Test
+  public void test_copy() throws Exception {
+    Path src = path("copy_src");
+    Path dst = path("copy_dst");
+    Files.write(src, bytes("copy me"));
+    Files.setLastModifiedTime(src, FileTime.from(1000000000L, TimeUnit.MILLISECONDS));
+
+    Files.copy(src, dst, StandardCopyOption.COPY_ATTRIBUTES);
+    assertArrayEquals(bytes("copy me"), Files.readAllBytes(dst));
+    assertEquals(Files.getLastModifiedTime(src), Files.getLastModifiedTime(dst));
+
+    try {
+      Files.copy(src, dst);
+      fail("copied over an existing file");
+    } catch (FileAlreadyExistsException e) {}
+
+    Files.write(src, bytes("again"));
+    Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING);
+    assertArrayEquals(bytes("again"), Files.readAllBytes(dst));
+  }
+
+  @Test
+  public void test_move() throws Exception {
+    Path src = path("move_src");
+    Path dst = path("move_dst");
+    Path other = path("move_other");
+    Files.write(src, bytes("move me"));
+    Files.createFile(other);
+
+    Files.move(src, dst);
+    assertFalse(Files.exists(src));
+    assertArrayEquals(bytes("move me"), Files.readAllBytes(dst));
+
+    try {
+      Files.move(dst, other);
+      fail("moved over an existing file");
+    } catch (FileAlreadyExistsException e) {}
+
+    Files.move(dst, other, StandardCopyOption.ATOMIC_MOVE);
+    assertArrayEquals(bytes("move me"), Files.readAllBytes(other));
+  }
+
+  @Test
+  public void test_symlink() throws Exception {
+    Path dir = path("links");
+    Files.createDirectories(dir.resolve("real"));
+    Files.write(dir.resolve("real/file"), bytes("x"));
+    Path link = dir.resolve("link");
+    Files.createSymbolicLink(link, fs.getPath("real"));
+
+    assertTrue(Files.isSymbolicLink(link));
+    assertTrue(Files.isDirectory(link));
+    assertFalse(Files.isDirectory(link, LinkOption.NOFOLLOW_LINKS));
+    assertEquals(fs.getPath("real"), Files.readSymbolicLink(link));
+    assertEquals(dir.resolve("real/file"), link.resolve("file").toRealPath());
+    assertTrue(Files.isSameFile(link.resolve("file"), dir.resolve("real/file")));
+  }
+
+  @Test
+  public void test_file_store() throws Exception {
+    Path p = path("store");
+    Files.createFile(p);
+    assertEquals("ceph", Files.getFileStore(p).type());
+    assertTrue(Files.getFileStore(p).getTotalSpace() >= 0);
+  }
+}